@@ -0,0 +1,210 @@
+package com.github.skyao.taskengine.bulkhead;
+
+import com.github.skyao.taskengine.queue.PriorityTaskQueue;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * named group of task types which has its own pending queue and worker threads.
+ * <p>
+ * Tasks of the types in a bulkhead never wait for workers of other bulkheads, so a type which hangs on a slow
+ * dependency can take at most the max workers of its own bulkhead.
+ * </p>
+ *
+ * @author Sky Ao
+ * @see Bulkheads
+ */
+public class Bulkhead {
+    private final String name;
+    private final int[] types;
+    private final int minWorkers;
+    private final int maxWorkers;
+    private final PriorityTaskQueue queue = new PriorityTaskQueue();
+
+    final AtomicInteger workers = new AtomicInteger();
+    final AtomicInteger running = new AtomicInteger();
+    final AtomicInteger borrowed = new AtomicInteger();
+    final AtomicLong wallNanos = new AtomicLong();
+    final AtomicLong cpuNanos = new AtomicLong();
+    volatile int targetWorkers;
+
+    private Bulkhead(Builder builder) {
+        this.name = builder.name;
+        this.types = builder.types;
+        this.minWorkers = builder.minWorkers;
+        this.maxWorkers = builder.maxWorkers;
+        this.targetWorkers = builder.minWorkers;
+    }
+
+    /**
+     * get name of this bulkhead.
+     *
+     * @return bulkhead name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * get task types in this bulkhead.
+     *
+     * @return copy of task types
+     */
+    public int[] getTypes() {
+        return types.clone();
+    }
+
+    /**
+     * get min count of worker threads.
+     *
+     * @return min workers
+     */
+    public int getMinWorkers() {
+        return minWorkers;
+    }
+
+    /**
+     * get max count of worker threads, which also limits the tasks running on threads lent by other bulkheads.
+     *
+     * @return max workers
+     */
+    public int getMaxWorkers() {
+        return maxWorkers;
+    }
+
+    /**
+     * get pending queue of this bulkhead.
+     *
+     * @return pending queue
+     */
+    public PriorityTaskQueue getQueue() {
+        return queue;
+    }
+
+    /**
+     * get current count of worker threads, not including the ones on loan longer than the loan timeout.
+     *
+     * @return count of workers
+     */
+    public int getWorkers() {
+        return workers.get();
+    }
+
+    /**
+     * get count of worker threads this bulkhead is sized to.
+     *
+     * @return target count of workers
+     */
+    public int getTargetWorkers() {
+        return targetWorkers;
+    }
+
+    /**
+     * get count of running tasks of this bulkhead, including those running on lent threads.
+     *
+     * @return count of running tasks
+     */
+    public int getRunning() {
+        return running.get();
+    }
+
+    boolean tryBorrow() {
+        while (true) {
+            int current = running.get();
+            // own workers may take tasks at any time, so borrowed threads and own workers together are bounded
+            if (current >= maxWorkers || borrowed.get() + workers.get() >= maxWorkers) {
+                return false;
+            }
+            if (running.compareAndSet(current, current + 1)) {
+                borrowed.incrementAndGet();
+                return true;
+            }
+        }
+    }
+
+    boolean tryRetire() {
+        while (true) {
+            int current = workers.get();
+            if (current <= targetWorkers) {
+                return false;
+            }
+            if (workers.compareAndSet(current, current - 1)) {
+                return true;
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "Bulkhead[name=" + name + ",types=" + Arrays.toString(types) + ",workers=" + workers.get() + "/"
+                + targetWorkers + ",running=" + running.get() + ",pending=" + queue.size() + "]";
+    }
+
+    /**
+     * create a new Builder.
+     *
+     * @param name bulkhead name
+     * @return new instance of Builder
+     * @throws NullPointerException if name is null
+     */
+    public static Builder newBuilder(String name) {
+        return new Builder(name);
+    }
+
+    /**
+     * Builder helps to build bulkhead easily.
+     */
+    public static class Builder {
+        private final String name;
+        private int[] types = new int[0];
+        private int minWorkers = 1;
+        private int maxWorkers = Runtime.getRuntime().availableProcessors();
+
+        private Builder(String name) {
+            checkNotNull(name, "bulkhead name should not be null");
+            this.name = name;
+        }
+
+        /**
+         * build bulkhead.
+         *
+         * @return bulkhead
+         * @throws IllegalArgumentException if no task type is set
+         */
+        public Bulkhead build() {
+            checkArgument(types.length > 0, "bulkhead should have task types: name=" + name);
+            return new Bulkhead(this);
+        }
+
+        /**
+         * set task types in this bulkhead.
+         *
+         * @param types task types
+         * @return this builder itself to chain
+         */
+        public Builder types(int... types) {
+            this.types = types.clone();
+            return this;
+        }
+
+        /**
+         * set bounds of worker threads.
+         *
+         * @param min min count of workers
+         * @param max max count of workers
+         * @return this builder itself to chain
+         * @throws IllegalArgumentException if min is not greater than zero or max is smaller than min
+         */
+        public Builder workers(int min, int max) {
+            checkArgument(min > 0 && max >= min, "invalid worker bounds: min=" + min + ",max=" + max);
+            this.minWorkers = min;
+            this.maxWorkers = max;
+            return this;
+        }
+    }
+}
@@ -0,0 +1,398 @@
+package com.github.skyao.taskengine.bulkhead;
+
+import com.github.skyao.taskengine.task.RuntimeTask;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * bulkheads which isolate groups of task types from each other, sized automatically by measured load.
+ * <pre>
+ * Each time it is resized, a bulkhead is sized by what its executions did in the last interval:
+ * (1) busy threads = wall time of executions / interval, at least the count of running tasks
+ * (2) blocking ratio = 1 - cpu time of executions / wall time of executions
+ * (3) target = busy threads / target utilization, plus one if tasks are waiting in its queue
+ * (4) target is capped by cores * target utilization / (1 - blocking ratio), so cpu bound groups do not
+ *     oversubscribe cores while groups waiting on I/O can have more threads, no cap if nothing finished
+ * (5) target is kept in [min workers, max workers] of the bulkhead
+ * Workers are started at once when target grows, and retire one by one when target shrinks.
+ * </pre>
+ * <p>
+ * With lending enabled, a worker whose own queue is empty runs tasks of other bulkheads, as long as those bulkheads
+ * have less own workers plus borrowed workers than their max workers. So isolation still bounds each group, but idle
+ * capacity is not wasted. A worker on loan is still counted by its own bulkhead, so short loans cost no thread. A loan
+ * which outlasts the loan timeout is no longer counted, and the lender starts a replacement, so a borrowed task
+ * hanging on its dependency never starves the lender for long. When such a loan ends, one worker of the lender
+ * retires if it has more than its target. If the JVM does not support thread cpu time, blocking ratio is taken as
+ * zero.
+ * </p>
+ *
+ * @author Sky Ao
+ */
+public class Bulkheads {
+    private static final ThreadMXBean THREAD_MX_BEAN = ManagementFactory.getThreadMXBean();
+    private static final long IDLE_POLL_MILLIS = 10;
+
+    private final List<Bulkhead> bulkheads;
+    private final Map<Integer, Bulkhead> byType = new HashMap<>();
+    private final double targetUtilization;
+    private final long resizeInterval;
+    private final boolean lending;
+    private final long loanTimeout;
+    private final Set<Loan> loans = Collections.newSetFromMap(new ConcurrentHashMap<Loan, Boolean>());
+    private final boolean cpuTimeSupported;
+
+    private volatile Runner runner;
+    private volatile boolean running;
+    private long lastResize;
+
+    private Bulkheads(Builder builder) {
+        this.bulkheads = Collections.unmodifiableList(new ArrayList<>(builder.bulkheads));
+        for (Bulkhead bulkhead : bulkheads) {
+            for (int type : bulkhead.getTypes()) {
+                checkArgument(!byType.containsKey(type), "task type is in more than one bulkhead: type=" + type);
+                byType.put(type, bulkhead);
+            }
+        }
+        this.targetUtilization = builder.targetUtilization;
+        this.resizeInterval = builder.resizeInterval;
+        this.lending = builder.lending;
+        this.loanTimeout = builder.loanTimeout;
+        this.cpuTimeSupported = THREAD_MX_BEAN.isCurrentThreadCpuTimeSupported()
+                && THREAD_MX_BEAN.isThreadCpuTimeEnabled();
+    }
+
+    /**
+     * runner which executes a task on a bulkhead worker.
+     */
+    public interface Runner {
+
+        /**
+         * execute a task.
+         *
+         * @param task task to execute
+         */
+        void run(RuntimeTask task);
+    }
+
+    /**
+     * get bulkhead of specified task type.
+     *
+     * @param type task type
+     * @return bulkhead, null if the type is not in any bulkhead
+     */
+    public Bulkhead bulkheadOf(int type) {
+        return byType.get(type);
+    }
+
+    /**
+     * get all the bulkheads.
+     *
+     * @return unmodifiable list of bulkheads
+     */
+    public List<Bulkhead> getBulkheads() {
+        return bulkheads;
+    }
+
+    /**
+     * get interval of resizing.
+     *
+     * @return resize interval in milliseconds
+     */
+    public long getResizeInterval() {
+        return resizeInterval;
+    }
+
+    /**
+     * get time after which a worker on loan is replaced in its own bulkhead.
+     *
+     * @return loan timeout in milliseconds
+     */
+    public long getLoanTimeout() {
+        return loanTimeout;
+    }
+
+    /**
+     * start min workers of each bulkhead.
+     *
+     * @param runner runner to execute tasks
+     * @throws NullPointerException  if runner is null
+     * @throws IllegalStateException if bulkheads are started already
+     */
+    public synchronized void start(Runner runner) {
+        checkNotNull(runner, "runner should not be null");
+        checkState(!running, "bulkheads are started already");
+
+        this.runner = runner;
+        this.running = true;
+        this.lastResize = System.nanoTime();
+        for (Bulkhead bulkhead : bulkheads) {
+            startWorkers(bulkhead);
+        }
+    }
+
+    /**
+     * stop all the workers, tasks not executed yet will be dropped.
+     */
+    public synchronized void shutdown() {
+        running = false;
+    }
+
+    /**
+     * resize bulkheads by load measured since last resizing.
+     */
+    public synchronized void resize() {
+        if (!running) {
+            return;
+        }
+        long now = System.nanoTime();
+        long elapsed = now - lastResize;
+        lastResize = now;
+        if (elapsed <= 0) {
+            return;
+        }
+
+        int cores = Runtime.getRuntime().availableProcessors();
+        for (Bulkhead bulkhead : bulkheads) {
+            long wall = bulkhead.wallNanos.getAndSet(0);
+            long cpu = bulkhead.cpuNanos.getAndSet(0);
+            double blockingRatio = wall > 0 && cpuTimeSupported ? Math.max(0, 1 - (double) cpu / wall) : 0;
+            double busy = Math.max((double) wall / elapsed, bulkhead.running.get());
+
+            int target = (int) Math.ceil(busy / targetUtilization);
+            if (bulkhead.getQueue().size() > 0) {
+                target = Math.max(target, bulkhead.workers.get() + 1);
+            }
+            if (wall > 0) {
+                int cap = (int) Math.ceil(cores * targetUtilization / Math.max(1 - blockingRatio, 0.01));
+                target = Math.min(target, cap);
+            }
+            bulkhead.targetWorkers = Math.max(bulkhead.getMinWorkers(), Math.min(bulkhead.getMaxWorkers(), target));
+            startWorkers(bulkhead);
+        }
+    }
+
+    /**
+     * start replacements of the workers on loan longer than the loan timeout.
+     */
+    public void replaceLongLoans() {
+        if (!running) {
+            return;
+        }
+        long deadline = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(loanTimeout);
+        for (Loan loan : loans) {
+            if (loan.start - deadline <= 0 && loan.settled.compareAndSet(false, true)) {
+                loan.lender.workers.decrementAndGet();
+                startWorkers(loan.lender);
+            }
+        }
+    }
+
+    private void startWorkers(final Bulkhead bulkhead) {
+        while (true) {
+            int current = bulkhead.workers.get();
+            if (current >= bulkhead.targetWorkers) {
+                return;
+            }
+            if (bulkhead.workers.compareAndSet(current, current + 1)) {
+                Thread thread = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        work(bulkhead);
+                    }
+                }, "task-engine-" + bulkhead.getName() + "-" + current);
+                thread.setDaemon(true);
+                thread.start();
+            }
+        }
+    }
+
+    private void work(Bulkhead bulkhead) {
+        boolean retired = false;
+        try {
+            while (running && !(retired = bulkhead.tryRetire())) {
+                Bulkhead owner = bulkhead;
+                RuntimeTask task = bulkhead.getQueue().poll();
+                if (task == null && lending) {
+                    for (Bulkhead other : bulkheads) {
+                        if (other != bulkhead && other.getQueue().size() > 0 && other.tryBorrow()) {
+                            task = other.getQueue().poll();
+                            if (task != null) {
+                                owner = other;
+                                break;
+                            }
+                            other.running.decrementAndGet();
+                            other.borrowed.decrementAndGet();
+                        }
+                    }
+                    if (task != null) {
+                        lend(bulkhead, owner, task);
+                        continue;
+                    }
+                }
+                if (task == null) {
+                    task = bulkhead.getQueue().poll(IDLE_POLL_MILLIS, TimeUnit.MILLISECONDS);
+                }
+                if (task != null) {
+                    bulkhead.running.incrementAndGet();
+                    execute(bulkhead, task);
+                }
+            }
+        } catch (InterruptedException e) {
+            // exit
+        } finally {
+            if (!retired) {
+                bulkhead.workers.decrementAndGet();
+            }
+        }
+    }
+
+    private void lend(Bulkhead lender, Bulkhead owner, RuntimeTask task) {
+        Loan loan = new Loan(lender);
+        loans.add(loan);
+        try {
+            execute(owner, task);
+        } finally {
+            owner.borrowed.decrementAndGet();
+            loans.remove(loan);
+            if (!loan.settled.compareAndSet(false, true)) {
+                // replaced, the lender counts this worker again and one of its workers retires on its next loop
+                lender.workers.incrementAndGet();
+            }
+        }
+    }
+
+    private void execute(Bulkhead owner, RuntimeTask task) {
+        long wall = System.nanoTime();
+        long cpu = cpuTimeSupported ? THREAD_MX_BEAN.getCurrentThreadCpuTime() : 0;
+        try {
+            runner.run(task);
+        } finally {
+            owner.running.decrementAndGet();
+            owner.wallNanos.addAndGet(System.nanoTime() - wall);
+            if (cpuTimeSupported) {
+                owner.cpuNanos.addAndGet(THREAD_MX_BEAN.getCurrentThreadCpuTime() - cpu);
+            }
+        }
+    }
+
+    /**
+     * a worker on loan to another bulkhead, which is settled either by its end or by its replacement.
+     */
+    private static final class Loan {
+        private final Bulkhead lender;
+        private final long start = System.nanoTime();
+        private final AtomicBoolean settled = new AtomicBoolean();
+
+        private Loan(Bulkhead lender) {
+            this.lender = lender;
+        }
+    }
+
+    /**
+     * create a new Builder.
+     *
+     * @return new instance of Builder
+     */
+    public static Builder newBuilder() {
+        return new Builder();
+    }
+
+    /**
+     * Builder helps to build bulkheads easily.
+     */
+    public static class Builder {
+        private final List<Bulkhead> bulkheads = new ArrayList<>();
+        private double targetUtilization = 0.8;
+        private long resizeInterval = 1000;
+        private boolean lending = true;
+        private long loanTimeout = 100;
+
+        /**
+         * build bulkheads.
+         *
+         * @return bulkheads, not started yet
+         * @throws IllegalArgumentException if a task type is in more than one bulkhead
+         */
+        public Bulkheads build() {
+            return new Bulkheads(this);
+        }
+
+        /**
+         * add a bulkhead.
+         *
+         * @param bulkhead bulkhead to add
+         * @return this builder itself to chain
+         * @throws NullPointerException if bulkhead is null
+         */
+        public Builder add(Bulkhead bulkhead) {
+            checkNotNull(bulkhead, "bulkhead should not be null");
+            bulkheads.add(bulkhead);
+            return this;
+        }
+
+        /**
+         * set target utilization of worker threads.
+         *
+         * @param targetUtilization target utilization, default is 0.8
+         * @return this builder itself to chain
+         * @throws IllegalArgumentException if targetUtilization is not in (0, 1]
+         */
+        public Builder targetUtilization(double targetUtilization) {
+            checkArgument(targetUtilization > 0 && targetUtilization <= 1,
+                    "target utilization should in (0,1]: targetUtilization=" + targetUtilization);
+            this.targetUtilization = targetUtilization;
+            return this;
+        }
+
+        /**
+         * set interval of resizing.
+         *
+         * @param milliseconds resize interval in milliseconds, default is 1000
+         * @return this builder itself to chain
+         * @throws IllegalArgumentException if milliseconds is not greater than zero
+         */
+        public Builder resizeIntervalInMilliseconds(long milliseconds) {
+            checkArgument(milliseconds > 0, "resize interval should greater than zero: interval=" + milliseconds);
+            this.resizeInterval = milliseconds;
+            return this;
+        }
+
+        /**
+         * set if idle workers run tasks of other bulkheads.
+         *
+         * @param lending true to lend idle workers, default is true
+         * @return this builder itself to chain
+         */
+        public Builder lending(boolean lending) {
+            this.lending = lending;
+            return this;
+        }
+
+        /**
+         * set time after which a worker on loan is replaced in its own bulkhead.
+         *
+         * @param milliseconds loan timeout in milliseconds, default is 100
+         * @return this builder itself to chain
+         * @throws IllegalArgumentException if milliseconds is not greater than zero
+         */
+        public Builder loanTimeoutInMilliseconds(long milliseconds) {
+            checkArgument(milliseconds > 0, "loan timeout should greater than zero: timeout=" + milliseconds);
+            this.loanTimeout = milliseconds;
+            return this;
+        }
+    }
+}
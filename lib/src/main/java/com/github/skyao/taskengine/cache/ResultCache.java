@@ -0,0 +1,248 @@
+package com.github.skyao.taskengine.cache;
+
+import com.github.skyao.taskengine.task.TaskContent;
+import com.github.skyao.taskengine.task.TaskParameter;
+import com.github.skyao.taskengine.task.TaskResult;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * cache of task results for task types which are pure functions of their task content.
+ * <p>
+ * Caching is enabled for each task type with its own TTL. The key of a task is a 128-bit murmur3 hash of its type
+ * and parameters sorted by name, so it is stable across processes and does not depend on the order in which
+ * parameters are added. Only successful results are cached.
+ * </p>
+ * <p>
+ * The cache is bounded by capacity and evicts by CLOCK: entries sit in a fixed ring of slots, a hit only sets the
+ * reference bit of its slot, and on insertion into a full cache the hand sweeps the ring, clearing reference bits,
+ * until it finds an expired or unreferenced entry to replace. So hits cost no list manipulation as LRU does, while
+ * frequently used entries still survive a sweep.
+ * </p>
+ *
+ * @author Sky Ao
+ */
+public class ResultCache {
+    private static final HashFunction HASH_FUNCTION = Hashing.murmur3_128();
+    private static final Comparator<TaskParameter> BY_NAME = new Comparator<TaskParameter>() {
+        @Override
+        public int compare(TaskParameter p1, TaskParameter p2) {
+            return p1.getName().compareTo(p2.getName());
+        }
+    };
+
+    private final Map<Integer, Long> ttls;
+    private final Map<HashCode, Integer> slots;
+    private final HashCode[] keys;
+    private final TaskResult[] results;
+    private final long[] expires;
+    private final boolean[] referenced;
+    private int size;
+    private int hand;
+
+    private ResultCache(Builder builder) {
+        this.ttls = new HashMap<>(builder.ttls);
+        this.slots = new HashMap<>(builder.capacity * 4 / 3 + 1);
+        this.keys = new HashCode[builder.capacity];
+        this.results = new TaskResult[builder.capacity];
+        this.expires = new long[builder.capacity];
+        this.referenced = new boolean[builder.capacity];
+    }
+
+    /**
+     * get stable key of a task content.
+     *
+     * @param content task content
+     * @return 128-bit hash of task type and parameters
+     */
+    public static HashCode keyOf(TaskContent content) {
+        TaskParameter[] parameters = content.getParameters().clone();
+        Arrays.sort(parameters, BY_NAME);
+
+        Hasher hasher = HASH_FUNCTION.newHasher();
+        hasher.putInt(content.getType());
+        for (TaskParameter parameter : parameters) {
+            hasher.putString(parameter.getName(), StandardCharsets.UTF_8);
+            Object value = parameter.getValue();
+            // class name separates values of different types with the same string form
+            hasher.putString(value.getClass().getName(), StandardCharsets.UTF_8);
+            if (value instanceof ByteBuffer) {
+                putBytes(hasher, (ByteBuffer) value);
+            } else {
+                hasher.putString(String.valueOf(value), StandardCharsets.UTF_8);
+            }
+        }
+        return hasher.hash();
+    }
+
+    private static void putBytes(Hasher hasher, ByteBuffer value) {
+        // read-only buffers hide their arrays, hash them by chunks
+        hasher.putInt(value.remaining());
+        byte[] chunk = new byte[Math.min(value.remaining(), 4096)];
+        while (value.hasRemaining()) {
+            int count = Math.min(chunk.length, value.remaining());
+            value.get(chunk, 0, count);
+            hasher.putBytes(chunk, 0, count);
+        }
+    }
+
+    /**
+     * check if caching is enabled for specified task type.
+     *
+     * @param type task type
+     * @return true if results of this type are cached
+     */
+    public boolean isEnabled(int type) {
+        return ttls.containsKey(type);
+    }
+
+    /**
+     * get cached result of a task content.
+     *
+     * @param content task content
+     * @return cached result, null if not cached or expired
+     */
+    public TaskResult get(TaskContent content) {
+        if (!isEnabled(content.getType())) {
+            return null;
+        }
+        HashCode key = keyOf(content);
+        synchronized (this) {
+            Integer slot = slots.get(key);
+            if (slot == null) {
+                return null;
+            }
+            if (expires[slot] <= System.currentTimeMillis()) {
+                evict(slot);
+                return null;
+            }
+            referenced[slot] = true;
+            return results[slot];
+        }
+    }
+
+    /**
+     * cache result of a task content, if caching is enabled for its type and the result is successful.
+     *
+     * @param content task content
+     * @param result  task result
+     */
+    public void put(TaskContent content, TaskResult result) {
+        Long ttl = ttls.get(content.getType());
+        if (ttl == null || result != TaskResult.SUCCESS) {
+            return;
+        }
+        HashCode key = keyOf(content);
+        long expire = System.currentTimeMillis() + ttl;
+        synchronized (this) {
+            Integer slot = slots.get(key);
+            if (slot == null) {
+                slot = size < keys.length ? size++ : sweep();
+                keys[slot] = key;
+                slots.put(key, slot);
+            }
+            results[slot] = result;
+            expires[slot] = expire;
+            referenced[slot] = false;
+        }
+    }
+
+    /**
+     * get count of cached results, including expired ones not evicted yet.
+     *
+     * @return count of cached results
+     */
+    public synchronized int size() {
+        return slots.size();
+    }
+
+    private int sweep() {
+        long now = System.currentTimeMillis();
+        while (true) {
+            int slot = hand;
+            hand = (hand + 1) % keys.length;
+            if (keys[slot] == null || expires[slot] <= now || !referenced[slot]) {
+                evict(slot);
+                return slot;
+            }
+            referenced[slot] = false;
+        }
+    }
+
+    private void evict(int slot) {
+        if (keys[slot] != null) {
+            slots.remove(keys[slot]);
+            keys[slot] = null;
+            results[slot] = null;
+        }
+    }
+
+    /**
+     * create a new Builder.
+     *
+     * @return new instance of Builder
+     */
+    public static Builder newBuilder() {
+        return new Builder();
+    }
+
+    /**
+     * Builder helps to build result cache easily.
+     */
+    public static class Builder {
+        private final Map<Integer, Long> ttls = new HashMap<>();
+        private int capacity = 10000;
+
+        /**
+         * build result cache.
+         *
+         * @return result cache
+         */
+        public ResultCache build() {
+            return new ResultCache(this);
+        }
+
+        /**
+         * set max count of cached results.
+         *
+         * @param capacity max count of cached results
+         * @return this builder itself to chain
+         * @throws IllegalArgumentException if capacity is not greater than zero
+         */
+        public Builder capacity(int capacity) {
+            checkArgument(capacity > 0, "capacity should greater than zero: capacity=" + capacity);
+            this.capacity = capacity;
+            return this;
+        }
+
+        /**
+         * enable caching for specified task type.
+         *
+         * @param type task type
+         * @param ttl  time to live of cached results
+         * @param unit time unit of ttl
+         * @return this builder itself to chain
+         * @throws NullPointerException     if unit is null
+         * @throws IllegalArgumentException if ttl is not greater than zero
+         */
+        public Builder cache(int type, long ttl, TimeUnit unit) {
+            checkNotNull(unit, "time unit should not be null");
+            checkArgument(ttl > 0, "ttl should greater than zero: ttl=" + ttl);
+            ttls.put(type, unit.toMillis(ttl));
+            return this;
+        }
+    }
+}
@@ -0,0 +1,437 @@
+package com.github.skyao.taskengine.engine;
+
+import com.github.skyao.taskengine.task.Task;
+import com.github.skyao.taskengine.task.TaskContent;
+import com.github.skyao.taskengine.task.TaskPlan;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * lock-free submit front-end of a task engine for many producer threads, built on a preallocated ring buffer.
+ * <pre>
+ * The life of a published task:
+ * (1) the producer claims the next sequence by CAS on the cursor, waiting while the ring is full
+ * (2) the producer writes content, plan and tenant into the slot of its sequence, then marks the slot available
+ *     with the lap of the sequence, so no lock is taken and no object is allocated by producers
+ * (3) the single consumer thread takes all the contiguous available slots, up to batch size, and frees them
+ * (4) the batch is submitted to the engine by {@link TaskEngine#submitAll(List)}: one store write, one lock of the
+ *     pending queue for the tasks due now, and one tick of the schedule wheel for each later start time
+ * </pre>
+ * <p>
+ * Published tasks are not traced by runtime tasks, use a completion dispatcher or the pending task index to follow
+ * them. A task rejected by the engine, e.g. whose type has no executable, is logged and counted as failed.
+ * </p>
+ * <p>
+ * A producer may pass the closed check just before the ring is closed. If the consumer thread has stopped when such
+ * a producer finishes writing, the producer submits the remaining tasks itself, so no accepted task is lost.
+ * </p>
+ *
+ * @author Sky Ao
+ */
+public class SubmitRing {
+    private static final Logger LOGGER = LoggerFactory.getLogger(SubmitRing.class);
+
+    private final TaskEngine engine;
+    private final Slot[] slots;
+    private final int mask;
+    private final int shift;
+    private final AtomicIntegerArray available;
+    private final int batchSize;
+    private final WaitStrategy waitStrategy;
+    private final Sequence cursor = new Sequence(-1);
+    private final Sequence consumed = new Sequence(-1);
+    private final AtomicLong failed = new AtomicLong();
+    private final Thread consumer;
+
+    private volatile boolean waiting;
+    private volatile boolean closed;
+    private volatile boolean stopped;
+
+    /**
+     * strategy of the consumer thread to wait for published tasks.
+     */
+    public enum WaitStrategy {
+        /**
+         * spin on the cursor, lowest latency, burns a core all the time.
+         */
+        BUSY_SPIN,
+
+        /**
+         * yield the core between checks, low latency while other threads may run.
+         */
+        YIELD,
+
+        /**
+         * park until a producer publishes, which costs producers one unpark when the consumer is idle.
+         */
+        PARK
+    }
+
+    private SubmitRing(Builder builder) {
+        this.engine = builder.engine;
+        int capacity = Integer.highestOneBit(builder.bufferSize);
+        if (capacity < builder.bufferSize) {
+            capacity <<= 1;
+        }
+        this.slots = new Slot[capacity];
+        for (int i = 0; i < capacity; i++) {
+            slots[i] = new Slot();
+        }
+        this.mask = capacity - 1;
+        this.shift = Integer.numberOfTrailingZeros(capacity);
+        this.available = new AtomicIntegerArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            available.set(i, -1);
+        }
+        this.batchSize = builder.batchSize;
+        this.waitStrategy = builder.waitStrategy;
+        this.consumer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                consume();
+            }
+        }, "task-engine-submit-ring");
+        this.consumer.setDaemon(true);
+    }
+
+    /**
+     * start consumer thread.
+     *
+     * @throws IllegalThreadStateException if ring is started already
+     */
+    public void start() {
+        consumer.start();
+    }
+
+    /**
+     * publish a task, wait while the ring is full.
+     *
+     * @param content task content
+     * @param plan    task plan
+     * @throws NullPointerException  if content or plan is null
+     * @throws IllegalStateException if ring is closed
+     */
+    public void publish(TaskContent content, TaskPlan plan) {
+        publish(content, plan, null);
+    }
+
+    /**
+     * publish a task of a tenant, wait while the ring is full.
+     *
+     * @param content task content
+     * @param plan    task plan
+     * @param tenant  tenant key, null for the default tenant
+     * @throws NullPointerException  if content or plan is null
+     * @throws IllegalStateException if ring is closed
+     */
+    public void publish(TaskContent content, TaskPlan plan, String tenant) {
+        checkNotNull(content, "task content should not be null");
+        checkNotNull(plan, "task plan should not be null");
+
+        long sequence;
+        while ((sequence = claim()) < 0) {
+            LockSupport.parkNanos(1);
+        }
+        write(sequence, content, plan, tenant);
+        if (stopped) {
+            drain();
+        }
+    }
+
+    /**
+     * publish a task if the ring is not full.
+     *
+     * @param content task content
+     * @param plan    task plan
+     * @return false if the ring is full
+     * @throws NullPointerException  if content or plan is null
+     * @throws IllegalStateException if ring is closed
+     */
+    public boolean tryPublish(TaskContent content, TaskPlan plan) {
+        checkNotNull(content, "task content should not be null");
+        checkNotNull(plan, "task plan should not be null");
+
+        long sequence = claim();
+        if (sequence < 0) {
+            return false;
+        }
+        write(sequence, content, plan, null);
+        if (stopped) {
+            drain();
+        }
+        return true;
+    }
+
+    /**
+     * stop accepting tasks, submit the published ones and stop consumer thread.
+     *
+     * @throws InterruptedException if interrupted while waiting for consumer thread
+     */
+    public void close() throws InterruptedException {
+        closed = true;
+        LockSupport.unpark(consumer);
+        consumer.join();
+    }
+
+    /**
+     * get count of tasks published and not submitted yet.
+     *
+     * @return count of tasks in the ring
+     */
+    public int size() {
+        return (int) (cursor.get() - consumed.get());
+    }
+
+    /**
+     * get count of tasks rejected by the engine.
+     *
+     * @return count of failed tasks
+     */
+    public long getFailedCount() {
+        return failed.get();
+    }
+
+    /**
+     * claim next sequence.
+     *
+     * @return claimed sequence, -1 if ring is full
+     */
+    private long claim() {
+        checkState(!closed, "submit ring is closed");
+        long current;
+        long next;
+        do {
+            current = cursor.get();
+            next = current + 1;
+            if (next - slots.length > consumed.get()) {
+                return -1;
+            }
+        } while (!cursor.compareAndSet(current, next));
+        return next;
+    }
+
+    private void write(long sequence, TaskContent content, TaskPlan plan, String tenant) {
+        int index = (int) (sequence & mask);
+        Slot slot = slots[index];
+        slot.content = content;
+        slot.plan = plan;
+        slot.tenant = tenant;
+        // the volatile write publishes the slot fields before the flag, and it is not reordered with the reads of
+        // waiting and stopped after it, which the consumer writes before it checks the slots again
+        available.set(index, (int) (sequence >>> shift));
+        if (waiting) {
+            LockSupport.unpark(consumer);
+        }
+    }
+
+    private boolean isAvailable(long sequence) {
+        return available.get((int) (sequence & mask)) == (int) (sequence >>> shift);
+    }
+
+    private void consume() {
+        List<Task> batch = new ArrayList<>(batchSize);
+        while (true) {
+            long next = consumed.get() + 1;
+            if (consumeBatch(batch) > 0) {
+                continue;
+            }
+            if (closed && cursor.get() < next) {
+                // a producer may claim after the check, it drains by itself if it sees the flag, otherwise its
+                // task is written before the flag is set and drained here
+                stopped = true;
+                drain();
+                return;
+            }
+            await();
+        }
+    }
+
+    /**
+     * submit the tasks left in the ring after the consumer thread stops.
+     */
+    private synchronized void drain() {
+        List<Task> batch = new ArrayList<>(batchSize);
+        while (consumeBatch(batch) > 0) {
+            // until no contiguous available slot is left
+        }
+    }
+
+    /**
+     * take contiguous available slots, up to batch size, and submit them.
+     *
+     * @return count of submitted tasks
+     */
+    private int consumeBatch(List<Task> batch) {
+        long next = consumed.get() + 1;
+        long end = next - 1;
+        long limit = Math.min(cursor.get(), next + batchSize - 1);
+        while (end < limit && isAvailable(end + 1)) {
+            end++;
+        }
+        if (end < next) {
+            return 0;
+        }
+
+        for (long sequence = next; sequence <= end; sequence++) {
+            Slot slot = slots[(int) (sequence & mask)];
+            batch.add(new Task(slot.content, slot.plan, slot.tenant));
+            slot.content = null;
+            slot.plan = null;
+            slot.tenant = null;
+        }
+        // slots are copied, free them before submitting
+        consumed.lazySet(end);
+        submit(batch);
+        int count = batch.size();
+        batch.clear();
+        return count;
+    }
+
+    private void submit(List<Task> batch) {
+        try {
+            engine.submitAll(batch);
+        } catch (IllegalArgumentException e) {
+            // one bad task fails the whole batch, submit them one by one so that only bad ones are dropped
+            for (Task task : batch) {
+                try {
+                    engine.submitAll(Collections.singletonList(task));
+                } catch (RuntimeException single) {
+                    failed.incrementAndGet();
+                    LOGGER.error("fail to submit task from submit ring: " + task, single);
+                }
+            }
+        } catch (RuntimeException e) {
+            failed.addAndGet(batch.size());
+            LOGGER.error("fail to submit " + batch.size() + " tasks from submit ring", e);
+        }
+    }
+
+    private void await() {
+        switch (waitStrategy) {
+            case BUSY_SPIN:
+                break;
+            case YIELD:
+                Thread.yield();
+                break;
+            default:
+                waiting = true;
+                // check again after the flag is set, a producer may have published before seeing it, otherwise it
+                // sees the flag and unparks this thread. Parking is still bounded in case the ring is closed
+                if (!isAvailable(consumed.get() + 1) && !closed) {
+                    LockSupport.parkNanos(1000000L);
+                }
+                waiting = false;
+                break;
+        }
+    }
+
+    /**
+     * slot of the ring, reused for every lap.
+     */
+    private static final class Slot {
+        private TaskContent content;
+        private TaskPlan plan;
+        private String tenant;
+    }
+
+    /**
+     * sequence padded on both sides, so the cursor written by producers and the sequence written by the consumer do
+     * not share a cache line with each other or with other fields.
+     */
+    @SuppressWarnings("unused")
+    private static final class Sequence extends AtomicLong {
+        private static final long serialVersionUID = 1L;
+
+        private long p1, p2, p3, p4, p5, p6, p7;
+
+        private Sequence(long initial) {
+            super(initial);
+        }
+    }
+
+    /**
+     * create a new Builder.
+     *
+     * @param engine task engine to submit tasks to
+     * @return new instance of Builder
+     * @throws NullPointerException if engine is null
+     */
+    public static Builder newBuilder(TaskEngine engine) {
+        return new Builder(engine);
+    }
+
+    /**
+     * Builder helps to build submit ring easily.
+     */
+    public static class Builder {
+        private final TaskEngine engine;
+        private int bufferSize = 65536;
+        private int batchSize = 1024;
+        private WaitStrategy waitStrategy = WaitStrategy.PARK;
+
+        private Builder(TaskEngine engine) {
+            checkNotNull(engine, "task engine should not be null");
+            this.engine = engine;
+        }
+
+        /**
+         * build submit ring, which should be started before publishing.
+         *
+         * @return submit ring
+         */
+        public SubmitRing build() {
+            return new SubmitRing(this);
+        }
+
+        /**
+         * set count of slots.
+         *
+         * @param bufferSize count of slots, which is rounded up to power of 2
+         * @return this builder itself to chain
+         * @throws IllegalArgumentException if bufferSize is not in [2, 2^30]
+         */
+        public Builder bufferSize(int bufferSize) {
+            checkArgument(bufferSize > 1 && bufferSize <= (1 << 30), "buffer size should in [2,2^30]: bufferSize="
+                    + bufferSize);
+            this.bufferSize = bufferSize;
+            return this;
+        }
+
+        /**
+         * set max count of tasks submitted to the engine in one batch.
+         *
+         * @param batchSize batch size
+         * @return this builder itself to chain
+         * @throws IllegalArgumentException if batchSize is not greater than zero
+         */
+        public Builder batchSize(int batchSize) {
+            checkArgument(batchSize > 0, "batch size should greater than zero: batchSize=" + batchSize);
+            this.batchSize = batchSize;
+            return this;
+        }
+
+        /**
+         * set wait strategy of the consumer thread.
+         *
+         * @param waitStrategy wait strategy
+         * @return this builder itself to chain
+         * @throws NullPointerException if waitStrategy is null
+         */
+        public Builder waitStrategy(WaitStrategy waitStrategy) {
+            checkNotNull(waitStrategy, "wait strategy should not be null");
+            this.waitStrategy = waitStrategy;
+            return this;
+        }
+    }
+}
@@ -0,0 +1,1407 @@
+package com.github.skyao.taskengine.engine;
+
+import com.github.skyao.taskengine.bulkhead.Bulkhead;
+import com.github.skyao.taskengine.bulkhead.Bulkheads;
+import com.github.skyao.taskengine.cache.ResultCache;
+import com.github.skyao.taskengine.event.TaskEventRecorder;
+import com.github.skyao.taskengine.event.TaskEventType;
+import com.github.skyao.taskengine.hedge.HedgePolicy;
+import com.github.skyao.taskengine.index.PendingTaskIndex;
+import com.github.skyao.taskengine.limit.AdaptiveConcurrencyLimiter;
+import com.github.skyao.taskengine.listener.CompletionDispatcher;
+import com.github.skyao.taskengine.listener.CompletionRecord;
+import com.github.skyao.taskengine.overload.OverloadController;
+import com.github.skyao.taskengine.queue.AgingPolicy;
+import com.github.skyao.taskengine.queue.OffHeapDelayedTaskQueue;
+import com.github.skyao.taskengine.queue.OrderedLanes;
+import com.github.skyao.taskengine.queue.PriorityTaskQueue;
+import com.github.skyao.taskengine.queue.TaskSpiller;
+import com.github.skyao.taskengine.store.TaskStore;
+import com.github.skyao.taskengine.task.CheckpointListener;
+import com.github.skyao.taskengine.task.RepeatPolicy;
+import com.github.skyao.taskengine.task.RuntimeTask;
+import com.github.skyao.taskengine.task.Task;
+import com.github.skyao.taskengine.task.TaskContent;
+import com.github.skyao.taskengine.task.TaskContext;
+import com.github.skyao.taskengine.task.TaskExecutable;
+import com.github.skyao.taskengine.task.TaskPlan;
+import com.github.skyao.taskengine.task.TaskPriority;
+import com.github.skyao.taskengine.task.TaskResult;
+import com.github.skyao.taskengine.task.TaskStatus;
+import com.github.skyao.taskengine.timer.TimeoutWheel;
+import com.github.skyao.taskengine.timer.TimerWheel;
+import com.google.common.base.Predicate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * task engine which executes submitted tasks by their task plans.
+ * <pre>
+ * The life of a submitted task:
+ * (1) the task waits until the start time of its plan, then it is admitted into the pending queue
+ * (2) worker threads take tasks from pending queue by priority and execute them by the executable of the task type
+ *     an execution running beyond the timeout or the deadline of its plan is interrupted by a shared timeout wheel
+ * (3) failed tasks are retried by retry plan, succeed tasks are executed again by schedule plan, fixed rate
+ *     schedules run at start + k * interval of their plan and wait on a shared timer wheel
+ * (4) otherwise the task is finished with the result of last execution
+ * If a task store is set, pending tasks are saved in it and loaded again when the engine is started.
+ * A retried task resumes from the checkpoints of its context, which are saved in the task store if it is set.
+ * If bulkheads are set, tasks of the types in a bulkhead wait in its own queue and run on its own workers, other
+ * tasks run on the workers of the engine.
+ * If a task spiller is set, cold tasks of the pending queue are spilled to disk when it grows beyond watermarks.
+ * If ordered lanes are set, tasks with the same ordering key run one by one in the order they become due.
+ * If a hedge policy is set, slow executions of hedged types get a second copy on hedge threads, the first success wins.
+ * </pre>
+ *
+ * @author Sky Ao
+ */
+public class TaskEngine {
+    private static final Logger LOGGER = LoggerFactory.getLogger(TaskEngine.class);
+    private static final long SCHEDULE_TICK = 10;
+    private static final long TIMEOUT_TICK = 10;
+    private static final Predicate<RuntimeTask> FINISHED = new Predicate<RuntimeTask>() {
+        @Override
+        public boolean apply(RuntimeTask task) {
+            return task.isFinished();
+        }
+    };
+
+    private final ConcurrentMap<Integer, TaskExecutable> executables = new ConcurrentHashMap<>();
+    private final PriorityTaskQueue queue = new PriorityTaskQueue();
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor();
+    private final AtomicLong idSequence = new AtomicLong();
+    private final OverloadController overloadController;
+    private final AgingPolicy agingPolicy;
+    private final TaskStore store;
+    private final OffHeapDelayedTaskQueue delayedQueue;
+    private final long offHeapMinDelay;
+    private final PendingTaskIndex index;
+    private final AdaptiveConcurrencyLimiter concurrencyLimiter;
+    private final CompletionDispatcher completionDispatcher;
+    private final TaskEventRecorder eventRecorder;
+    private final Bulkheads bulkheads;
+    private final ResultCache resultCache;
+    private final TaskSpiller spiller;
+    private final HedgePolicy hedgePolicy;
+    private final OrderedLanes lanes;
+    private final CheckpointListener checkpointListener = new CheckpointListener() {
+        @Override
+        public void onCheckpoint(RuntimeTask task, String key, Object value) {
+            task.getTask().checkpoint(key, value);
+            if (store != null) {
+                store.checkpoint(task.getId(), key, value);
+            }
+        }
+    };
+    private final ExecutorService hedgeExecutor;
+    private final List<PriorityTaskQueue> queues = new ArrayList<>();
+    private final TimerWheel<RuntimeTask> scheduleWheel;
+    private final TimeoutWheel timeoutWheel = new TimeoutWheel("task-engine-timeout", TIMEOUT_TICK, 512);
+    private final ThreadLocal<ExecutionTimeout> timeouts = new ThreadLocal<ExecutionTimeout>() {
+        @Override
+        protected ExecutionTimeout initialValue() {
+            return new ExecutionTimeout(Thread.currentThread());
+        }
+    };
+    private final Thread[] workers;
+
+    private volatile boolean running;
+    private volatile boolean shutdown;
+
+    private TaskEngine(Builder builder) {
+        this.overloadController = builder.overloadController;
+        this.agingPolicy = builder.agingPolicy;
+        this.store = builder.store;
+        this.delayedQueue = builder.delayedQueue;
+        this.offHeapMinDelay = builder.offHeapMinDelay;
+        this.index = builder.index;
+        this.concurrencyLimiter = builder.concurrencyLimiter;
+        this.completionDispatcher = builder.completionDispatcher;
+        this.eventRecorder = builder.eventRecorder;
+        this.bulkheads = builder.bulkheads;
+        this.resultCache = builder.resultCache;
+        this.spiller = builder.spiller;
+        this.hedgePolicy = builder.hedgePolicy;
+        this.lanes = builder.lanes;
+        this.hedgeExecutor = hedgePolicy == null ? null : Executors.newCachedThreadPool(new ThreadFactory() {
+            private final AtomicLong sequence = new AtomicLong();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "task-engine-hedge-" + sequence.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        queues.add(queue);
+        if (bulkheads != null) {
+            for (Bulkhead bulkhead : bulkheads.getBulkheads()) {
+                queues.add(bulkhead.getQueue());
+            }
+        }
+        this.scheduleWheel = new TimerWheel<>("task-engine-schedule", SCHEDULE_TICK, 1024,
+                new TimerWheel.Handler<RuntimeTask>() {
+                    @Override
+                    public void fire(List<RuntimeTask> tasks) {
+                        enqueueAll(tasks);
+                    }
+                });
+        this.workers = new Thread[builder.workers];
+        for (int i = 0; i < workers.length; i++) {
+            workers[i] = new Thread(new Worker(), "task-engine-worker-" + i);
+            workers[i].setDaemon(true);
+        }
+    }
+
+    /**
+     * register executable for specified task type.
+     *
+     * @param type       task type
+     * @param executable executable of this task type
+     * @throws NullPointerException if executable is null
+     */
+    public void register(int type, TaskExecutable executable) {
+        checkNotNull(executable, "task executable should not be null");
+
+        executables.put(type, executable);
+    }
+
+    /**
+     * start worker threads of this engine.
+     * <p>
+     * If a task store is set, pending tasks in it are loaded in background and executed as soon as they are loaded.
+     * </p>
+     *
+     * @throws IllegalStateException if engine is started or shutdown already
+     */
+    public synchronized void start() {
+        checkState(!running && !shutdown, "task engine can not be started again");
+
+        running = true;
+        if (completionDispatcher != null) {
+            completionDispatcher.start();
+        }
+        scheduleWheel.start();
+        timeoutWheel.start();
+        for (Thread worker : workers) {
+            worker.start();
+        }
+        if (bulkheads != null) {
+            bulkheads.start(new Bulkheads.Runner() {
+                @Override
+                public void run(RuntimeTask task) {
+                    process(task);
+                }
+            });
+            timer.scheduleAtFixedRate(new Runnable() {
+                @Override
+                public void run() {
+                    bulkheads.resize();
+                }
+            }, bulkheads.getResizeInterval(), bulkheads.getResizeInterval(), TimeUnit.MILLISECONDS);
+            timer.scheduleAtFixedRate(new Runnable() {
+                @Override
+                public void run() {
+                    bulkheads.replaceLongLoans();
+                }
+            }, bulkheads.getLoanTimeout(), bulkheads.getLoanTimeout(), TimeUnit.MILLISECONDS);
+        }
+        if (agingPolicy != null) {
+            timer.scheduleAtFixedRate(new Runnable() {
+                @Override
+                public void run() {
+                    for (PriorityTaskQueue queue : queues) {
+                        queue.age(agingPolicy.getStep(), agingPolicy.getCap());
+                    }
+                }
+            }, agingPolicy.getInterval(), agingPolicy.getInterval(), TimeUnit.MILLISECONDS);
+        }
+        if (store != null) {
+            Thread loader = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    store.load(new TaskStore.Loader() {
+                        @Override
+                        public void load(long id, Task task) {
+                            scheduleDeferred(id, task);
+                        }
+                    });
+                }
+            }, "task-engine-loader");
+            loader.setDaemon(true);
+            loader.start();
+        }
+        if (spiller != null) {
+            timer.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        spiller.balance(queue);
+                    } catch (RuntimeException e) {
+                        LOGGER.error("fail to balance spilled tasks", e);
+                    }
+                }
+            }, spiller.getInterval(), spiller.getInterval(), TimeUnit.MILLISECONDS);
+        }
+        if (delayedQueue != null) {
+            timer.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    drainDelayedQueue();
+                }
+            }, 10, 10, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * shutdown this engine, tasks not executed yet will be dropped.
+     */
+    public synchronized void shutdown() {
+        shutdown = true;
+        running = false;
+        timer.shutdownNow();
+        scheduleWheel.shutdown();
+        timeoutWheel.shutdown();
+        for (Thread worker : workers) {
+            worker.interrupt();
+        }
+        if (bulkheads != null) {
+            bulkheads.shutdown();
+        }
+        if (completionDispatcher != null) {
+            completionDispatcher.shutdown();
+        }
+        if (spiller != null) {
+            spiller.close();
+        }
+        if (hedgeExecutor != null) {
+            hedgeExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * submit a task.
+     * <p>
+     * The task may be rejected at once if engine is overloaded, check result of the returned runtime task. If the
+     * task is due now without retry or schedule plan, and the result of the same content is cached, the returned
+     * runtime task is finished with it at once.
+     * </p>
+     *
+     * @param task task to submit
+     * @return runtime task to trace status and result of this task
+     * @throws NullPointerException     if task is null
+     * @throws IllegalArgumentException if no executable is registered for the task type
+     * @throws IllegalStateException    if engine is shutdown
+     */
+    public RuntimeTask submit(Task task) {
+        checkNotNull(task, "task should not be null");
+        checkState(!shutdown, "task engine is shutdown");
+        int type = task.getContent().getType();
+        checkArgument(executables.containsKey(type), "no executable registered for task type=" + type);
+        TaskResult cached = cachedResultOf(task);
+        if (cached != null) {
+            RuntimeTask runtimeTask = new RuntimeTask(nextId(), task, new TaskContext());
+            done(runtimeTask, cached);
+            return runtimeTask;
+        }
+
+        long id = store != null ? store.add(task) : idSequence.incrementAndGet();
+        RuntimeTask runtimeTask = new RuntimeTask(id, task, new TaskContext());
+        track(runtimeTask);
+        emit(TaskEventType.SUBMIT, runtimeTask, TaskStatus.INITIAL, 0);
+        schedule(runtimeTask, task.getPlan().getStart() - System.currentTimeMillis());
+        return runtimeTask;
+    }
+
+    /**
+     * submit a batch of tasks which share one plan template.
+     * <p>
+     * All the task contents are validated before any task is accepted. Each task gets its own copy of the template,
+     * then the batch is saved to task store in one write and put into the pending queue under one lock, or waits for
+     * the start time of the plan on one timer. One-shot tasks due now whose results are cached are finished at once.
+     * </p>
+     *
+     * @param contents contents of tasks to submit
+     * @param plan     plan template of these tasks
+     * @return runtime tasks to trace status and result of these tasks, in the same order as contents
+     * @throws NullPointerException     if contents, any content or plan is null
+     * @throws IllegalArgumentException if no executable is registered for any task type
+     * @throws IllegalStateException    if engine is shutdown
+     */
+    public List<RuntimeTask> submitAll(List<TaskContent> contents, TaskPlan plan) {
+        return submitAll(contents, plan, null);
+    }
+
+    /**
+     * submit a batch of tasks of a tenant which share one plan template.
+     *
+     * @param contents contents of tasks to submit
+     * @param plan     plan template of these tasks
+     * @param tenant   tenant key, null for the default tenant
+     * @return runtime tasks to trace status and result of these tasks, in the same order as contents
+     * @throws NullPointerException     if contents, any content or plan is null
+     * @throws IllegalArgumentException if no executable is registered for any task type
+     * @throws IllegalStateException    if engine is shutdown
+     * @see #submitAll(List, TaskPlan)
+     */
+    public List<RuntimeTask> submitAll(List<TaskContent> contents, TaskPlan plan, String tenant) {
+        checkNotNull(contents, "task contents should not be null");
+        checkNotNull(plan, "task plan should not be null");
+        checkState(!shutdown, "task engine is shutdown");
+        List<Task> tasks = new ArrayList<>(contents.size());
+        for (TaskContent content : contents) {
+            checkNotNull(content, "task content should not be null");
+            checkArgument(executables.containsKey(content.getType()), "no executable registered for task type="
+                    + content.getType());
+            tasks.add(new Task(content, plan.copy(), tenant));
+        }
+
+        List<RuntimeTask> runtimeTasks = new ArrayList<>(tasks.size());
+        final List<RuntimeTask> pending = new ArrayList<>(tasks.size());
+        accept(tasks, runtimeTasks, pending);
+
+        long delay = plan.getStart() - System.currentTimeMillis();
+        if (delay <= 0) {
+            enqueueAll(pending);
+        } else {
+            for (RuntimeTask task : pending) {
+                setStatus(task, TaskStatus.WAITING);
+                emit(TaskEventType.SCHEDULE, task, TaskStatus.INITIAL, TimeUnit.MILLISECONDS.toNanos(delay));
+            }
+            timer.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    enqueueAll(pending);
+                }
+            }, delay, TimeUnit.MILLISECONDS);
+        }
+        return runtimeTasks;
+    }
+
+    /**
+     * submit a batch of tasks with their own plans.
+     * <p>
+     * All the tasks are validated before any task is accepted. The batch is saved to task store in one write, then
+     * the tasks due now are put into the pending queue under one lock, and the others wait on the schedule wheel,
+     * which enqueues all the tasks due in the same tick as one batch. One-shot tasks due now whose results are cached
+     * are finished at once.
+     * </p>
+     *
+     * @param tasks tasks to submit
+     * @return runtime tasks to trace status and result of these tasks, in the same order as tasks
+     * @throws NullPointerException     if tasks or any task is null
+     * @throws IllegalArgumentException if no executable is registered for any task type
+     * @throws IllegalStateException    if engine is shutdown
+     */
+    public List<RuntimeTask> submitAll(List<Task> tasks) {
+        checkNotNull(tasks, "tasks should not be null");
+        checkState(!shutdown, "task engine is shutdown");
+        for (Task task : tasks) {
+            checkNotNull(task, "task should not be null");
+            int type = task.getContent().getType();
+            checkArgument(executables.containsKey(type), "no executable registered for task type=" + type);
+        }
+
+        List<RuntimeTask> runtimeTasks = new ArrayList<>(tasks.size());
+        List<RuntimeTask> pending = new ArrayList<>(tasks.size());
+        accept(tasks, runtimeTasks, pending);
+        long now = System.currentTimeMillis();
+        List<RuntimeTask> due = new ArrayList<>(pending.size());
+        for (RuntimeTask task : pending) {
+            long start = task.getTask().getPlan().getStart();
+            if (start <= now) {
+                due.add(task);
+                continue;
+            }
+            setStatus(task, TaskStatus.WAITING);
+            emit(TaskEventType.SCHEDULE, task, TaskStatus.INITIAL, TimeUnit.MILLISECONDS.toNanos(start - now));
+            scheduleWheel.schedule(task, start);
+        }
+        enqueueAll(due);
+        return runtimeTasks;
+    }
+
+    /**
+     * submit a task without keeping a runtime task to trace it.
+     * <p>
+     * If an off-heap delayed queue is set and the task starts later enough, the task is kept off heap in serialized
+     * form until it is due. This is the preferred way to submit a large amount of future tasks.
+     * </p>
+     *
+     * @param task task to submit
+     * @return task id
+     * @throws NullPointerException     if task is null
+     * @throws IllegalArgumentException if no executable is registered for the task type
+     * @throws IllegalStateException    if engine is shutdown
+     */
+    public long submitDeferred(Task task) {
+        checkNotNull(task, "task should not be null");
+        checkState(!shutdown, "task engine is shutdown");
+        int type = task.getContent().getType();
+        checkArgument(executables.containsKey(type), "no executable registered for task type=" + type);
+
+        long id = store != null ? store.add(task) : idSequence.incrementAndGet();
+        scheduleDeferred(id, task);
+        return id;
+    }
+
+    /**
+     * cancel all the waiting tasks of specified type.
+     * <p>
+     * Running tasks are not affected, and neither are tasks kept in the off-heap delayed queue.
+     * </p>
+     *
+     * @param type task type
+     * @return count of canceled tasks
+     * @throws IllegalStateException if pending task index is not enabled
+     */
+    public int cancel(int type) {
+        checkState(index != null, "pending task index is not enabled");
+
+        int count = 0;
+        for (RuntimeTask task : index.tasks(type)) {
+            synchronized (task) {
+                if (task.getStatus() == TaskStatus.WAITING) {
+                    finish(task, TaskResult.CANCELED);
+                    count++;
+                }
+            }
+        }
+        if (count > 0) {
+            for (PriorityTaskQueue queue : queues) {
+                queue.removeIf(FINISHED);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * change priority of all the waiting tasks of specified type.
+     * <p>
+     * Running tasks are not affected, and neither are tasks kept in the off-heap delayed queue. Changed tasks are
+     * saved in the task store if it is set, and spilled ones are moved to the spill levels of their new priorities.
+     * </p>
+     *
+     * @param type     task type
+     * @param priority new task priority
+     * @return count of changed tasks
+     * @throws IllegalArgumentException if priority is invalid
+     * @throws IllegalStateException    if pending task index is not enabled
+     */
+    public int reprioritize(int type, int priority) {
+        checkArgument(TaskPriority.isValidPriority(priority), "invalid task priority=" + priority);
+        checkState(index != null, "pending task index is not enabled");
+
+        final Set<RuntimeTask> changed = Collections.newSetFromMap(new IdentityHashMap<RuntimeTask, Boolean>());
+        for (RuntimeTask task : index.tasks(type)) {
+            synchronized (task) {
+                if (task.getStatus() == TaskStatus.WAITING) {
+                    task.getTask().getPlan().setPriority(priority);
+                    index.update(task);
+                    changed.add(task);
+                }
+            }
+        }
+        if (!changed.isEmpty()) {
+            if (spiller != null) {
+                spiller.requeue(changed, store);
+            } else if (store != null) {
+                for (RuntimeTask task : changed) {
+                    store.update(task.getId(), task.getTask());
+                }
+            }
+            Predicate<RuntimeTask> filter = new Predicate<RuntimeTask>() {
+                @Override
+                public boolean apply(RuntimeTask task) {
+                    return changed.contains(task);
+                }
+            };
+            for (PriorityTaskQueue queue : queues) {
+                queue.requeue(filter);
+            }
+        }
+        return changed.size();
+    }
+
+    /**
+     * set weight of a tenant, which is its share among tenants with waiting tasks of the same priority.
+     *
+     * @param tenant tenant key
+     * @param weight tenant weight, default is 1
+     * @throws NullPointerException     if tenant is null
+     * @throws IllegalArgumentException if weight is not greater than zero
+     * @see PriorityTaskQueue#setWeight(String, int)
+     */
+    public void setTenantWeight(String tenant, int weight) {
+        for (PriorityTaskQueue queue : queues) {
+            queue.setWeight(tenant, weight);
+        }
+    }
+
+    /**
+     * get count of tasks in pending queues, including tasks spilled to disk, waiting in ordered lanes and parked by
+     * the concurrency limiter.
+     *
+     * @return count of pending tasks
+     */
+    public int getPendingCount() {
+        int count = spiller != null ? spiller.size() : 0;
+        if (lanes != null) {
+            count += lanes.size();
+        }
+        if (concurrencyLimiter != null) {
+            count += concurrencyLimiter.getParkedCount();
+        }
+        for (PriorityTaskQueue queue : queues) {
+            count += queue.size();
+        }
+        return count;
+    }
+
+    /**
+     * get current concurrency limits by task type.
+     *
+     * @return current limits by task type, empty if concurrency limiter is not set
+     */
+    public Map<Integer, Integer> getConcurrencyLimits() {
+        return concurrencyLimiter == null ? new HashMap<Integer, Integer>() : concurrencyLimiter.getLimits();
+    }
+
+    /**
+     * get index over pending tasks.
+     *
+     * @return pending task index, null if not enabled
+     */
+    public PendingTaskIndex getIndex() {
+        return index;
+    }
+
+    private void scheduleDeferred(long id, Task task) {
+        long delay = task.getPlan().getStart() - System.currentTimeMillis();
+        if (delayedQueue != null && delay >= offHeapMinDelay) {
+            delayedQueue.offer(id, task);
+        } else {
+            RuntimeTask runtimeTask = new RuntimeTask(id, task, new TaskContext());
+            track(runtimeTask);
+            schedule(runtimeTask, delay);
+        }
+    }
+
+    /**
+     * create runtime tasks for validated tasks, finish the ones whose results are cached, and save, index and emit
+     * the others, which are added to pending in order.
+     */
+    private void accept(List<Task> tasks, List<RuntimeTask> runtimeTasks, List<RuntimeTask> pending) {
+        TaskResult[] cached = new TaskResult[tasks.size()];
+        List<Task> misses = tasks;
+        if (resultCache != null) {
+            misses = new ArrayList<>(tasks.size());
+            for (int i = 0; i < tasks.size(); i++) {
+                cached[i] = cachedResultOf(tasks.get(i));
+                if (cached[i] == null) {
+                    misses.add(tasks.get(i));
+                }
+            }
+        }
+
+        long[] ids = store != null ? store.addAll(misses) : null;
+        for (int i = 0; i < tasks.size(); i++) {
+            if (cached[i] != null) {
+                RuntimeTask task = new RuntimeTask(nextId(), tasks.get(i), new TaskContext());
+                done(task, cached[i]);
+                runtimeTasks.add(task);
+                continue;
+            }
+            long id = ids != null ? ids[pending.size()] : idSequence.incrementAndGet();
+            RuntimeTask task = new RuntimeTask(id, tasks.get(i), new TaskContext());
+            runtimeTasks.add(task);
+            pending.add(task);
+        }
+        if (index != null) {
+            index.addAll(pending);
+        }
+        for (RuntimeTask task : pending) {
+            emit(TaskEventType.SUBMIT, task, TaskStatus.INITIAL, 0);
+        }
+    }
+
+    /**
+     * get cached result of a one-shot task which is due now, a task starting later or with retry or schedule plan
+     * always runs its plan.
+     */
+    private TaskResult cachedResultOf(Task task) {
+        if (resultCache == null) {
+            return null;
+        }
+        TaskPlan plan = task.getPlan();
+        if (plan.getStart() > System.currentTimeMillis() || isEnable(plan.getPolicy().getRetry())
+                || isEnable(plan.getPolicy().getSchedule())) {
+            return null;
+        }
+        return resultCache.get(task.getContent());
+    }
+
+    /**
+     * allocate id of a task which is not saved, from the same source as saved tasks.
+     */
+    private long nextId() {
+        return store != null ? store.nextId() : idSequence.incrementAndGet();
+    }
+
+    private void drainDelayedQueue() {
+        List<RuntimeTask> due = new ArrayList<>();
+        long now = System.currentTimeMillis();
+        while (delayedQueue.nextStart() <= now) {
+            due.clear();
+            delayedQueue.drainTo(now, due, 1024);
+            for (RuntimeTask task : due) {
+                track(task);
+                enqueue(task);
+            }
+        }
+    }
+
+    private void schedule(final RuntimeTask task, long delay) {
+        if (delay <= 0) {
+            enqueue(task);
+            return;
+        }
+
+        TaskStatus status = task.getStatus();
+        setStatus(task, TaskStatus.WAITING);
+        emit(TaskEventType.SCHEDULE, task, status, TimeUnit.MILLISECONDS.toNanos(delay));
+        timer.schedule(new Runnable() {
+            @Override
+            public void run() {
+                enqueue(task);
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private void enqueue(RuntimeTask task) {
+        if (task.isFinished()) {
+            return;
+        }
+        int priority = task.getTask().getPlan().getPriority();
+        if (overloadController != null && !overloadController.admit(priority, getPendingCount())) {
+            finish(task, TaskResult.REJECTED);
+            return;
+        }
+
+        setStatus(task, TaskStatus.WAITING);
+        if (lanes != null && !lanes.acquire(task)) {
+            // waits in its lane, it is enqueued again when the tasks before it release the lane
+            return;
+        }
+        queueOf(task).offer(task);
+    }
+
+    private void enqueueAll(List<RuntimeTask> tasks) {
+        Map<PriorityTaskQueue, List<RuntimeTask>> admitted = new IdentityHashMap<>();
+        int pending = getPendingCount();
+        for (RuntimeTask task : tasks) {
+            if (task.isFinished()) {
+                continue;
+            }
+            int priority = task.getTask().getPlan().getPriority();
+            if (overloadController != null && !overloadController.admit(priority, pending)) {
+                finish(task, TaskResult.REJECTED);
+                continue;
+            }
+            setStatus(task, TaskStatus.WAITING);
+            if (lanes != null && !lanes.acquire(task)) {
+                continue;
+            }
+            PriorityTaskQueue queue = queueOf(task);
+            List<RuntimeTask> batch = admitted.get(queue);
+            if (batch == null) {
+                batch = new ArrayList<>();
+                admitted.put(queue, batch);
+            }
+            batch.add(task);
+            pending++;
+        }
+        for (Map.Entry<PriorityTaskQueue, List<RuntimeTask>> entry : admitted.entrySet()) {
+            entry.getKey().offerAll(entry.getValue());
+        }
+    }
+
+    private void execute(RuntimeTask task) {
+        if (!begin(task)) {
+            return;
+        }
+
+        int type = task.getTask().getContent().getType();
+        long begin = task.getStartTime();
+        Hedge hedge = hedgeOf(task);
+        ExecutionTimeout timeout = arm(task);
+        TaskResult result = TaskResult.FAILURE;
+        try {
+            result = executables.get(type).apply(task);
+        } catch (RuntimeException e) {
+            LOGGER.error("fail to execute task: " + task, e);
+        } finally {
+            if (result == null) {
+                result = TaskResult.FAILURE;
+            }
+            if (timeout != null && !timeoutWheel.disarm(timeout)) {
+                // expired, clear the interrupt so that it does not leak into the next task of this thread
+                Thread.interrupted();
+                result = timeout.result;
+                LOGGER.warn("task execution is timeout: " + task);
+            }
+            task.setExecutionTime(System.nanoTime() - begin);
+            if (concurrencyLimiter != null) {
+                RuntimeTask parked = concurrencyLimiter.release(type, task.getExecutionTime(),
+                        result == TaskResult.FAILURE);
+                if (parked != null) {
+                    queueOf(parked).offer(parked);
+                }
+            }
+        }
+
+        if (hedgePolicy != null) {
+            hedgePolicy.record(type, task.getExecutionTime());
+        }
+        if (hedge != null && !hedge.settle()) {
+            // the hedge won and completed the task already
+            RuntimeTask loser = new RuntimeTask(task.getId(), task.getTask(), task.getContext());
+            loser.finish(TaskResult.CANCELED);
+            emit(TaskEventType.FINISH, loser, TaskStatus.RUNNING, task.getExecutionTime());
+            return;
+        }
+        complete(task, result);
+    }
+
+    /**
+     * arm the timeout of current thread for a task which just begins, by the earlier one of its execution timeout
+     * and its deadline.
+     */
+    private ExecutionTimeout arm(RuntimeTask task) {
+        TaskPlan plan = task.getTask().getPlan();
+        long timeout = plan.getTimeout();
+        long deadline = plan.getDeadline();
+        if (timeout == 0 && deadline == 0) {
+            return null;
+        }
+        ExecutionTimeout executionTimeout = timeouts.get();
+        long expire = timeout > 0 ? System.currentTimeMillis() + timeout : Long.MAX_VALUE;
+        if (deadline > 0 && deadline < expire) {
+            // deadline comes first, the task will not be retried then
+            executionTimeout.result = TaskResult.CANCELED;
+            expire = deadline;
+        } else {
+            executionTimeout.result = TaskResult.FAILURE;
+        }
+        timeoutWheel.arm(executionTimeout, expire);
+        return executionTimeout;
+    }
+
+    /**
+     * arm a hedge for a task which just begins, if its type is hedged and its hedge delay is known, and its
+     * executions are neither limited nor ordered.
+     */
+    private Hedge hedgeOf(RuntimeTask task) {
+        if (hedgePolicy == null || isEnable(task.getTask().getPlan().getPolicy().getSchedule())) {
+            // a scheduled task may be executed again as soon as it is completed, which would overlap the loser
+            return null;
+        }
+        int type = task.getTask().getContent().getType();
+        if (concurrencyLimiter != null || (bulkheads != null && bulkheads.bulkheadOf(type) != null)
+                || (lanes != null && lanes.keyOf(task.getTask()) != null)) {
+            // a copy would run beyond the limit or the bulkhead, and a winning copy would release the lane while
+            // the primary execution is still running
+            return null;
+        }
+        long delay = hedgePolicy.delayOf(type);
+        if (delay < 0) {
+            return null;
+        }
+        Hedge hedge = new Hedge(task);
+        hedge.timeout = timer.schedule(hedge, delay, TimeUnit.NANOSECONDS);
+        return hedge;
+    }
+
+    private boolean begin(RuntimeTask task) {
+        synchronized (task) {
+            if (task.isFinished()) {
+                return false;
+            }
+            TaskPlan plan = task.getTask().getPlan();
+            long queueWait = System.nanoTime() - task.getEnqueueTime();
+            if (overloadController != null && overloadController.shed(plan.getPriority(), queueWait, getPendingCount())) {
+                finish(task, TaskResult.REJECTED);
+                return false;
+            }
+            if (plan.getDeadline() > 0 && plan.getDeadline() < System.currentTimeMillis()) {
+                finish(task, TaskResult.CANCELED);
+                return false;
+            }
+            if (concurrencyLimiter != null
+                    && !concurrencyLimiter.tryAcquire(task.getTask().getContent().getType(), task)) {
+                // parked by limiter, it will be put back to pending queue when a slot of its type is released
+                return false;
+            }
+
+            task.setStartTime(System.nanoTime());
+            setStatus(task, TaskStatus.RUNNING);
+            emit(TaskEventType.START, task, TaskStatus.WAITING, queueWait);
+            prepareContext(task);
+            return true;
+        }
+    }
+
+    /**
+     * bind context to checkpoints, and reset it to the last checkpoint of the task, which is empty if the task has
+     * none, so properties of a previous execution never leak into this one.
+     */
+    private void prepareContext(RuntimeTask task) {
+        TaskContext context = task.getContext();
+        context.setCheckpointListener(task, checkpointListener);
+        context.restore(task.getTask().getCheckpoint());
+    }
+
+    private void complete(RuntimeTask task, TaskResult result) {
+        TaskPlan plan = task.getTask().getPlan();
+        RepeatPolicy retry = plan.getPolicy().getRetry();
+        if (result == TaskResult.FAILURE && isEnable(retry)) {
+            plan.setRetryExecuted(plan.getRetryExecuted() + 1);
+            if (retry.needRepeat(plan.getRetryExecuted(), plan.getDeadline())) {
+                reschedule(task, retry.getInterval());
+                return;
+            }
+        }
+        RepeatPolicy schedule = plan.getPolicy().getSchedule();
+        if ((result == TaskResult.SUCCESS || result == TaskResult.FAILURE) && isEnable(schedule)
+                && schedule.isFixedRate()) {
+            long now = System.currentTimeMillis();
+            int next = schedule.nextExecuteIndex(plan.getStart(), plan.getScheduleExecuted() + 1, now);
+            plan.setScheduleExecuted(next);
+            long nextTime = schedule.nextExecuteTime(plan.getStart(), next, now);
+            if (schedule.needRepeat(next, plan.getDeadline(), nextTime)) {
+                plan.setRetryExecuted(0);
+                task.getTask().clearCheckpoint();
+                release(task);
+                rescheduleAt(task, nextTime, now);
+                return;
+            }
+        } else if ((result == TaskResult.SUCCESS || result == TaskResult.FAILURE) && isEnable(schedule)) {
+            plan.setScheduleExecuted(plan.getScheduleExecuted() + 1);
+            if (schedule.needRepeat(plan.getScheduleExecuted(), plan.getDeadline())) {
+                plan.setRetryExecuted(0);
+                task.getTask().clearCheckpoint();
+                release(task);
+                reschedule(task, schedule.getInterval());
+                return;
+            }
+        }
+
+        finish(task, result);
+    }
+
+    private void reschedule(RuntimeTask task, long delay) {
+        if (store != null) {
+            store.update(task.getId(), task.getTask());
+        }
+        schedule(task, delay);
+    }
+
+    /**
+     * reschedule a fixed rate task at its anchored time, late runs are enqueued at once and the others wait on the
+     * schedule wheel, so all the runs due in the same tick are enqueued as one batch.
+     */
+    private void rescheduleAt(RuntimeTask task, long time, long now) {
+        if (store != null) {
+            store.update(task.getId(), task.getTask());
+        }
+        if (time <= now) {
+            enqueue(task);
+            return;
+        }
+
+        TaskStatus status = task.getStatus();
+        setStatus(task, TaskStatus.WAITING);
+        emit(TaskEventType.SCHEDULE, task, status, TimeUnit.MILLISECONDS.toNanos(time - now));
+        scheduleWheel.schedule(task, time);
+    }
+
+    private void finish(RuntimeTask task, TaskResult result) {
+        if (store != null) {
+            store.remove(task.getId());
+        }
+        if (resultCache != null) {
+            resultCache.put(task.getTask().getContent(), result);
+        }
+        done(task, result);
+    }
+
+    private void done(RuntimeTask task, TaskResult result) {
+        TaskStatus status = task.getStatus();
+        task.finish(result);
+        if (index != null) {
+            index.remove(task);
+        }
+        if (completionDispatcher != null) {
+            long queueWait = Math.max(task.getStartTime() - task.getEnqueueTime(), 0);
+            completionDispatcher.publish(new CompletionRecord(task, result, queueWait, task.getExecutionTime(),
+                    System.currentTimeMillis()));
+        }
+        emit(TaskEventType.FINISH, task, status, task.getExecutionTime());
+        release(task);
+        if (concurrencyLimiter != null) {
+            // a parked task handed back by the limiter may be finished before it begins, give back its slot
+            RuntimeTask parked = concurrencyLimiter.abandon(task.getTask().getContent().getType(), task);
+            if (parked != null) {
+                queueOf(parked).offer(parked);
+            }
+        }
+    }
+
+    /**
+     * release the ordered lane owned by a task, and put the next task of the lane into pending queue. The next task
+     * has been admitted when it became due, so it is not admitted again.
+     */
+    private void release(RuntimeTask task) {
+        if (lanes != null) {
+            RuntimeTask next = lanes.release(task);
+            if (next != null) {
+                queueOf(next).offer(next);
+            }
+        }
+    }
+
+    private void track(RuntimeTask task) {
+        if (index != null) {
+            index.add(task);
+        }
+    }
+
+    private void setStatus(RuntimeTask task, TaskStatus status) {
+        task.setStatus(status);
+        if (index != null) {
+            index.update(task);
+        }
+    }
+
+    private PriorityTaskQueue queueOf(RuntimeTask task) {
+        if (bulkheads != null) {
+            Bulkhead bulkhead = bulkheads.bulkheadOf(task.getTask().getContent().getType());
+            if (bulkhead != null) {
+                return bulkhead.getQueue();
+            }
+        }
+        return queue;
+    }
+
+    /**
+     * process a dequeued task on a worker, an unexpected exception fails the task instead of killing the worker.
+     */
+    private void process(RuntimeTask task) {
+        try {
+            dequeued(task);
+        } catch (RuntimeException e) {
+            LOGGER.error("fail to process task: " + task, e);
+            abort(task);
+        }
+    }
+
+    private void abort(RuntimeTask task) {
+        synchronized (task) {
+            if (task.isFinished()) {
+                return;
+            }
+            try {
+                finish(task, TaskResult.FAILURE);
+            } catch (RuntimeException e) {
+                LOGGER.error("fail to finish task: " + task, e);
+                if (!task.isFinished()) {
+                    task.finish(TaskResult.FAILURE);
+                }
+            }
+        }
+    }
+
+    private void dequeued(RuntimeTask task) {
+        if (eventRecorder != null) {
+            emit(TaskEventType.DEQUEUE, task, task.getStatus(), System.nanoTime() - task.getEnqueueTime());
+        }
+        execute(task);
+    }
+
+    private void emit(TaskEventType eventType, RuntimeTask task, TaskStatus fromStatus, long duration) {
+        if (eventRecorder != null && eventRecorder.isEnabled(eventType, duration)) {
+            eventRecorder.record(eventType, task, fromStatus, duration);
+        }
+    }
+
+    private static boolean isEnable(RepeatPolicy repeatPolicy) {
+        return repeatPolicy != null && repeatPolicy.isEnable();
+    }
+
+    /**
+     * race between the primary execution of a task and its hedged copy, the first one to settle wins.
+     * <p>
+     * A hedge wins only with a successful result, otherwise the primary execution decides the result. The loser is
+     * reported as a finished CANCELED runtime task by task events. A losing copy is interrupted, while a losing
+     * primary execution can not be stopped, its result is ignored.
+     * </p>
+     */
+    private final class Hedge implements Runnable {
+        private final RuntimeTask task;
+        private final AtomicBoolean settled = new AtomicBoolean();
+        private volatile Future<?> timeout;
+        private volatile Future<?> copy;
+
+        private Hedge(RuntimeTask task) {
+            this.task = task;
+        }
+
+        /**
+         * settle by the primary execution.
+         *
+         * @return true if the primary execution wins
+         */
+        private boolean settle() {
+            if (!settled.compareAndSet(false, true)) {
+                return false;
+            }
+            timeout.cancel(false);
+            if (copy != null) {
+                copy.cancel(true);
+            }
+            return true;
+        }
+
+        @Override
+        public void run() {
+            if (settled.get() || !hedgePolicy.tryAcquire()) {
+                return;
+            }
+            copy = hedgeExecutor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    runCopy();
+                }
+            });
+        }
+
+        private void runCopy() {
+            RuntimeTask attempt = new RuntimeTask(task.getId(), task.getTask(), new TaskContext());
+            attempt.setStartTime(System.nanoTime());
+            attempt.setStatus(TaskStatus.RUNNING);
+            TaskResult result = TaskResult.FAILURE;
+            try {
+                result = executables.get(task.getTask().getContent().getType()).apply(attempt);
+            } catch (RuntimeException e) {
+                LOGGER.error("fail to execute hedge of task: " + task, e);
+            }
+            attempt.setExecutionTime(System.nanoTime() - attempt.getStartTime());
+            if (result == TaskResult.SUCCESS && settled.compareAndSet(false, true)) {
+                hedgePolicy.won();
+                task.setExecutionTime(attempt.getExecutionTime());
+                complete(task, result);
+                return;
+            }
+            attempt.finish(TaskResult.CANCELED);
+            emit(TaskEventType.FINISH, attempt, TaskStatus.RUNNING, attempt.getExecutionTime());
+        }
+    }
+
+    /**
+     * timeout of the executions on one thread, which is reused by every execution of the thread.
+     * <p>
+     * An expired timeout interrupts the thread, the executable should stop on interrupt. The thread itself then
+     * finishes the task with the result of the timeout: FAILURE for execution timeout, which is retried by retry plan,
+     * or CANCELED for deadline. An executable ignoring interrupt still holds its thread until it returns, but the task
+     * is never executed again while it is running.
+     * </p>
+     */
+    private static final class ExecutionTimeout extends TimeoutWheel.Timeout {
+        private final Thread thread;
+        private TaskResult result;
+
+        private ExecutionTimeout(Thread thread) {
+            this.thread = thread;
+        }
+
+        @Override
+        protected void expire() {
+            thread.interrupt();
+        }
+    }
+
+    private class Worker implements Runnable {
+        @Override
+        public void run() {
+            while (running) {
+                RuntimeTask task;
+                try {
+                    task = queue.poll(100, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                if (task != null) {
+                    process(task);
+                }
+            }
+        }
+    }
+
+    /**
+     * create a new Builder.
+     *
+     * @return new instance of Builder
+     */
+    public static Builder newBuilder() {
+        return new Builder();
+    }
+
+    /**
+     * Builder helps to build task engine easily.
+     */
+    public static class Builder {
+        private int workers = Runtime.getRuntime().availableProcessors();
+        private OverloadController overloadController;
+        private AgingPolicy agingPolicy;
+        private TaskStore store;
+        private OffHeapDelayedTaskQueue delayedQueue;
+        private long offHeapMinDelay;
+        private PendingTaskIndex index;
+        private AdaptiveConcurrencyLimiter concurrencyLimiter;
+        private CompletionDispatcher completionDispatcher;
+        private TaskEventRecorder eventRecorder;
+        private Bulkheads bulkheads;
+        private ResultCache resultCache;
+        private TaskSpiller spiller;
+        private HedgePolicy hedgePolicy;
+        private OrderedLanes lanes;
+
+        /**
+         * build task engine.
+         *
+         * @return task engine, not started yet
+         */
+        public TaskEngine build() {
+            return new TaskEngine(this);
+        }
+
+        /**
+         * set count of worker threads.
+         *
+         * @param workers count of worker threads
+         * @return this builder itself to chain
+         * @throws IllegalArgumentException if workers is not greater than zero
+         */
+        public Builder workers(int workers) {
+            checkArgument(workers > 0, "workers should greater than zero: workers=" + workers);
+            this.workers = workers;
+            return this;
+        }
+
+        /**
+         * enable load shedding by overload controller.
+         *
+         * @param overloadController overload controller
+         * @return this builder itself to chain
+         * @throws NullPointerException if overloadController is null
+         */
+        public Builder overloadController(OverloadController overloadController) {
+            checkNotNull(overloadController, "overload controller should not be null");
+            this.overloadController = overloadController;
+            return this;
+        }
+
+        /**
+         * enable priority aging of pending tasks.
+         *
+         * @param agingPolicy aging policy
+         * @return this builder itself to chain
+         * @throws NullPointerException if agingPolicy is null
+         */
+        public Builder aging(AgingPolicy agingPolicy) {
+            checkNotNull(agingPolicy, "aging policy should not be null");
+            this.agingPolicy = agingPolicy;
+            return this;
+        }
+
+        /**
+         * save pending tasks in task store.
+         *
+         * @param store task store
+         * @return this builder itself to chain
+         * @throws NullPointerException if store is null
+         */
+        public Builder store(TaskStore store) {
+            checkNotNull(store, "task store should not be null");
+            this.store = store;
+            return this;
+        }
+
+        /**
+         * keep deferred tasks which start later than specified delay off heap until they are due.
+         *
+         * @param delayedQueue    off-heap delayed queue
+         * @param minDelaySeconds min delay of tasks to keep off heap
+         * @return this builder itself to chain
+         * @throws NullPointerException     if delayedQueue is null
+         * @throws IllegalArgumentException if minDelaySeconds is negative
+         * @see TaskEngine#submitDeferred(Task)
+         */
+        public Builder offHeapDelayedQueue(OffHeapDelayedTaskQueue delayedQueue, int minDelaySeconds) {
+            checkNotNull(delayedQueue, "delayed queue should not be null");
+            checkArgument(minDelaySeconds >= 0, "min delay should greater than or equal to zero: minDelay=" + minDelaySeconds);
+            this.delayedQueue = delayedQueue;
+            this.offHeapMinDelay = TimeUnit.SECONDS.toMillis(minDelaySeconds);
+            return this;
+        }
+
+        /**
+         * maintain index over pending tasks, which is required by bulk operations.
+         *
+         * @param index pending task index
+         * @return this builder itself to chain
+         * @throws NullPointerException if index is null
+         * @see TaskEngine#cancel(int)
+         * @see TaskEngine#reprioritize(int, int)
+         */
+        public Builder pendingTaskIndex(PendingTaskIndex index) {
+            checkNotNull(index, "pending task index should not be null");
+            this.index = index;
+            return this;
+        }
+
+        /**
+         * limit concurrency of each task type adaptively.
+         *
+         * @param concurrencyLimiter adaptive concurrency limiter
+         * @return this builder itself to chain
+         * @throws NullPointerException if concurrencyLimiter is null
+         */
+        public Builder concurrencyLimiter(AdaptiveConcurrencyLimiter concurrencyLimiter) {
+            checkNotNull(concurrencyLimiter, "concurrency limiter should not be null");
+            this.concurrencyLimiter = concurrencyLimiter;
+            return this;
+        }
+
+        /**
+         * deliver records of finished tasks to listeners of completion dispatcher, which is started and shutdown
+         * together with the engine.
+         *
+         * @param completionDispatcher completion dispatcher
+         * @return this builder itself to chain
+         * @throws NullPointerException if completionDispatcher is null
+         */
+        public Builder completionDispatcher(CompletionDispatcher completionDispatcher) {
+            checkNotNull(completionDispatcher, "completion dispatcher should not be null");
+            this.completionDispatcher = completionDispatcher;
+            return this;
+        }
+
+        /**
+         * record task lifecycle events by event recorder.
+         *
+         * @param eventRecorder task event recorder
+         * @return this builder itself to chain
+         * @throws NullPointerException if eventRecorder is null
+         */
+        public Builder eventRecorder(TaskEventRecorder eventRecorder) {
+            checkNotNull(eventRecorder, "task event recorder should not be null");
+            this.eventRecorder = eventRecorder;
+            return this;
+        }
+
+        /**
+         * isolate groups of task types in bulkheads, each with its own pending queue and workers.
+         *
+         * @param bulkheads bulkheads
+         * @return this builder itself to chain
+         * @throws NullPointerException if bulkheads is null
+         */
+        public Builder bulkheads(Bulkheads bulkheads) {
+            checkNotNull(bulkheads, "bulkheads should not be null");
+            this.bulkheads = bulkheads;
+            return this;
+        }
+
+        /**
+         * return cached results for task types whose results are cached, without queueing or execution.
+         *
+         * @param resultCache result cache
+         * @return this builder itself to chain
+         * @throws NullPointerException if resultCache is null
+         */
+        public Builder resultCache(ResultCache resultCache) {
+            checkNotNull(resultCache, "result cache should not be null");
+            this.resultCache = resultCache;
+            return this;
+        }
+
+        /**
+         * set task spiller, which spills cold tasks of the pending queue to disk under memory pressure.
+         * <p>
+         * Only the pending queue of the engine is spilled, queues of bulkheads are not.
+         * </p>
+         *
+         * @param spiller task spiller
+         * @return this builder itself to chain
+         * @throws NullPointerException if spiller is null
+         */
+        public Builder spiller(TaskSpiller spiller) {
+            checkNotNull(spiller, "task spiller should not be null");
+            this.spiller = spiller;
+            return this;
+        }
+
+        /**
+         * set hedge policy, which launches a second copy of slow executions of idempotent task types.
+         * <p>
+         * Tasks are never hedged if a concurrency limiter is set, or if their types are in bulkheads, or if they
+         * have ordering keys, since a copy is not counted by them.
+         * </p>
+         *
+         * @param hedgePolicy hedge policy
+         * @return this builder itself to chain
+         * @throws NullPointerException if hedgePolicy is null
+         */
+        public Builder hedgePolicy(HedgePolicy hedgePolicy) {
+            checkNotNull(hedgePolicy, "hedge policy should not be null");
+            this.hedgePolicy = hedgePolicy;
+            return this;
+        }
+
+        /**
+         * set ordered lanes, which run tasks with the same ordering key one by one without blocking workers.
+         *
+         * @param lanes ordered lanes
+         * @return this builder itself to chain
+         * @throws NullPointerException if lanes is null
+         */
+        public Builder orderedLanes(OrderedLanes lanes) {
+            checkNotNull(lanes, "ordered lanes should not be null");
+            this.lanes = lanes;
+            return this;
+        }
+    }
+}
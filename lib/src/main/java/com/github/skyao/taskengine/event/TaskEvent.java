@@ -0,0 +1,146 @@
+package com.github.skyao.taskengine.event;
+
+import com.github.skyao.taskengine.task.TaskResult;
+import com.github.skyao.taskengine.task.TaskStatus;
+
+/**
+ * event in the lifecycle of a task.
+ *
+ * @author Sky Ao
+ */
+public class TaskEvent {
+    private final TaskEventType eventType;
+    private final long taskId;
+    private final int taskType;
+    private final int priority;
+    private final TaskStatus fromStatus;
+    private final TaskStatus toStatus;
+    private final TaskResult result;
+    private final long duration;
+    private final long timestamp;
+
+    /**
+     * create task event.
+     *
+     * @param eventType  event type
+     * @param taskId     task id
+     * @param taskType   task type
+     * @param priority   task priority
+     * @param fromStatus task status before this event
+     * @param toStatus   task status after this event
+     * @param result     task result, null if task is not finished
+     * @param duration   duration in nanoseconds, see {@link TaskEventType} for its meaning
+     * @param timestamp  time of this event in timestamp
+     */
+    public TaskEvent(TaskEventType eventType, long taskId, int taskType, int priority, TaskStatus fromStatus,
+                     TaskStatus toStatus, TaskResult result, long duration, long timestamp) {
+        this.eventType = eventType;
+        this.taskId = taskId;
+        this.taskType = taskType;
+        this.priority = priority;
+        this.fromStatus = fromStatus;
+        this.toStatus = toStatus;
+        this.result = result;
+        this.duration = duration;
+        this.timestamp = timestamp;
+    }
+
+    /**
+     * get event type.
+     *
+     * @return event type
+     */
+    public TaskEventType getEventType() {
+        return eventType;
+    }
+
+    /**
+     * get task id.
+     *
+     * @return task id
+     */
+    public long getTaskId() {
+        return taskId;
+    }
+
+    /**
+     * get task type.
+     *
+     * @return task type
+     */
+    public int getTaskType() {
+        return taskType;
+    }
+
+    /**
+     * get task priority.
+     *
+     * @return task priority
+     */
+    public int getPriority() {
+        return priority;
+    }
+
+    /**
+     * get task status before this event.
+     *
+     * @return task status
+     */
+    public TaskStatus getFromStatus() {
+        return fromStatus;
+    }
+
+    /**
+     * get task status after this event.
+     *
+     * @return task status
+     */
+    public TaskStatus getToStatus() {
+        return toStatus;
+    }
+
+    /**
+     * get task result.
+     *
+     * @return task result, null if task is not finished
+     */
+    public TaskResult getResult() {
+        return result;
+    }
+
+    /**
+     * get duration of this event.
+     *
+     * @return duration in nanoseconds
+     * @see TaskEventType
+     */
+    public long getDuration() {
+        return duration;
+    }
+
+    /**
+     * get time of this event.
+     *
+     * @return time in timestamp
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder buffer = new StringBuilder();
+        buffer.append("TaskEvent[");
+        buffer.append(eventType);
+        buffer.append(",id=").append(taskId);
+        buffer.append(",type=").append(taskType);
+        buffer.append(",priority=").append(priority);
+        buffer.append(",status=").append(fromStatus).append("->").append(toStatus);
+        if (result != null) {
+            buffer.append(",result=").append(result);
+        }
+        buffer.append(",duration=").append(duration);
+        buffer.append(']');
+        return buffer.toString();
+    }
+}
@@ -0,0 +1,21 @@
+package com.github.skyao.taskengine.event;
+
+/**
+ * listener of task lifecycle events.
+ * <p>
+ * Listeners are called synchronously on the thread which triggers the event, so they should be cheap, for example
+ * commit a flight recorder event or append to a ring buffer.
+ * </p>
+ *
+ * @author Sky Ao
+ * @see TaskEventRecorder
+ */
+public interface TaskEventListener {
+
+    /**
+     * receive a task event.
+     *
+     * @param event task event
+     */
+    void onEvent(TaskEvent event);
+}
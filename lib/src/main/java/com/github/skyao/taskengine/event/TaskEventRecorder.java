@@ -0,0 +1,177 @@
+package com.github.skyao.taskengine.event;
+
+import com.github.skyao.taskengine.task.RuntimeTask;
+import com.github.skyao.taskengine.task.TaskStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * recorder of task lifecycle events.
+ * <p>
+ * Each event type can be enabled with a duration threshold, then only events which take longer than the threshold
+ * are recorded, for example only tasks which wait in pending queue for more than 100 ms. Recording can be turned on
+ * and off at runtime. When it is off, the cost in the engine is one volatile read per event, no event is created.
+ * </p>
+ * <p>
+ * Events are handed to the listener synchronously. To correlate them with GC, locks and I/O, the listener can
+ * commit them as flight recorder events on a JVM which supports it.
+ * </p>
+ *
+ * @author Sky Ao
+ */
+public class TaskEventRecorder {
+    private static final Logger LOGGER = LoggerFactory.getLogger(TaskEventRecorder.class);
+    private static final long DISABLED = -1;
+
+    private final TaskEventListener listener;
+    private final long[] thresholds;
+
+    private volatile boolean recording;
+
+    private TaskEventRecorder(Builder builder) {
+        this.listener = builder.listener;
+        this.thresholds = builder.thresholds.clone();
+        this.recording = builder.recording;
+    }
+
+    /**
+     * turn recording on or off.
+     *
+     * @param recording true to turn recording on
+     */
+    public void setRecording(boolean recording) {
+        this.recording = recording;
+    }
+
+    /**
+     * check if recording is on.
+     *
+     * @return true if recording is on
+     */
+    public boolean isRecording() {
+        return recording;
+    }
+
+    /**
+     * check if an event of specified type and duration should be recorded.
+     *
+     * @param eventType event type
+     * @param duration  duration of the event in nanoseconds
+     * @return true if recording is on, event type is enabled and duration reaches the threshold
+     */
+    public boolean isEnabled(TaskEventType eventType, long duration) {
+        if (!recording) {
+            return false;
+        }
+        long threshold = thresholds[eventType.ordinal()];
+        return threshold != DISABLED && duration >= threshold;
+    }
+
+    /**
+     * record an event of specified task, with its current status and result.
+     * <p>
+     * Caller should check {@link #isEnabled(TaskEventType, long)} first.
+     * </p>
+     *
+     * @param eventType  event type
+     * @param task       task of the event
+     * @param fromStatus task status before this event
+     * @param duration   duration of the event in nanoseconds
+     */
+    public void record(TaskEventType eventType, RuntimeTask task, TaskStatus fromStatus, long duration) {
+        TaskEvent event = new TaskEvent(eventType, task.getId(), task.getTask().getContent().getType(),
+                task.getTask().getPlan().getPriority(), fromStatus, task.getStatus(), task.getResult(), duration,
+                System.currentTimeMillis());
+        try {
+            listener.onEvent(event);
+        } catch (RuntimeException e) {
+            LOGGER.error("task event listener fails: " + event, e);
+        }
+    }
+
+    /**
+     * create a new Builder.
+     *
+     * @param listener listener to receive recorded events
+     * @return new instance of Builder
+     * @throws NullPointerException if listener is null
+     */
+    public static Builder newBuilder(TaskEventListener listener) {
+        return new Builder(listener);
+    }
+
+    /**
+     * Builder helps to build task event recorder easily.
+     * <p>
+     * All event types are disabled by default.
+     * </p>
+     */
+    public static class Builder {
+        private final TaskEventListener listener;
+        private final long[] thresholds = new long[TaskEventType.values().length];
+        private boolean recording = true;
+
+        private Builder(TaskEventListener listener) {
+            checkNotNull(listener, "task event listener should not be null");
+            this.listener = listener;
+            Arrays.fill(thresholds, DISABLED);
+        }
+
+        /**
+         * build task event recorder.
+         *
+         * @return task event recorder
+         */
+        public TaskEventRecorder build() {
+            return new TaskEventRecorder(this);
+        }
+
+        /**
+         * enable events of specified types without threshold.
+         *
+         * @param eventTypes event types
+         * @return this builder itself to chain
+         */
+        public Builder enable(TaskEventType... eventTypes) {
+            for (TaskEventType eventType : eventTypes) {
+                thresholds[eventType.ordinal()] = 0;
+            }
+            return this;
+        }
+
+        /**
+         * enable events of specified type which take longer than the threshold.
+         *
+         * @param eventType event type
+         * @param threshold min duration of recorded events
+         * @param unit      time unit of threshold
+         * @return this builder itself to chain
+         * @throws NullPointerException     if eventType or unit is null
+         * @throws IllegalArgumentException if threshold is negative
+         */
+        public Builder threshold(TaskEventType eventType, long threshold, TimeUnit unit) {
+            checkNotNull(eventType, "event type should not be null");
+            checkNotNull(unit, "time unit should not be null");
+            checkArgument(threshold >= 0, "threshold should greater than or equal to zero: threshold=" + threshold);
+            thresholds[eventType.ordinal()] = unit.toNanos(threshold);
+            return this;
+        }
+
+        /**
+         * set if recording is on when built, default is on.
+         *
+         * @param recording true to turn recording on
+         * @return this builder itself to chain
+         */
+        public Builder recording(boolean recording) {
+            this.recording = recording;
+            return this;
+        }
+    }
+}
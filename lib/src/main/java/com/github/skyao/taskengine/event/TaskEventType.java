@@ -0,0 +1,34 @@
+package com.github.skyao.taskengine.event;
+
+/**
+ * type of task lifecycle event.
+ *
+ * @author Sky Ao
+ */
+public enum TaskEventType {
+
+    /**
+     * task is submitted to the engine.
+     */
+    SUBMIT,
+
+    /**
+     * task is scheduled to wait for a delay, duration is the delay.
+     */
+    SCHEDULE,
+
+    /**
+     * task is taken from pending queue by a worker, duration is the time waited in pending queue.
+     */
+    DEQUEUE,
+
+    /**
+     * task begins to run, duration is the time waited in pending queue.
+     */
+    START,
+
+    /**
+     * task is finished, duration is the time of last execution.
+     */
+    FINISH
+}
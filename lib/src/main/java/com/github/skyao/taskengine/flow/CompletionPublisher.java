@@ -0,0 +1,245 @@
+package com.github.skyao.taskengine.flow;
+
+import com.github.skyao.taskengine.listener.CompletionDispatcher;
+import com.github.skyao.taskengine.listener.CompletionListener;
+import com.github.skyao.taskengine.listener.CompletionRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * publisher of completion records, which is fed by a completion dispatcher.
+ * <p>
+ * Each subscriber has a bounded buffer. When a subscriber does not request fast enough its buffer fills up, then the
+ * dispatcher thread waits for free space. With BLOCK overflow policy the dispatcher buffer fills up next and worker
+ * threads wait in turn, tasks stay outstanding and a {@link TaskSubscriber} stops requesting tasks, so a whole
+ * pipeline runs under backpressure without unbounded buffering. With DROP policy the dispatcher drops records instead.
+ * </p>
+ *
+ * @author Sky Ao
+ */
+public class CompletionPublisher implements Flow.Publisher<CompletionRecord>, CompletionListener {
+    private static final Logger LOGGER = LoggerFactory.getLogger(CompletionPublisher.class);
+
+    private final List<Emitter> emitters = new CopyOnWriteArrayList<>();
+    private final int bufferSize;
+
+    private volatile boolean closed;
+
+    private CompletionPublisher(Builder builder) {
+        this.bufferSize = builder.bufferSize;
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super CompletionRecord> subscriber) {
+        checkNotNull(subscriber, "subscriber should not be null");
+
+        Emitter emitter = new Emitter(subscriber, bufferSize);
+        subscriber.onSubscribe(emitter);
+        if (closed) {
+            emitter.drain();
+            return;
+        }
+        emitters.add(emitter);
+    }
+
+    @Override
+    public void onCompleted(List<CompletionRecord> records) {
+        for (Emitter emitter : emitters) {
+            for (CompletionRecord record : records) {
+                if (!emitter.offer(record)) {
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * complete all subscribers after records in their buffers are delivered, records dispatched later are dropped.
+     */
+    public void close() {
+        closed = true;
+        for (Emitter emitter : emitters) {
+            emitter.drain();
+        }
+    }
+
+    /**
+     * get count of subscribers.
+     *
+     * @return count of subscribers
+     */
+    public int getSubscriberCount() {
+        return emitters.size();
+    }
+
+    /**
+     * subscription of one subscriber, signals to the subscriber are serialized by the work-in-progress counter.
+     */
+    private final class Emitter implements Flow.Subscription {
+        private final Flow.Subscriber<? super CompletionRecord> subscriber;
+        private final BlockingQueue<CompletionRecord> buffer;
+        private final AtomicLong requested = new AtomicLong();
+        private final AtomicInteger wip = new AtomicInteger();
+
+        private volatile boolean canceled;
+        private volatile Throwable error;
+        private boolean terminated;
+
+        private Emitter(Flow.Subscriber<? super CompletionRecord> subscriber, int bufferSize) {
+            this.subscriber = subscriber;
+            this.buffer = new ArrayBlockingQueue<>(bufferSize);
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                error = new IllegalArgumentException("request should greater than zero: n=" + n);
+            } else {
+                long current;
+                long next;
+                do {
+                    current = requested.get();
+                    next = current + n < 0 ? Long.MAX_VALUE : current + n;
+                } while (!requested.compareAndSet(current, next));
+            }
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            canceled = true;
+            emitters.remove(this);
+            buffer.clear();
+        }
+
+        /**
+         * put record into buffer, wait for free space if it is full.
+         *
+         * @return false if the subscription is canceled or the thread is interrupted
+         */
+        private boolean offer(CompletionRecord record) {
+            try {
+                while (!canceled) {
+                    if (buffer.offer(record, 10, TimeUnit.MILLISECONDS)) {
+                        drain();
+                        return true;
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return false;
+        }
+
+        private void drain() {
+            if (wip.getAndIncrement() != 0) {
+                return;
+            }
+            int missed = 1;
+            do {
+                if (!terminated) {
+                    emit();
+                }
+                missed = wip.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        private void emit() {
+            while (!canceled) {
+                if (error != null) {
+                    terminate(error);
+                    return;
+                }
+                if (buffer.isEmpty()) {
+                    if (closed) {
+                        terminate(null);
+                    }
+                    return;
+                }
+                if (requested.get() == 0) {
+                    return;
+                }
+                CompletionRecord record = buffer.poll();
+                if (requested.get() != Long.MAX_VALUE) {
+                    requested.decrementAndGet();
+                }
+                try {
+                    subscriber.onNext(record);
+                } catch (RuntimeException e) {
+                    LOGGER.error("completion subscriber fails: " + subscriber, e);
+                    cancel();
+                    return;
+                }
+            }
+        }
+
+        private void terminate(Throwable throwable) {
+            terminated = true;
+            emitters.remove(this);
+            if (throwable != null) {
+                subscriber.onError(throwable);
+            } else {
+                subscriber.onComplete();
+            }
+        }
+    }
+
+    /**
+     * create a new Builder.
+     *
+     * @param dispatcher completion dispatcher to receive records from
+     * @return new instance of Builder
+     * @throws NullPointerException if dispatcher is null
+     */
+    public static Builder newBuilder(CompletionDispatcher dispatcher) {
+        return new Builder(dispatcher);
+    }
+
+    /**
+     * Builder helps to build completion publisher easily.
+     */
+    public static class Builder {
+        private final CompletionDispatcher dispatcher;
+        private int bufferSize = 256;
+
+        private Builder(CompletionDispatcher dispatcher) {
+            checkNotNull(dispatcher, "completion dispatcher should not be null");
+            this.dispatcher = dispatcher;
+        }
+
+        /**
+         * build completion publisher and add it to the dispatcher as a listener.
+         *
+         * @return completion publisher
+         */
+        public CompletionPublisher build() {
+            CompletionPublisher publisher = new CompletionPublisher(this);
+            dispatcher.addListener(publisher);
+            return publisher;
+        }
+
+        /**
+         * set buffer size of each subscriber.
+         *
+         * @param bufferSize buffer size
+         * @return this builder itself to chain
+         * @throws IllegalArgumentException if bufferSize is not greater than zero
+         */
+        public Builder bufferSize(int bufferSize) {
+            checkArgument(bufferSize > 0, "buffer size should greater than zero: bufferSize=" + bufferSize);
+            this.bufferSize = bufferSize;
+            return this;
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.github.skyao.taskengine.flow;
+
+/**
+ * interfaces of reactive streams with demand-based flow control.
+ * <p>
+ * They have the same methods and rules as java.util.concurrent.Flow of Java 9, which is not available on Java 7, so
+ * adapters to Flow or to other reactive streams libraries are one-line delegations.
+ * </p>
+ * <pre>
+ * Rules kept by the publishers and subscribers of this package:
+ * (1) a subscriber receives at most as many items as it requested, items are never buffered without bound
+ * (2) signals to one subscriber are serialized, onSubscribe comes first and onError or onComplete comes last
+ * (3) request with n &lt;= 0 is an error signaled by onError with IllegalArgumentException
+ * </pre>
+ *
+ * @author Sky Ao
+ */
+public final class Flow {
+
+    private Flow() {
+    }
+
+    /**
+     * producer of items received by subscribers.
+     *
+     * @param <T> type of items
+     */
+    public interface Publisher<T> {
+
+        /**
+         * add a subscriber, onSubscribe of which is called with a new subscription.
+         *
+         * @param subscriber subscriber
+         * @throws NullPointerException if subscriber is null
+         */
+        void subscribe(Subscriber<? super T> subscriber);
+    }
+
+    /**
+     * receiver of items.
+     *
+     * @param <T> type of items
+     */
+    public interface Subscriber<T> {
+
+        /**
+         * called before any other method with the subscription to request items by.
+         *
+         * @param subscription subscription
+         */
+        void onSubscribe(Subscription subscription);
+
+        /**
+         * receive next item.
+         *
+         * @param item item
+         */
+        void onNext(T item);
+
+        /**
+         * called when the publisher or subscription fails, no more methods are called after it.
+         *
+         * @param throwable error
+         */
+        void onError(Throwable throwable);
+
+        /**
+         * called when there are no more items, no more methods are called after it.
+         */
+        void onComplete();
+    }
+
+    /**
+     * link between a publisher and a subscriber.
+     */
+    public interface Subscription {
+
+        /**
+         * add demand of n more items.
+         *
+         * @param n count of items
+         */
+        void request(long n);
+
+        /**
+         * stop receiving items, some items may still be received if they are sent already.
+         */
+        void cancel();
+    }
+}
@@ -0,0 +1,321 @@
+package com.github.skyao.taskengine.flow;
+
+import com.github.skyao.taskengine.engine.TaskEngine;
+import com.github.skyao.taskengine.listener.CompletionDispatcher;
+import com.github.skyao.taskengine.listener.CompletionListener;
+import com.github.skyao.taskengine.listener.CompletionRecord;
+import com.github.skyao.taskengine.queue.PriorityTaskQueue;
+import com.github.skyao.taskengine.task.Task;
+import com.github.skyao.taskengine.task.TaskPriority;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * subscriber which submits tasks from a stream to a task engine, requesting only as many tasks as it can absorb.
+ * <p>
+ * Tasks submitted by this subscriber are outstanding until their completion records are dispatched. Demand is
+ * signaled as the free capacity: capacity minus outstanding tasks minus tasks requested but not received yet. Each
+ * priority may have its own capacity, tasks whose priority is full are held back in FIFO order of their priority, and
+ * no more tasks are requested until all the held tasks are submitted. So held tasks are bounded by the demand already
+ * requested, which is at most the capacity.
+ * </p>
+ * <p>
+ * The completion dispatcher must be the one of the engine and use BLOCK overflow policy, dropped records would leak
+ * capacity.
+ * </p>
+ *
+ * @author Sky Ao
+ */
+public class TaskSubscriber implements Flow.Subscriber<Task>, CompletionListener {
+    private static final Logger LOGGER = LoggerFactory.getLogger(TaskSubscriber.class);
+
+    private final TaskEngine engine;
+    private final CompletionDispatcher dispatcher;
+    private final int capacity;
+    private final int[] capacities;
+    private final int[] outstandings = new int[PriorityTaskQueue.LEVELS];
+    private final Map<Task, Integer> submitted = new IdentityHashMap<>();
+    private final Map<Integer, ArrayDeque<Task>> held = new HashMap<>();
+    private final int refill;
+
+    private Flow.Subscription subscription;
+    private int heldCount;
+    private int outstanding;
+    private long requested;
+    private boolean done;
+
+    private TaskSubscriber(Builder builder) {
+        this.engine = builder.engine;
+        this.dispatcher = builder.dispatcher;
+        this.capacity = builder.capacity;
+        this.capacities = builder.capacities.clone();
+        for (int i = 0; i < capacities.length; i++) {
+            if (capacities[i] == 0) {
+                capacities[i] = capacity;
+            }
+        }
+        this.refill = Math.max(1, capacity / 4);
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        checkNotNull(subscription, "subscription should not be null");
+        synchronized (this) {
+            if (this.subscription != null || done) {
+                subscription.cancel();
+                return;
+            }
+            this.subscription = subscription;
+        }
+        dispatcher.addListener(this);
+        replenish();
+    }
+
+    @Override
+    public void onNext(Task task) {
+        checkNotNull(task, "task should not be null");
+        synchronized (this) {
+            if (done) {
+                return;
+            }
+            requested--;
+            int level = levelOf(task);
+            ArrayDeque<Task> queue = held.get(level);
+            if (queue != null || outstandings[level] >= capacities[level]) {
+                // tasks held before it go first
+                if (queue == null) {
+                    queue = new ArrayDeque<>();
+                    held.put(level, queue);
+                }
+                queue.addLast(task);
+                heldCount++;
+                return;
+            }
+            reserve(task);
+        }
+        submit(task);
+        replenish();
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        LOGGER.error("task stream fails", throwable);
+        synchronized (this) {
+            done = true;
+        }
+    }
+
+    @Override
+    public void onComplete() {
+        synchronized (this) {
+            done = true;
+        }
+    }
+
+    @Override
+    public void onCompleted(List<CompletionRecord> records) {
+        List<Task> releases = new ArrayList<>();
+        synchronized (this) {
+            for (CompletionRecord record : records) {
+                // level at submission, priority of the task may be changed since then
+                Integer level = submitted.remove(record.getTask().getTask());
+                if (level != null) {
+                    outstanding--;
+                    outstandings[level]--;
+                }
+            }
+            Iterator<Map.Entry<Integer, ArrayDeque<Task>>> iterator = held.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<Integer, ArrayDeque<Task>> entry = iterator.next();
+                int level = entry.getKey();
+                ArrayDeque<Task> queue = entry.getValue();
+                while (!queue.isEmpty() && outstandings[level] < capacities[level]) {
+                    Task task = queue.pollFirst();
+                    heldCount--;
+                    reserve(task);
+                    releases.add(task);
+                }
+                if (queue.isEmpty()) {
+                    iterator.remove();
+                }
+            }
+        }
+        for (Task task : releases) {
+            submit(task);
+        }
+        replenish();
+    }
+
+    /**
+     * get count of tasks submitted by this subscriber and not finished yet.
+     *
+     * @return count of outstanding tasks
+     */
+    public synchronized int getOutstanding() {
+        return outstanding;
+    }
+
+    /**
+     * get count of received tasks which are held back because their priorities are full.
+     *
+     * @return count of held tasks
+     */
+    public synchronized int getHeld() {
+        return heldCount;
+    }
+
+    /**
+     * check if the stream is completed or failed, or the subscription is canceled.
+     *
+     * @return true if no more tasks will be received
+     */
+    public synchronized boolean isDone() {
+        return done;
+    }
+
+    /**
+     * count a task as outstanding under the lock before it is submitted, the completion record may be dispatched
+     * before submit returns.
+     */
+    private void reserve(Task task) {
+        int level = levelOf(task);
+        submitted.put(task, level);
+        outstanding++;
+        outstandings[level]++;
+    }
+
+    private void submit(Task task) {
+        try {
+            engine.submit(task);
+        } catch (RuntimeException e) {
+            Flow.Subscription canceled;
+            synchronized (this) {
+                if (submitted.remove(task) != null) {
+                    outstanding--;
+                    outstandings[levelOf(task)]--;
+                }
+                done = true;
+                canceled = subscription;
+            }
+            LOGGER.error("fail to submit task from stream, subscription is canceled: " + task, e);
+            canceled.cancel();
+        }
+    }
+
+    private void replenish() {
+        long n;
+        synchronized (this) {
+            if (done || heldCount > 0 || subscription == null) {
+                return;
+            }
+            n = capacity - outstanding - requested;
+            if (n < refill) {
+                return;
+            }
+            requested += n;
+        }
+        subscription.request(n);
+    }
+
+    private static int levelOf(Task task) {
+        return task.getPlan().getPriority() - TaskPriority.LOWEST;
+    }
+
+    /**
+     * create a new Builder.
+     *
+     * @param engine     engine to submit tasks to
+     * @param dispatcher completion dispatcher of the engine
+     * @return new instance of Builder
+     * @throws NullPointerException     if engine or dispatcher is null
+     * @throws IllegalArgumentException if overflow policy of dispatcher is not BLOCK
+     */
+    public static Builder newBuilder(TaskEngine engine, CompletionDispatcher dispatcher) {
+        return new Builder(engine, dispatcher);
+    }
+
+    /**
+     * Builder helps to build task subscriber easily.
+     */
+    public static class Builder {
+        private final TaskEngine engine;
+        private final CompletionDispatcher dispatcher;
+        private final int[] capacities = new int[PriorityTaskQueue.LEVELS];
+        private int capacity = 1024;
+
+        private Builder(TaskEngine engine, CompletionDispatcher dispatcher) {
+            checkNotNull(engine, "task engine should not be null");
+            checkNotNull(dispatcher, "completion dispatcher should not be null");
+            checkArgument(dispatcher.getOverflowPolicy() == CompletionDispatcher.OverflowPolicy.BLOCK,
+                    "completion dispatcher should block on overflow");
+            this.engine = engine;
+            this.dispatcher = dispatcher;
+        }
+
+        /**
+         * build task subscriber.
+         *
+         * @return task subscriber
+         */
+        public TaskSubscriber build() {
+            return new TaskSubscriber(this);
+        }
+
+        /**
+         * set max count of outstanding tasks.
+         *
+         * @param capacity capacity
+         * @return this builder itself to chain
+         * @throws IllegalArgumentException if capacity is not greater than zero
+         */
+        public Builder capacity(int capacity) {
+            checkArgument(capacity > 0, "capacity should greater than zero: capacity=" + capacity);
+            this.capacity = capacity;
+            return this;
+        }
+
+        /**
+         * set max count of outstanding tasks of a priority, which is the total capacity by default.
+         *
+         * @param priority task priority
+         * @param capacity capacity of this priority
+         * @return this builder itself to chain
+         * @throws IllegalArgumentException if priority is invalid or capacity is not greater than zero
+         */
+        public Builder capacity(int priority, int capacity) {
+            checkArgument(TaskPriority.isValidPriority(priority), "invalid task priority: priority=" + priority);
+            checkArgument(capacity > 0, "capacity should greater than zero: capacity=" + capacity);
+            this.capacities[priority - TaskPriority.LOWEST] = capacity;
+            return this;
+        }
+
+        /**
+         * set max count of outstanding tasks of priorities in [from, to].
+         *
+         * @param from     lowest priority, inclusive
+         * @param to       highest priority, inclusive
+         * @param capacity capacity of each priority
+         * @return this builder itself to chain
+         * @throws IllegalArgumentException if any priority is invalid or capacity is not greater than zero
+         */
+        public Builder capacity(int from, int to, int capacity) {
+            checkArgument(TaskPriority.isValidPriority(from) && TaskPriority.isValidPriority(to) && from <= to,
+                    "invalid task priority range: from=" + from + ", to=" + to);
+            checkArgument(capacity > 0, "capacity should greater than zero: capacity=" + capacity);
+            Arrays.fill(capacities, from - TaskPriority.LOWEST, to - TaskPriority.LOWEST + 1, capacity);
+            return this;
+        }
+    }
+}
@@ -0,0 +1,244 @@
+package com.github.skyao.taskengine.hedge;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * policy of hedged execution for idempotent task types.
+ * <p>
+ * If an execution of a hedged type has not finished after the hedge delay, a second copy of it is launched and the
+ * first result wins. The hedge delay of each type is a percentile of its recent execution times, so only the slowest
+ * executions are hedged. Until enough executions are seen, a type is not hedged.
+ * </p>
+ * <p>
+ * Hedges are limited by a global budget: each execution of a hedged type earns a fraction of a hedge, e.g. 0.05 for
+ * at most 5% extra load, and a hedge is launched only when a whole one is earned. Earned hedges are capped, so a
+ * quiet period can not be spent as a burst later.
+ * </p>
+ *
+ * @author Sky Ao
+ */
+public class HedgePolicy {
+    private static final int WINDOW = 256;
+    private static final int MIN_SAMPLES = 32;
+    private static final int REFRESH = 64;
+    private static final double MAX_TOKENS = 10;
+
+    private final Map<Integer, Latency> latencies;
+    private final double percentile;
+    private final double budget;
+    private final long minDelay;
+    private final AtomicLong hedged = new AtomicLong();
+    private final AtomicLong won = new AtomicLong();
+    private double tokens;
+
+    private HedgePolicy(Builder builder) {
+        this.latencies = new HashMap<>();
+        for (int type : builder.types) {
+            latencies.put(type, new Latency());
+        }
+        this.percentile = builder.percentile;
+        this.budget = builder.budget;
+        this.minDelay = builder.minDelay;
+    }
+
+    /**
+     * check if hedging is enabled for specified task type.
+     *
+     * @param type task type
+     * @return true if executions of this type may be hedged
+     */
+    public boolean isEnabled(int type) {
+        return latencies.containsKey(type);
+    }
+
+    /**
+     * get hedge delay of specified task type.
+     *
+     * @param type task type
+     * @return delay in nanoseconds, -1 if this type is not hedged or not enough executions are seen
+     */
+    public long delayOf(int type) {
+        Latency latency = latencies.get(type);
+        if (latency == null) {
+            return -1;
+        }
+        long delay = latency.delay;
+        return delay < 0 ? -1 : Math.max(delay, minDelay);
+    }
+
+    /**
+     * record execution time of a primary execution, which also earns hedge budget.
+     *
+     * @param type          task type
+     * @param executionTime execution time in nanoseconds
+     */
+    public void record(int type, long executionTime) {
+        Latency latency = latencies.get(type);
+        if (latency == null) {
+            return;
+        }
+        latency.add(executionTime, percentile);
+        synchronized (this) {
+            tokens = Math.min(tokens + budget, MAX_TOKENS);
+        }
+    }
+
+    /**
+     * take one hedge from the budget.
+     *
+     * @return true if a hedge can be launched
+     */
+    public boolean tryAcquire() {
+        synchronized (this) {
+            if (tokens < 1) {
+                return false;
+            }
+            tokens -= 1;
+        }
+        hedged.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * count a hedge which finishes before its primary execution.
+     */
+    public void won() {
+        won.incrementAndGet();
+    }
+
+    /**
+     * get count of launched hedges.
+     *
+     * @return count of hedges
+     */
+    public long getHedgedCount() {
+        return hedged.get();
+    }
+
+    /**
+     * get count of hedges which win.
+     *
+     * @return count of hedges finished before their primary executions
+     */
+    public long getWonCount() {
+        return won.get();
+    }
+
+    /**
+     * recent execution times of one type in a ring, the percentile of which is refreshed every few executions.
+     */
+    private static final class Latency {
+        private final long[] samples = new long[WINDOW];
+        private int count;
+        private volatile long delay = -1;
+
+        private void add(long executionTime, double percentile) {
+            long[] sorted;
+            synchronized (this) {
+                samples[count % WINDOW] = executionTime;
+                count++;
+                if (count < MIN_SAMPLES || (count % REFRESH != 0 && count != MIN_SAMPLES)) {
+                    return;
+                }
+                sorted = Arrays.copyOf(samples, Math.min(count, WINDOW));
+            }
+            Arrays.sort(sorted);
+            delay = sorted[Math.min((int) Math.ceil(percentile * sorted.length) - 1, sorted.length - 1)];
+        }
+    }
+
+    /**
+     * create a new Builder.
+     *
+     * @return new instance of Builder
+     */
+    public static Builder newBuilder() {
+        return new Builder();
+    }
+
+    /**
+     * Builder helps to build hedge policy easily.
+     */
+    public static class Builder {
+        private final Set<Integer> types = new HashSet<>();
+        private double percentile = 0.95;
+        private double budget = 0.05;
+        private long minDelay = TimeUnit.MILLISECONDS.toNanos(1);
+
+        private Builder() {
+        }
+
+        /**
+         * build hedge policy.
+         *
+         * @return hedge policy
+         * @throws IllegalStateException if no task type is hedged
+         */
+        public HedgePolicy build() {
+            checkState(!types.isEmpty(), "no task type is hedged");
+            return new HedgePolicy(this);
+        }
+
+        /**
+         * enable hedging for task types, which should be idempotent.
+         *
+         * @param types task types
+         * @return this builder itself to chain
+         */
+        public Builder types(int... types) {
+            for (int type : types) {
+                this.types.add(type);
+            }
+            return this;
+        }
+
+        /**
+         * set percentile of execution times used as hedge delay.
+         *
+         * @param percentile percentile in (0, 1)
+         * @return this builder itself to chain
+         * @throws IllegalArgumentException if percentile is not in (0, 1)
+         */
+        public Builder percentile(double percentile) {
+            checkArgument(percentile > 0 && percentile < 1, "percentile should in (0,1): percentile=" + percentile);
+            this.percentile = percentile;
+            return this;
+        }
+
+        /**
+         * set global hedge budget.
+         *
+         * @param budget max hedges per execution of hedged types, e.g. 0.05 for 5% extra load
+         * @return this builder itself to chain
+         * @throws IllegalArgumentException if budget is not in (0, 1]
+         */
+        public Builder budget(double budget) {
+            checkArgument(budget > 0 && budget <= 1, "budget should in (0,1]: budget=" + budget);
+            this.budget = budget;
+            return this;
+        }
+
+        /**
+         * set min hedge delay, which avoids hedging executions that are fast anyway.
+         *
+         * @param minDelay min delay
+         * @param unit     time unit of min delay
+         * @return this builder itself to chain
+         * @throws IllegalArgumentException if minDelay is negative
+         */
+        public Builder minDelay(long minDelay, TimeUnit unit) {
+            checkArgument(minDelay >= 0, "min delay should greater than or equal to zero: minDelay=" + minDelay);
+            this.minDelay = unit.toNanos(minDelay);
+            return this;
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package com.github.skyao.taskengine.index;
+
+import java.util.Random;
+
+/**
+ * ordered multiset of (deadline, task id) which counts tasks before a deadline in O(log n).
+ * <p>
+ * It is a treap whose nodes know the size of their subtrees, so the rank of a deadline is found on one walk from
+ * the root.
+ * </p>
+ *
+ * @author Sky Ao
+ */
+class DeadlineTree {
+    private final Random random = new Random();
+    private Node root;
+
+    void insert(long deadline, long id) {
+        root = insert(root, new Node(deadline, id, random.nextInt()));
+    }
+
+    void remove(long deadline, long id) {
+        root = remove(root, deadline, id);
+    }
+
+    int size() {
+        return size(root);
+    }
+
+    /**
+     * count tasks with deadline before specified time.
+     */
+    int countBefore(long deadline) {
+        int count = 0;
+        Node node = root;
+        while (node != null) {
+            if (node.deadline < deadline) {
+                count += size(node.left) + 1;
+                node = node.right;
+            } else {
+                node = node.left;
+            }
+        }
+        return count;
+    }
+
+    private static Node insert(Node node, Node inserted) {
+        if (node == null) {
+            return inserted;
+        }
+        if (compare(inserted.deadline, inserted.id, node) < 0) {
+            node.left = insert(node.left, inserted);
+            if (node.left.weight > node.weight) {
+                node = rotateRight(node);
+            }
+        } else {
+            node.right = insert(node.right, inserted);
+            if (node.right.weight > node.weight) {
+                node = rotateLeft(node);
+            }
+        }
+        node.update();
+        return node;
+    }
+
+    private static Node remove(Node node, long deadline, long id) {
+        if (node == null) {
+            return null;
+        }
+        int compared = compare(deadline, id, node);
+        if (compared < 0) {
+            node.left = remove(node.left, deadline, id);
+        } else if (compared > 0) {
+            node.right = remove(node.right, deadline, id);
+        } else if (node.left == null) {
+            return node.right;
+        } else if (node.right == null) {
+            return node.left;
+        } else if (node.left.weight > node.right.weight) {
+            node = rotateRight(node);
+            node.right = remove(node.right, deadline, id);
+        } else {
+            node = rotateLeft(node);
+            node.left = remove(node.left, deadline, id);
+        }
+        node.update();
+        return node;
+    }
+
+    private static int compare(long deadline, long id, Node node) {
+        if (deadline != node.deadline) {
+            return deadline < node.deadline ? -1 : 1;
+        }
+        return id < node.id ? -1 : (id == node.id ? 0 : 1);
+    }
+
+    private static Node rotateRight(Node node) {
+        Node left = node.left;
+        node.left = left.right;
+        left.right = node;
+        node.update();
+        left.update();
+        return left;
+    }
+
+    private static Node rotateLeft(Node node) {
+        Node right = node.right;
+        node.right = right.left;
+        right.left = node;
+        node.update();
+        right.update();
+        return right;
+    }
+
+    private static int size(Node node) {
+        return node == null ? 0 : node.size;
+    }
+
+    private static final class Node {
+        private final long deadline;
+        private final long id;
+        private final int weight;
+        private int size = 1;
+        private Node left;
+        private Node right;
+
+        private Node(long deadline, long id, int weight) {
+            this.deadline = deadline;
+            this.id = id;
+            this.weight = weight;
+        }
+
+        private void update() {
+            size = size(left) + size(right) + 1;
+        }
+    }
+}
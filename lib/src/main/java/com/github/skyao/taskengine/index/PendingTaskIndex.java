@@ -0,0 +1,267 @@
+package com.github.skyao.taskengine.index;
+
+import com.github.skyao.taskengine.task.RuntimeTask;
+import com.github.skyao.taskengine.task.TaskPriority;
+import com.github.skyao.taskengine.task.TaskStatus;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * in-memory indexes over pending tasks, maintained incrementally by the engine.
+ * <pre>
+ * Indexes:
+ * (1) by task type, with task status and deadline inside each type
+ * (2) by priority band
+ * (3) by task status
+ * (4) by deadline inside each task status
+ * Counts by type, band and status are O(1), counts in a range of deadline are O(log n).
+ * </pre>
+ * <p>
+ * Index keys are captured when a task is added or updated, so the engine should call {@link #update(RuntimeTask)}
+ * after changing the status or priority of an indexed task.
+ * </p>
+ *
+ * @author Sky Ao
+ */
+public class PendingTaskIndex {
+    private static final int STATUSES = TaskStatus.values().length;
+
+    private final Map<RuntimeTask, Entry> entries = new HashMap<>();
+    private final Map<Integer, TypeIndex> types = new HashMap<>();
+    private final int[] bandCounts = new int[TaskPriority.BANDS];
+    private final StatusIndex statuses = new StatusIndex();
+
+    /**
+     * add a pending task.
+     *
+     * @param task task to add
+     * @throws NullPointerException if task is null
+     */
+    public synchronized void add(RuntimeTask task) {
+        checkNotNull(task, "task should not be null");
+        doAdd(task);
+    }
+
+    /**
+     * add a batch of pending tasks.
+     *
+     * @param tasks tasks to add
+     * @throws NullPointerException if tasks is null
+     */
+    public synchronized void addAll(Collection<RuntimeTask> tasks) {
+        checkNotNull(tasks, "tasks should not be null");
+        for (RuntimeTask task : tasks) {
+            doAdd(task);
+        }
+    }
+
+    private void doAdd(RuntimeTask task) {
+        if (entries.containsKey(task)) {
+            return;
+        }
+
+        int type = task.getTask().getContent().getType();
+        TypeIndex typeIndex = types.get(type);
+        if (typeIndex == null) {
+            typeIndex = new TypeIndex();
+            types.put(type, typeIndex);
+        }
+        Entry entry = new Entry(task, typeIndex);
+        entries.put(task, entry);
+        typeIndex.tasks.add(task);
+        index(entry);
+    }
+
+    /**
+     * remove a task which is not pending any more.
+     *
+     * @param task task to remove
+     */
+    public synchronized void remove(RuntimeTask task) {
+        Entry entry = entries.remove(task);
+        if (entry == null) {
+            return;
+        }
+
+        unindex(entry);
+        entry.typeIndex.tasks.remove(task);
+        if (entry.typeIndex.tasks.isEmpty()) {
+            types.remove(task.getTask().getContent().getType());
+        }
+    }
+
+    /**
+     * update index keys of a task after its status or priority is changed.
+     *
+     * @param task task to update
+     */
+    public synchronized void update(RuntimeTask task) {
+        Entry entry = entries.get(task);
+        if (entry == null) {
+            return;
+        }
+
+        unindex(entry);
+        entry.capture();
+        index(entry);
+    }
+
+    /**
+     * get count of all pending tasks.
+     *
+     * @return count of tasks
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * get count of pending tasks of specified type.
+     *
+     * @param type task type
+     * @return count of tasks
+     */
+    public synchronized int count(int type) {
+        TypeIndex typeIndex = types.get(type);
+        return typeIndex == null ? 0 : typeIndex.tasks.size();
+    }
+
+    /**
+     * get count of pending tasks in specified status.
+     *
+     * @param status task status
+     * @return count of tasks
+     */
+    public synchronized int count(TaskStatus status) {
+        return statuses.counts[status.ordinal()];
+    }
+
+    /**
+     * get count of pending tasks in specified priority band.
+     *
+     * @param band priority band
+     * @return count of tasks
+     * @throws IllegalArgumentException if band is invalid
+     * @see TaskPriority#bandOf(int)
+     */
+    public synchronized int countByBand(int band) {
+        checkArgument(band >= 0 && band < TaskPriority.BANDS, "invalid priority band=" + band);
+
+        return bandCounts[band];
+    }
+
+    /**
+     * get count of pending tasks in specified status with deadline in [from, to).
+     *
+     * @param status task status
+     * @param from   begin of deadline range in timestamp, inclusive
+     * @param to     end of deadline range in timestamp, exclusive
+     * @return count of tasks
+     */
+    public synchronized int count(TaskStatus status, long from, long to) {
+        return statuses.countByDeadline(status, from, to);
+    }
+
+    /**
+     * get count of pending tasks of specified type in specified status with deadline in [from, to).
+     *
+     * @param type   task type
+     * @param status task status
+     * @param from   begin of deadline range in timestamp, inclusive
+     * @param to     end of deadline range in timestamp, exclusive
+     * @return count of tasks
+     */
+    public synchronized int count(int type, TaskStatus status, long from, long to) {
+        TypeIndex typeIndex = types.get(type);
+        return typeIndex == null ? 0 : typeIndex.statuses.countByDeadline(status, from, to);
+    }
+
+    /**
+     * get pending tasks of specified type.
+     *
+     * @param type task type
+     * @return copy of pending tasks of this type
+     */
+    public synchronized List<RuntimeTask> tasks(int type) {
+        TypeIndex typeIndex = types.get(type);
+        return typeIndex == null ? new ArrayList<RuntimeTask>() : new ArrayList<>(typeIndex.tasks);
+    }
+
+    private void index(Entry entry) {
+        bandCounts[entry.band]++;
+        statuses.add(entry);
+        entry.typeIndex.statuses.add(entry);
+    }
+
+    private void unindex(Entry entry) {
+        bandCounts[entry.band]--;
+        statuses.remove(entry);
+        entry.typeIndex.statuses.remove(entry);
+    }
+
+    private static final class Entry {
+        private final RuntimeTask task;
+        private final TypeIndex typeIndex;
+        private int band;
+        private TaskStatus status;
+        private long deadline;
+
+        private Entry(RuntimeTask task, TypeIndex typeIndex) {
+            this.task = task;
+            this.typeIndex = typeIndex;
+            capture();
+        }
+
+        private void capture() {
+            band = task.getTask().getPlan().getPolicy().getBand();
+            status = task.getStatus();
+            long taskDeadline = task.getTask().getPlan().getDeadline();
+            deadline = taskDeadline > 0 ? taskDeadline : Long.MAX_VALUE;
+        }
+    }
+
+    private static final class TypeIndex {
+        private final Set<RuntimeTask> tasks = new HashSet<>();
+        private final StatusIndex statuses = new StatusIndex();
+    }
+
+    /**
+     * counts and deadline trees by task status.
+     */
+    private static final class StatusIndex {
+        private final int[] counts = new int[STATUSES];
+        private final DeadlineTree[] deadlines = new DeadlineTree[STATUSES];
+
+        private void add(Entry entry) {
+            int status = entry.status.ordinal();
+            counts[status]++;
+            if (deadlines[status] == null) {
+                deadlines[status] = new DeadlineTree();
+            }
+            deadlines[status].insert(entry.deadline, entry.task.getId());
+        }
+
+        private void remove(Entry entry) {
+            int status = entry.status.ordinal();
+            counts[status]--;
+            deadlines[status].remove(entry.deadline, entry.task.getId());
+        }
+
+        private int countByDeadline(TaskStatus status, long from, long to) {
+            DeadlineTree tree = deadlines[status.ordinal()];
+            if (tree == null || from >= to) {
+                return 0;
+            }
+            return tree.countBefore(to) - tree.countBefore(from);
+        }
+    }
+}
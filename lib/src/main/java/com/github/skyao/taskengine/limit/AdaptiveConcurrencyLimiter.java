@@ -0,0 +1,324 @@
+package com.github.skyao.taskengine.limit;
+
+import com.github.skyao.taskengine.task.RuntimeTask;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * adaptive concurrency limits for each task type, controlled by AIMD on observed latency and failure.
+ * <p>
+ * Each task type starts from the initial limit. When an execution finishes quickly and successfully while the type
+ * is using most of its limit, the limit grows by 1/limit, which is about one more slot for each limit's worth of
+ * executions. When an execution fails, or its latency exceeds the baseline latency multiplied by the tolerance, the
+ * limit is multiplied by the backoff ratio, at most once for each limit's worth of executions. The baseline is the
+ * min latency of the last window of executions, so it follows slow changes of the downstream service.
+ * </p>
+ * <p>
+ * A task which exceeds the limit of its type is parked instead of blocking the worker, and handed back when an
+ * execution of the same type releases its slot. The slot is reserved for the handed back task, so its next acquiring
+ * always succeeds. If it never executes, e.g. it is canceled in the pending queue, the reserved slot must be given
+ * back by {@link #abandon(int, RuntimeTask)}, otherwise the tasks parked behind it may wait for good. Finished tasks
+ * are skipped when parked tasks are handed back.
+ * </p>
+ *
+ * @author Sky Ao
+ */
+public class AdaptiveConcurrencyLimiter {
+    private static final int BASELINE_WINDOW = 1000;
+
+    private final ConcurrentMap<Integer, TypeLimit> limits = new ConcurrentHashMap<>();
+    private final int initialLimit;
+    private final int minLimit;
+    private final int maxLimit;
+    private final double backoffRatio;
+    private final double tolerance;
+
+    private AdaptiveConcurrencyLimiter(Builder builder) {
+        this.initialLimit = builder.initialLimit;
+        this.minLimit = builder.minLimit;
+        this.maxLimit = builder.maxLimit;
+        this.backoffRatio = builder.backoffRatio;
+        this.tolerance = builder.tolerance;
+    }
+
+    /**
+     * try to acquire an execution slot for a task.
+     * <p>
+     * If the limit of its type is reached, the task is parked and false is returned.
+     * </p>
+     *
+     * @param type task type
+     * @param task task to execute
+     * @return true if slot is acquired, false if task is parked
+     */
+    public boolean tryAcquire(int type, RuntimeTask task) {
+        return limitOf(type).tryAcquire(task);
+    }
+
+    /**
+     * release the execution slot and update the limit by the result of this execution.
+     *
+     * @param type    task type
+     * @param latency latency of this execution in nanoseconds
+     * @param failed  true if this execution failed
+     * @return a parked task of the same type which should be dispatched again with a slot reserved, null if none
+     */
+    public RuntimeTask release(int type, long latency, boolean failed) {
+        return limitOf(type).release(latency, failed);
+    }
+
+    /**
+     * give back the slot reserved for a handed back task which will not execute, e.g. it is finished before it
+     * begins. Nothing happens if no slot is reserved for the task.
+     *
+     * @param type task type
+     * @param task task which will not execute
+     * @return a parked task of the same type which should be dispatched again with the slot reserved, null if none
+     */
+    public RuntimeTask abandon(int type, RuntimeTask task) {
+        TypeLimit limit = limits.get(type);
+        return limit == null ? null : limit.abandon(task);
+    }
+
+    /**
+     * get count of parked tasks of all the task types.
+     *
+     * @return count of parked tasks
+     */
+    public int getParkedCount() {
+        int count = 0;
+        for (TypeLimit limit : limits.values()) {
+            count += limit.parked();
+        }
+        return count;
+    }
+
+    /**
+     * get current concurrency limit of specified task type.
+     *
+     * @param type task type
+     * @return current limit
+     */
+    public int getLimit(int type) {
+        TypeLimit limit = limits.get(type);
+        return limit == null ? initialLimit : limit.currentLimit();
+    }
+
+    /**
+     * get current concurrency limits of all the task types which have been executed.
+     *
+     * @return current limits by task type
+     */
+    public Map<Integer, Integer> getLimits() {
+        Map<Integer, Integer> result = new HashMap<>();
+        for (Map.Entry<Integer, TypeLimit> entry : limits.entrySet()) {
+            result.put(entry.getKey(), entry.getValue().currentLimit());
+        }
+        return result;
+    }
+
+    /**
+     * get count of executing tasks of specified task type.
+     *
+     * @param type task type
+     * @return count of executing tasks
+     */
+    public int getInFlight(int type) {
+        TypeLimit limit = limits.get(type);
+        return limit == null ? 0 : limit.inFlight();
+    }
+
+    private TypeLimit limitOf(int type) {
+        TypeLimit limit = limits.get(type);
+        if (limit == null) {
+            TypeLimit created = new TypeLimit(initialLimit);
+            limit = limits.putIfAbsent(type, created);
+            if (limit == null) {
+                limit = created;
+            }
+        }
+        return limit;
+    }
+
+    private final class TypeLimit {
+        private final ArrayDeque<RuntimeTask> parked = new ArrayDeque<>();
+        private final Set<RuntimeTask> reserved =
+                Collections.newSetFromMap(new IdentityHashMap<RuntimeTask, Boolean>());
+        private double limit;
+        private int inFlight;
+        private long baseline = Long.MAX_VALUE;
+        private long windowMin = Long.MAX_VALUE;
+        private int windowCount;
+        private int sinceDecrease;
+
+        private TypeLimit(int limit) {
+            this.limit = limit;
+        }
+
+        private synchronized boolean tryAcquire(RuntimeTask task) {
+            if (reserved.remove(task)) {
+                return true;
+            }
+            if (inFlight >= (int) limit) {
+                parked.addLast(task);
+                return false;
+            }
+            inFlight++;
+            return true;
+        }
+
+        private synchronized RuntimeTask release(long latency, boolean failed) {
+            inFlight--;
+            sinceDecrease++;
+
+            windowMin = Math.min(windowMin, latency);
+            if (++windowCount >= BASELINE_WINDOW) {
+                baseline = windowMin;
+                windowMin = Long.MAX_VALUE;
+                windowCount = 0;
+            }
+            long currentBaseline = Math.min(baseline, windowMin);
+
+            boolean congested = failed || latency > currentBaseline * tolerance;
+            if (congested) {
+                if (sinceDecrease >= (int) limit) {
+                    limit = Math.max(minLimit, limit * backoffRatio);
+                    sinceDecrease = 0;
+                }
+            } else if (inFlight * 2 >= (int) limit) {
+                limit = Math.min(maxLimit, limit + 1 / limit);
+            }
+
+            return inFlight < (int) limit ? handOver() : null;
+        }
+
+        private synchronized RuntimeTask abandon(RuntimeTask task) {
+            if (!reserved.remove(task)) {
+                return null;
+            }
+            inFlight--;
+            return inFlight < (int) limit ? handOver() : null;
+        }
+
+        /**
+         * take the first parked task which is not finished, and reserve a slot for it.
+         */
+        private RuntimeTask handOver() {
+            RuntimeTask task;
+            while ((task = parked.pollFirst()) != null) {
+                if (!task.isFinished()) {
+                    inFlight++;
+                    reserved.add(task);
+                    return task;
+                }
+            }
+            return null;
+        }
+
+        private synchronized int parked() {
+            return parked.size();
+        }
+
+        private synchronized int currentLimit() {
+            return (int) limit;
+        }
+
+        private synchronized int inFlight() {
+            return inFlight;
+        }
+    }
+
+    /**
+     * create a new Builder.
+     *
+     * @return new instance of Builder
+     */
+    public static Builder newBuilder() {
+        return new Builder();
+    }
+
+    /**
+     * Builder helps to build adaptive concurrency limiter easily.
+     */
+    public static class Builder {
+        private int initialLimit = 10;
+        private int minLimit = 1;
+        private int maxLimit = 200;
+        private double backoffRatio = 0.9;
+        private double tolerance = 2.0;
+
+        /**
+         * build adaptive concurrency limiter.
+         *
+         * @return adaptive concurrency limiter
+         * @throws IllegalArgumentException if initial limit is not in [min limit, max limit]
+         */
+        public AdaptiveConcurrencyLimiter build() {
+            checkArgument(minLimit <= initialLimit && initialLimit <= maxLimit,
+                    "initial limit should in [min,max]: initial=" + initialLimit + ",min=" + minLimit + ",max=" + maxLimit);
+            return new AdaptiveConcurrencyLimiter(this);
+        }
+
+        /**
+         * set initial limit of each task type.
+         *
+         * @param initialLimit initial limit
+         * @return this builder itself to chain
+         */
+        public Builder initialLimit(int initialLimit) {
+            this.initialLimit = initialLimit;
+            return this;
+        }
+
+        /**
+         * set bounds of limit.
+         *
+         * @param minLimit min limit
+         * @param maxLimit max limit
+         * @return this builder itself to chain
+         * @throws IllegalArgumentException if minLimit is not greater than zero or greater than maxLimit
+         */
+        public Builder bounds(int minLimit, int maxLimit) {
+            checkArgument(minLimit > 0, "min limit should greater than zero: min=" + minLimit);
+            checkArgument(minLimit <= maxLimit, "min limit should not greater than max limit: min=" + minLimit + ",max=" + maxLimit);
+            this.minLimit = minLimit;
+            this.maxLimit = maxLimit;
+            return this;
+        }
+
+        /**
+         * set ratio to multiply the limit by on congestion.
+         *
+         * @param backoffRatio backoff ratio in (0, 1)
+         * @return this builder itself to chain
+         * @throws IllegalArgumentException if backoffRatio is not in (0, 1)
+         */
+        public Builder backoffRatio(double backoffRatio) {
+            checkArgument(backoffRatio > 0 && backoffRatio < 1, "backoff ratio should in (0,1): ratio=" + backoffRatio);
+            this.backoffRatio = backoffRatio;
+            return this;
+        }
+
+        /**
+         * set how many times of the baseline latency is considered as congestion.
+         *
+         * @param tolerance latency tolerance, greater than 1
+         * @return this builder itself to chain
+         * @throws IllegalArgumentException if tolerance is not greater than 1
+         */
+        public Builder tolerance(double tolerance) {
+            checkArgument(tolerance > 1, "tolerance should greater than 1: tolerance=" + tolerance);
+            this.tolerance = tolerance;
+            return this;
+        }
+    }
+}
@@ -0,0 +1,270 @@
+package com.github.skyao.taskengine.listener;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * dispatcher which delivers completion records to listeners in batches on its own thread.
+ * <p>
+ * Worker threads publish records into a bounded multi-producer single-consumer ring buffer without taking any lock:
+ * a producer claims a sequence by CAS and then publishes the record into its slot. The dispatcher thread drains up
+ * to one batch at a time and hands it to every listener.
+ * </p>
+ * <pre>
+ * When the buffer is full because listeners are too slow:
+ * (1) DROP: the record is dropped and counted, workers are never stalled
+ * (2) BLOCK: the worker waits until there is free space, which slows down execution to the speed of listeners
+ * </pre>
+ *
+ * @author Sky Ao
+ */
+public class CompletionDispatcher {
+    private static final Logger LOGGER = LoggerFactory.getLogger(CompletionDispatcher.class);
+
+    /**
+     * what to do when buffer is full.
+     */
+    public enum OverflowPolicy {
+        /**
+         * drop the record.
+         */
+        DROP,
+
+        /**
+         * wait until there is free space.
+         */
+        BLOCK
+    }
+
+    private final List<CompletionListener> listeners = new CopyOnWriteArrayList<>();
+    private final AtomicReferenceArray<CompletionRecord> slots;
+    private final int mask;
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final int batchSize;
+    private final OverflowPolicy overflowPolicy;
+    private final Thread thread;
+    private final List<CompletionRecord> reentrant = new ArrayList<>();
+
+    private volatile long head;
+    private volatile boolean running;
+
+    private CompletionDispatcher(Builder builder) {
+        int capacity = Integer.highestOneBit(builder.capacity - 1) << 1;
+        this.slots = new AtomicReferenceArray<>(capacity);
+        this.mask = capacity - 1;
+        this.batchSize = builder.batchSize;
+        this.overflowPolicy = builder.overflowPolicy;
+        this.thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                dispatch();
+            }
+        }, "task-engine-completion");
+        this.thread.setDaemon(true);
+    }
+
+    /**
+     * add a listener.
+     *
+     * @param listener completion listener
+     * @throws NullPointerException if listener is null
+     */
+    public void addListener(CompletionListener listener) {
+        checkNotNull(listener, "completion listener should not be null");
+        listeners.add(listener);
+    }
+
+    /**
+     * remove a listener.
+     *
+     * @param listener completion listener
+     */
+    public void removeListener(CompletionListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * start dispatcher thread.
+     *
+     * @throws IllegalStateException if dispatcher is started already
+     */
+    public synchronized void start() {
+        checkState(!running, "completion dispatcher is started already");
+        running = true;
+        thread.start();
+    }
+
+    /**
+     * stop dispatcher thread after records in buffer are delivered.
+     */
+    public synchronized void shutdown() {
+        running = false;
+        LockSupport.unpark(thread);
+    }
+
+    /**
+     * publish a completion record.
+     * <p>
+     * Records published by listeners on the dispatcher thread never wait for the buffer, they are delivered in the
+     * next batch, so a blocking dispatcher can not deadlock on itself.
+     * </p>
+     *
+     * @param record completion record
+     * @return true if record is published, false if it is dropped
+     */
+    public boolean publish(CompletionRecord record) {
+        if (Thread.currentThread() == thread) {
+            reentrant.add(record);
+            return true;
+        }
+        while (true) {
+            long sequence = tail.get();
+            if (sequence - head >= slots.length()) {
+                if (overflowPolicy == OverflowPolicy.DROP || !running) {
+                    dropped.incrementAndGet();
+                    return false;
+                }
+                LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(50));
+                continue;
+            }
+            if (tail.compareAndSet(sequence, sequence + 1)) {
+                slots.lazySet((int) sequence & mask, record);
+                return true;
+            }
+        }
+    }
+
+    /**
+     * get count of dropped records.
+     *
+     * @return count of dropped records
+     */
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    /**
+     * get what to do when buffer is full.
+     *
+     * @return overflow policy
+     */
+    public OverflowPolicy getOverflowPolicy() {
+        return overflowPolicy;
+    }
+
+    private void dispatch() {
+        List<CompletionRecord> batch = new ArrayList<>(batchSize);
+        while (running || head != tail.get() || !reentrant.isEmpty()) {
+            drain(batch);
+            if (batch.isEmpty()) {
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+                continue;
+            }
+            for (CompletionListener listener : listeners) {
+                try {
+                    listener.onCompleted(batch);
+                } catch (RuntimeException e) {
+                    LOGGER.error("completion listener fails: " + listener, e);
+                }
+            }
+            batch.clear();
+        }
+    }
+
+    private void drain(List<CompletionRecord> batch) {
+        batch.addAll(reentrant);
+        reentrant.clear();
+        long sequence = head;
+        while (batch.size() < batchSize) {
+            int index = (int) sequence & mask;
+            CompletionRecord record = slots.get(index);
+            if (record == null) {
+                // empty, or the producer has claimed the slot but not published yet
+                break;
+            }
+            slots.lazySet(index, null);
+            batch.add(record);
+            sequence++;
+        }
+        head = sequence;
+    }
+
+    /**
+     * create a new Builder.
+     *
+     * @return new instance of Builder
+     */
+    public static Builder newBuilder() {
+        return new Builder();
+    }
+
+    /**
+     * Builder helps to build completion dispatcher easily.
+     */
+    public static class Builder {
+        private int capacity = 8192;
+        private int batchSize = 256;
+        private OverflowPolicy overflowPolicy = OverflowPolicy.DROP;
+
+        /**
+         * build completion dispatcher.
+         *
+         * @return completion dispatcher, not started yet
+         */
+        public CompletionDispatcher build() {
+            return new CompletionDispatcher(this);
+        }
+
+        /**
+         * set capacity of buffer, which is rounded up to power of 2.
+         *
+         * @param capacity buffer capacity
+         * @return this builder itself to chain
+         * @throws IllegalArgumentException if capacity is not in [2, 2^30]
+         */
+        public Builder capacity(int capacity) {
+            checkArgument(capacity >= 2 && capacity <= (1 << 30), "capacity should in [2,2^30]: capacity=" + capacity);
+            this.capacity = capacity;
+            return this;
+        }
+
+        /**
+         * set max count of records delivered in one batch.
+         *
+         * @param batchSize batch size
+         * @return this builder itself to chain
+         * @throws IllegalArgumentException if batchSize is not greater than zero
+         */
+        public Builder batchSize(int batchSize) {
+            checkArgument(batchSize > 0, "batch size should greater than zero: batchSize=" + batchSize);
+            this.batchSize = batchSize;
+            return this;
+        }
+
+        /**
+         * set what to do when buffer is full.
+         *
+         * @param overflowPolicy overflow policy
+         * @return this builder itself to chain
+         * @throws NullPointerException if overflowPolicy is null
+         */
+        public Builder overflowPolicy(OverflowPolicy overflowPolicy) {
+            checkNotNull(overflowPolicy, "overflow policy should not be null");
+            this.overflowPolicy = overflowPolicy;
+            return this;
+        }
+    }
+}
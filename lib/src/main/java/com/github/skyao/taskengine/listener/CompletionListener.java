@@ -0,0 +1,22 @@
+package com.github.skyao.taskengine.listener;
+
+import java.util.List;
+
+/**
+ * listener of finished tasks.
+ * <p>
+ * Listeners are called on the dispatcher thread, never on worker threads.
+ * </p>
+ *
+ * @author Sky Ao
+ * @see CompletionDispatcher
+ */
+public interface CompletionListener {
+
+    /**
+     * receive a batch of completion records.
+     *
+     * @param records completion records, only valid during this call
+     */
+    void onCompleted(List<CompletionRecord> records);
+}
@@ -0,0 +1,85 @@
+package com.github.skyao.taskengine.listener;
+
+import com.github.skyao.taskengine.task.RuntimeTask;
+import com.github.skyao.taskengine.task.TaskResult;
+
+/**
+ * record of a finished task.
+ *
+ * @author Sky Ao
+ */
+public class CompletionRecord {
+    private final RuntimeTask task;
+    private final TaskResult result;
+    private final long queueWait;
+    private final long executionTime;
+    private final long finishedAt;
+
+    /**
+     * create completion record.
+     *
+     * @param task          finished task
+     * @param result        task result
+     * @param queueWait     time waited in pending queue before last execution in nanoseconds, 0 if never executed
+     * @param executionTime time of last execution in nanoseconds, 0 if never executed
+     * @param finishedAt    finish time in timestamp
+     */
+    public CompletionRecord(RuntimeTask task, TaskResult result, long queueWait, long executionTime, long finishedAt) {
+        this.task = task;
+        this.result = result;
+        this.queueWait = queueWait;
+        this.executionTime = executionTime;
+        this.finishedAt = finishedAt;
+    }
+
+    /**
+     * get finished task.
+     *
+     * @return finished task
+     */
+    public RuntimeTask getTask() {
+        return task;
+    }
+
+    /**
+     * get task result.
+     *
+     * @return task result
+     */
+    public TaskResult getResult() {
+        return result;
+    }
+
+    /**
+     * get time waited in pending queue before last execution.
+     *
+     * @return queue wait in nanoseconds, 0 if never executed
+     */
+    public long getQueueWait() {
+        return queueWait;
+    }
+
+    /**
+     * get time of last execution.
+     *
+     * @return execution time in nanoseconds, 0 if never executed
+     */
+    public long getExecutionTime() {
+        return executionTime;
+    }
+
+    /**
+     * get finish time.
+     *
+     * @return finish time in timestamp
+     */
+    public long getFinishedAt() {
+        return finishedAt;
+    }
+
+    @Override
+    public String toString() {
+        return "CompletionRecord[id=" + task.getId() + ",result=" + result + ",queueWait=" + queueWait
+                + ",executionTime=" + executionTime + "]";
+    }
+}
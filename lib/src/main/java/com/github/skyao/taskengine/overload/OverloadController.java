@@ -0,0 +1,238 @@
+package com.github.skyao.taskengine.overload;
+
+import com.github.skyao.taskengine.task.TaskPriority;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * overload controller which sheds low priority tasks when the engine is saturated.
+ * <p>
+ * The controller watches the depth of the pending queue and the time tasks wait in it. Once either of them crosses
+ * its high watermark, one more priority band is shed on each evaluation, starting from the lowest band. Only when
+ * both of them fall below their low watermarks, one band is restored on each evaluation. Between the two watermarks
+ * the shed level is kept as it is, so the engine does not flap around a single threshold.
+ * </p>
+ * <p>
+ * Priority bands are the ones of {@link TaskPriority#bandOf(int)}, shed from the lowest band up to the band below
+ * the highest one. Tasks with priority not lower than the max shed priority are never shed.
+ * </p>
+ *
+ * @author Sky Ao
+ */
+public class OverloadController {
+
+    private static final int[] BAND_CEILINGS = bandCeilings();
+
+    private final int highQueueDepth;
+    private final int lowQueueDepth;
+    private final long highQueueWait;
+    private final long lowQueueWait;
+    private final long evaluateInterval;
+    private final int maxShedLevel;
+
+    private final AtomicLong maxWaitInWindow = new AtomicLong();
+    private final AtomicBoolean evaluating = new AtomicBoolean();
+    private volatile long lastEvaluation = System.nanoTime();
+    private volatile int shedLevel = 0;
+
+    private OverloadController(Builder builder) {
+        this.highQueueDepth = builder.highQueueDepth;
+        this.lowQueueDepth = builder.lowQueueDepth;
+        this.highQueueWait = builder.highQueueWait;
+        this.lowQueueWait = builder.lowQueueWait;
+        this.evaluateInterval = builder.evaluateInterval;
+
+        int level = 0;
+        while (level < BAND_CEILINGS.length && BAND_CEILINGS[level] <= builder.maxShedPriority) {
+            level++;
+        }
+        this.maxShedLevel = level;
+    }
+
+    /**
+     * check if a task with specified priority can be admitted into the pending queue.
+     *
+     * @param priority   task priority
+     * @param queueDepth current depth of pending queue
+     * @return true if task is admitted, false if it should be rejected
+     */
+    public boolean admit(int priority, int queueDepth) {
+        evaluateIfNecessary(queueDepth);
+        return priority >= shedPriority();
+    }
+
+    /**
+     * check if a task just taken from the pending queue should be shed instead of being executed.
+     *
+     * @param priority   task priority
+     * @param queueWait  time the task has waited in pending queue, in nanoseconds
+     * @param queueDepth current depth of pending queue
+     * @return true if task should be shed
+     */
+    public boolean shed(int priority, long queueWait, int queueDepth) {
+        long max = maxWaitInWindow.get();
+        while (queueWait > max && !maxWaitInWindow.compareAndSet(max, queueWait)) {
+            max = maxWaitInWindow.get();
+        }
+        evaluateIfNecessary(queueDepth);
+        return priority < shedPriority();
+    }
+
+    /**
+     * get the priority below which tasks are shed now.
+     *
+     * @return shed priority, LOWEST if nothing is shed
+     */
+    public int shedPriority() {
+        int level = shedLevel;
+        return level == 0 ? TaskPriority.LOWEST : BAND_CEILINGS[level - 1];
+    }
+
+    /**
+     * get count of priority bands which are shed now.
+     *
+     * @return shed level, 0 if nothing is shed
+     */
+    public int getShedLevel() {
+        return shedLevel;
+    }
+
+    /**
+     * get ceilings of the priority bands which may be shed, the ceiling of a band is the lowest priority of the next
+     * band.
+     */
+    private static int[] bandCeilings() {
+        int[] ceilings = new int[TaskPriority.BANDS - 1];
+        for (int priority = TaskPriority.LOWEST + 1; priority <= TaskPriority.HIGHEST; priority++) {
+            int band = TaskPriority.bandOf(priority - 1);
+            if (TaskPriority.bandOf(priority) != band) {
+                ceilings[band] = priority;
+            }
+        }
+        return ceilings;
+    }
+
+    private void evaluateIfNecessary(int queueDepth) {
+        long now = System.nanoTime();
+        if (now - lastEvaluation < evaluateInterval || !evaluating.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            if (now - lastEvaluation >= evaluateInterval) {
+                evaluate(queueDepth, maxWaitInWindow.getAndSet(0));
+                lastEvaluation = now;
+            }
+        } finally {
+            evaluating.set(false);
+        }
+    }
+
+    private void evaluate(int queueDepth, long queueWait) {
+        boolean overloaded = queueDepth > highQueueDepth || queueWait > highQueueWait;
+        boolean recovered = queueDepth < lowQueueDepth && queueWait < lowQueueWait;
+        if (overloaded && shedLevel < maxShedLevel) {
+            shedLevel++;
+        } else if (recovered && shedLevel > 0) {
+            shedLevel--;
+        }
+    }
+
+    /**
+     * create a new Builder.
+     *
+     * @return new instance of Builder
+     */
+    public static Builder newBuilder() {
+        return new Builder();
+    }
+
+    /**
+     * Builder helps to build overload controller easily.
+     */
+    public static class Builder {
+        private int highQueueDepth = 10000;
+        private int lowQueueDepth = 5000;
+        private long highQueueWait = TimeUnit.SECONDS.toNanos(1);
+        private long lowQueueWait = TimeUnit.MILLISECONDS.toNanos(200);
+        private long evaluateInterval = TimeUnit.MILLISECONDS.toNanos(100);
+        private int maxShedPriority = TaskPriority.HIGH;
+
+        /**
+         * build overload controller.
+         *
+         * @return overload controller
+         * @throws IllegalArgumentException if any low watermark is greater than its high watermark
+         */
+        public OverloadController build() {
+            checkArgument(lowQueueDepth <= highQueueDepth,
+                    "low queue depth should not greater than high queue depth: low=" + lowQueueDepth + ",high=" + highQueueDepth);
+            checkArgument(lowQueueWait <= highQueueWait,
+                    "low queue wait should not greater than high queue wait: low=" + lowQueueWait + ",high=" + highQueueWait);
+            return new OverloadController(this);
+        }
+
+        /**
+         * set queue depth watermarks.
+         *
+         * @param high queue depth above which engine is overloaded
+         * @param low  queue depth below which engine is recovered
+         * @return this builder itself to chain
+         * @throws IllegalArgumentException if low is negative
+         */
+        public Builder queueDepth(int high, int low) {
+            checkArgument(low >= 0, "low queue depth should greater than or equal to zero: low=" + low);
+            this.highQueueDepth = high;
+            this.lowQueueDepth = low;
+            return this;
+        }
+
+        /**
+         * set queue wait watermarks in milliseconds.
+         *
+         * @param high queue wait above which engine is overloaded
+         * @param low  queue wait below which engine is recovered
+         * @return this builder itself to chain
+         * @throws IllegalArgumentException if low is negative
+         */
+        public Builder queueWaitInMilliseconds(long high, long low) {
+            checkArgument(low >= 0, "low queue wait should greater than or equal to zero: low=" + low);
+            this.highQueueWait = TimeUnit.MILLISECONDS.toNanos(high);
+            this.lowQueueWait = TimeUnit.MILLISECONDS.toNanos(low);
+            return this;
+        }
+
+        /**
+         * set interval between two evaluations in milliseconds.
+         * <p>
+         * At most one band is shed or restored on each evaluation, so this interval also controls how fast the
+         * service is restored.
+         * </p>
+         *
+         * @param milliseconds interval in milliseconds
+         * @return this builder itself to chain
+         * @throws IllegalArgumentException if interval is negative
+         */
+        public Builder evaluateIntervalInMilliseconds(long milliseconds) {
+            checkArgument(milliseconds >= 0, "evaluate interval should greater than or equal to zero: interval=" + milliseconds);
+            this.evaluateInterval = TimeUnit.MILLISECONDS.toNanos(milliseconds);
+            return this;
+        }
+
+        /**
+         * set max shed priority, tasks with priority not lower than it are never shed.
+         *
+         * @param priority max shed priority
+         * @return this builder itself to chain
+         * @throws IllegalArgumentException if priority is invalid
+         */
+        public Builder maxShedPriority(int priority) {
+            checkArgument(TaskPriority.isValidPriority(priority), "invalid task priority=" + priority);
+            this.maxShedPriority = priority;
+            return this;
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.github.skyao.taskengine.queue;
+
+import com.github.skyao.taskengine.task.TaskPriority;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * aging policy to prevent low priority tasks from starving.
+ * <p>
+ * On every interval, the effective priority of all waiting tasks below the cap is raised by the step.
+ * For example, with interval=1000, step=8 and cap=HIGH, a LOWEST task which has waited for 30 seconds
+ * will compete with HIGH tasks.
+ * </p>
+ *
+ * @author Sky Ao
+ * @see PriorityTaskQueue#age(int, int)
+ */
+public class AgingPolicy {
+    private final long interval;
+    private final int step;
+    private final int cap;
+
+    /**
+     * create aging policy.
+     *
+     * @param interval aging interval in milliseconds
+     * @param step     count of priority levels to raise on each interval
+     * @param cap      max effective priority aging can raise a task to
+     * @throws IllegalArgumentException if interval or step is not greater than zero, or cap is invalid
+     */
+    public AgingPolicy(long interval, int step, int cap) {
+        checkArgument(interval > 0, "aging interval should greater than zero: interval=" + interval);
+        checkArgument(step > 0, "aging step should greater than zero: step=" + step);
+        checkArgument(TaskPriority.isValidPriority(cap), "invalid task priority=" + cap);
+
+        this.interval = interval;
+        this.step = step;
+        this.cap = cap;
+    }
+
+    /**
+     * get aging interval.
+     *
+     * @return aging interval in milliseconds
+     */
+    public long getInterval() {
+        return interval;
+    }
+
+    /**
+     * get count of priority levels to raise on each interval.
+     *
+     * @return aging step
+     */
+    public int getStep() {
+        return step;
+    }
+
+    /**
+     * get max effective priority aging can raise a task to.
+     *
+     * @return aging cap
+     */
+    public int getCap() {
+        return cap;
+    }
+
+    @Override
+    public String toString() {
+        return "{interval=" + interval + ",step=" + step + ",cap=" + cap + "}";
+    }
+}
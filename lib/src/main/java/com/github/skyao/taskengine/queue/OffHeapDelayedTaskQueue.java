@@ -0,0 +1,284 @@
+package com.github.skyao.taskengine.queue;
+
+import com.github.skyao.taskengine.store.TaskCodec;
+import com.github.skyao.taskengine.task.RuntimeTask;
+import com.github.skyao.taskengine.task.Task;
+import com.github.skyao.taskengine.task.TaskContext;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * queue of tasks which start in the future, kept off heap until they are due.
+ * <p>
+ * Tasks are stored in their serialized form in slabs of direct memory, so millions of future tasks cost neither
+ * heap objects nor old generation GC. The index on top of them is a binary min-heap of primitives: the start time
+ * of the task and the handle of its record. A handle table maps each handle to the address of its record, which is
+ * the slab index in high 32 bits and the offset in low 32 bits. Tasks become heap objects again only when they are
+ * drained out as due.
+ * </p>
+ * <p>
+ * A slab is reused once all the records in it are drained. A slab which is mostly drained, e.g. only a few far
+ * future records are left in it, is compacted: its live records are copied into the current slab and it is reused at
+ * once. So direct memory is kept at most about 4 times of live records plus one slab, even with mixed delays. Each
+ * record keeps its handle, so compaction walks the records of the slab only and moves them by the handle table, the
+ * min-heap is not touched.
+ * </p>
+ *
+ * @author Sky Ao
+ * @see TaskCodec
+ */
+public class OffHeapDelayedTaskQueue {
+    private static final int RECORD_HEADER_SIZE = 16;
+    private static final int COMPACT_RATIO = 4;
+
+    private final int slabSize;
+    private final List<Slab> slabs = new ArrayList<>();
+    private final ArrayDeque<Slab> freeSlabs = new ArrayDeque<>();
+    private Slab current;
+
+    private long[] starts = new long[1024];
+    private int[] handles = new int[1024];
+    private int size;
+
+    private long[] addresses = new long[1024];
+    private int[] freeHandles = new int[1024];
+    private int freeHandleCount;
+    private int nextHandle;
+
+    /**
+     * create queue with slabs of 16 MB.
+     */
+    public OffHeapDelayedTaskQueue() {
+        this(16 << 20);
+    }
+
+    /**
+     * create queue with specified slab size.
+     *
+     * @param slabSize size of each slab in bytes, which also limits the size of a serialized task
+     * @throws IllegalArgumentException if slab size is smaller than 1 KB
+     */
+    public OffHeapDelayedTaskQueue(int slabSize) {
+        checkArgument(slabSize >= 1024, "slab size should not smaller than 1024: slabSize=" + slabSize);
+
+        this.slabSize = slabSize;
+    }
+
+    /**
+     * put a task into this queue, ordered by its start time.
+     *
+     * @param id   task id
+     * @param task task to put
+     * @throws NullPointerException     if task is null
+     * @throws IllegalArgumentException if the serialized task is larger than slab size
+     */
+    public void offer(long id, Task task) {
+        checkNotNull(task, "task should not be null");
+
+        byte[] data = TaskCodec.encode(task);
+        int length = RECORD_HEADER_SIZE + data.length;
+        checkArgument(length <= slabSize, "task is too large to put off heap: size=" + length);
+
+        synchronized (this) {
+            if (current == null || current.buffer.remaining() < length) {
+                current = newSlab();
+            }
+            int handle = allocateHandle();
+            addresses[handle] = ((long) current.index << 32) | current.buffer.position();
+            current.buffer.putInt(data.length).putLong(id).putInt(handle).put(data);
+            current.live++;
+            current.liveBytes += length;
+
+            push(task.getPlan().getStart(), handle);
+        }
+    }
+
+    /**
+     * drain due tasks into specified collection.
+     *
+     * @param now      current time in timestamp
+     * @param due      collection to receive due tasks
+     * @param maxCount max count of tasks to drain
+     * @return count of drained tasks
+     */
+    public synchronized int drainTo(long now, Collection<? super RuntimeTask> due, int maxCount) {
+        int count = 0;
+        while (count < maxCount && size > 0 && starts[0] <= now) {
+            int handle = handles[0];
+            long address = addresses[handle];
+            pop();
+            freeHandle(handle);
+
+            Slab slab = slabs.get((int) (address >>> 32));
+            ByteBuffer record = slab.buffer.duplicate();
+            record.position((int) address);
+            int length = record.getInt();
+            long id = record.getLong();
+            record.position((int) address + RECORD_HEADER_SIZE);
+            record.limit(record.position() + length);
+            due.add(new RuntimeTask(id, TaskCodec.decode(record), new TaskContext()));
+            count++;
+
+            slab.liveBytes -= RECORD_HEADER_SIZE + length;
+            if (--slab.live == 0) {
+                slab.buffer.clear();
+                if (slab != current) {
+                    freeSlabs.push(slab);
+                }
+            } else if (slab != current && slab.liveBytes <= slabSize / COMPACT_RATIO) {
+                compact(slab);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * get start time of the earliest task.
+     *
+     * @return start time in timestamp, Long.MAX_VALUE if this queue is empty
+     */
+    public synchronized long nextStart() {
+        return size == 0 ? Long.MAX_VALUE : starts[0];
+    }
+
+    /**
+     * get count of tasks in this queue.
+     *
+     * @return count of tasks
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * get direct memory allocated by this queue.
+     *
+     * @return allocated bytes
+     */
+    public synchronized long getAllocatedBytes() {
+        return (long) slabs.size() * slabSize;
+    }
+
+    private Slab newSlab() {
+        Slab slab = freeSlabs.poll();
+        if (slab == null) {
+            slab = new Slab(slabs.size(), ByteBuffer.allocateDirect(slabSize));
+            slabs.add(slab);
+        }
+        return slab;
+    }
+
+    /**
+     * copy live records of a mostly drained slab into the current slab, then free it.
+     * <p>
+     * Records are walked one by one in the slab, a record is live if the handle table still points to it.
+     * </p>
+     */
+    private void compact(Slab slab) {
+        ByteBuffer records = slab.buffer.duplicate();
+        records.flip();
+        while (records.hasRemaining() && slab.live > 0) {
+            int offset = records.position();
+            int length = RECORD_HEADER_SIZE + records.getInt(offset);
+            // header: length(int), id(long), handle(int)
+            int handle = records.getInt(offset + 12);
+            records.limit(offset + length);
+            if (addresses[handle] == (((long) slab.index << 32) | offset)) {
+                if (current.buffer.remaining() < length) {
+                    current = newSlab();
+                }
+                addresses[handle] = ((long) current.index << 32) | current.buffer.position();
+                current.buffer.put(records);
+                current.live++;
+                current.liveBytes += length;
+                slab.live--;
+            }
+            records.limit(slab.buffer.position());
+            records.position(offset + length);
+        }
+        slab.live = 0;
+        slab.liveBytes = 0;
+        slab.buffer.clear();
+        freeSlabs.push(slab);
+    }
+
+    private int allocateHandle() {
+        if (freeHandleCount > 0) {
+            return freeHandles[--freeHandleCount];
+        }
+        if (nextHandle == addresses.length) {
+            addresses = Arrays.copyOf(addresses, nextHandle * 2);
+        }
+        return nextHandle++;
+    }
+
+    private void freeHandle(int handle) {
+        // a freed handle never matches a record, so drained records are dead for compaction
+        addresses[handle] = -1;
+        if (freeHandleCount == freeHandles.length) {
+            freeHandles = Arrays.copyOf(freeHandles, freeHandleCount * 2);
+        }
+        freeHandles[freeHandleCount++] = handle;
+    }
+
+    private void push(long start, int handle) {
+        if (size == starts.length) {
+            starts = Arrays.copyOf(starts, size * 2);
+            handles = Arrays.copyOf(handles, size * 2);
+        }
+        int i = size++;
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (starts[parent] <= start) {
+                break;
+            }
+            starts[i] = starts[parent];
+            handles[i] = handles[parent];
+            i = parent;
+        }
+        starts[i] = start;
+        handles[i] = handle;
+    }
+
+    private void pop() {
+        int last = --size;
+        long start = starts[last];
+        int handle = handles[last];
+        int i = 0;
+        int half = last >>> 1;
+        while (i < half) {
+            int child = (i << 1) + 1;
+            if (child + 1 < last && starts[child + 1] < starts[child]) {
+                child++;
+            }
+            if (start <= starts[child]) {
+                break;
+            }
+            starts[i] = starts[child];
+            handles[i] = handles[child];
+            i = child;
+        }
+        starts[i] = start;
+        handles[i] = handle;
+    }
+
+    private static final class Slab {
+        private final int index;
+        private final ByteBuffer buffer;
+        private int live;
+        private int liveBytes;
+
+        private Slab(int index, ByteBuffer buffer) {
+            this.index = index;
+            this.buffer = buffer;
+        }
+    }
+}
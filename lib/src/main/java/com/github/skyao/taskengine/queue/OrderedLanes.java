@@ -0,0 +1,211 @@
+package com.github.skyao.taskengine.queue;
+
+import com.github.skyao.taskengine.task.RuntimeTask;
+import com.github.skyao.taskengine.task.Task;
+import com.github.skyao.taskengine.task.TaskParameter;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * per-key FIFO lanes, which let tasks with the same ordering key run one by one in order without blocking workers.
+ * <pre>
+ * The life of a task with an ordering key:
+ * (1) when the task is due, it acquires the lane of its key: if the lane is free the task owns it and goes to the
+ *     pending queue, otherwise the task waits at the tail of the lane, out of the pending queue
+ * (2) the owner keeps its lane while it is retried by retry plan, so a retry still runs before the tasks behind it
+ * (3) when the owner is finished, or waits for its next run by schedule plan, it releases the lane and the task at
+ *     the head of the lane becomes the owner and goes to the pending queue
+ * </pre>
+ * <p>
+ * The ordering key of a task is its explicit {@link Task#getOrderingKey()}, or the value of the first parameter with
+ * a configured name, e.g. all tasks with parameter uid=245001 share one lane no matter their types. Tasks without key
+ * are not affected. Tasks with the same key keep the order they become due in, which is the submission order for
+ * tasks starting at once. A waiting task finished by others, e.g. canceled, is skipped when it comes to the head.
+ * </p>
+ *
+ * @author Sky Ao
+ */
+public class OrderedLanes {
+    private final String[] parameters;
+    private final Map<Integer, String> typeParameters;
+    private final Map<Object, Lane> lanes = new HashMap<>();
+    private final Map<RuntimeTask, Lane> owners = new IdentityHashMap<>();
+    private int waiting;
+
+    private OrderedLanes(Builder builder) {
+        this.parameters = builder.parameters.toArray(new String[builder.parameters.size()]);
+        this.typeParameters = new HashMap<>(builder.typeParameters);
+    }
+
+    /**
+     * get ordering key of a task.
+     *
+     * @param task task
+     * @return explicit ordering key, or value of the configured parameter, null if the task is not ordered
+     */
+    public Object keyOf(Task task) {
+        if (task.getOrderingKey() != null) {
+            return task.getOrderingKey();
+        }
+        String name = typeParameters.get(task.getContent().getType());
+        if (name != null) {
+            return valueOf(task, name);
+        }
+        for (String parameter : parameters) {
+            Object value = valueOf(task, parameter);
+            if (value != null) {
+                return value;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * acquire the lane of a due task.
+     *
+     * @param task due task
+     * @return true if the task may go to the pending queue, false if it waits in its lane
+     */
+    public synchronized boolean acquire(RuntimeTask task) {
+        if (owners.containsKey(task)) {
+            return true;
+        }
+        Object key = keyOf(task.getTask());
+        if (key == null) {
+            return true;
+        }
+        Lane lane = lanes.get(key);
+        if (lane == null) {
+            lane = new Lane(key);
+            lanes.put(key, lane);
+            owners.put(task, lane);
+            return true;
+        }
+        lane.waiting.addLast(task);
+        waiting++;
+        return false;
+    }
+
+    /**
+     * release the lane owned by a task.
+     *
+     * @param task task which is finished or waits for its next run
+     * @return next owner of the lane to put into the pending queue, null if no lane is owned or the lane is empty
+     */
+    public synchronized RuntimeTask release(RuntimeTask task) {
+        Lane lane = owners.remove(task);
+        if (lane == null) {
+            return null;
+        }
+        while (!lane.waiting.isEmpty()) {
+            RuntimeTask next = lane.waiting.pollFirst();
+            waiting--;
+            if (!next.isFinished()) {
+                owners.put(next, lane);
+                return next;
+            }
+        }
+        lanes.remove(lane.key);
+        return null;
+    }
+
+    /**
+     * get count of tasks waiting in lanes.
+     *
+     * @return count of waiting tasks, including finished ones not skipped yet
+     */
+    public synchronized int size() {
+        return waiting;
+    }
+
+    /**
+     * get count of keys with an owner.
+     *
+     * @return count of busy lanes
+     */
+    public synchronized int getLaneCount() {
+        return lanes.size();
+    }
+
+    private static Object valueOf(Task task, String name) {
+        for (TaskParameter parameter : task.getContent().getParameters()) {
+            if (parameter.getName().equals(name)) {
+                return parameter.getValue();
+            }
+        }
+        return null;
+    }
+
+    private static final class Lane {
+        private final Object key;
+        private final ArrayDeque<RuntimeTask> waiting = new ArrayDeque<>();
+
+        private Lane(Object key) {
+            this.key = key;
+        }
+    }
+
+    /**
+     * create a new Builder.
+     *
+     * @return new instance of Builder
+     */
+    public static Builder newBuilder() {
+        return new Builder();
+    }
+
+    /**
+     * Builder helps to build ordered lanes easily.
+     */
+    public static class Builder {
+        private final List<String> parameters = new ArrayList<>();
+        private final Map<Integer, String> typeParameters = new HashMap<>();
+
+        private Builder() {
+        }
+
+        /**
+         * build ordered lanes, tasks are ordered only by explicit ordering keys if no parameter is set.
+         *
+         * @return ordered lanes
+         */
+        public OrderedLanes build() {
+            return new OrderedLanes(this);
+        }
+
+        /**
+         * take ordering key from the parameter with specified name, for tasks of any type.
+         *
+         * @param name parameter name
+         * @return this builder itself to chain
+         * @throws NullPointerException if name is null
+         */
+        public Builder parameter(String name) {
+            checkNotNull(name, "parameter name should not be null");
+            this.parameters.add(name);
+            return this;
+        }
+
+        /**
+         * take ordering key from the parameter with specified name for tasks of specified type, which takes
+         * precedence over the parameters for any type.
+         *
+         * @param type task type
+         * @param name parameter name
+         * @return this builder itself to chain
+         * @throws NullPointerException if name is null
+         */
+        public Builder parameter(int type, String name) {
+            checkNotNull(name, "parameter name should not be null");
+            this.typeParameters.put(type, name);
+            return this;
+        }
+    }
+}
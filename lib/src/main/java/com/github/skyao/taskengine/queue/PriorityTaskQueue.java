@@ -0,0 +1,570 @@
+package com.github.skyao.taskengine.queue;
+
+import com.github.skyao.taskengine.task.RuntimeTask;
+import com.github.skyao.taskengine.task.TaskPriority;
+import com.google.common.base.Predicate;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * pending queue of tasks which are ready to execute, ordered by task priority.
+ * <p>
+ * Since task priority is limited to [-128,127], the queue keeps one FIFO bucket for each priority level and a
+ * bitmap of non-empty buckets. Both offer and poll are O(1): tasks of one tenant with the same priority keep
+ * submission order, and the highest non-empty bucket is found by scanning four words of the bitmap.
+ * </p>
+ * <p>
+ * The bucket a task sits in is its effective priority, which starts from the priority of its task plan and can be
+ * raised by {@link #age(int, int)}. Buckets are made of linked lists, so aging moves whole buckets without touching
+ * the tasks in them.
+ * </p>
+ * <p>
+ * Inside a bucket, each tenant with waiting tasks has its own FIFO sub-queue, and sub-queues are served by deficit
+ * round-robin: when its turn comes, a tenant may take as many tasks as its weight, then it goes to the end of the
+ * round. So one tenant with a million tasks can not delay other tenants with the same priority, and poll is still
+ * O(1) no matter how many tenants are active. A tenant without waiting tasks is dropped from the bucket and costs
+ * nothing. Tasks without tenant belong to the default tenant.
+ * </p>
+ *
+ * @author Sky Ao
+ */
+public class PriorityTaskQueue {
+
+    /**
+     * count of priority levels.
+     */
+    public static final int LEVELS = TaskPriority.HIGHEST - TaskPriority.LOWEST + 1;
+
+    private final Bucket[] buckets = new Bucket[LEVELS];
+    private final long[] nonEmpty = new long[LEVELS / 64];
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final ConcurrentMap<String, Integer> weights = new ConcurrentHashMap<>();
+    private volatile int size;
+
+    /**
+     * create an empty queue.
+     */
+    public PriorityTaskQueue() {
+        for (int i = 0; i < LEVELS; i++) {
+            buckets[i] = new Bucket();
+        }
+    }
+
+    /**
+     * set weight of a tenant, which is the count of tasks the tenant takes in each round. Default weight is 1.
+     *
+     * @param tenant tenant key
+     * @param weight tenant weight
+     * @throws NullPointerException     if tenant is null
+     * @throws IllegalArgumentException if weight is not greater than zero
+     */
+    public void setWeight(String tenant, int weight) {
+        checkNotNull(tenant, "tenant should not be null");
+        checkArgument(weight > 0, "weight should greater than zero: weight=" + weight);
+
+        weights.put(tenant, weight);
+    }
+
+    /**
+     * put a task into this queue.
+     * <p>
+     * The enqueue time of the task will be set to now.
+     * </p>
+     *
+     * @param task task to put
+     * @throws NullPointerException if task is null
+     */
+    public void offer(RuntimeTask task) {
+        checkNotNull(task, "task should not be null");
+
+        int level = levelOf(task.getTask().getPlan().getPriority());
+        Node node = new Node(task);
+        lock.lock();
+        try {
+            task.setEnqueueTime(System.nanoTime());
+            buckets[level].append(node);
+            markNonEmpty(level);
+            size++;
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * put a batch of tasks into this queue under one lock, waking up all waiting consumers once.
+     *
+     * @param tasks tasks to put
+     * @throws NullPointerException if tasks is null
+     */
+    public void offerAll(Collection<RuntimeTask> tasks) {
+        checkNotNull(tasks, "tasks should not be null");
+        if (tasks.isEmpty()) {
+            return;
+        }
+
+        lock.lock();
+        try {
+            long now = System.nanoTime();
+            for (RuntimeTask task : tasks) {
+                int level = levelOf(task.getTask().getPlan().getPriority());
+                task.setEnqueueTime(now);
+                buckets[level].append(new Node(task));
+                markNonEmpty(level);
+            }
+            size += tasks.size();
+            notEmpty.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * retrieve and remove the task with highest priority.
+     *
+     * @return task with highest priority, null if this queue is empty
+     */
+    public RuntimeTask poll() {
+        lock.lock();
+        try {
+            return size == 0 ? null : removeFirst();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * retrieve and remove the task with highest priority, waiting up to the specified time if necessary.
+     *
+     * @param timeout how long to wait
+     * @param unit    time unit of timeout
+     * @return task with highest priority, null if the specified waiting time elapses before a task is available
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public RuntimeTask poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        try {
+            while (size == 0) {
+                if (nanos <= 0) {
+                    return null;
+                }
+                nanos = notEmpty.awaitNanos(nanos);
+            }
+            return removeFirst();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * raise effective priority of all waiting tasks below the cap.
+     * <p>
+     * Each bucket below the cap is moved up by specified step as a whole and appended to the bucket it lands in, but
+     * never beyond the cap. Task plans are not touched. The cost is O(levels) plus the count of tenants in moved
+     * buckets, no matter how many tasks are waiting.
+     * </p>
+     *
+     * @param step count of priority levels to raise
+     * @param cap  max effective priority aging can raise a task to
+     * @throws IllegalArgumentException if step is not greater than zero or cap is invalid
+     */
+    public void age(int step, int cap) {
+        checkArgument(step > 0, "aging step should greater than zero: step=" + step);
+        checkArgument(TaskPriority.isValidPriority(cap), "invalid task priority=" + cap);
+
+        int capLevel = levelOf(cap);
+        lock.lock();
+        try {
+            for (int level = capLevel - 1; level >= 0; level--) {
+                Bucket bucket = buckets[level];
+                if (bucket.isEmpty()) {
+                    continue;
+                }
+                int target = Math.min(level + step, capLevel);
+                buckets[target].appendAll(bucket);
+                markNonEmpty(target);
+                nonEmpty[level >>> 6] &= ~(1L << level);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * remove all the tasks matching the filter in one pass.
+     *
+     * @param filter filter of tasks to remove
+     * @return count of removed tasks
+     * @throws NullPointerException if filter is null
+     */
+    public int removeIf(Predicate<RuntimeTask> filter) {
+        checkNotNull(filter, "filter should not be null");
+
+        lock.lock();
+        try {
+            List<Node> removed = new ArrayList<>();
+            for (int level = 0; level < LEVELS; level++) {
+                extract(level, filter, removed);
+            }
+            size -= removed.size();
+            return removed.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * move all the tasks matching the filter to the bucket of the current priority of their task plans in one pass.
+     * <p>
+     * This should be called after changing the priority of waiting tasks. Moved tasks lose the effective priority
+     * gained by aging.
+     * </p>
+     *
+     * @param filter filter of tasks to move
+     * @return count of moved tasks
+     * @throws NullPointerException if filter is null
+     */
+    public int requeue(Predicate<RuntimeTask> filter) {
+        checkNotNull(filter, "filter should not be null");
+
+        lock.lock();
+        try {
+            List<Node> moved = new ArrayList<>();
+            for (int level = 0; level < LEVELS; level++) {
+                extract(level, filter, moved);
+            }
+            for (Node node : moved) {
+                int level = levelOf(node.task.getTask().getPlan().getPriority());
+                buckets[level].append(node);
+                markNonEmpty(level);
+            }
+            return moved.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * remove the coldest tasks: the latest ones of the lowest effective priority.
+     * <p>
+     * Tasks are taken from the tails of tenant queues in the lowest non-empty bucket, then in the next bucket up, so
+     * tasks which would run first are kept.
+     * </p>
+     *
+     * @param maxCount max count of tasks to remove
+     * @param drained  collection to receive removed tasks
+     * @return count of removed tasks
+     * @throws NullPointerException if drained is null
+     */
+    public int drainLowest(int maxCount, Collection<? super RuntimeTask> drained) {
+        checkNotNull(drained, "drained collection should not be null");
+
+        lock.lock();
+        try {
+            int count = 0;
+            for (int level = 0; level < LEVELS && count < maxCount; level++) {
+                Bucket bucket = buckets[level];
+                if (bucket.isEmpty()) {
+                    continue;
+                }
+                count += bucket.removeLast(maxCount - count, drained);
+                if (bucket.isEmpty()) {
+                    nonEmpty[level >>> 6] &= ~(1L << level);
+                }
+            }
+            size -= count;
+            return count;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * get count of tasks in this queue.
+     *
+     * @return count of tasks
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * get count of tasks with specified effective priority in this queue.
+     *
+     * @param priority effective task priority
+     * @return count of tasks with this effective priority
+     */
+    public int size(int priority) {
+        int level = levelOf(priority);
+        lock.lock();
+        try {
+            return buckets[level].size;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void extract(int level, Predicate<RuntimeTask> filter, List<Node> extracted) {
+        Bucket bucket = buckets[level];
+        if (bucket.isEmpty()) {
+            return;
+        }
+        Iterator<TenantQueue> iterator = bucket.round.iterator();
+        while (iterator.hasNext()) {
+            TenantQueue tenantQueue = iterator.next();
+            int count = tenantQueue.extract(filter, extracted);
+            bucket.size -= count;
+            if (tenantQueue.isEmpty()) {
+                iterator.remove();
+                bucket.tenants.remove(tenantQueue.tenant);
+            }
+        }
+        if (bucket.isEmpty()) {
+            nonEmpty[level >>> 6] &= ~(1L << level);
+        }
+    }
+
+    private void markNonEmpty(int level) {
+        nonEmpty[level >>> 6] |= 1L << level;
+    }
+
+    private RuntimeTask removeFirst() {
+        int level = highestLevel();
+        Bucket bucket = buckets[level];
+        RuntimeTask task = bucket.removeFirst();
+        if (bucket.isEmpty()) {
+            nonEmpty[level >>> 6] &= ~(1L << level);
+        }
+        size--;
+        return task;
+    }
+
+    private int highestLevel() {
+        for (int i = nonEmpty.length - 1; i >= 0; i--) {
+            long word = nonEmpty[i];
+            if (word != 0) {
+                return (i << 6) + 63 - Long.numberOfLeadingZeros(word);
+            }
+        }
+        return -1;
+    }
+
+    private static int levelOf(int priority) {
+        return TaskPriority.normalize(priority) - TaskPriority.LOWEST;
+    }
+
+    private static final class Node {
+        private final RuntimeTask task;
+        private Node next;
+
+        private Node(RuntimeTask task) {
+            this.task = task;
+        }
+    }
+
+    /**
+     * FIFO linked list of one tenant, which can be concatenated in O(1).
+     */
+    private static final class TenantQueue {
+        private final String tenant;
+        private Node head;
+        private Node tail;
+        private int size;
+        private int deficit;
+
+        private TenantQueue(String tenant) {
+            this.tenant = tenant;
+        }
+
+        private boolean isEmpty() {
+            return head == null;
+        }
+
+        private void append(Node node) {
+            if (tail == null) {
+                head = node;
+            } else {
+                tail.next = node;
+            }
+            tail = node;
+            size++;
+        }
+
+        private void appendAll(TenantQueue other) {
+            if (tail == null) {
+                head = other.head;
+            } else {
+                tail.next = other.head;
+            }
+            tail = other.tail;
+            size += other.size;
+        }
+
+        private RuntimeTask removeFirst() {
+            Node node = head;
+            head = node.next;
+            if (head == null) {
+                tail = null;
+            }
+            node.next = null;
+            size--;
+            return node.task;
+        }
+
+        private int removeLast(int maxCount, Collection<? super RuntimeTask> removed) {
+            int count = Math.min(maxCount, size);
+            Node node = head;
+            Node previous = null;
+            for (int i = size - count; i > 0; i--) {
+                previous = node;
+                node = node.next;
+            }
+            if (previous == null) {
+                head = null;
+                tail = null;
+            } else {
+                previous.next = null;
+                tail = previous;
+            }
+            while (node != null) {
+                Node next = node.next;
+                node.next = null;
+                removed.add(node.task);
+                node = next;
+            }
+            size -= count;
+            return count;
+        }
+
+        private int extract(Predicate<RuntimeTask> filter, List<Node> extracted) {
+            int count = 0;
+            Node previous = null;
+            Node node = head;
+            while (node != null) {
+                Node next = node.next;
+                if (filter.apply(node.task)) {
+                    if (previous == null) {
+                        head = next;
+                    } else {
+                        previous.next = next;
+                    }
+                    if (node == tail) {
+                        tail = previous;
+                    }
+                    node.next = null;
+                    extracted.add(node);
+                    count++;
+                } else {
+                    previous = node;
+                }
+                node = next;
+            }
+            size -= count;
+            return count;
+        }
+    }
+
+    /**
+     * tasks of one priority level, in sub-queues of tenants which are served by deficit round-robin.
+     */
+    private final class Bucket {
+        private final Map<String, TenantQueue> tenants = new HashMap<>();
+        private final ArrayDeque<TenantQueue> round = new ArrayDeque<>();
+        private int size;
+
+        private boolean isEmpty() {
+            return size == 0;
+        }
+
+        private void append(Node node) {
+            String tenant = node.task.getTask().getTenant();
+            TenantQueue tenantQueue = tenants.get(tenant);
+            if (tenantQueue == null) {
+                tenantQueue = new TenantQueue(tenant);
+                tenants.put(tenant, tenantQueue);
+                round.addLast(tenantQueue);
+            }
+            tenantQueue.append(node);
+            size++;
+        }
+
+        /**
+         * move all the tasks of other bucket to this one, the cost is O(tenants) of other bucket.
+         */
+        private void appendAll(Bucket other) {
+            for (TenantQueue otherQueue : other.round) {
+                TenantQueue tenantQueue = tenants.get(otherQueue.tenant);
+                if (tenantQueue == null) {
+                    tenants.put(otherQueue.tenant, otherQueue);
+                    round.addLast(otherQueue);
+                } else {
+                    tenantQueue.appendAll(otherQueue);
+                }
+            }
+            size += other.size;
+
+            other.tenants.clear();
+            other.round.clear();
+            other.size = 0;
+        }
+
+        /**
+         * remove tasks from the tails of tenant queues, starting from the tenant served last in the round.
+         */
+        private int removeLast(int maxCount, Collection<? super RuntimeTask> removed) {
+            int count = 0;
+            Iterator<TenantQueue> iterator = round.descendingIterator();
+            while (iterator.hasNext() && count < maxCount) {
+                TenantQueue tenantQueue = iterator.next();
+                count += tenantQueue.removeLast(maxCount - count, removed);
+                if (tenantQueue.isEmpty()) {
+                    iterator.remove();
+                    tenants.remove(tenantQueue.tenant);
+                }
+            }
+            size -= count;
+            return count;
+        }
+
+        private RuntimeTask removeFirst() {
+            TenantQueue tenantQueue = round.peekFirst();
+            if (tenantQueue.deficit <= 0) {
+                tenantQueue.deficit += weightOf(tenantQueue.tenant);
+            }
+            RuntimeTask task = tenantQueue.removeFirst();
+            tenantQueue.deficit--;
+            size--;
+            if (tenantQueue.isEmpty()) {
+                round.pollFirst();
+                tenants.remove(tenantQueue.tenant);
+            } else if (tenantQueue.deficit <= 0) {
+                round.addLast(round.pollFirst());
+            }
+            return task;
+        }
+    }
+
+    private int weightOf(String tenant) {
+        if (tenant == null) {
+            return 1;
+        }
+        Integer weight = weights.get(tenant);
+        return weight == null ? 1 : weight;
+    }
+}
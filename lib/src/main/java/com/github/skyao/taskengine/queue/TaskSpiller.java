@@ -0,0 +1,468 @@
+package com.github.skyao.taskengine.queue;
+
+import com.github.skyao.taskengine.store.TaskCodec;
+import com.github.skyao.taskengine.store.TaskStore;
+import com.github.skyao.taskengine.store.TaskStoreException;
+import com.github.skyao.taskengine.task.RuntimeTask;
+import com.github.skyao.taskengine.task.Task;
+import com.github.skyao.taskengine.task.TaskContent;
+import com.github.skyao.taskengine.task.TaskPriority;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * cold tier of a pending queue, which spills waiting tasks to local segment files under memory pressure.
+ * <pre>
+ * Each balance round:
+ * (1) if the queue holds more tasks than the high watermark, or heap usage is above the heap watermark, the coldest
+ *     tasks (lowest priority, latest enqueued) are drained from the queue down to the low watermark
+ * (2) contents of drained tasks are appended to the current segment file in the compact form of TaskCodec, and
+ *     replaced by contents without parameters
+ * (3) if the queue holds less tasks than the low watermark and heap is not under pressure, spilled tasks are read
+ *     back in batches, highest priority first and oldest first, and put into the queue again
+ * </pre>
+ * <p>
+ * Runtime tasks themselves stay on heap, so callers and the pending task index keep tracing them. Only their
+ * contents, which hold the parameters and payloads, are kept on disk. A segment file is deleted once all the tasks in
+ * it are read back. Tasks finished while spilled, e.g. canceled, are skipped when they are read back.
+ * </p>
+ *
+ * @author Sky Ao
+ */
+public class TaskSpiller {
+    private static final Logger LOGGER = LoggerFactory.getLogger(TaskSpiller.class);
+    private static final String SEGMENT_PREFIX = "spill-";
+    private static final String SEGMENT_SUFFIX = ".seg";
+
+    private final File directory;
+    private final int highWatermark;
+    private final int lowWatermark;
+    private final double heapWatermark;
+    private final int batchSize;
+    private final long segmentSize;
+    private final long interval;
+    private final ArrayDeque<Spilled>[] levels;
+    private final Map<Integer, Segment> segments = new HashMap<>();
+
+    private Segment current;
+    private int nextSegmentId;
+    private int size;
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private TaskSpiller(Builder builder) {
+        this.directory = builder.directory;
+        this.highWatermark = builder.highWatermark;
+        this.lowWatermark = builder.lowWatermark;
+        this.heapWatermark = builder.heapWatermark;
+        this.batchSize = builder.batchSize;
+        this.segmentSize = builder.segmentSize;
+        this.interval = builder.interval;
+        this.levels = new ArrayDeque[PriorityTaskQueue.LEVELS];
+        for (int i = 0; i < levels.length; i++) {
+            levels[i] = new ArrayDeque<>();
+        }
+        checkArgument(directory.isDirectory() || directory.mkdirs(), "fail to create spill directory: " + directory);
+    }
+
+    /**
+     * move tasks between the queue and disk by watermarks.
+     *
+     * @param queue pending queue
+     * @throws TaskStoreException if fail to read spilled tasks back, tasks not read back yet stay spilled
+     */
+    public synchronized void balance(PriorityTaskQueue queue) {
+        boolean pressure = heapWatermark < 1 && heapUsage() > heapWatermark;
+        if (queue.size() > highWatermark || (pressure && queue.size() > lowWatermark)) {
+            while (queue.size() > lowWatermark) {
+                List<RuntimeTask> drained = new ArrayList<>(batchSize);
+                queue.drainLowest(Math.min(batchSize, queue.size() - lowWatermark), drained);
+                if (drained.isEmpty() || !spill(drained, queue)) {
+                    return;
+                }
+            }
+        } else if (!pressure) {
+            while (size > 0 && queue.size() < lowWatermark) {
+                restore(Math.min(batchSize, lowWatermark - queue.size()), queue);
+            }
+        }
+    }
+
+    /**
+     * move changed tasks to the levels of their new priorities and save them into task store.
+     * <p>
+     * Tasks are saved under the lock of this spiller, so none of them is spilled meanwhile. Spilled tasks are saved
+     * with their contents read back from disk, they stay spilled.
+     * </p>
+     *
+     * @param changed tasks whose priorities are changed
+     * @param store   task store to save changed tasks, null if none
+     * @return count of moved spilled tasks
+     * @throws NullPointerException if changed is null
+     * @throws TaskStoreException   if fail to read spilled tasks back or to save tasks
+     */
+    public synchronized int requeue(Set<RuntimeTask> changed, TaskStore store) {
+        checkNotNull(changed, "changed tasks should not be null");
+
+        List<Spilled> moved = new ArrayList<>();
+        Set<RuntimeTask> spilled = Collections.newSetFromMap(new IdentityHashMap<RuntimeTask, Boolean>());
+        for (ArrayDeque<Spilled> level : levels) {
+            Iterator<Spilled> iterator = level.iterator();
+            while (iterator.hasNext()) {
+                Spilled entry = iterator.next();
+                if (!changed.contains(entry.task)) {
+                    continue;
+                }
+                spilled.add(entry.task);
+                if (store != null) {
+                    save(entry, store);
+                }
+                if (levels[levelOf(entry.task)] != level) {
+                    iterator.remove();
+                    moved.add(entry);
+                }
+            }
+        }
+        // like requeued tasks of the queue, moved tasks are put behind the tasks already in their levels
+        for (Spilled entry : moved) {
+            levels[levelOf(entry.task)].addLast(entry);
+        }
+        if (store != null) {
+            for (RuntimeTask task : changed) {
+                if (!spilled.contains(task)) {
+                    store.update(task.getId(), task.getTask());
+                }
+            }
+        }
+        return moved.size();
+    }
+
+    /**
+     * get count of spilled tasks.
+     *
+     * @return count of tasks on disk
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * get interval of balance rounds.
+     *
+     * @return interval in milliseconds
+     */
+    public long getInterval() {
+        return interval;
+    }
+
+    /**
+     * close and delete all segment files, spilled tasks are dropped.
+     */
+    public synchronized void close() {
+        for (Segment segment : segments.values()) {
+            segment.delete();
+        }
+        segments.clear();
+        for (ArrayDeque<Spilled> level : levels) {
+            level.clear();
+        }
+        current = null;
+        size = 0;
+    }
+
+    private boolean spill(List<RuntimeTask> tasks, PriorityTaskQueue queue) {
+        List<Spilled> spilled = new ArrayList<>(tasks.size());
+        try {
+            for (RuntimeTask task : tasks) {
+                byte[] data = TaskCodec.encode(task.getTask().getContent());
+                if (current == null || current.size + data.length > segmentSize) {
+                    current = newSegment();
+                }
+                spilled.add(new Spilled(task, current, current.append(data), data.length));
+            }
+        } catch (IOException e) {
+            // keep tasks on heap, they are never lost because of spilling
+            LOGGER.error("fail to spill tasks to " + directory, e);
+            for (Spilled entry : spilled) {
+                entry.segment.live--;
+            }
+            queue.offerAll(tasks);
+            return false;
+        }
+
+        // batches are drained from the tails of the queue, so each batch is older than the ones spilled before it
+        for (int i = spilled.size() - 1; i >= 0; i--) {
+            Spilled entry = spilled.get(i);
+            TaskContent content = entry.task.getTask().getContent();
+            entry.task.getTask().setContent(new TaskContent(content.getType()));
+            levels[levelOf(entry.task)].addFirst(entry);
+        }
+        size += spilled.size();
+        return true;
+    }
+
+    private void restore(int maxCount, PriorityTaskQueue queue) {
+        List<RuntimeTask> restored = new ArrayList<>(maxCount);
+        try {
+            for (int level = levels.length - 1; level >= 0 && restored.size() < maxCount; level--) {
+                ArrayDeque<Spilled> spilled = levels[level];
+                while (!spilled.isEmpty() && restored.size() < maxCount) {
+                    Spilled entry = spilled.peekFirst();
+                    if (!entry.task.isFinished()) {
+                        ByteBuffer data = ByteBuffer.allocate(entry.length);
+                        try {
+                            entry.segment.read(data, entry.offset);
+                        } catch (IOException e) {
+                            // the entry stays spilled, so it can be read back in next round
+                            throw new TaskStoreException("fail to read spilled task: " + entry.task, e);
+                        }
+                        data.flip();
+                        entry.task.getTask().setContent(TaskCodec.decodeContent(data, true));
+                        restored.add(entry.task);
+                    }
+                    spilled.pollFirst();
+                    size--;
+                    release(entry.segment);
+                }
+            }
+        } finally {
+            // tasks read back before a failure are never lost
+            queue.offerAll(restored);
+        }
+    }
+
+    private void save(Spilled entry, TaskStore store) {
+        ByteBuffer data = ByteBuffer.allocate(entry.length);
+        try {
+            entry.segment.read(data, entry.offset);
+        } catch (IOException e) {
+            throw new TaskStoreException("fail to read spilled task: " + entry.task, e);
+        }
+        data.flip();
+        Task task = entry.task.getTask();
+        TaskContent released = task.getContent();
+        task.setContent(TaskCodec.decodeContent(data, true));
+        try {
+            store.update(entry.task.getId(), task);
+        } finally {
+            task.setContent(released);
+        }
+    }
+
+    private void release(Segment segment) {
+        if (--segment.live == 0 && segment != current) {
+            segments.remove(segment.id);
+            segment.delete();
+        }
+    }
+
+    private Segment newSegment() throws IOException {
+        if (current != null && current.live == 0) {
+            segments.remove(current.id);
+            current.delete();
+        }
+        int id = nextSegmentId++;
+        Segment segment = new Segment(id, new File(directory, SEGMENT_PREFIX + id + SEGMENT_SUFFIX));
+        segments.put(segment.id, segment);
+        return segment;
+    }
+
+    private static int levelOf(RuntimeTask task) {
+        return TaskPriority.normalize(task.getTask().getPlan().getPriority()) - TaskPriority.LOWEST;
+    }
+
+    private static double heapUsage() {
+        Runtime runtime = Runtime.getRuntime();
+        return (double) (runtime.totalMemory() - runtime.freeMemory()) / runtime.maxMemory();
+    }
+
+    private static final class Spilled {
+        private final RuntimeTask task;
+        private final Segment segment;
+        private final long offset;
+        private final int length;
+
+        private Spilled(RuntimeTask task, Segment segment, long offset, int length) {
+            this.task = task;
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+    /**
+     * append-only segment file, which counts the spilled tasks not read back yet.
+     */
+    private static final class Segment {
+        private final int id;
+        private final File file;
+        private final FileChannel channel;
+        private long size;
+        private int live;
+
+        private Segment(int id, File file) throws IOException {
+            this.id = id;
+            this.file = file;
+            this.channel = new RandomAccessFile(file, "rw").getChannel();
+        }
+
+        private long append(byte[] data) throws IOException {
+            long offset = size;
+            ByteBuffer buffer = ByteBuffer.wrap(data);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer, offset + buffer.position());
+            }
+            size += data.length;
+            live++;
+            return offset;
+        }
+
+        private void read(ByteBuffer buffer, long offset) throws IOException {
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, offset + buffer.position()) < 0) {
+                    throw new IOException("unexpected end of segment: " + file);
+                }
+            }
+        }
+
+        private void delete() {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                LOGGER.warn("fail to close segment: " + file, e);
+            }
+            if (!file.delete()) {
+                LOGGER.warn("fail to delete segment: " + file);
+            }
+        }
+    }
+
+    /**
+     * create a new Builder.
+     *
+     * @param directory directory of segment files
+     * @return new instance of Builder
+     * @throws NullPointerException if directory is null
+     */
+    public static Builder newBuilder(File directory) {
+        return new Builder(directory);
+    }
+
+    /**
+     * Builder helps to build task spiller easily.
+     */
+    public static class Builder {
+        private final File directory;
+        private int highWatermark = 100000;
+        private int lowWatermark = 50000;
+        private double heapWatermark = 0.8;
+        private int batchSize = 1024;
+        private long segmentSize = 64L << 20;
+        private long interval = 100;
+
+        private Builder(File directory) {
+            checkNotNull(directory, "spill directory should not be null");
+            this.directory = directory;
+        }
+
+        /**
+         * build task spiller.
+         *
+         * @return task spiller
+         * @throws IllegalArgumentException if low watermark is not less than high watermark, or directory can not be
+         *                                  created
+         */
+        public TaskSpiller build() {
+            checkArgument(lowWatermark < highWatermark, "low watermark should less than high watermark: low="
+                    + lowWatermark + ", high=" + highWatermark);
+            return new TaskSpiller(this);
+        }
+
+        /**
+         * set watermarks of queue size.
+         *
+         * @param low  size to spill down to and to restore up to
+         * @param high size above which tasks are spilled
+         * @return this builder itself to chain
+         * @throws IllegalArgumentException if low is negative or high is not greater than low
+         */
+        public Builder watermarks(int low, int high) {
+            checkArgument(low >= 0, "low watermark should greater than or equal to zero: low=" + low);
+            checkArgument(high > low, "high watermark should greater than low watermark: high=" + high);
+            this.lowWatermark = low;
+            this.highWatermark = high;
+            return this;
+        }
+
+        /**
+         * set heap usage above which tasks are spilled even under the high watermark.
+         *
+         * @param heapWatermark fraction of max heap, 1 disables spilling by heap usage
+         * @return this builder itself to chain
+         * @throws IllegalArgumentException if heapWatermark is not in (0, 1]
+         */
+        public Builder heapWatermark(double heapWatermark) {
+            checkArgument(heapWatermark > 0 && heapWatermark <= 1, "heap watermark should in (0,1]: heapWatermark="
+                    + heapWatermark);
+            this.heapWatermark = heapWatermark;
+            return this;
+        }
+
+        /**
+         * set max count of tasks moved in one batch.
+         *
+         * @param batchSize batch size
+         * @return this builder itself to chain
+         * @throws IllegalArgumentException if batchSize is not greater than zero
+         */
+        public Builder batchSize(int batchSize) {
+            checkArgument(batchSize > 0, "batch size should greater than zero: batchSize=" + batchSize);
+            this.batchSize = batchSize;
+            return this;
+        }
+
+        /**
+         * set max size of each segment file.
+         *
+         * @param segmentSize segment size in bytes
+         * @return this builder itself to chain
+         * @throws IllegalArgumentException if segmentSize is smaller than 1 KB
+         */
+        public Builder segmentSize(long segmentSize) {
+            checkArgument(segmentSize >= 1024, "segment size should not smaller than 1024: segmentSize="
+                    + segmentSize);
+            this.segmentSize = segmentSize;
+            return this;
+        }
+
+        /**
+         * set interval of balance rounds.
+         *
+         * @param interval interval in milliseconds
+         * @return this builder itself to chain
+         * @throws IllegalArgumentException if interval is not greater than zero
+         */
+        public Builder intervalInMilliseconds(long interval) {
+            checkArgument(interval > 0, "interval should greater than zero: interval=" + interval);
+            this.interval = interval;
+            return this;
+        }
+    }
+}
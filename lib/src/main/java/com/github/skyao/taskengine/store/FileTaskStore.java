@@ -0,0 +1,693 @@
+package com.github.skyao.taskengine.store;
+
+import com.github.skyao.taskengine.task.Task;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * task store based on local files: a write-ahead log plus periodic snapshots.
+ * <p>
+ * Every change of pending tasks is appended to the current log segment. A snapshot seals the current segment and
+ * then, off the hot path, merges the previous snapshot with the sealed segments into a new snapshot file, after which
+ * the merged files are deleted. Writers only wait for the segment switch, never for the snapshot itself.
+ * </p>
+ * <p>
+ * Records in a snapshot are ordered by task priority from high to low. On startup only the log segments written
+ * after the latest snapshot are replayed, then the snapshot is memory-mapped and streamed to the loader, so high
+ * priority tasks reach the engine first while the rest is still loading.
+ * </p>
+ * <pre>
+ * Files in store directory:
+ * (1) wal-N.log: log segment N, records of [op(byte), id(long)] followed by [priority(byte), length(int), task]
+ * for add and update, or [length(int), checkpoint change] for checkpoint
+ * (2) snapshot-N.dat: snapshot covering log segments up to N, a header of [magic(int), max id(long)] followed by
+ * records of [id(long), priority(byte), length(int), task]
+ * </pre>
+ * <p>
+ * A checkpoint record only holds the changed property. Changes are merged into their task when log segments are
+ * replayed, and into the snapshot record of their task when a snapshot is written or loaded.
+ * </p>
+ *
+ * @author Sky Ao
+ * @see TaskCodec
+ */
+public class FileTaskStore implements TaskStore, Closeable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(FileTaskStore.class);
+
+    private static final int SNAPSHOT_MAGIC = 0x54534E50;
+    private static final int SNAPSHOT_HEADER_SIZE = 12;
+    private static final byte OP_ADD = 1;
+    private static final byte OP_UPDATE = 2;
+    private static final byte OP_REMOVE = 3;
+    private static final byte OP_CHECKPOINT = 4;
+    private static final String WAL_PREFIX = "wal-";
+    private static final String WAL_SUFFIX = ".log";
+    private static final String SNAPSHOT_PREFIX = "snapshot-";
+    private static final String SNAPSHOT_SUFFIX = ".dat";
+    private static final Comparator<Record> BY_PRIORITY_DESC = new Comparator<Record>() {
+        @Override
+        public int compare(Record r1, Record r2) {
+            return r2.priority - r1.priority;
+        }
+    };
+
+    private final File directory;
+    private final boolean sync;
+    private final AtomicLong idSequence = new AtomicLong();
+    private final Object walLock = new Object();
+    private final ScheduledExecutorService snapshotExecutor;
+
+    /**
+     * log segment written by a stream, not a file channel, since an interrupt, e.g. of an execution timeout, closes
+     * an interruptible channel during a write and fails all the writes after it.
+     */
+    private FileOutputStream wal;
+    private long walSeq;
+    private ByteBuffer walBuffer = ByteBuffer.allocate(4096);
+    private volatile long snapshotSeq;
+    private Map<Long, Record> recovered;
+
+    private FileTaskStore(Builder builder) throws IOException {
+        this.directory = builder.directory;
+        this.sync = builder.sync;
+
+        recover();
+
+        if (builder.snapshotInterval > 0) {
+            snapshotExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "task-store-snapshot");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            snapshotExecutor.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        snapshot();
+                    } catch (IOException e) {
+                        LOGGER.error("fail to write snapshot in " + directory, e);
+                    }
+                }
+            }, builder.snapshotInterval, builder.snapshotInterval, TimeUnit.MILLISECONDS);
+        } else {
+            snapshotExecutor = null;
+        }
+    }
+
+    @Override
+    public long add(Task task) {
+        checkNotNull(task, "task should not be null");
+
+        long id = idSequence.incrementAndGet();
+        append(OP_ADD, id, task);
+        return id;
+    }
+
+    @Override
+    public long[] addAll(List<Task> tasks) {
+        checkNotNull(tasks, "tasks should not be null");
+
+        byte[][] data = new byte[tasks.size()][];
+        int size = 0;
+        for (int i = 0; i < data.length; i++) {
+            data[i] = TaskCodec.encode(tasks.get(i));
+            size += 14 + data[i].length;
+        }
+
+        long[] ids = new long[data.length];
+        synchronized (walLock) {
+            ByteBuffer buffer = walBuffer(size);
+            for (int i = 0; i < data.length; i++) {
+                ids[i] = idSequence.incrementAndGet();
+                buffer.put(OP_ADD).putLong(ids[i]);
+                buffer.put((byte) tasks.get(i).getPlan().getPriority()).putInt(data[i].length).put(data[i]);
+            }
+            writeWal(buffer);
+        }
+        return ids;
+    }
+
+    @Override
+    public long nextId() {
+        return idSequence.incrementAndGet();
+    }
+
+    @Override
+    public void update(long id, Task task) {
+        checkNotNull(task, "task should not be null");
+
+        append(OP_UPDATE, id, task);
+    }
+
+    @Override
+    public void remove(long id) {
+        append(OP_REMOVE, id, null);
+    }
+
+    @Override
+    public void checkpoint(long id, String key, Object value) {
+        checkNotNull(key, "key should not be null");
+
+        byte[] data = TaskCodec.encodeCheckpoint(Collections.singletonMap(key, value));
+        synchronized (walLock) {
+            ByteBuffer buffer = walBuffer(13 + data.length);
+            buffer.put(OP_CHECKPOINT).putLong(id).putInt(data.length).put(data);
+            writeWal(buffer);
+        }
+    }
+
+    @Override
+    public void load(Loader loader) {
+        checkNotNull(loader, "loader should not be null");
+
+        Map<Long, Record> tail;
+        SnapshotReader snapshotReader;
+        synchronized (this) {
+            tail = recovered;
+            recovered = null;
+            if (tail == null) {
+                return;
+            }
+            // open snapshot while holding the lock, so it can not be deleted by a concurrent snapshot before opening
+            try {
+                snapshotReader = SnapshotReader.open(snapshotFile(snapshotSeq));
+            } catch (IOException e) {
+                throw new TaskStoreException("fail to load tasks from " + directory, e);
+            }
+        }
+
+        List<Record> tailRecords = liveRecords(tail);
+        int next = 0;
+        try (SnapshotReader reader = snapshotReader) {
+            while (reader != null && reader.next()) {
+                Record change = tail.get(reader.id);
+                if (change != null && !change.isCheckpointOnly()) {
+                    continue;
+                }
+                while (next < tailRecords.size() && tailRecords.get(next).priority > reader.priority) {
+                    Record record = tailRecords.get(next++);
+                    loader.load(record.id, TaskCodec.decode(ByteBuffer.wrap(record.data), true));
+                }
+                Task task = TaskCodec.decode(reader.data());
+                if (change != null) {
+                    change.applyTo(task);
+                }
+                loader.load(reader.id, task);
+            }
+        } catch (IOException e) {
+            throw new TaskStoreException("fail to load tasks from " + directory, e);
+        }
+        while (next < tailRecords.size()) {
+            Record record = tailRecords.get(next++);
+            loader.load(record.id, TaskCodec.decode(ByteBuffer.wrap(record.data), true));
+        }
+    }
+
+    /**
+     * write a new snapshot now.
+     * <p>
+     * The current log segment is sealed and merged with the previous snapshot. Tasks can still be added, updated and
+     * removed while the snapshot is being written.
+     * </p>
+     *
+     * @throws IOException if fail to write snapshot
+     */
+    public synchronized void snapshot() throws IOException {
+        long sealed;
+        long maxId;
+        synchronized (walLock) {
+            sealed = walSeq;
+            maxId = idSequence.get();
+            wal.getFD().sync();
+            wal.close();
+            walSeq++;
+            wal = openWal(walSeq);
+        }
+
+        Map<Long, Record> changes = new HashMap<>();
+        for (long seq = snapshotSeq + 1; seq <= sealed; seq++) {
+            replay(walFile(seq), changes);
+        }
+        List<Record> changedRecords = liveRecords(changes);
+
+        File oldSnapshot = snapshotFile(snapshotSeq);
+        File tmp = new File(directory, SNAPSHOT_PREFIX + sealed + ".tmp");
+        try (FileOutputStream file = new FileOutputStream(tmp);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file, 1 << 16));
+             SnapshotReader reader = SnapshotReader.open(oldSnapshot)) {
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeLong(maxId);
+
+            int next = 0;
+            byte[] copyBuffer = new byte[8192];
+            while (reader != null && reader.next()) {
+                Record change = changes.get(reader.id);
+                if (change != null && !change.isCheckpointOnly()) {
+                    continue;
+                }
+                while (next < changedRecords.size() && changedRecords.get(next).priority > reader.priority) {
+                    writeRecord(changedRecords.get(next++), out);
+                }
+                if (change != null) {
+                    Task task = TaskCodec.decode(reader.data());
+                    change.applyTo(task);
+                    writeRecord(new Record(reader.id, reader.priority, TaskCodec.encode(task)), out);
+                    continue;
+                }
+                ByteBuffer data = reader.data();
+                out.writeLong(reader.id);
+                out.writeByte(reader.priority);
+                out.writeInt(data.remaining());
+                while (data.hasRemaining()) {
+                    int length = Math.min(data.remaining(), copyBuffer.length);
+                    data.get(copyBuffer, 0, length);
+                    out.write(copyBuffer, 0, length);
+                }
+            }
+            while (next < changedRecords.size()) {
+                writeRecord(changedRecords.get(next++), out);
+            }
+            out.flush();
+            file.getChannel().force(true);
+        }
+
+        File snapshot = snapshotFile(sealed);
+        if (!tmp.renameTo(snapshot)) {
+            throw new IOException("fail to rename " + tmp + " to " + snapshot);
+        }
+        long previous = snapshotSeq;
+        snapshotSeq = sealed;
+        deleteIfExists(oldSnapshot);
+        for (long seq = previous + 1; seq <= sealed; seq++) {
+            deleteIfExists(walFile(seq));
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (snapshotExecutor != null) {
+            snapshotExecutor.shutdownNow();
+        }
+        synchronized (walLock) {
+            wal.getFD().sync();
+            wal.close();
+        }
+    }
+
+    private void append(byte op, long id, Task task) {
+        byte[] data = task == null ? null : TaskCodec.encode(task);
+        int size = data == null ? 9 : 14 + data.length;
+        synchronized (walLock) {
+            ByteBuffer buffer = walBuffer(size);
+            buffer.put(op).putLong(id);
+            if (data != null) {
+                buffer.put((byte) task.getPlan().getPriority()).putInt(data.length).put(data);
+            }
+            writeWal(buffer);
+        }
+    }
+
+    private ByteBuffer walBuffer(int size) {
+        if (walBuffer.capacity() < size) {
+            walBuffer = ByteBuffer.allocate(Math.max(size, walBuffer.capacity() * 2));
+        }
+        walBuffer.clear();
+        return walBuffer;
+    }
+
+    private void writeWal(ByteBuffer buffer) {
+        try {
+            wal.write(buffer.array(), buffer.arrayOffset(), buffer.position());
+            if (sync) {
+                wal.getFD().sync();
+            }
+        } catch (IOException e) {
+            throw new TaskStoreException("fail to write task log in " + directory, e);
+        }
+    }
+
+    private void recover() throws IOException {
+        checkArgument(directory.isDirectory() || directory.mkdirs(), "fail to create store directory: " + directory);
+
+        long lastSnapshot = 0;
+        long lastWal = 0;
+        File[] files = directory.listFiles();
+        for (File file : files == null ? new File[0] : files) {
+            long snapshot = parseSeq(file.getName(), SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX);
+            lastSnapshot = Math.max(lastSnapshot, snapshot);
+            lastWal = Math.max(lastWal, parseSeq(file.getName(), WAL_PREFIX, WAL_SUFFIX));
+        }
+        snapshotSeq = lastSnapshot;
+
+        long maxId = 0;
+        try (SnapshotReader reader = SnapshotReader.open(snapshotFile(lastSnapshot))) {
+            if (reader != null) {
+                maxId = reader.maxId;
+            }
+        }
+
+        recovered = new HashMap<>();
+        for (long seq = lastSnapshot + 1; seq <= lastWal; seq++) {
+            maxId = Math.max(maxId, replay(walFile(seq), recovered));
+        }
+        for (long seq = 1; seq <= lastSnapshot; seq++) {
+            deleteIfExists(walFile(seq));
+        }
+        idSequence.set(maxId);
+
+        walSeq = Math.max(lastSnapshot, lastWal) + 1;
+        wal = openWal(walSeq);
+    }
+
+    private long replay(File file, Map<Long, Record> changes) throws IOException {
+        long maxId = 0;
+        if (!file.exists()) {
+            return maxId;
+        }
+        try (FileInputStream in = new FileInputStream(file)) {
+            MappedRegion region = new MappedRegion(in.getChannel(), 0);
+            while (region.ensure(9)) {
+                ByteBuffer buffer = region.buffer;
+                byte op = buffer.get();
+                long id = buffer.getLong();
+                if (op == OP_REMOVE) {
+                    changes.put(id, new Record(id, 0, null));
+                } else if (op == OP_CHECKPOINT) {
+                    if (!region.ensure(4)) {
+                        break;
+                    }
+                    int length = region.buffer.getInt();
+                    if (!region.ensure(length)) {
+                        break;
+                    }
+                    byte[] data = new byte[length];
+                    region.buffer.get(data);
+                    Record record = changes.get(id);
+                    if (record == null) {
+                        // the task is in the snapshot, the change is merged into it later
+                        record = new Record(id, 0, null);
+                        record.checkpoints = new ArrayList<>();
+                        changes.put(id, record);
+                    }
+                    record.checkpoint(data);
+                } else {
+                    if (!region.ensure(5)) {
+                        break;
+                    }
+                    byte priority = region.buffer.get();
+                    int length = region.buffer.getInt();
+                    if (!region.ensure(length)) {
+                        break;
+                    }
+                    byte[] data = new byte[length];
+                    region.buffer.get(data);
+                    changes.put(id, new Record(id, priority, data));
+                }
+                maxId = Math.max(maxId, id);
+            }
+        }
+        return maxId;
+    }
+
+    private FileOutputStream openWal(long seq) throws IOException {
+        return new FileOutputStream(walFile(seq), true);
+    }
+
+    private File walFile(long seq) {
+        return new File(directory, WAL_PREFIX + seq + WAL_SUFFIX);
+    }
+
+    private File snapshotFile(long seq) {
+        return new File(directory, SNAPSHOT_PREFIX + seq + SNAPSHOT_SUFFIX);
+    }
+
+    private static List<Record> liveRecords(Map<Long, Record> changes) {
+        List<Record> records = new ArrayList<>(changes.size());
+        for (Record record : changes.values()) {
+            if (record.data != null) {
+                records.add(record.merged());
+            }
+        }
+        Collections.sort(records, BY_PRIORITY_DESC);
+        return records;
+    }
+
+    private static void writeRecord(Record record, DataOutputStream out) throws IOException {
+        out.writeLong(record.id);
+        out.writeByte(record.priority);
+        out.writeInt(record.data.length);
+        out.write(record.data);
+    }
+
+    private static long parseSeq(String name, String prefix, String suffix) {
+        if (!name.startsWith(prefix) || !name.endsWith(suffix)) {
+            return 0;
+        }
+        try {
+            return Long.parseLong(name.substring(prefix.length(), name.length() - suffix.length()));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static void deleteIfExists(File file) {
+        if (file.exists() && !file.delete()) {
+            LOGGER.warn("fail to delete " + file);
+        }
+    }
+
+    /**
+     * create a new Builder for specified store directory.
+     *
+     * @param directory store directory
+     * @return new instance of Builder
+     */
+    public static Builder newBuilder(File directory) {
+        return new Builder(directory);
+    }
+
+    /**
+     * Builder helps to build file task store easily.
+     */
+    public static class Builder {
+        private final File directory;
+        private boolean sync = false;
+        private long snapshotInterval = TimeUnit.MINUTES.toMillis(5);
+
+        /**
+         * create builder for specified store directory.
+         *
+         * @param directory store directory
+         * @throws NullPointerException if directory is null
+         */
+        public Builder(File directory) {
+            checkNotNull(directory, "store directory should not be null");
+            this.directory = directory;
+        }
+
+        /**
+         * open the task store, pending tasks in store directory are recovered and ready to load.
+         *
+         * @return task store
+         * @throws IOException if fail to read store directory
+         */
+        public FileTaskStore build() throws IOException {
+            return new FileTaskStore(this);
+        }
+
+        /**
+         * force every log record to disk before returning.
+         *
+         * @param sync true to force log records to disk
+         * @return this builder itself to chain
+         */
+        public Builder sync(boolean sync) {
+            this.sync = sync;
+            return this;
+        }
+
+        /**
+         * set interval between two snapshots in seconds.
+         *
+         * @param seconds snapshot interval, 0 means snapshots are only written by calling {@link #snapshot()}
+         * @return this builder itself to chain
+         * @throws IllegalArgumentException if seconds is negative
+         */
+        public Builder snapshotIntervalInSeconds(int seconds) {
+            checkArgument(seconds >= 0, "snapshot interval should greater than or equal to zero: interval=" + seconds);
+            this.snapshotInterval = TimeUnit.SECONDS.toMillis(seconds);
+            return this;
+        }
+    }
+
+    /**
+     * record of a task, or of its removal if data is null, with the checkpoint changes written after it.
+     */
+    private static final class Record {
+        private final long id;
+        private final int priority;
+        private final byte[] data;
+        private List<byte[]> checkpoints;
+
+        private Record(long id, int priority, byte[] data) {
+            this.id = id;
+            this.priority = priority;
+            this.data = data;
+        }
+
+        private boolean isCheckpointOnly() {
+            return data == null && checkpoints != null;
+        }
+
+        private void checkpoint(byte[] change) {
+            if (data != null && checkpoints == null) {
+                checkpoints = new ArrayList<>();
+            }
+            // changes after removal are dropped
+            if (checkpoints != null) {
+                checkpoints.add(change);
+            }
+        }
+
+        private void applyTo(Task task) {
+            for (byte[] change : checkpoints) {
+                Map<String, Object> properties = TaskCodec.decodeCheckpoint(ByteBuffer.wrap(change));
+                for (Map.Entry<String, Object> entry : properties.entrySet()) {
+                    task.checkpoint(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+
+        private Record merged() {
+            if (checkpoints == null) {
+                return this;
+            }
+            Task task = TaskCodec.decode(ByteBuffer.wrap(data));
+            applyTo(task);
+            return new Record(id, priority, TaskCodec.encode(task));
+        }
+    }
+
+    /**
+     * window of a file mapped into memory, which is moved forward when a record crosses its end.
+     */
+    private static final class MappedRegion {
+        private static final int WINDOW = 64 << 20;
+
+        private final FileChannel channel;
+        private final long size;
+        private long offset;
+        private MappedByteBuffer buffer;
+
+        private MappedRegion(FileChannel channel, long position) throws IOException {
+            this.channel = channel;
+            this.size = channel.size();
+            map(position, 0);
+        }
+
+        private boolean ensure(int length) throws IOException {
+            if (buffer.remaining() >= length) {
+                return true;
+            }
+            long position = offset + buffer.position();
+            if (position + length > size) {
+                return false;
+            }
+            map(position, length);
+            return true;
+        }
+
+        private void map(long position, int length) throws IOException {
+            this.offset = position;
+            this.buffer = channel.map(FileChannel.MapMode.READ_ONLY, position,
+                    Math.min(size - position, Math.max(WINDOW, length)));
+        }
+    }
+
+    /**
+     * sequential reader of snapshot records.
+     */
+    private static final class SnapshotReader implements Closeable {
+        private final FileInputStream in;
+        private final MappedRegion region;
+        private final long maxId;
+        private long id;
+        private int priority;
+        private int length;
+
+        private SnapshotReader(FileInputStream in) throws IOException {
+            this.in = in;
+            this.region = new MappedRegion(in.getChannel(), 0);
+            if (!region.ensure(SNAPSHOT_HEADER_SIZE) || region.buffer.getInt() != SNAPSHOT_MAGIC) {
+                throw new IOException("invalid snapshot file");
+            }
+            this.maxId = region.buffer.getLong();
+        }
+
+        private static SnapshotReader open(File file) throws IOException {
+            if (!file.exists()) {
+                return null;
+            }
+            FileInputStream in = new FileInputStream(file);
+            try {
+                return new SnapshotReader(in);
+            } catch (IOException e) {
+                in.close();
+                throw new IOException("fail to open snapshot " + file, e);
+            }
+        }
+
+        private boolean next() throws IOException {
+            if (length > 0) {
+                region.buffer.position(region.buffer.position() + length);
+                length = 0;
+            }
+            if (!region.ensure(13)) {
+                return false;
+            }
+            id = region.buffer.getLong();
+            priority = region.buffer.get();
+            length = region.buffer.getInt();
+            return region.ensure(length);
+        }
+
+        private ByteBuffer data() {
+            ByteBuffer data = region.buffer.duplicate();
+            data.limit(data.position() + length);
+            return data;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+}
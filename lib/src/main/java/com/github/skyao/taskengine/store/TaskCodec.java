@@ -0,0 +1,410 @@
+package com.github.skyao.taskengine.store;
+
+import com.github.skyao.taskengine.task.Task;
+import com.github.skyao.taskengine.task.TaskContent;
+import com.github.skyao.taskengine.task.TaskParameter;
+import com.github.skyao.taskengine.task.RepeatMode;
+import com.github.skyao.taskengine.task.RepeatPolicy;
+import com.github.skyao.taskengine.task.TaskPlan;
+import com.github.skyao.taskengine.task.TaskPolicy;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * compact binary form of task.
+ * <pre>
+ * Layout:
+ * (0) header: magic 'T'(byte), format version(byte)
+ * (1) content: type(int), count of parameters(int), then each parameter: name, value tag(byte), value
+ *     binary value: length(int) and bytes, compressed binary value: original length(int), length(int) and bytes
+ * (2) plan: priority(byte), start(long), deadline(long), timeout(long), schedule, retry, timeout since version 4,
+ *     zero for earlier versions
+ * (3) schedule and retry: present(byte), then enable(byte), max(int), executed(int), interval(long), mode(byte)
+ *     if present, mode since version 3
+ * (4) tenant: present(byte), then tenant(string) if present, since version 2
+ * (5) ordering key: present(byte), then ordering key(string) if present, since version 5
+ * (6) checkpoint: count of properties(int), then each property: name, value tag(byte), value, since version 6
+ * Checkpoint values use the tags of parameter values, and a null tag for removed properties in checkpoint changes.
+ * Decoded task policies are interned, so loaded tasks with the same policy share one instance.
+ * Strings are written as length(int) and UTF-8 bytes.
+ * </pre>
+ * <p>
+ * The format version is bumped whenever the layout changes, and decoding branches on it, so records written by an
+ * earlier version are still read correctly. Records without the header, or of a later version, are rejected instead
+ * of being misread. Content encoded alone by {@link #encode(TaskContent)} has no header, it is never kept across
+ * versions.
+ * </p>
+ *
+ * @author Sky Ao
+ */
+public final class TaskCodec {
+    private static final byte MAGIC = 'T';
+    private static final byte VERSION_TENANT = 2;
+    private static final byte VERSION_REPEAT_MODE = 3;
+    private static final byte VERSION_TIMEOUT = 4;
+    private static final byte VERSION_ORDERING_KEY = 5;
+    private static final byte VERSION_CHECKPOINT = 6;
+    private static final byte FORMAT_VERSION = VERSION_CHECKPOINT;
+    private static final byte TAG_STRING = 'S';
+    private static final byte TAG_INT = 'I';
+    private static final byte TAG_LONG = 'L';
+    private static final byte TAG_BOOLEAN = 'Z';
+    private static final byte TAG_DOUBLE = 'D';
+    private static final byte TAG_BYTES = 'B';
+    private static final byte TAG_COMPRESSED = 'C';
+    private static final byte TAG_NULL = 'N';
+    private static final RepeatMode[] MODES = RepeatMode.values();
+
+    private TaskCodec() {
+    }
+
+    /**
+     * encode task to bytes.
+     *
+     * @param task task to encode
+     * @return encoded bytes
+     */
+    public static byte[] encode(Task task) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeByte(MAGIC);
+            out.writeByte(FORMAT_VERSION);
+            encodeContent(task.getContent(), out);
+            encodePlan(task.getPlan(), out);
+            out.writeBoolean(task.getTenant() != null);
+            if (task.getTenant() != null) {
+                writeString(task.getTenant(), out);
+            }
+            out.writeBoolean(task.getOrderingKey() != null);
+            if (task.getOrderingKey() != null) {
+                writeString(task.getOrderingKey(), out);
+            }
+            encodeCheckpoint(task.getCheckpoint(), out);
+            out.flush();
+        } catch (IOException e) {
+            // never happens on ByteArrayOutputStream
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * encode task content only.
+     *
+     * @param content task content to encode
+     * @return encoded bytes
+     */
+    public static byte[] encode(TaskContent content) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            encodeContent(content, out);
+            out.flush();
+        } catch (IOException e) {
+            // never happens on ByteArrayOutputStream
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * decode task content encoded by {@link #encode(TaskContent)} from the current position of buffer.
+     *
+     * @param buffer buffer to read
+     * @param shared true if the buffer is never modified after decoding, then binary values are views of it
+     *               without copying
+     * @return decoded task content
+     * @throws IllegalArgumentException if the content in buffer is not an encoded task content
+     */
+    public static TaskContent decodeContent(ByteBuffer buffer, boolean shared) {
+        int type = buffer.getInt();
+        TaskParameter[] parameters = new TaskParameter[buffer.getInt()];
+        for (int i = 0; i < parameters.length; i++) {
+            String name = readString(buffer);
+            byte tag = buffer.get();
+            switch (tag) {
+                case TAG_STRING:
+                    parameters[i] = new TaskParameter(name, readString(buffer));
+                    break;
+                case TAG_INT:
+                    parameters[i] = new TaskParameter(name, buffer.getInt());
+                    break;
+                case TAG_LONG:
+                    parameters[i] = new TaskParameter(name, buffer.getLong());
+                    break;
+                case TAG_BOOLEAN:
+                    parameters[i] = new TaskParameter(name, buffer.get() != 0);
+                    break;
+                case TAG_DOUBLE:
+                    parameters[i] = new TaskParameter(name, buffer.getDouble());
+                    break;
+                case TAG_BYTES:
+                    parameters[i] = new TaskParameter(name, readBytes(buffer, shared));
+                    break;
+                case TAG_COMPRESSED:
+                    int length = buffer.getInt();
+                    parameters[i] = TaskParameter.ofCompressed(name, readBytes(buffer, shared), length);
+                    break;
+                default:
+                    throw new IllegalArgumentException("unknown parameter value tag: " + tag);
+            }
+        }
+        return new TaskContent(type, parameters);
+    }
+
+    /**
+     * encode checkpointed context properties, or changes of them where null values mean removed properties.
+     *
+     * @param properties checkpointed properties
+     * @return encoded bytes
+     * @throws IllegalArgumentException if any value is not a string, primitive wrapper or ByteBuffer
+     */
+    public static byte[] encodeCheckpoint(Map<String, Object> properties) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(32);
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            encodeCheckpoint(properties, out);
+            out.flush();
+        } catch (IOException e) {
+            // never happens on ByteArrayOutputStream
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * decode checkpointed properties encoded by {@link #encodeCheckpoint(Map)} from the current position of buffer.
+     *
+     * @param buffer buffer to read
+     * @return decoded properties in encoded order, binary values are copied out of the buffer
+     * @throws IllegalArgumentException if the content in buffer is not encoded checkpoint
+     */
+    public static Map<String, Object> decodeCheckpoint(ByteBuffer buffer) {
+        int count = buffer.getInt();
+        Map<String, Object> properties = new LinkedHashMap<>(count * 2);
+        for (int i = 0; i < count; i++) {
+            String name = readString(buffer);
+            properties.put(name, readValue(buffer));
+        }
+        return properties;
+    }
+
+    /**
+     * decode task from the current position of buffer.
+     * <p>
+     * The position of buffer is moved to the end of the encoded task. Binary values are copied out of the buffer, so
+     * the buffer can be reused after decoding.
+     * </p>
+     *
+     * @param buffer buffer to read
+     * @return decoded task
+     * @throws IllegalArgumentException if the content in buffer is not an encoded task
+     */
+    public static Task decode(ByteBuffer buffer) {
+        return decode(buffer, false);
+    }
+
+    /**
+     * decode task from the current position of buffer, binary values may share the buffer.
+     *
+     * @param buffer buffer to read
+     * @param shared true if the buffer is never modified after decoding, then binary values are views of it
+     *               without copying
+     * @return decoded task
+     * @throws IllegalArgumentException if the content in buffer is not an encoded task
+     * @see #decode(ByteBuffer)
+     */
+    public static Task decode(ByteBuffer buffer, boolean shared) {
+        byte magic = buffer.get();
+        if (magic != MAGIC) {
+            throw new IllegalArgumentException("not an encoded task: magic=" + magic);
+        }
+        byte version = buffer.get();
+        if (version < 1 || version > FORMAT_VERSION) {
+            throw new IllegalArgumentException("unsupported task format version: version=" + version);
+        }
+        TaskContent content = decodeContent(buffer, shared);
+        TaskPlan plan = decodePlan(buffer, version);
+        String tenant = version >= VERSION_TENANT && buffer.get() != 0 ? readString(buffer) : null;
+        Task task = new Task(content, plan, tenant);
+        if (version >= VERSION_ORDERING_KEY && buffer.get() != 0) {
+            task.setOrderingKey(readString(buffer));
+        }
+        if (version >= VERSION_CHECKPOINT) {
+            for (Map.Entry<String, Object> entry : decodeCheckpoint(buffer).entrySet()) {
+                task.checkpoint(entry.getKey(), entry.getValue());
+            }
+        }
+        return task;
+    }
+
+    private static void encodeContent(TaskContent content, DataOutputStream out) throws IOException {
+        TaskParameter[] parameters = content.getParameters();
+        out.writeInt(content.getType());
+        out.writeInt(parameters.length);
+        for (TaskParameter parameter : parameters) {
+            writeString(parameter.getName(), out);
+            ByteBuffer stored = parameter.getStoredValue();
+            if (parameter.isCompressed()) {
+                // write the kept form, compressed values are not inflated
+                out.writeByte(TAG_COMPRESSED);
+                out.writeInt(parameter.getLength());
+                writeBytes(stored, out);
+            } else {
+                writeValue(stored != null ? stored : parameter.getValue(), out);
+            }
+        }
+    }
+
+    private static void writeValue(Object value, DataOutputStream out) throws IOException {
+        if (value == null) {
+            out.writeByte(TAG_NULL);
+        } else if (value instanceof String) {
+            out.writeByte(TAG_STRING);
+            writeString((String) value, out);
+        } else if (value instanceof Integer) {
+            out.writeByte(TAG_INT);
+            out.writeInt((Integer) value);
+        } else if (value instanceof Long) {
+            out.writeByte(TAG_LONG);
+            out.writeLong((Long) value);
+        } else if (value instanceof Boolean) {
+            out.writeByte(TAG_BOOLEAN);
+            out.writeBoolean((Boolean) value);
+        } else if (value instanceof Double) {
+            out.writeByte(TAG_DOUBLE);
+            out.writeDouble((Double) value);
+        } else if (value instanceof ByteBuffer) {
+            out.writeByte(TAG_BYTES);
+            writeBytes((ByteBuffer) value, out);
+        } else {
+            throw new IllegalArgumentException("unsupported value: " + value);
+        }
+    }
+
+    private static Object readValue(ByteBuffer buffer) {
+        byte tag = buffer.get();
+        switch (tag) {
+            case TAG_NULL:
+                return null;
+            case TAG_STRING:
+                return readString(buffer);
+            case TAG_INT:
+                return buffer.getInt();
+            case TAG_LONG:
+                return buffer.getLong();
+            case TAG_BOOLEAN:
+                return buffer.get() != 0;
+            case TAG_DOUBLE:
+                return buffer.getDouble();
+            case TAG_BYTES:
+                return readBytes(buffer, false);
+            default:
+                throw new IllegalArgumentException("unknown value tag: " + tag);
+        }
+    }
+
+    private static void encodePlan(TaskPlan plan, DataOutputStream out) throws IOException {
+        TaskPolicy policy = plan.getPolicy();
+        out.writeByte(policy.getPriority());
+        out.writeLong(plan.getStart());
+        out.writeLong(plan.getDeadline());
+        out.writeLong(policy.getTimeout());
+        encodeRepeat(policy.getSchedule(), plan.getScheduleExecuted(), out);
+        encodeRepeat(policy.getRetry(), plan.getRetryExecuted(), out);
+    }
+
+    private static TaskPlan decodePlan(ByteBuffer buffer, byte version) {
+        TaskPlan plan = new TaskPlan();
+        int priority = buffer.get();
+        plan.setStart(buffer.getLong());
+        plan.setDeadline(buffer.getLong());
+        long timeout = version >= VERSION_TIMEOUT ? buffer.getLong() : 0;
+
+        RepeatPolicy schedule = null;
+        if (buffer.get() != 0) {
+            boolean enable = buffer.get() != 0;
+            int max = buffer.getInt();
+            plan.setScheduleExecuted(buffer.getInt());
+            long interval = buffer.getLong();
+            schedule = RepeatPolicy.of(enable, max, interval, decodeMode(buffer, version));
+        }
+        RepeatPolicy retry = null;
+        if (buffer.get() != 0) {
+            boolean enable = buffer.get() != 0;
+            int max = buffer.getInt();
+            plan.setRetryExecuted(buffer.getInt());
+            long interval = buffer.getLong();
+            retry = RepeatPolicy.of(enable, max, interval, decodeMode(buffer, version));
+        }
+        plan.setPolicy(TaskPolicy.of(priority, schedule, retry, timeout));
+        return plan;
+    }
+
+    private static RepeatMode decodeMode(ByteBuffer buffer, byte version) {
+        return version >= VERSION_REPEAT_MODE ? MODES[buffer.get()] : RepeatMode.FIXED_DELAY;
+    }
+
+    private static void encodeRepeat(RepeatPolicy policy, int executed, DataOutputStream out) throws IOException {
+        if (policy == null) {
+            out.writeBoolean(false);
+            return;
+        }
+        out.writeBoolean(true);
+        out.writeBoolean(policy.isEnable());
+        out.writeInt(policy.getMax());
+        out.writeInt(executed);
+        out.writeLong(policy.getInterval());
+        out.writeByte(policy.getMode().ordinal());
+    }
+
+    private static void encodeCheckpoint(Map<String, Object> properties, DataOutputStream out) throws IOException {
+        out.writeInt(properties.size());
+        for (Map.Entry<String, Object> entry : properties.entrySet()) {
+            writeString(entry.getKey(), out);
+            writeValue(entry.getValue(), out);
+        }
+    }
+
+    private static void writeBytes(ByteBuffer value, DataOutputStream out) throws IOException {
+        ByteBuffer bytes = value.duplicate();
+        out.writeInt(bytes.remaining());
+        Channels.newChannel(out).write(bytes);
+    }
+
+    private static void writeString(String value, DataOutputStream out) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static ByteBuffer readBytes(ByteBuffer buffer, boolean shared) {
+        int length = buffer.getInt();
+        ByteBuffer bytes;
+        if (shared) {
+            bytes = buffer.slice();
+            bytes.limit(length);
+        } else {
+            bytes = ByteBuffer.allocate(length);
+            ByteBuffer source = buffer.duplicate();
+            source.limit(source.position() + length);
+            bytes.put(source).flip();
+        }
+        buffer.position(buffer.position() + length);
+        return bytes;
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,99 @@
+package com.github.skyao.taskengine.store;
+
+import com.github.skyao.taskengine.task.Task;
+
+import java.util.List;
+
+/**
+ * task store which keeps pending tasks, so that they can be loaded again after restart.
+ *
+ * @author Sky Ao
+ */
+public interface TaskStore {
+
+    /**
+     * save a new pending task.
+     *
+     * @param task task to save
+     * @return task id allocated by this store
+     * @throws TaskStoreException if fail to save task
+     */
+    long add(Task task);
+
+    /**
+     * save a batch of new pending tasks in one write.
+     *
+     * @param tasks tasks to save
+     * @return task ids allocated by this store, in the same order as tasks
+     * @throws TaskStoreException if fail to save tasks
+     */
+    long[] addAll(List<Task> tasks);
+
+    /**
+     * allocate a task id without saving any task, for a task which is finished at once without being pending.
+     * <p>
+     * The id never collides with the ids of saved tasks. It is not kept, so it may be allocated again after restart.
+     * </p>
+     *
+     * @return task id allocated by this store
+     */
+    long nextId();
+
+    /**
+     * save a pending task which has been changed, for example the executed times of its repeat plan.
+     *
+     * @param id   task id
+     * @param task task to save
+     * @throws TaskStoreException if fail to save task
+     */
+    void update(long id, Task task);
+
+    /**
+     * save a change of the checkpointed context properties of a pending task.
+     * <p>
+     * Only the change is written, the task itself is not. Checkpointed properties are part of the task when it is
+     * loaded, and they are removed with the task.
+     * </p>
+     *
+     * @param id    task id
+     * @param key   key of property
+     * @param value value of property, null if it is removed from checkpoint
+     * @throws TaskStoreException       if fail to save checkpoint
+     * @throws IllegalArgumentException if value can not be saved
+     */
+    void checkpoint(long id, String key, Object value);
+
+    /**
+     * remove a task which is finished.
+     *
+     * @param id task id
+     * @throws TaskStoreException if fail to remove task
+     */
+    void remove(long id);
+
+    /**
+     * load all pending tasks.
+     * <p>
+     * Tasks should be passed to the loader with higher priority first as far as possible, so that the engine can
+     * begin to execute high priority tasks before all the tasks are loaded.
+     * </p>
+     *
+     * @param loader loader to receive tasks
+     * @throws TaskStoreException if fail to load tasks
+     */
+    void load(Loader loader);
+
+    /**
+     * receiver of loaded tasks.
+     */
+    interface Loader {
+
+        /**
+         * receive a loaded task.
+         *
+         * @param id   task id
+         * @param task task
+         */
+        void load(long id, Task task);
+    }
+}
@@ -0,0 +1,20 @@
+package com.github.skyao.taskengine.store;
+
+/**
+ * exception thrown when task store fails to read or write tasks.
+ *
+ * @author Sky Ao
+ */
+public class TaskStoreException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * create by message and cause.
+     *
+     * @param message exception message
+     * @param cause   cause of this exception
+     */
+    public TaskStoreException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,19 @@
+package com.github.skyao.taskengine.task;
+
+/**
+ * listener of properties checkpointed by task executions.
+ *
+ * @author Sky Ao
+ * @see TaskContext#checkpoint(String, Object)
+ */
+public interface CheckpointListener {
+
+    /**
+     * called on the executing thread when a property is checkpointed.
+     *
+     * @param task  runtime task being executed
+     * @param key   key of property
+     * @param value value of property, null if it is removed
+     */
+    void onCheckpoint(RuntimeTask task, String key, Object value);
+}
@@ -0,0 +1,27 @@
+package com.github.skyao.taskengine.task;
+
+/**
+ * how the next execution of a repeated task is timed.
+ *
+ * @author Sky Ao
+ * @see RepeatPolicy
+ */
+public enum RepeatMode {
+
+    /**
+     * next execution is one interval after the last execution finished, so long executions push the schedule later.
+     */
+    FIXED_DELAY,
+
+    /**
+     * executions are anchored to start + k * interval, runs missed while the task was running or waiting are skipped
+     * and counted as executed.
+     */
+    FIXED_RATE_SKIP,
+
+    /**
+     * executions are anchored to start + k * interval, runs missed while the task was running or waiting are
+     * executed one after another at once until the task catches up.
+     */
+    FIXED_RATE_CATCH_UP
+}
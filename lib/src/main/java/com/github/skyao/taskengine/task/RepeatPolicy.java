@@ -0,0 +1,247 @@
+package com.github.skyao.taskengine.task;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * immutable rule about how to execute a task repeatedly.
+ * <p>
+ * Repeat policy only describes the rule, the executed times belong to each task and are kept in its task plan.
+ * </p>
+ * <p>
+ * Repeat mode decides how the next execution is timed, it is used by schedule plans. Retries are always timed with
+ * fixed delay.
+ * </p>
+ *
+ * @author Sky Ao
+ * @see TaskPolicy
+ */
+public final class RepeatPolicy {
+
+    /**
+     * default repeat policy: enabled, execute only once.
+     */
+    public static final RepeatPolicy DEFAULT = new RepeatPolicy(true, 1, 0, RepeatMode.FIXED_DELAY);
+
+    private final boolean enable;
+    private final int max;
+    private final long interval;
+    private final RepeatMode mode;
+
+    private RepeatPolicy(boolean enable, int max, long interval, RepeatMode mode) {
+        this.enable = enable;
+        this.max = max;
+        this.interval = interval;
+        this.mode = mode;
+    }
+
+    /**
+     * create repeat policy.
+     *
+     * @param enable   enable or not
+     * @param max      max execute times, 1 means no repeat
+     * @param interval interval in milliseconds, 0 means no interval
+     * @return repeat policy
+     * @throws IllegalArgumentException if max is not greater than 0 or interval is negative
+     */
+    public static RepeatPolicy of(boolean enable, int max, long interval) {
+        return of(enable, max, interval, RepeatMode.FIXED_DELAY);
+    }
+
+    /**
+     * create repeat policy with specified repeat mode.
+     *
+     * @param enable   enable or not
+     * @param max      max execute times, 1 means no repeat
+     * @param interval interval in milliseconds, 0 means no interval
+     * @param mode     repeat mode
+     * @return repeat policy
+     * @throws NullPointerException     if mode is null
+     * @throws IllegalArgumentException if max is not greater than 0 or interval is negative, or interval is 0 in
+     *                                  fixed rate modes
+     */
+    public static RepeatPolicy of(boolean enable, int max, long interval, RepeatMode mode) {
+        checkNotNull(mode, "repeat mode should not be null");
+        checkArgument(max > 0, "max execute times should greater than 0: max=" + max);
+        checkArgument(interval >= 0, "interval should greater than or equal to zero: interval=" + interval);
+        checkArgument(mode == RepeatMode.FIXED_DELAY || interval > 0,
+                "interval should greater than zero in fixed rate mode: interval=" + interval);
+
+        return new RepeatPolicy(enable, max, interval, mode);
+    }
+
+    /**
+     * check if repeat policy enable.
+     *
+     * @return true if repeat policy enable
+     */
+    public boolean isEnable() {
+        return enable;
+    }
+
+    /**
+     * get max execute times.
+     *
+     * @return max execute times
+     */
+    public int getMax() {
+        return max;
+    }
+
+    /**
+     * get interval.
+     *
+     * @return interval in milliseconds
+     */
+    public long getInterval() {
+        return interval;
+    }
+
+    /**
+     * get repeat mode.
+     *
+     * @return repeat mode
+     */
+    public RepeatMode getMode() {
+        return mode;
+    }
+
+    /**
+     * check if executions are anchored to start + k * interval.
+     *
+     * @return true if repeat mode is fixed rate
+     */
+    public boolean isFixedRate() {
+        return mode != RepeatMode.FIXED_DELAY;
+    }
+
+    /**
+     * get the index of next execution, which is the executed times of the task once next execution begins.
+     * <p>
+     * In FIXED_RATE_SKIP mode, runs whose time has passed are skipped, so the index may jump over them.
+     * </p>
+     *
+     * @param start    start time of the task, which anchors fixed rate executions
+     * @param executed executed times of the task
+     * @param now      current time in timestamp
+     * @return index of next execution, starting from 0 for the first execution at start
+     */
+    public int nextExecuteIndex(long start, int executed, long now) {
+        if (mode != RepeatMode.FIXED_RATE_SKIP || interval == 0 || now <= start) {
+            return executed;
+        }
+        long due = (now - start + interval - 1) / interval;
+        return (int) Math.min(Math.max(due, executed), Integer.MAX_VALUE);
+    }
+
+    /**
+     * get time of next execution.
+     *
+     * @param start    start time of the task, which anchors fixed rate executions
+     * @param executed executed times of the task
+     * @param now      current time in timestamp, which is the finish time of last execution
+     * @return time of next execution in timestamp, which may be in the past in FIXED_RATE_CATCH_UP mode
+     */
+    public long nextExecuteTime(long start, int executed, long now) {
+        if (mode == RepeatMode.FIXED_DELAY) {
+            return now + interval;
+        }
+        return start + nextExecuteIndex(start, executed, now) * interval;
+    }
+
+    /**
+     * check if a task need repeat to execute any more.
+     *
+     * @param executed executed times of the task
+     * @param deadline deadline of the task, 0 means no deadline
+     * @return true if the task need repeat to execute
+     */
+    public boolean needRepeat(int executed, long deadline) {
+        // check max execute times and executed times first
+        if (max <= 1 || executed >= max) {
+            return false;
+        }
+
+        // then check deadline
+        // if no deadline
+        if (deadline <= 0) {
+            return true;
+        }
+
+        // if deadline exists, check nextExecuteTime
+        // consider interval if it is enable
+        long nextExecuteTime = interval > 0 ? (System.currentTimeMillis() + interval) : System.currentTimeMillis();
+        return nextExecuteTime <= deadline;
+    }
+
+    /**
+     * check if a task need repeat to execute at specified time.
+     *
+     * @param executed        executed times of the task
+     * @param deadline        deadline of the task, 0 means no deadline
+     * @param nextExecuteTime time of next execution in timestamp
+     * @return true if the task need repeat to execute
+     * @see #nextExecuteTime(long, int, long)
+     */
+    public boolean needRepeat(int executed, long deadline, long nextExecuteTime) {
+        return max > 1 && executed < max && (deadline <= 0 || nextExecuteTime <= deadline);
+    }
+
+    // copies are validated like new policies, so a fixed rate mode never ends up without interval
+
+    RepeatPolicy withEnable(boolean enable) {
+        return of(enable, max, interval, mode);
+    }
+
+    RepeatPolicy withMax(int max) {
+        return of(enable, max, interval, mode);
+    }
+
+    RepeatPolicy withInterval(long interval) {
+        return of(enable, max, interval, mode);
+    }
+
+    RepeatPolicy withMode(RepeatMode mode) {
+        return of(enable, max, interval, mode);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof RepeatPolicy)) {
+            return false;
+        }
+        RepeatPolicy that = (RepeatPolicy) o;
+        return enable == that.enable && max == that.max && interval == that.interval && mode == that.mode;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = enable ? 1 : 0;
+        result = 31 * result + max;
+        result = 31 * result + (int) (interval ^ (interval >>> 32));
+        result = 31 * result + mode.hashCode();
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder buffer = new StringBuilder();
+        buffer.append('{');
+        if (enable) {
+            buffer.append("max=").append(max);
+            if (interval > 0) {
+                buffer.append(",interval=").append(interval);
+            }
+            if (mode != RepeatMode.FIXED_DELAY) {
+                buffer.append(",mode=").append(mode);
+            }
+        } else {
+            buffer.append("enable=false");
+        }
+        buffer.append('}');
+        return buffer.toString();
+    }
+}
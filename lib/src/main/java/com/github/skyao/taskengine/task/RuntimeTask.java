@@ -4,11 +4,22 @@ import static com.google.common.base.Preconditions.checkNotNull;
 
 /**
  * runtime task.
+ * <p>
+ * Runtime task wraps the task definition together with the information which only exists while the task is
+ * handled by the engine: task context, task status and task result.
+ * </p>
  */
 public class RuntimeTask {
+    private final long id;
     private final Task task;
     private final TaskContext context;
 
+    private volatile TaskStatus status = TaskStatus.INITIAL;
+    private volatile TaskResult result;
+    private long enqueueTime;
+    private long startTime;
+    private long executionTime;
+
     /**
      * create RuntimeTask for a Task.
      *
@@ -16,13 +27,35 @@ public class RuntimeTask {
      * @throws NullPointerException if task or task context is null
      */
     public RuntimeTask(Task task, TaskContext context) {
+        this(0L, task, context);
+    }
+
+    /**
+     * create RuntimeTask for a Task with task id.
+     *
+     * @param id      task id, which identifies this task in task store
+     * @param task    task to wrap
+     * @param context task context
+     * @throws NullPointerException if task or task context is null
+     */
+    public RuntimeTask(long id, Task task, TaskContext context) {
         checkNotNull(task, "task should not be null");
         checkNotNull(context, "task context should not be null");
 
+        this.id = id;
         this.task = task;
         this.context = context;
     }
 
+    /**
+     * get task id.
+     *
+     * @return task id, 0 if this task is not identified
+     */
+    public long getId() {
+        return id;
+    }
+
     /**
      * get task.
      *
@@ -40,4 +73,128 @@ public class RuntimeTask {
     public TaskContext getContext() {
         return context;
     }
+
+    /**
+     * get task status.
+     *
+     * @return task status
+     */
+    public TaskStatus getStatus() {
+        return status;
+    }
+
+    /**
+     * set task status.
+     *
+     * @param status task status
+     * @throws NullPointerException if status is null
+     */
+    public void setStatus(TaskStatus status) {
+        checkNotNull(status, "task status should not be null");
+
+        this.status = status;
+    }
+
+    /**
+     * get task result.
+     *
+     * @return task result, null if task is not finished
+     */
+    public TaskResult getResult() {
+        return result;
+    }
+
+    /**
+     * finish this task with specified result.
+     * <p>
+     * The status of this task will be set to FINISHED.
+     * </p>
+     *
+     * @param result task result
+     * @throws NullPointerException if result is null
+     */
+    public void finish(TaskResult result) {
+        checkNotNull(result, "task result should not be null");
+
+        this.result = result;
+        this.status = TaskStatus.FINISHED;
+    }
+
+    /**
+     * check if this task is finished.
+     *
+     * @return true if task is finished
+     */
+    public boolean isFinished() {
+        return status == TaskStatus.FINISHED;
+    }
+
+    /**
+     * get the time when this task was put into the pending queue last time.
+     *
+     * @return enqueue time in nanoseconds, see {@link System#nanoTime()}
+     */
+    public long getEnqueueTime() {
+        return enqueueTime;
+    }
+
+    /**
+     * set the time when this task was put into the pending queue.
+     *
+     * @param enqueueTime enqueue time in nanoseconds, see {@link System#nanoTime()}
+     */
+    public void setEnqueueTime(long enqueueTime) {
+        this.enqueueTime = enqueueTime;
+    }
+
+    /**
+     * get the time when last execution of this task began.
+     *
+     * @return start time in nanoseconds, see {@link System#nanoTime()}, 0 if never executed
+     */
+    public long getStartTime() {
+        return startTime;
+    }
+
+    /**
+     * set the time when an execution of this task begins.
+     *
+     * @param startTime start time in nanoseconds, see {@link System#nanoTime()}
+     */
+    public void setStartTime(long startTime) {
+        this.startTime = startTime;
+    }
+
+    /**
+     * get the time taken by last execution of this task.
+     *
+     * @return execution time in nanoseconds, 0 if never executed
+     */
+    public long getExecutionTime() {
+        return executionTime;
+    }
+
+    /**
+     * set the time taken by an execution of this task.
+     *
+     * @param executionTime execution time in nanoseconds
+     */
+    public void setExecutionTime(long executionTime) {
+        this.executionTime = executionTime;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder buffer = new StringBuilder();
+        buffer.append("RuntimeTask[");
+        buffer.append("id=").append(id);
+        buffer.append(",content=").append(task.getContent());
+        buffer.append(",plan=").append(task.getPlan());
+        buffer.append(",status=").append(status);
+        if (result != null) {
+            buffer.append(",result=").append(result);
+        }
+        buffer.append(']');
+        return buffer.toString();
+    }
 }
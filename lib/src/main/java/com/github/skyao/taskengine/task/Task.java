@@ -1,16 +1,35 @@
 package com.github.skyao.taskengine.task;
 
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 
 /**
  * task definition of task engine.
+ * <p>
+ * A task may belong to a tenant, then tasks of different tenants with the same priority share the engine fairly.
+ * </p>
+ * <p>
+ * A task may have an ordering key, then tasks with the same key run one by one in order if the engine has ordered
+ * lanes.
+ * </p>
+ * <p>
+ * A task keeps the context properties checkpointed by its executions, which are saved with it in task store, so its
+ * retries resume from the last checkpoint even after restart.
+ * </p>
  *
  * @author Sky Ao
  */
 public class Task {
-    private final TaskContent content;
+    private volatile TaskContent content;
     private final TaskPlan plan;
+    private final String tenant;
+    private String orderingKey;
+    private Map<String, Object> checkpoint;
 
     /**
      * create task by task content and default task plan.
@@ -24,6 +43,7 @@ public class Task {
 
         this.content = content;
         this.plan = TaskPlan.Builder.newDefaultPlan();
+        this.tenant = null;
     }
 
     /**
@@ -34,11 +54,24 @@ public class Task {
      * @throws NullPointerException if content or plan is null
      */
     public Task(TaskContent content, TaskPlan plan) {
+        this(content, plan, null);
+    }
+
+    /**
+     * create task of a tenant by task content and task plan.
+     *
+     * @param content task content
+     * @param plan    task plan
+     * @param tenant  tenant key, null for the default tenant
+     * @throws NullPointerException if content or plan is null
+     */
+    public Task(TaskContent content, TaskPlan plan, String tenant) {
         checkNotNull(content, "task content should not be null");
         checkNotNull(plan, "task plan should not be null");
 
         this.content = content;
         this.plan = plan;
+        this.tenant = tenant;
     }
 
     /**
@@ -50,6 +83,25 @@ public class Task {
         return this.content;
     }
 
+    /**
+     * replace task content by another one of the same type.
+     * <p>
+     * This is used to release parameters of a waiting task spilled to disk and to restore them, while the task is
+     * spilled its content has no parameters.
+     * </p>
+     *
+     * @param content new task content
+     * @throws NullPointerException     if content is null
+     * @throws IllegalArgumentException if type of content is different
+     */
+    public void setContent(TaskContent content) {
+        checkNotNull(content, "task content should not be null");
+        checkArgument(content.getType() == this.content.getType(), "task type should not be changed: type="
+                + content.getType());
+
+        this.content = content;
+    }
+
     /**
      * get task plan.
      *
@@ -59,4 +111,88 @@ public class Task {
         return this.plan;
     }
 
+    /**
+     * get tenant of this task.
+     *
+     * @return tenant key, null for the default tenant
+     */
+    public String getTenant() {
+        return this.tenant;
+    }
+
+    /**
+     * get explicit ordering key of this task.
+     *
+     * @return ordering key, null if not set
+     */
+    public String getOrderingKey() {
+        return this.orderingKey;
+    }
+
+    /**
+     * set explicit ordering key, which takes precedence over the key taken from parameters by ordered lanes.
+     * <p>
+     * It should be set before the task is submitted.
+     * </p>
+     *
+     * @param orderingKey ordering key, null to clear
+     * @see com.github.skyao.taskengine.queue.OrderedLanes
+     */
+    public void setOrderingKey(String orderingKey) {
+        this.orderingKey = orderingKey;
+    }
+
+    /**
+     * get checkpointed context properties.
+     *
+     * @return unmodifiable checkpointed properties, empty if none
+     */
+    public synchronized Map<String, Object> getCheckpoint() {
+        return checkpoint == null ? Collections.<String, Object>emptyMap()
+                : Collections.unmodifiableMap(new LinkedHashMap<>(checkpoint));
+    }
+
+    /**
+     * checkpoint a context property.
+     *
+     * @param key   key of property
+     * @param value value of property, null to remove it from checkpoint
+     * @throws NullPointerException     if key is null
+     * @throws IllegalArgumentException if value is not a String, Integer, Long, Boolean, Double or ByteBuffer
+     */
+    public synchronized void checkpoint(String key, Object value) {
+        checkNotNull(key, "key should not be null");
+        checkCheckpointValue(value);
+
+        if (value == null) {
+            if (checkpoint != null) {
+                checkpoint.remove(key);
+            }
+            return;
+        }
+        if (checkpoint == null) {
+            checkpoint = new LinkedHashMap<>();
+        }
+        checkpoint.put(key, value);
+    }
+
+    /**
+     * clear checkpointed properties, e.g. before the next run of a scheduled task.
+     */
+    public synchronized void clearCheckpoint() {
+        checkpoint = null;
+    }
+
+    /**
+     * check if a value can be checkpointed, which is one of the types task store can save.
+     *
+     * @param value value of property, null is allowed
+     * @throws IllegalArgumentException if value is not a String, Integer, Long, Boolean, Double or ByteBuffer
+     */
+    static void checkCheckpointValue(Object value) {
+        checkArgument(value == null || value instanceof String || value instanceof Integer || value instanceof Long
+                || value instanceof Boolean || value instanceof Double || value instanceof ByteBuffer,
+                "unsupported checkpoint value: " + value);
+    }
+
 }
@@ -1,5 +1,6 @@
 package com.github.skyao.taskengine.task;
 
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -183,5 +184,30 @@ public class TaskContent {
             parameterList.add(new TaskParameter(name, value));
             return this;
         }
+
+        /**
+         * add a parameter with value in binary format, which is shared without copying.
+         *
+         * @param name  parameter name
+         * @param value parameter value in binary format
+         * @return this builder itself
+         */
+        public Builder add(String name, ByteBuffer value) {
+            parameterList.add(new TaskParameter(name, value));
+            return this;
+        }
+
+        /**
+         * add a parameter with value in binary format, which is compressed if it is large.
+         *
+         * @param name              parameter name
+         * @param value             parameter value in binary format
+         * @param compressThreshold min size in bytes to compress
+         * @return this builder itself
+         */
+        public Builder add(String name, ByteBuffer value, int compressThreshold) {
+            parameterList.add(new TaskParameter(name, value, compressThreshold));
+            return this;
+        }
     }
 }
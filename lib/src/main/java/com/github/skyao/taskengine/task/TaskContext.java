@@ -1,5 +1,6 @@
 package com.github.skyao.taskengine.task;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
@@ -11,6 +12,11 @@ import static com.google.common.base.Preconditions.checkNotNull;
  * <p>
  * This context saves the context information on task level.
  * </p>
+ * <p>
+ * Properties saved by {@link #checkpoint(String, Object)} are also saved into task store. When the task is retried,
+ * even after restart, its context is restored to the last checkpoint before execution, so a long task can resume
+ * where it stopped instead of starting over.
+ * </p>
  *
  * @author Sky Ao
  */
@@ -21,6 +27,14 @@ public class TaskContext {
      */
     private Map<String, Object> properties = new HashMap<String, Object>();
 
+    /**
+     * checkpointed properties, null if none.
+     */
+    private Map<String, Object> checkpoints;
+
+    private RuntimeTask owner;
+    private CheckpointListener listener;
+
     /**
      * save property.
      * <p>
@@ -54,4 +68,70 @@ public class TaskContext {
         return properties.get(key);
     }
 
+    /**
+     * save property and checkpoint it.
+     * <p>
+     * Only the changed property is written to task store, so frequent checkpoints are cheap. The value should be a
+     * String, Integer, Long, Boolean, Double or ByteBuffer to be saved into task store.
+     * </p>
+     *
+     * @param key   key of property
+     * @param value value of property, null to remove the property and its checkpoint
+     * @throws NullPointerException     if key is null
+     * @throws IllegalArgumentException if value can not be saved into task store
+     */
+    public void checkpoint(String key, Object value) {
+        checkNotNull(key, "key should not be null");
+        Task.checkCheckpointValue(value);
+
+        saveProperty(key, value);
+        if (value == null) {
+            if (checkpoints != null) {
+                checkpoints.remove(key);
+            }
+        } else {
+            if (checkpoints == null) {
+                checkpoints = new HashMap<String, Object>();
+            }
+            checkpoints.put(key, value);
+        }
+        if (listener != null) {
+            listener.onCheckpoint(owner, key, value);
+        }
+    }
+
+    /**
+     * get checkpointed properties.
+     *
+     * @return unmodifiable checkpointed properties, empty if none
+     */
+    public Map<String, Object> getCheckpoints() {
+        return checkpoints == null ? Collections.<String, Object>emptyMap()
+                : Collections.unmodifiableMap(checkpoints);
+    }
+
+    /**
+     * restore this context to a checkpoint, properties not checkpointed are dropped.
+     *
+     * @param checkpoint checkpointed properties
+     * @throws NullPointerException if checkpoint is null
+     */
+    public void restore(Map<String, Object> checkpoint) {
+        checkNotNull(checkpoint, "checkpoint should not be null");
+
+        this.properties = new HashMap<String, Object>(checkpoint);
+        this.checkpoints = checkpoint.isEmpty() ? null : new HashMap<String, Object>(checkpoint);
+    }
+
+    /**
+     * set listener of checkpoints, which is called by the engine before execution.
+     *
+     * @param owner    runtime task of this context
+     * @param listener listener of checkpoints, null to remove
+     */
+    public void setCheckpointListener(RuntimeTask owner, CheckpointListener listener) {
+        this.owner = owner;
+        this.listener = listener;
+    }
+
 }
@@ -1,5 +1,12 @@
 package com.github.skyao.taskengine.task;
 
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 
 /**
@@ -14,11 +21,18 @@ import static com.google.common.base.Preconditions.checkNotNull;
  *     3. long
  *     4. boolean
  *     5. double
+ *     6. binary, read as a read-only ByteBuffer
  * </pre>
+ * <p>
+ * Binary values are kept as views of the given buffers without copying, so large payloads do not need to be encoded
+ * to strings. A binary value may be compressed when it is created, then it is kept and serialized in compressed form,
+ * and inflated each time it is read.
+ * </p>
  */
 public class TaskParameter {
     private final String name;
     private final Object value;
+    private final int length;
 
     /**
      * create by name and value in string format.
@@ -33,6 +47,7 @@ public class TaskParameter {
 
         this.name = name;
         this.value = value;
+        this.length = -1;
     }
 
     /**
@@ -47,6 +62,7 @@ public class TaskParameter {
 
         this.name = name;
         this.value = value;
+        this.length = -1;
     }
 
     /**
@@ -61,6 +77,7 @@ public class TaskParameter {
 
         this.name = name;
         this.value = value;
+        this.length = -1;
     }
 
     /**
@@ -75,6 +92,7 @@ public class TaskParameter {
 
         this.name = name;
         this.value = value;
+        this.length = -1;
     }
 
     /**
@@ -89,6 +107,81 @@ public class TaskParameter {
 
         this.name = name;
         this.value = value;
+        this.length = -1;
+    }
+
+    /**
+     * create by name and binary value without copying.
+     * <p>
+     * The remaining bytes of the buffer are shared with the parameter, they should not be modified any more.
+     * </p>
+     *
+     * @param name  parameter name
+     * @param value parameter value in binary format
+     * @throws java.lang.NullPointerException if name or value is null
+     */
+    public TaskParameter(String name, ByteBuffer value) {
+        checkNotNull(name, "key should not be null");
+        checkNotNull(value, "value should not be null");
+
+        this.name = name;
+        this.value = value.slice().asReadOnlyBuffer();
+        this.length = -1;
+    }
+
+    /**
+     * create by name and binary value, which is compressed if it is large.
+     * <p>
+     * The value is compressed only if its size is not less than the threshold and the compressed form is smaller,
+     * otherwise it is shared without copying like {@link #TaskParameter(String, ByteBuffer)}.
+     * </p>
+     *
+     * @param name              parameter name
+     * @param value             parameter value in binary format
+     * @param compressThreshold min size in bytes to compress
+     * @throws java.lang.NullPointerException     if name or value is null
+     * @throws java.lang.IllegalArgumentException if compressThreshold is negative
+     */
+    public TaskParameter(String name, ByteBuffer value, int compressThreshold) {
+        checkNotNull(name, "key should not be null");
+        checkNotNull(value, "value should not be null");
+        checkArgument(compressThreshold >= 0, "compress threshold should greater than or equal to zero: threshold="
+                + compressThreshold);
+
+        ByteBuffer compressed = value.remaining() >= compressThreshold ? deflate(value) : null;
+        this.name = name;
+        if (compressed != null && compressed.remaining() < value.remaining()) {
+            this.value = compressed.asReadOnlyBuffer();
+            this.length = value.remaining();
+        } else {
+            this.value = value.slice().asReadOnlyBuffer();
+            this.length = -1;
+        }
+    }
+
+    private TaskParameter(String name, Object value, int length) {
+        this.name = name;
+        this.value = value;
+        this.length = length;
+    }
+
+    /**
+     * create by name and binary value which is compressed already, usually a value decoded from storage.
+     *
+     * @param name       parameter name
+     * @param compressed compressed value, shared without copying
+     * @param length     size of value before compressed
+     * @return task parameter
+     * @throws java.lang.NullPointerException     if name or compressed is null
+     * @throws java.lang.IllegalArgumentException if length is negative
+     * @see #getStoredValue()
+     */
+    public static TaskParameter ofCompressed(String name, ByteBuffer compressed, int length) {
+        checkNotNull(name, "key should not be null");
+        checkNotNull(compressed, "value should not be null");
+        checkArgument(length >= 0, "length should greater than or equal to zero: length=" + length);
+
+        return new TaskParameter(name, (Object) compressed.slice().asReadOnlyBuffer(), length);
     }
 
     /**
@@ -102,11 +195,94 @@ public class TaskParameter {
 
     /**
      * get value of task parameter.
+     * <p>
+     * Binary value is returned as a new read-only ByteBuffer view, which is inflated first if it is compressed.
+     * </p>
      *
      * @return value of task parameter
      */
     public Object getValue() {
-        return value;
+        if (!(value instanceof ByteBuffer)) {
+            return value;
+        }
+        return length < 0 ? ((ByteBuffer) value).duplicate() : inflate((ByteBuffer) value, length);
+    }
+
+    /**
+     * check if value is binary and kept in compressed form.
+     *
+     * @return true if value is compressed
+     */
+    public boolean isCompressed() {
+        return length >= 0;
+    }
+
+    /**
+     * get size of binary value before compressed.
+     *
+     * @return size in bytes, -1 if value is not compressed
+     */
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * get binary value as it is kept, which is the compressed form if value is compressed.
+     *
+     * @return new read-only ByteBuffer view of kept value, null if value is not binary
+     */
+    public ByteBuffer getStoredValue() {
+        return value instanceof ByteBuffer ? ((ByteBuffer) value).duplicate() : null;
+    }
+
+    private static ByteBuffer deflate(ByteBuffer value) {
+        byte[] input = new byte[value.remaining()];
+        value.duplicate().get(input);
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(input);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(input.length / 2 + 16);
+            byte[] chunk = new byte[Math.min(input.length + 16, 8192)];
+            while (!deflater.finished()) {
+                int count = deflater.deflate(chunk);
+                out.write(chunk, 0, count);
+                if (out.size() >= input.length) {
+                    // not smaller than the raw value, give up
+                    return null;
+                }
+            }
+            return ByteBuffer.wrap(out.toByteArray());
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static ByteBuffer inflate(ByteBuffer compressed, int length) {
+        byte[] input = new byte[compressed.remaining()];
+        compressed.duplicate().get(input);
+        byte[] output = new byte[length];
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(input);
+            int count = 0;
+            while (count < length && !inflater.finished()) {
+                int inflated = inflater.inflate(output, count, length - count);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                count += inflated;
+            }
+            if (count != length) {
+                throw new IllegalStateException("corrupted compressed value: expected=" + length + ", actual="
+                        + count);
+            }
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("corrupted compressed value", e);
+        } finally {
+            inflater.end();
+        }
+        return ByteBuffer.wrap(output).asReadOnlyBuffer();
     }
 
 }
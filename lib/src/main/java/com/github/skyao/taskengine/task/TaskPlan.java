@@ -5,15 +5,20 @@ import static com.google.common.base.Preconditions.checkNotNull;
 
 /**
  * task plan about when to execute this task.
+ * <p>
+ * The plan is split into two parts: the immutable {@link TaskPolicy} with priority, timeout, schedule rule and retry
+ * rule, which is interned and shared by all the tasks with the same policy, and the per-task state kept in this plan:
+ * start time, deadline and executed times of schedule and retry.
+ * </p>
  *
  * @author Sky Ao
  */
 public class TaskPlan {
-    private int priority;
+    private TaskPolicy policy = TaskPolicy.DEFAULT;
     private long start;
     private long deadline;
-    private RepeatPlan schedule;
-    private RepeatPlan retry;
+    private int scheduleExecuted;
+    private int retryExecuted;
 
     /**
      * create a default plan.
@@ -30,7 +35,7 @@ public class TaskPlan {
      * @return task priority
      */
     public int getPriority() {
-        return priority;
+        return policy.getPriority();
     }
 
     /**
@@ -42,7 +47,27 @@ public class TaskPlan {
      */
     public void setPriority(int priority) {
         checkArgument(TaskPriority.isValidPriority(priority), "invalid task priority=" + priority);
-        this.priority = priority;
+        this.policy = policy.withPriority(priority);
+    }
+
+    /**
+     * get task policy.
+     *
+     * @return interned task policy
+     */
+    public TaskPolicy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * set task policy.
+     *
+     * @param policy task policy
+     * @throws java.lang.NullPointerException if policy is null
+     */
+    public void setPolicy(TaskPolicy policy) {
+        checkNotNull(policy, "task policy should not be null");
+        this.policy = policy;
     }
 
     /**
@@ -87,37 +112,77 @@ public class TaskPlan {
         this.deadline = deadline;
     }
 
+    /**
+     * get execution timeout, which is the max time of each execution.
+     *
+     * @return execution timeout in milliseconds, 0 means no timeout
+     */
+    public long getTimeout() {
+        return policy.getTimeout();
+    }
+
+    /**
+     * set execution timeout.
+     * <p>
+     * An execution running longer than timeout is interrupted and counted as a failure, so it is retried by retry
+     * plan.
+     * </p>
+     *
+     * @param timeout execution timeout in milliseconds, 0 means no timeout
+     * @throws java.lang.IllegalArgumentException if timeout is negative
+     */
+    public void setTimeout(long timeout) {
+        checkArgument(timeout >= 0, "timeout should greater than or equals to 0: timeout=" + timeout);
+
+        this.policy = policy.withTimeout(timeout);
+    }
+
     /**
      * get retry plan.
+     * <p>
+     * The returned repeat plan is a view of the retry policy and the retry executed times of this plan.
+     * </p>
      *
      * @return retry plan, null if no retry.
      */
     public RepeatPlan getRetry() {
-        return retry;
+        return policy.getRetry() == null ? null : new RepeatPlan(this, true);
     }
 
     /**
      * set retry plan.
+     * <p>
+     * The repeat plan is bound to this plan, later changes to it are applied to this plan.
+     * </p>
      *
      * @param retryPlan retry plan
      * @throws java.lang.NullPointerException if retryPlan is null
      */
     public void setRetry(RepeatPlan retryPlan) {
         checkNotNull(retryPlan, "retry plan should not be null");
-        this.retry = retryPlan;
+
+        this.policy = policy.withRetry(retryPlan.toPolicy());
+        this.retryExecuted = retryPlan.getExecuted();
+        retryPlan.bind(this, true);
     }
 
     /**
      * get schedule plan.
+     * <p>
+     * The returned repeat plan is a view of the schedule policy and the schedule executed times of this plan.
+     * </p>
      *
      * @return schedule plan, null if this task only execute once.
      */
     public RepeatPlan getSchedule() {
-        return schedule;
+        return policy.getSchedule() == null ? null : new RepeatPlan(this, false);
     }
 
     /**
      * set schedule plan.
+     * <p>
+     * The repeat plan is bound to this plan, later changes to it are applied to this plan.
+     * </p>
      *
      * @param schedulePlan schedule plan
      * @throws java.lang.NullPointerException if schedulePlan is null
@@ -125,23 +190,83 @@ public class TaskPlan {
     public void setSchedule(RepeatPlan schedulePlan) {
         checkNotNull(schedulePlan, "schedule plan should not be null");
 
-        this.schedule = schedulePlan;
+        this.policy = policy.withSchedule(schedulePlan.toPolicy());
+        this.scheduleExecuted = schedulePlan.getExecuted();
+        schedulePlan.bind(this, false);
+    }
+
+    /**
+     * get executed times of schedule.
+     *
+     * @return executed times of schedule
+     */
+    public int getScheduleExecuted() {
+        return scheduleExecuted;
+    }
+
+    /**
+     * set executed times of schedule.
+     *
+     * @param executed executed times
+     * @throws java.lang.IllegalArgumentException if executed is negative
+     */
+    public void setScheduleExecuted(int executed) {
+        checkArgument(executed >= 0, "executed times should greater than or equal to zero: executedTimes=" + executed);
+        this.scheduleExecuted = executed;
+    }
+
+    /**
+     * get executed times of retry.
+     *
+     * @return executed times of retry
+     */
+    public int getRetryExecuted() {
+        return retryExecuted;
+    }
+
+    /**
+     * set executed times of retry.
+     *
+     * @param executed executed times
+     * @throws java.lang.IllegalArgumentException if executed is negative
+     */
+    public void setRetryExecuted(int executed) {
+        checkArgument(executed >= 0, "executed times should greater than or equal to zero: executedTimes=" + executed);
+        this.retryExecuted = executed;
+    }
+
+    /**
+     * create a copy of this plan, which shares the same task policy.
+     *
+     * @return new instance of task plan
+     */
+    public TaskPlan copy() {
+        TaskPlan plan = new TaskPlan();
+        plan.policy = policy;
+        plan.start = start;
+        plan.deadline = deadline;
+        plan.scheduleExecuted = scheduleExecuted;
+        plan.retryExecuted = retryExecuted;
+        return plan;
     }
 
     @Override
     public String toString() {
         StringBuilder buffer = new StringBuilder();
         buffer.append('{');
-        buffer.append("priority=").append(priority);
+        buffer.append("priority=").append(policy.getPriority());
         buffer.append(",start=").append(start);
         if (deadline > 0) {
             buffer.append(",deadline=").append(deadline);
         }
-        if (schedule != null) {
-            buffer.append(",schedule=").append(schedule);
+        if (policy.getTimeout() > 0) {
+            buffer.append(",timeout=").append(policy.getTimeout());
+        }
+        if (policy.getSchedule() != null) {
+            buffer.append(",schedule=").append(getSchedule());
         }
-        if (retry != null) {
-            buffer.append(",retry=").append(retry);
+        if (policy.getRetry() != null) {
+            buffer.append(",retry=").append(getRetry());
         }
         buffer.append('}');
         return buffer.toString();
@@ -158,13 +283,55 @@ public class TaskPlan {
 
     /**
      * task execute plan about how to execute this task repeatedly.
+     * <p>
+     * A repeat plan created by its constructor keeps its own values. Once it is set into a task plan, or when it is
+     * got from a task plan, it becomes a view of that task plan: the rule is read from and written to the task policy,
+     * and the executed times are read from and written to the task plan.
+     * </p>
      */
     public static class RepeatPlan {
-        private boolean enable = true;
-        private int max = 1;
+        private TaskPlan owner;
+        private boolean retry;
+
+        private RepeatPolicy policy = RepeatPolicy.DEFAULT;
         private int executed = 0;
-        private long interval = 0;
 
+        /**
+         * create a standalone repeat plan.
+         */
+        public RepeatPlan() {
+        }
+
+        private RepeatPlan(TaskPlan owner, boolean retry) {
+            bind(owner, retry);
+        }
+
+        private void bind(TaskPlan owner, boolean retry) {
+            this.owner = owner;
+            this.retry = retry;
+        }
+
+        /**
+         * get the immutable repeat policy of this plan.
+         *
+         * @return repeat policy
+         */
+        public RepeatPolicy toPolicy() {
+            if (owner == null) {
+                return policy;
+            }
+            return retry ? owner.policy.getRetry() : owner.policy.getSchedule();
+        }
+
+        private void setPolicy(RepeatPolicy policy) {
+            if (owner == null) {
+                this.policy = policy;
+            } else if (retry) {
+                owner.policy = owner.policy.withRetry(policy);
+            } else {
+                owner.policy = owner.policy.withSchedule(policy);
+            }
+        }
 
         /**
          * check if repeat plan enable.
@@ -172,7 +339,7 @@ public class TaskPlan {
          * @return true if repeat plan enable.
          */
         public boolean isEnable() {
-            return enable;
+            return toPolicy().isEnable();
         }
 
         /**
@@ -181,7 +348,7 @@ public class TaskPlan {
          * @param enable enable or not
          */
         public void setEnable(boolean enable) {
-            this.enable = enable;
+            setPolicy(toPolicy().withEnable(enable));
         }
 
         /**
@@ -190,7 +357,7 @@ public class TaskPlan {
          * @return max execute times
          */
         public int getMax() {
-            return max;
+            return toPolicy().getMax();
         }
 
         /**
@@ -202,7 +369,7 @@ public class TaskPlan {
         public void setMax(int max) {
             checkArgument(max > 1, "max execute times should greater than 1: max=" + max);
 
-            this.max = max;
+            setPolicy(toPolicy().withMax(max));
         }
 
         /**
@@ -211,7 +378,10 @@ public class TaskPlan {
          * @return executed times
          */
         public int getExecuted() {
-            return executed;
+            if (owner == null) {
+                return executed;
+            }
+            return retry ? owner.retryExecuted : owner.scheduleExecuted;
         }
 
         /**
@@ -223,7 +393,13 @@ public class TaskPlan {
         public void setExecuted(int executed) {
             checkArgument(executed >= 0, "executed times should greater than or equal to zero: executedTimes=" + executed);
 
-            this.executed = executed;
+            if (owner == null) {
+                this.executed = executed;
+            } else if (retry) {
+                owner.retryExecuted = executed;
+            } else {
+                owner.scheduleExecuted = executed;
+            }
         }
 
         /**
@@ -232,19 +408,42 @@ public class TaskPlan {
          * @return intervalInMilliseconds in milliseconds
          */
         public long getInterval() {
-            return interval;
+            return toPolicy().getInterval();
         }
 
         /**
          * set intervalInMilliseconds in milliseconds
          *
          * @param interval intervalInMilliseconds in milliseconds, 0 means no intervalInMilliseconds
-         * @throws java.lang.IllegalArgumentException if intervalInMilliseconds is not greater than or quails to 0
+         * @throws java.lang.IllegalArgumentException if intervalInMilliseconds is not greater than or quails to 0,
+         *                                            or it is 0 in fixed rate modes
          */
         public void setInterval(long interval) {
             checkArgument(interval >= 0, "intervalInMilliseconds should greater than or equal to zero: intervalInMilliseconds=" + interval);
 
-            this.interval = interval;
+            setPolicy(toPolicy().withInterval(interval));
+        }
+
+        /**
+         * get repeat mode.
+         *
+         * @return repeat mode
+         */
+        public RepeatMode getMode() {
+            return toPolicy().getMode();
+        }
+
+        /**
+         * set repeat mode. Fixed rate modes need an interval, so set interval first.
+         *
+         * @param mode repeat mode
+         * @throws NullPointerException     if mode is null
+         * @throws IllegalArgumentException if mode is fixed rate and interval is 0
+         */
+        public void setMode(RepeatMode mode) {
+            checkNotNull(mode, "repeat mode should not be null");
+
+            setPolicy(toPolicy().withMode(mode));
         }
 
         /**
@@ -263,33 +462,22 @@ public class TaskPlan {
          * @return true if this task need repeat to execute
          */
         public boolean needRepeat(long deadline) {
-            // check max execute times and executed times first
-            if (max <= 1 || this.executed >= max) {
-                return false;
-            }
-
-            // then check deadline
-            // if no deadline
-            if (deadline <= 0) {
-                return true;
-            }
-
-            // if deadline exists, check nextExecuteTime
-            // consider intervalInMilliseconds if it is enable
-            long nextExecuteTime = interval > 0 ? (System.currentTimeMillis() + interval) : System
-                    .currentTimeMillis();
-            return nextExecuteTime <= deadline;
+            return toPolicy().needRepeat(getExecuted(), deadline);
         }
 
         @Override
         public String toString() {
+            RepeatPolicy repeatPolicy = toPolicy();
             StringBuilder buffer = new StringBuilder();
             buffer.append('{');
-            if (enable) {
-                buffer.append("max=").append(max);
-                buffer.append(",executed=").append(executed);
-                if (interval > 0) {
-                    buffer.append(",interval=").append(interval);
+            if (repeatPolicy.isEnable()) {
+                buffer.append("max=").append(repeatPolicy.getMax());
+                buffer.append(",executed=").append(getExecuted());
+                if (repeatPolicy.getInterval() > 0) {
+                    buffer.append(",interval=").append(repeatPolicy.getInterval());
+                }
+                if (repeatPolicy.isFixedRate()) {
+                    buffer.append(",mode=").append(repeatPolicy.getMode());
                 }
             } else {
                 buffer.append("enable=false");
@@ -367,6 +555,18 @@ public class TaskPlan {
                 this.repeatPlan.setInterval(hours * 60 * 60 * 1000);
                 return this;
             }
+
+            /**
+             * set repeat mode. Fixed rate modes need an interval, so set interval first.
+             *
+             * @param mode repeat mode
+             * @return this builder itself to chain
+             * @throws IllegalArgumentException if mode is fixed rate and interval is 0
+             */
+            public RepeatPlanBuilder mode(RepeatMode mode) {
+                this.repeatPlan.setMode(mode);
+                return this;
+            }
         }
     }
 
@@ -511,6 +711,28 @@ public class TaskPlan {
             return this;
         }
 
+        /**
+         * set execution timeout in milliseconds.
+         *
+         * @param milliseconds execution timeout in milliseconds
+         * @return this builder itself to chain
+         */
+        public Builder timeoutInMilliseconds(long milliseconds) {
+            this.plan.setTimeout(milliseconds);
+            return this;
+        }
+
+        /**
+         * set execution timeout in seconds.
+         *
+         * @param seconds execution timeout in seconds
+         * @return this builder itself to chain
+         */
+        public Builder timeoutInSeconds(int seconds) {
+            this.plan.setTimeout(seconds * 1000L);
+            return this;
+        }
+
         public RepeatPlan.RepeatPlanBuilder enableSchedule() {
             RepeatPlan repeatPlan = new RepeatPlan();
             this.plan.setSchedule(repeatPlan);
@@ -0,0 +1,193 @@
+package com.github.skyao.taskengine.task;
+
+import com.google.common.base.Objects;
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * immutable policy of task plan: priority, execution timeout, schedule rule and retry rule.
+ * <p>
+ * Task policies are interned, so tasks with the same policy share one instance no matter how many of them exist,
+ * and anything derived from a policy can be computed once and cached on it. Per-task state such as start time,
+ * deadline and executed times is kept in {@link TaskPlan}.
+ * </p>
+ *
+ * @author Sky Ao
+ */
+public final class TaskPolicy {
+    private static final Interner<TaskPolicy> INTERNER = Interners.newWeakInterner();
+
+    /**
+     * default policy: normal priority, no schedule, no retry.
+     */
+    public static final TaskPolicy DEFAULT = of(TaskPriority.DEFAULT, null, null);
+
+    private final int priority;
+    private final int band;
+    private final RepeatPolicy schedule;
+    private final RepeatPolicy retry;
+    private final long timeout;
+
+    private TaskPolicy(int priority, RepeatPolicy schedule, RepeatPolicy retry, long timeout) {
+        this.priority = priority;
+        this.band = TaskPriority.bandOf(priority);
+        this.schedule = schedule;
+        this.retry = retry;
+        this.timeout = timeout;
+    }
+
+    /**
+     * get the interned task policy.
+     *
+     * @param priority task priority
+     * @param schedule schedule policy, null if task only execute once
+     * @param retry    retry policy, null if no retry
+     * @return interned task policy
+     * @throws IllegalArgumentException if priority is invalid
+     */
+    public static TaskPolicy of(int priority, RepeatPolicy schedule, RepeatPolicy retry) {
+        return of(priority, schedule, retry, 0);
+    }
+
+    /**
+     * get the interned task policy with execution timeout.
+     *
+     * @param priority task priority
+     * @param schedule schedule policy, null if task only execute once
+     * @param retry    retry policy, null if no retry
+     * @param timeout  execution timeout in milliseconds, 0 means no timeout
+     * @return interned task policy
+     * @throws IllegalArgumentException if priority is invalid or timeout is negative
+     */
+    public static TaskPolicy of(int priority, RepeatPolicy schedule, RepeatPolicy retry, long timeout) {
+        checkArgument(TaskPriority.isValidPriority(priority), "invalid task priority=" + priority);
+        checkArgument(timeout >= 0, "timeout should greater than or equal to zero: timeout=" + timeout);
+
+        return INTERNER.intern(new TaskPolicy(priority, schedule, retry, timeout));
+    }
+
+    /**
+     * get task priority.
+     *
+     * @return task priority
+     */
+    public int getPriority() {
+        return priority;
+    }
+
+    /**
+     * get priority band, which is computed once for each policy.
+     *
+     * @return priority band
+     * @see TaskPriority#bandOf(int)
+     */
+    public int getBand() {
+        return band;
+    }
+
+    /**
+     * get schedule policy.
+     *
+     * @return schedule policy, null if task only execute once
+     */
+    public RepeatPolicy getSchedule() {
+        return schedule;
+    }
+
+    /**
+     * get retry policy.
+     *
+     * @return retry policy, null if no retry
+     */
+    public RepeatPolicy getRetry() {
+        return retry;
+    }
+
+    /**
+     * get execution timeout.
+     *
+     * @return execution timeout in milliseconds, 0 means no timeout
+     */
+    public long getTimeout() {
+        return timeout;
+    }
+
+    /**
+     * get the interned policy which only differs in priority.
+     *
+     * @param priority task priority
+     * @return interned task policy
+     */
+    public TaskPolicy withPriority(int priority) {
+        return priority == this.priority ? this : of(priority, schedule, retry, timeout);
+    }
+
+    /**
+     * get the interned policy which only differs in schedule policy.
+     *
+     * @param schedule schedule policy
+     * @return interned task policy
+     */
+    public TaskPolicy withSchedule(RepeatPolicy schedule) {
+        return of(priority, schedule, retry, timeout);
+    }
+
+    /**
+     * get the interned policy which only differs in retry policy.
+     *
+     * @param retry retry policy
+     * @return interned task policy
+     */
+    public TaskPolicy withRetry(RepeatPolicy retry) {
+        return of(priority, schedule, retry, timeout);
+    }
+
+    /**
+     * get the interned policy which only differs in execution timeout.
+     *
+     * @param timeout execution timeout in milliseconds, 0 means no timeout
+     * @return interned task policy
+     * @throws IllegalArgumentException if timeout is negative
+     */
+    public TaskPolicy withTimeout(long timeout) {
+        return timeout == this.timeout ? this : of(priority, schedule, retry, timeout);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof TaskPolicy)) {
+            return false;
+        }
+        TaskPolicy that = (TaskPolicy) o;
+        return priority == that.priority && timeout == that.timeout && Objects.equal(schedule, that.schedule)
+                && Objects.equal(retry, that.retry);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(priority, schedule, retry, timeout);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder buffer = new StringBuilder();
+        buffer.append('{');
+        buffer.append("priority=").append(priority);
+        if (timeout > 0) {
+            buffer.append(",timeout=").append(timeout);
+        }
+        if (schedule != null) {
+            buffer.append(",schedule=").append(schedule);
+        }
+        if (retry != null) {
+            buffer.append(",retry=").append(retry);
+        }
+        buffer.append('}');
+        return buffer.toString();
+    }
+}
@@ -48,6 +48,13 @@ public final class TaskPriority {
      */
     public static final int DEFAULT = NORMAL;
 
+    /**
+     * count of priority bands.
+     *
+     * @see #bandOf(int)
+     */
+    public static final int BANDS = 6;
+
     /**
      * check if input priority is valid.
      * <p>
@@ -84,4 +91,26 @@ public final class TaskPriority {
 
         return priority;
     }
+
+    /**
+     * get the band of priority.
+     * <pre>
+     * Priority bands:
+     * 0. [LOWEST, VERY_LOW)
+     * 1. [VERY_LOW, LOW)
+     * 2. [LOW, NORMAL)
+     * 3. [NORMAL, HIGH)
+     * 4. [HIGH, VERY_HIGH)
+     * 5. [VERY_HIGH, HIGHEST]
+     * </pre>
+     *
+     * @param priority priority value
+     * @return band of this priority, from 0 to BANDS - 1
+     */
+    public static int bandOf(int priority) {
+        if (priority < NORMAL) {
+            return priority < VERY_LOW ? 0 : (priority < LOW ? 1 : 2);
+        }
+        return priority < HIGH ? 3 : (priority < VERY_HIGH ? 4 : 5);
+    }
 }
@@ -0,0 +1,202 @@
+package com.github.skyao.taskengine.timer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * hashed timer wheel of cancelable timeouts, which are armed and disarmed in O(1) without allocation.
+ * <p>
+ * Unlike {@link TimerWheel}, whose items fire almost always, a timeout is disarmed almost always before it expires.
+ * So timeouts are intrusive nodes of doubly linked lists, one list per slot: arming links the node into the slot of
+ * its deadline, disarming unlinks it, and a node is reused for any number of timeouts. Ticks are anchored to the
+ * creation time of the wheel like {@link TimerWheel}, and a timeout expires at most one tick late.
+ * </p>
+ * <p>
+ * {@link Timeout#expire()} is called on the timer thread while the wheel is locked, so once
+ * {@link #disarm(Timeout)} returns true the timeout will never expire. Expire should be short, e.g. interrupt a thread
+ * or set a flag.
+ * </p>
+ *
+ * @author Sky Ao
+ */
+public class TimeoutWheel {
+    private static final Logger LOGGER = LoggerFactory.getLogger(TimeoutWheel.class);
+
+    private final long tick;
+    private final Timeout[] slots;
+    private final int mask;
+    private final long origin;
+    private final Thread thread;
+
+    private long nextTick = 1;
+    private int size;
+    private volatile boolean running;
+
+    /**
+     * timeout which can be armed on one wheel at a time, and armed again after it is disarmed or expired.
+     */
+    public abstract static class Timeout {
+        private Timeout prev;
+        private Timeout next;
+        private long target;
+        private boolean armed;
+
+        /**
+         * called on the timer thread when the timeout expires.
+         */
+        protected abstract void expire();
+    }
+
+    /**
+     * create timeout wheel.
+     *
+     * @param name       name of the timer thread
+     * @param tickMillis duration of a tick in milliseconds
+     * @param slots      count of slots, which is rounded up to power of 2
+     * @throws NullPointerException     if name is null
+     * @throws IllegalArgumentException if tick or slots is not greater than zero
+     */
+    public TimeoutWheel(String name, long tickMillis, int slots) {
+        checkNotNull(name, "timer name should not be null");
+        checkArgument(tickMillis > 0, "tick should greater than zero: tick=" + tickMillis);
+        checkArgument(slots > 0 && slots <= (1 << 20), "slots should in [1,2^20]: slots=" + slots);
+
+        int capacity = Integer.highestOneBit(slots);
+        if (capacity < slots) {
+            capacity <<= 1;
+        }
+        this.tick = tickMillis;
+        this.slots = new Timeout[capacity];
+        this.mask = capacity - 1;
+        this.origin = System.currentTimeMillis();
+        this.thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                work();
+            }
+        }, name);
+        this.thread.setDaemon(true);
+    }
+
+    /**
+     * start timer thread.
+     *
+     * @throws IllegalStateException if timer is started already
+     */
+    public synchronized void start() {
+        checkState(!running, "timeout wheel is started already");
+        running = true;
+        thread.start();
+    }
+
+    /**
+     * stop timer thread, armed timeouts will never expire.
+     */
+    public void shutdown() {
+        running = false;
+        thread.interrupt();
+    }
+
+    /**
+     * arm a timeout to expire at specified time.
+     *
+     * @param timeout  timeout to arm
+     * @param deadline time to expire in timestamp, timeout expires in next tick if deadline has passed
+     * @throws NullPointerException  if timeout is null
+     * @throws IllegalStateException if timeout is armed already
+     */
+    public synchronized void arm(Timeout timeout, long deadline) {
+        checkNotNull(timeout, "timeout should not be null");
+        checkState(!timeout.armed, "timeout is armed already");
+
+        long target = Math.max((deadline - origin + tick - 1) / tick, nextTick);
+        int slot = (int) (target & mask);
+        timeout.target = target;
+        timeout.armed = true;
+        timeout.prev = null;
+        timeout.next = slots[slot];
+        if (timeout.next != null) {
+            timeout.next.prev = timeout;
+        }
+        slots[slot] = timeout;
+        size++;
+    }
+
+    /**
+     * disarm a timeout.
+     *
+     * @param timeout timeout to disarm
+     * @return true if the timeout was armed, false if it has expired or is not armed
+     */
+    public synchronized boolean disarm(Timeout timeout) {
+        if (!timeout.armed) {
+            return false;
+        }
+        unlink(timeout);
+        return true;
+    }
+
+    /**
+     * get count of armed timeouts.
+     *
+     * @return count of timeouts
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    private void work() {
+        while (running) {
+            long wait;
+            synchronized (this) {
+                wait = origin + nextTick * tick - System.currentTimeMillis();
+                if (wait <= 0) {
+                    expire(nextTick++);
+                    continue;
+                }
+            }
+            try {
+                TimeUnit.MILLISECONDS.sleep(wait);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    private void expire(long current) {
+        Timeout timeout = slots[(int) (current & mask)];
+        while (timeout != null) {
+            Timeout next = timeout.next;
+            if (timeout.target <= current) {
+                unlink(timeout);
+                try {
+                    timeout.expire();
+                } catch (RuntimeException e) {
+                    LOGGER.error("timeout fails to expire", e);
+                }
+            }
+            timeout = next;
+        }
+    }
+
+    private void unlink(Timeout timeout) {
+        if (timeout.prev != null) {
+            timeout.prev.next = timeout.next;
+        } else {
+            slots[(int) (timeout.target & mask)] = timeout.next;
+        }
+        if (timeout.next != null) {
+            timeout.next.prev = timeout.prev;
+        }
+        timeout.prev = null;
+        timeout.next = null;
+        timeout.armed = false;
+        size--;
+    }
+}
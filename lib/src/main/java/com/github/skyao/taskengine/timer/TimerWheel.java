@@ -0,0 +1,195 @@
+package com.github.skyao.taskengine.timer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * hashed timer wheel which fires items in batches, one batch per tick.
+ * <p>
+ * Time is cut into ticks of fixed duration, and an item is put into the slot of the tick its deadline falls in, so
+ * any amount of items due in the same tick cost one wakeup and are handed to the handler as one batch. Ticks are
+ * anchored to the creation time of the wheel: tick n fires at creation + n * tick, so a late tick does not push
+ * later ticks and there is no drift. Scheduling is O(1), and each tick only visits the items in its own slot.
+ * </p>
+ * <p>
+ * An item is fired at the end of the tick its deadline falls in, which is at most one tick late.
+ * </p>
+ *
+ * @param <T> type of items
+ * @author Sky Ao
+ */
+public class TimerWheel<T> {
+    private static final Logger LOGGER = LoggerFactory.getLogger(TimerWheel.class);
+
+    private final long tick;
+    private final List<Entry<T>>[] slots;
+    private final int mask;
+    private final Handler<T> handler;
+    private final long origin;
+    private final Thread thread;
+
+    private long nextTick = 1;
+    private int size;
+    private volatile boolean running;
+
+    /**
+     * handler of fired items.
+     *
+     * @param <T> type of items
+     */
+    public interface Handler<T> {
+
+        /**
+         * receive items fired in one tick, called on the thread of timer wheel.
+         *
+         * @param items fired items
+         */
+        void fire(List<T> items);
+    }
+
+    /**
+     * create timer wheel.
+     *
+     * @param name         name of the timer thread
+     * @param tickMillis   duration of a tick in milliseconds
+     * @param slots        count of slots, which is rounded up to power of 2
+     * @param handler      handler of fired items
+     * @throws NullPointerException     if name or handler is null
+     * @throws IllegalArgumentException if tick or slots is not greater than zero
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public TimerWheel(String name, long tickMillis, int slots, Handler<T> handler) {
+        checkNotNull(name, "timer name should not be null");
+        checkNotNull(handler, "handler should not be null");
+        checkArgument(tickMillis > 0, "tick should greater than zero: tick=" + tickMillis);
+        checkArgument(slots > 0 && slots <= (1 << 20), "slots should in [1,2^20]: slots=" + slots);
+
+        int capacity = Integer.highestOneBit(slots);
+        if (capacity < slots) {
+            capacity <<= 1;
+        }
+        this.tick = tickMillis;
+        this.slots = new List[capacity];
+        for (int i = 0; i < capacity; i++) {
+            this.slots[i] = new ArrayList<>();
+        }
+        this.mask = capacity - 1;
+        this.handler = handler;
+        this.origin = System.currentTimeMillis();
+        this.thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                work();
+            }
+        }, name);
+        this.thread.setDaemon(true);
+    }
+
+    /**
+     * start timer thread.
+     *
+     * @throws IllegalStateException if timer is started already
+     */
+    public synchronized void start() {
+        checkState(!running, "timer wheel is started already");
+        running = true;
+        thread.start();
+    }
+
+    /**
+     * stop timer thread, items not fired yet will be dropped.
+     */
+    public void shutdown() {
+        running = false;
+        thread.interrupt();
+    }
+
+    /**
+     * schedule an item to fire at specified time.
+     *
+     * @param item     item to fire
+     * @param deadline time to fire in timestamp, item fires in next tick if deadline has passed
+     * @throws NullPointerException if item is null
+     */
+    public synchronized void schedule(T item, long deadline) {
+        checkNotNull(item, "item should not be null");
+
+        long target = Math.max((deadline - origin + tick - 1) / tick, nextTick);
+        slots[(int) (target & mask)].add(new Entry<>(item, target));
+        size++;
+    }
+
+    /**
+     * get count of items waiting to fire.
+     *
+     * @return count of items
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    private void work() {
+        while (running) {
+            long wait;
+            List<T> fired = null;
+            synchronized (this) {
+                wait = origin + nextTick * tick - System.currentTimeMillis();
+                if (wait <= 0) {
+                    fired = expire(nextTick++);
+                }
+            }
+            if (fired != null) {
+                if (!fired.isEmpty()) {
+                    try {
+                        handler.fire(fired);
+                    } catch (RuntimeException e) {
+                        LOGGER.error("timer wheel handler fails", e);
+                    }
+                }
+                continue;
+            }
+            try {
+                TimeUnit.MILLISECONDS.sleep(wait);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    private List<T> expire(long current) {
+        List<Entry<T>> slot = slots[(int) (current & mask)];
+        if (slot.isEmpty()) {
+            return new ArrayList<>(0);
+        }
+        List<T> fired = new ArrayList<>();
+        Iterator<Entry<T>> iterator = slot.iterator();
+        while (iterator.hasNext()) {
+            Entry<T> entry = iterator.next();
+            if (entry.target <= current) {
+                fired.add(entry.item);
+                iterator.remove();
+            }
+        }
+        size -= fired.size();
+        return fired;
+    }
+
+    private static final class Entry<T> {
+        private final T item;
+        private final long target;
+
+        private Entry(T item, long target) {
+            this.item = item;
+            this.target = target;
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.github.skyao.taskengine;
+
+import com.github.skyao.taskengine.limit.AdaptiveConcurrencyLimiter;
+import com.github.skyao.taskengine.task.RuntimeTask;
+import com.github.skyao.taskengine.task.Task;
+import com.github.skyao.taskengine.task.TaskContent;
+import com.github.skyao.taskengine.task.TaskContext;
+import com.github.skyao.taskengine.task.TaskResult;
+import org.testng.annotations.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class AdaptiveConcurrencyLimiterTest {
+    @Test
+    public void testParkAndRelease() {
+        AdaptiveConcurrencyLimiter limiter = AdaptiveConcurrencyLimiter.newBuilder().initialLimit(1).build();
+        RuntimeTask task1 = newTask();
+        RuntimeTask task2 = newTask();
+
+        assertThat(limiter.tryAcquire(10001, task1)).isTrue();
+        assertThat(limiter.tryAcquire(10001, task2)).isFalse();
+        assertThat(limiter.tryAcquire(10002, task2)).isTrue();
+        assertThat(limiter.getInFlight(10001)).isEqualTo(1);
+
+        assertThat(limiter.release(10001, 1000, false)).isSameAs(task2);
+        assertThat(limiter.release(10002, 1000, false)).isNull();
+    }
+
+    @Test
+    public void testReserveForHandedBackTask() {
+        AdaptiveConcurrencyLimiter limiter = AdaptiveConcurrencyLimiter.newBuilder().initialLimit(1).bounds(1, 1)
+                .build();
+        RuntimeTask running = newTask();
+        RuntimeTask canceled = newTask();
+        RuntimeTask abandoned = newTask();
+        RuntimeTask last = newTask();
+        assertThat(limiter.tryAcquire(10001, running)).isTrue();
+        assertThat(limiter.tryAcquire(10001, canceled)).isFalse();
+        assertThat(limiter.tryAcquire(10001, abandoned)).isFalse();
+        assertThat(limiter.tryAcquire(10001, last)).isFalse();
+        assertThat(limiter.getParkedCount()).isEqualTo(3);
+
+        // finished tasks are skipped, the slot is reserved for the handed back one
+        canceled.finish(TaskResult.CANCELED);
+        assertThat(limiter.release(10001, 1000, false)).isSameAs(abandoned);
+        assertThat(limiter.getInFlight(10001)).isEqualTo(1);
+        assertThat(limiter.abandon(10001, running)).isNull();
+
+        // an abandoned reservation passes the slot on, a reserved task acquires it at once
+        assertThat(limiter.abandon(10001, abandoned)).isSameAs(last);
+        assertThat(limiter.getParkedCount()).isZero();
+        assertThat(limiter.tryAcquire(10001, last)).isTrue();
+        assertThat(limiter.getInFlight(10001)).isEqualTo(1);
+    }
+
+    @Test
+    public void testIncreaseAndBackoff() {
+        AdaptiveConcurrencyLimiter limiter = AdaptiveConcurrencyLimiter.newBuilder().initialLimit(4).bounds(1, 100)
+                .build();
+        for (int i = 0; i < 200; i++) {
+            fill(limiter, 10001);
+            release(limiter, 10001, 1000, false);
+        }
+        int grown = limiter.getLimit(10001);
+        assertThat(grown).isGreaterThan(4);
+
+        for (int i = 0; i < 200; i++) {
+            fill(limiter, 10001);
+            release(limiter, 10001, 1000, true);
+        }
+        assertThat(limiter.getLimit(10001)).isLessThan(grown);
+        assertThat(limiter.getLimits()).containsKey(10001);
+    }
+
+    private static void fill(AdaptiveConcurrencyLimiter limiter, int type) {
+        while (limiter.getInFlight(type) < limiter.getLimit(type)) {
+            limiter.tryAcquire(type, newTask());
+        }
+    }
+
+    private static void release(AdaptiveConcurrencyLimiter limiter, int type, long latency, boolean failed) {
+        for (int i = limiter.getInFlight(type); i > 0; i--) {
+            limiter.release(type, latency, failed);
+        }
+    }
+
+    private static RuntimeTask newTask() {
+        return new RuntimeTask(new Task(new TaskContent(10001)), new TaskContext());
+    }
+}
@@ -0,0 +1,243 @@
+package com.github.skyao.taskengine;
+
+import com.github.skyao.taskengine.store.FileTaskStore;
+import com.github.skyao.taskengine.store.TaskCodec;
+import com.github.skyao.taskengine.store.TaskStore;
+import com.github.skyao.taskengine.task.RepeatMode;
+import com.github.skyao.taskengine.task.Task;
+import com.github.skyao.taskengine.task.TaskContent;
+import com.github.skyao.taskengine.task.TaskParameter;
+import com.github.skyao.taskengine.task.TaskPlan;
+import com.github.skyao.taskengine.task.TaskPriority;
+import com.google.common.io.Files;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ReadOnlyBufferException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+
+public class FileTaskStoreTest {
+    @Test
+    public void testBinaryParameter() {
+        byte[] raw = new byte[]{1, 2, 3, 4, 5};
+        byte[] large = new byte[64 * 1024];
+        for (int i = 0; i < large.length; i++) {
+            large[i] = (byte) (i % 7);
+        }
+        TaskContent content = TaskContent.newBuilder(10001)
+                .add("raw", ByteBuffer.wrap(raw))
+                .add("large", ByteBuffer.wrap(large), 1024)
+                .build();
+        TaskParameter rawParameter = content.getParameters()[0];
+        TaskParameter largeParameter = content.getParameters()[1];
+        assertThat(rawParameter.isCompressed()).isFalse();
+        assertThat(largeParameter.isCompressed()).isTrue();
+        assertThat(largeParameter.getStoredValue().remaining()).isLessThan(large.length / 10);
+
+        // raw value is shared without copying, and readers only get read-only views
+        raw[0] = 9;
+        ByteBuffer view = (ByteBuffer) rawParameter.getValue();
+        assertThat(view.get(0)).isEqualTo((byte) 9);
+        assertThat(view.isReadOnly()).isTrue();
+        try {
+            view.put(0, (byte) 1);
+            fail("read-only view should not be modified");
+        } catch (ReadOnlyBufferException e) {
+            // expected
+        }
+
+        Task task = new Task(content, TaskPlan.newBuilder().priority(TaskPriority.NORMAL).build());
+        for (boolean shared : new boolean[]{false, true}) {
+            Task decoded = TaskCodec.decode(ByteBuffer.wrap(TaskCodec.encode(task)), shared);
+            TaskParameter[] parameters = decoded.getContent().getParameters();
+            assertThat(toBytes((ByteBuffer) parameters[0].getValue())).isEqualTo(raw);
+            assertThat(parameters[1].isCompressed()).isTrue();
+            assertThat(toBytes((ByteBuffer) parameters[1].getValue())).isEqualTo(large);
+        }
+    }
+
+    @Test
+    public void testDecodeEarlierVersion() throws IOException {
+        // a record of version 1: no timeout, repeat mode, tenant, ordering key or checkpoint
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte('T');
+        out.writeByte(1);
+        out.writeInt(10001);
+        out.writeInt(1);
+        out.writeInt(3);
+        out.write("uid".getBytes(StandardCharsets.UTF_8));
+        out.writeByte('L');
+        out.writeLong(245001L);
+        out.writeByte(TaskPriority.HIGH);
+        out.writeLong(1000L);
+        out.writeLong(2000L);
+        out.writeBoolean(false);
+        out.writeBoolean(false);
+        out.flush();
+
+        ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+        Task task = TaskCodec.decode(buffer);
+        assertThat(buffer.hasRemaining()).isFalse();
+        assertThat(task.getContent().getParameters()[0].getValue()).isEqualTo(245001L);
+        assertThat(task.getPlan().getPriority()).isEqualTo(TaskPriority.HIGH);
+        assertThat(task.getPlan().getStart()).isEqualTo(1000L);
+        assertThat(task.getPlan().getDeadline()).isEqualTo(2000L);
+        assertThat(task.getPlan().getPolicy().getTimeout()).isZero();
+        assertThat(task.getTenant()).isNull();
+        assertThat(task.getOrderingKey()).isNull();
+        assertThat(task.getCheckpoint()).isEmpty();
+    }
+
+    @Test
+    public void testFormatVersion() {
+        byte[] data = TaskCodec.encode(newTask(TaskPriority.NORMAL));
+        assertThat(TaskCodec.decode(ByteBuffer.wrap(data)).getContent().getParameters()[0].getValue())
+                .isEqualTo(245001L);
+
+        // a record of a later version is rejected instead of being misread
+        data[1]++;
+        try {
+            TaskCodec.decode(ByteBuffer.wrap(data));
+            fail("later format version should be rejected");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        data[0] = 0;
+        try {
+            TaskCodec.decode(ByteBuffer.wrap(data));
+            fail("record without header should be rejected");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testFixedRatePlanRoundTrip() {
+        TaskPlan.Builder builder = TaskPlan.newBuilder().priority(TaskPriority.NORMAL);
+        builder.enableSchedule().max(10).intervalInMilliseconds(500).mode(RepeatMode.FIXED_RATE_SKIP);
+        builder.enableRetry().max(3).intervalInMilliseconds(100);
+        Task task = new Task(new TaskContent(10001), builder.build());
+
+        Task decoded = TaskCodec.decode(ByteBuffer.wrap(TaskCodec.encode(task)));
+        assertThat(decoded.getPlan().getPolicy()).isEqualTo(task.getPlan().getPolicy());
+        assertThat(decoded.getPlan().getSchedule().getMode()).isEqualTo(RepeatMode.FIXED_RATE_SKIP);
+        assertThat(decoded.getPlan().getSchedule().getInterval()).isEqualTo(500);
+        assertThat(decoded.getPlan().getRetry().getMax()).isEqualTo(3);
+    }
+
+    private static byte[] toBytes(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    @Test
+    public void testRecoverFromSnapshotAndLog() throws Exception {
+        File directory = Files.createTempDir();
+
+        FileTaskStore store = FileTaskStore.newBuilder(directory).snapshotIntervalInSeconds(0).build();
+        Task low = newTask(TaskPriority.LOW);
+        long lowId = store.add(low);
+        Task high = newTask(TaskPriority.HIGH);
+        high.getPlan().getRetry().setExecuted(2);
+        long highId = store.add(high);
+        long normalId = store.add(newTask(TaskPriority.NORMAL));
+        store.remove(normalId);
+        store.snapshot();
+
+        long highestId = store.add(newTask(TaskPriority.HIGHEST));
+        low.getPlan().getRetry().setExecuted(1);
+        store.update(lowId, low);
+        store.close();
+
+        FileTaskStore reopened = FileTaskStore.newBuilder(directory).snapshotIntervalInSeconds(0).build();
+        final List<Long> ids = new ArrayList<>();
+        final List<Task> tasks = new ArrayList<>();
+        reopened.load(new TaskStore.Loader() {
+            @Override
+            public void load(long id, Task task) {
+                ids.add(id);
+                tasks.add(task);
+            }
+        });
+
+        assertThat(ids).containsExactly(highestId, highId, lowId);
+        assertThat(tasks.get(1).getPlan().getRetry().getExecuted()).isEqualTo(2);
+        assertThat(tasks.get(2).getPlan().getRetry().getExecuted()).isEqualTo(1);
+        assertThat(tasks.get(2).getContent().getParameters()[0].getValue()).isEqualTo(245001L);
+        assertThat(reopened.add(newTask(TaskPriority.NORMAL))).isGreaterThan(highestId);
+        reopened.snapshot();
+        reopened.close();
+
+        FileTaskStore compacted = FileTaskStore.newBuilder(directory).snapshotIntervalInSeconds(0).build();
+        ids.clear();
+        compacted.load(new TaskStore.Loader() {
+            @Override
+            public void load(long id, Task task) {
+                ids.add(id);
+            }
+        });
+        assertThat(ids).hasSize(4).startsWith(highestId, highId);
+        compacted.close();
+    }
+
+    @Test
+    public void testRecoverCheckpoints() throws Exception {
+        File directory = Files.createTempDir();
+
+        FileTaskStore store = FileTaskStore.newBuilder(directory).snapshotIntervalInSeconds(0).build();
+        long snapshotId = store.add(newTask(TaskPriority.NORMAL));
+        long logId = store.add(newTask(TaskPriority.NORMAL));
+        store.checkpoint(snapshotId, "page", 3);
+        store.checkpoint(snapshotId, "cursor", "a");
+        store.snapshot();
+
+        // changes after snapshot are merged into the snapshot record when loaded
+        store.checkpoint(snapshotId, "page", 4);
+        store.checkpoint(snapshotId, "cursor", null);
+        store.checkpoint(logId, "offset", 1024L);
+        store.close();
+
+        FileTaskStore reopened = FileTaskStore.newBuilder(directory).snapshotIntervalInSeconds(0).build();
+        final List<Task> tasks = new ArrayList<>();
+        reopened.load(new TaskStore.Loader() {
+            @Override
+            public void load(long id, Task task) {
+                tasks.add(task);
+            }
+        });
+        assertThat(tasks).hasSize(2);
+        assertThat(tasks.get(0).getCheckpoint()).hasSize(1).containsEntry("page", 4);
+        assertThat(tasks.get(1).getCheckpoint()).hasSize(1).containsEntry("offset", 1024L);
+        reopened.snapshot();
+        reopened.close();
+
+        FileTaskStore compacted = FileTaskStore.newBuilder(directory).snapshotIntervalInSeconds(0).build();
+        tasks.clear();
+        compacted.load(new TaskStore.Loader() {
+            @Override
+            public void load(long id, Task task) {
+                tasks.add(task);
+            }
+        });
+        assertThat(tasks.get(0).getCheckpoint()).hasSize(1).containsEntry("page", 4);
+        assertThat(tasks.get(1).getCheckpoint()).hasSize(1).containsEntry("offset", 1024L);
+        compacted.close();
+    }
+
+    private static Task newTask(int priority) {
+        TaskPlan.Builder builder = TaskPlan.newBuilder().priority(priority);
+        builder.enableRetry().max(3).intervalInSeconds(10);
+        return new Task(TaskContent.newBuilder(10001).add("uid", 245001L).build(), builder.build());
+    }
+}
@@ -0,0 +1,113 @@
+package com.github.skyao.taskengine;
+
+import com.github.skyao.taskengine.queue.OffHeapDelayedTaskQueue;
+import com.github.skyao.taskengine.task.RuntimeTask;
+import com.github.skyao.taskengine.task.Task;
+import com.github.skyao.taskengine.task.TaskContent;
+import com.github.skyao.taskengine.task.TaskPlan;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class OffHeapDelayedTaskQueueTest {
+    @Test
+    public void testDrainByStartTime() {
+        OffHeapDelayedTaskQueue queue = new OffHeapDelayedTaskQueue(1024);
+        for (int i = 0; i < 100; i++) {
+            long start = 1000 + (i * 37) % 100;
+            queue.offer(i, new Task(TaskContent.newBuilder(10001).add("uid", i).build(),
+                    TaskPlan.newBuilder().startAt(start).build()));
+        }
+        assertThat(queue.size()).isEqualTo(100);
+        assertThat(queue.nextStart()).isEqualTo(1000);
+
+        List<RuntimeTask> due = new ArrayList<>();
+        assertThat(queue.drainTo(999, due, 1000)).isEqualTo(0);
+        assertThat(queue.drainTo(1049, due, 1000)).isEqualTo(50);
+        long last = 0;
+        for (RuntimeTask task : due) {
+            long start = task.getTask().getPlan().getStart();
+            assertThat(start).isGreaterThanOrEqualTo(last);
+            assertThat(task.getTask().getContent().getParameters()[0].getValue()).isEqualTo((int) task.getId());
+            last = start;
+        }
+
+        long allocated = queue.getAllocatedBytes();
+        assertThat(queue.drainTo(Long.MAX_VALUE, due, 1000)).isEqualTo(50);
+        assertThat(queue.size()).isEqualTo(0);
+
+        // drained slabs are reused
+        for (int i = 0; i < 100; i++) {
+            queue.offer(i, new Task(new TaskContent(10001), TaskPlan.newBuilder().startAt(1000).build()));
+        }
+        assertThat(queue.getAllocatedBytes()).isLessThanOrEqualTo(allocated);
+    }
+
+    @Test
+    public void testCompactMostlyDrainedSlabs() {
+        OffHeapDelayedTaskQueue queue = new OffHeapDelayedTaskQueue(1024);
+        // every tenth task starts far in the future, which would pin its slab without compaction
+        for (int i = 0; i < 200; i++) {
+            long start = i % 10 == 0 ? 1000000 : 1000;
+            queue.offer(i, new Task(TaskContent.newBuilder(10001).add("uid", i).build(),
+                    TaskPlan.newBuilder().startAt(start).build()));
+        }
+        long allocated = queue.getAllocatedBytes();
+        List<RuntimeTask> due = new ArrayList<>();
+        assertThat(queue.drainTo(2000, due, 1000)).isEqualTo(180);
+
+        for (int i = 0; i < 180; i++) {
+            queue.offer(i, new Task(new TaskContent(10001), TaskPlan.newBuilder().startAt(1000).build()));
+        }
+        assertThat(queue.getAllocatedBytes()).isLessThanOrEqualTo(allocated);
+
+        // compacted records are still drained in order with their ids
+        due.clear();
+        assertThat(queue.drainTo(2000, due, 1000)).isEqualTo(180);
+        due.clear();
+        assertThat(queue.drainTo(Long.MAX_VALUE, due, 1000)).isEqualTo(20);
+        for (RuntimeTask task : due) {
+            assertThat(task.getId() % 10).isEqualTo(0);
+            assertThat(task.getTask().getContent().getParameters()[0].getValue()).isEqualTo((int) task.getId());
+        }
+    }
+
+    @Test
+    public void testMixedOffersAndDrains() {
+        OffHeapDelayedTaskQueue queue = new OffHeapDelayedTaskQueue(1024);
+        Random random = new Random(42);
+        Map<Long, Long> starts = new HashMap<>();
+        List<RuntimeTask> due = new ArrayList<>();
+        long id = 0;
+        // handles and slabs are reused while records are compacted, ids and starts must still match
+        for (long now = 0; now < 2000; now += 10) {
+            for (int i = 0; i < 5; i++) {
+                long start = now + (random.nextInt(10) == 0 ? 1000 + random.nextInt(1000) : random.nextInt(50));
+                starts.put(id, start);
+                queue.offer(id, new Task(TaskContent.newBuilder(10001).add("uid", (int) id).build(),
+                        TaskPlan.newBuilder().startAt(start).build()));
+                id++;
+            }
+            due.clear();
+            queue.drainTo(now, due, 1000);
+            for (RuntimeTask task : due) {
+                assertThat(task.getTask().getPlan().getStart()).isEqualTo(starts.remove(task.getId()))
+                        .isLessThanOrEqualTo(now);
+                assertThat(task.getTask().getContent().getParameters()[0].getValue()).isEqualTo((int) task.getId());
+            }
+        }
+        due.clear();
+        queue.drainTo(Long.MAX_VALUE, due, Integer.MAX_VALUE);
+        for (RuntimeTask task : due) {
+            assertThat(task.getTask().getPlan().getStart()).isEqualTo(starts.remove(task.getId()));
+        }
+        assertThat(starts).isEmpty();
+        assertThat(queue.size()).isZero();
+    }
+}
@@ -0,0 +1,53 @@
+package com.github.skyao.taskengine;
+
+import com.github.skyao.taskengine.overload.OverloadController;
+import com.github.skyao.taskengine.task.TaskPriority;
+import org.testng.annotations.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class OverloadControllerTest {
+    @Test
+    public void testShedFromLowestBand() {
+        OverloadController controller = OverloadController.newBuilder().queueDepth(100, 10)
+                .evaluateIntervalInMilliseconds(0).build();
+
+        assertThat(controller.admit(TaskPriority.LOWEST, 200)).isFalse();
+        assertThat(controller.shedPriority()).isEqualTo(TaskPriority.VERY_LOW);
+        assertThat(controller.admit(TaskPriority.VERY_LOW, 200)).isFalse();
+        assertThat(controller.admit(TaskPriority.LOW, 200)).isFalse();
+        assertThat(controller.admit(TaskPriority.NORMAL, 200)).isFalse();
+
+        // never shed tasks with priority not lower than HIGH
+        assertThat(controller.admit(TaskPriority.HIGH, 200)).isTrue();
+        assertThat(controller.getShedLevel()).isEqualTo(4);
+    }
+
+    @Test
+    public void testRestoreWithHysteresis() {
+        OverloadController controller = OverloadController.newBuilder().queueDepth(100, 10)
+                .evaluateIntervalInMilliseconds(0).build();
+        controller.admit(TaskPriority.HIGH, 200);
+        controller.admit(TaskPriority.HIGH, 200);
+        assertThat(controller.shedPriority()).isEqualTo(TaskPriority.LOW);
+
+        // between watermarks: keep shedding
+        controller.admit(TaskPriority.HIGH, 50);
+        assertThat(controller.shedPriority()).isEqualTo(TaskPriority.LOW);
+
+        // below low watermark: restore one band on each evaluation
+        controller.admit(TaskPriority.HIGH, 5);
+        assertThat(controller.shedPriority()).isEqualTo(TaskPriority.VERY_LOW);
+        controller.admit(TaskPriority.HIGH, 5);
+        assertThat(controller.shedPriority()).isEqualTo(TaskPriority.LOWEST);
+    }
+
+    @Test
+    public void testShedByQueueWait() {
+        OverloadController controller = OverloadController.newBuilder().queueWaitInMilliseconds(100, 10)
+                .evaluateIntervalInMilliseconds(0).build();
+
+        assertThat(controller.shed(TaskPriority.LOWEST, 500 * 1000000L, 0)).isTrue();
+        assertThat(controller.shed(TaskPriority.LOWEST, 0, 0)).isFalse();
+    }
+}
@@ -0,0 +1,115 @@
+package com.github.skyao.taskengine;
+
+import com.github.skyao.taskengine.engine.TaskEngine;
+import com.github.skyao.taskengine.index.PendingTaskIndex;
+import com.github.skyao.taskengine.queue.TaskSpiller;
+import com.github.skyao.taskengine.store.FileTaskStore;
+import com.github.skyao.taskengine.store.TaskStore;
+import com.github.skyao.taskengine.task.AbstractTaskExecutable;
+import com.github.skyao.taskengine.task.RuntimeTask;
+import com.github.skyao.taskengine.task.Task;
+import com.github.skyao.taskengine.task.TaskContent;
+import com.github.skyao.taskengine.task.TaskContext;
+import com.github.skyao.taskengine.task.TaskPlan;
+import com.github.skyao.taskengine.task.TaskPriority;
+import com.github.skyao.taskengine.task.TaskResult;
+import com.github.skyao.taskengine.task.TaskStatus;
+import com.google.common.io.Files;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PendingTaskIndexTest {
+    @Test
+    public void testCountAndBulkOperations() {
+        PendingTaskIndex index = new PendingTaskIndex();
+        TaskEngine engine = TaskEngine.newBuilder().pendingTaskIndex(index).build();
+        engine.register(10001, new AbstractTaskExecutable());
+        engine.register(10002, new AbstractTaskExecutable());
+
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < 10; i++) {
+            engine.submit(new Task(new TaskContent(10001), TaskPlan.newBuilder().deadline(now + i * 60000L).build()));
+        }
+        RuntimeTask other = engine.submit(new Task(new TaskContent(10002), TaskPlan.newBuilder().priorityLow().build()));
+
+        assertThat(index.size()).isEqualTo(11);
+        assertThat(index.count(10001)).isEqualTo(10);
+        assertThat(index.count(TaskStatus.WAITING)).isEqualTo(11);
+        assertThat(index.countByBand(TaskPriority.bandOf(TaskPriority.NORMAL))).isEqualTo(10);
+        assertThat(index.count(10001, TaskStatus.WAITING, now, now + 5 * 60000L)).isEqualTo(5);
+        assertThat(index.count(TaskStatus.WAITING, now, Long.MAX_VALUE)).isEqualTo(10);
+
+        assertThat(engine.reprioritize(10002, TaskPriority.HIGH)).isEqualTo(1);
+        assertThat(index.countByBand(TaskPriority.bandOf(TaskPriority.HIGH))).isEqualTo(1);
+
+        assertThat(engine.cancel(10001)).isEqualTo(10);
+        assertThat(index.size()).isEqualTo(1);
+        assertThat(engine.getPendingCount()).isEqualTo(1);
+        assertThat(other.getResult()).isNull();
+        engine.shutdown();
+    }
+
+    @Test
+    public void testReprioritizeSavedAndSpilled() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        File directory = Files.createTempDir();
+        FileTaskStore store = FileTaskStore.newBuilder(directory).snapshotIntervalInSeconds(0).build();
+        TaskSpiller spiller = TaskSpiller.newBuilder(new File(directory, "spill")).watermarks(5, 10).heapWatermark(1)
+                .intervalInMilliseconds(10).build();
+        TaskEngine engine = TaskEngine.newBuilder().workers(1).store(store).spiller(spiller)
+                .pendingTaskIndex(new PendingTaskIndex()).build();
+        engine.register(10001, new AbstractTaskExecutable() {
+            @Override
+            protected TaskResult execute(TaskContent taskContent, TaskPlan taskPlan, TaskContext taskContext) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    return TaskResult.FAILURE;
+                }
+                return TaskResult.SUCCESS;
+            }
+        });
+        List<RuntimeTask> tasks = new ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+            tasks.add(engine.submit(new Task(TaskContent.newBuilder(10001).add("uid", i).build(),
+                    TaskPlan.newBuilder().priorityLow().build())));
+        }
+        engine.start();
+        long deadline = System.currentTimeMillis() + 2000;
+        while (spiller.size() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(spiller.size()).isGreaterThan(0);
+
+        // the running task is not changed, spilled tasks are saved with their contents
+        assertThat(engine.reprioritize(10001, TaskPriority.HIGH)).isEqualTo(29);
+        engine.shutdown();
+        deadline = System.currentTimeMillis() + 2000;
+        while (!tasks.get(0).isFinished() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        store.close();
+
+        final Map<Long, Task> loaded = new HashMap<>();
+        FileTaskStore.newBuilder(directory).snapshotIntervalInSeconds(0).build().load(new TaskStore.Loader() {
+            @Override
+            public void load(long id, Task task) {
+                loaded.put(id, task);
+            }
+        });
+        assertThat(loaded).hasSize(29);
+        for (Map.Entry<Long, Task> entry : loaded.entrySet()) {
+            Task task = entry.getValue();
+            assertThat(task.getPlan().getPriority()).isEqualTo(TaskPriority.HIGH);
+            assertThat(task.getContent().getParameters()[0].getValue()).isEqualTo((int) (entry.getKey() - 1));
+        }
+    }
+}
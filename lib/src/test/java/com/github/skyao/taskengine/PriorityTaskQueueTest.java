@@ -0,0 +1,212 @@
+package com.github.skyao.taskengine;
+
+import com.github.skyao.taskengine.queue.PriorityTaskQueue;
+import com.github.skyao.taskengine.queue.TaskSpiller;
+import com.github.skyao.taskengine.store.TaskStoreException;
+import com.github.skyao.taskengine.task.RuntimeTask;
+import com.github.skyao.taskengine.task.Task;
+import com.github.skyao.taskengine.task.TaskContent;
+import com.github.skyao.taskengine.task.TaskContext;
+import com.github.skyao.taskengine.task.TaskPlan;
+import com.github.skyao.taskengine.task.TaskPriority;
+import com.github.skyao.taskengine.task.TaskResult;
+import com.google.common.io.Files;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+
+public class PriorityTaskQueueTest {
+    @Test
+    public void testPollByPriority() {
+        PriorityTaskQueue queue = new PriorityTaskQueue();
+        RuntimeTask low = newTask(TaskPriority.LOW);
+        RuntimeTask high1 = newTask(TaskPriority.HIGH);
+        RuntimeTask high2 = newTask(TaskPriority.HIGH);
+        queue.offer(low);
+        queue.offer(high1);
+        queue.offer(high2);
+
+        assertThat(queue.size()).isEqualTo(3);
+        assertThat(queue.poll()).isSameAs(high1);
+        assertThat(queue.poll()).isSameAs(high2);
+        assertThat(queue.poll()).isSameAs(low);
+        assertThat(queue.poll()).isNull();
+    }
+
+    @Test
+    public void testAge() {
+        PriorityTaskQueue queue = new PriorityTaskQueue();
+        RuntimeTask lowest = newTask(TaskPriority.LOWEST);
+        RuntimeTask normal = newTask(TaskPriority.NORMAL);
+        queue.offer(lowest);
+        queue.offer(normal);
+
+        queue.age(100, TaskPriority.NORMAL);
+        assertThat(queue.size(TaskPriority.LOWEST)).isEqualTo(0);
+        assertThat(queue.size(TaskPriority.LOWEST + 100)).isEqualTo(1);
+
+        queue.age(100, TaskPriority.NORMAL);
+        assertThat(queue.size(TaskPriority.NORMAL)).isEqualTo(2);
+        assertThat(lowest.getTask().getPlan().getPriority()).isEqualTo(TaskPriority.LOWEST);
+
+        // aged task is appended behind tasks already in the bucket
+        assertThat(queue.poll()).isSameAs(normal);
+        assertThat(queue.poll()).isSameAs(lowest);
+    }
+
+    @Test
+    public void testFairQueuingAcrossTenants() {
+        PriorityTaskQueue queue = new PriorityTaskQueue();
+        queue.setWeight("b", 2);
+        for (int i = 0; i < 1000; i++) {
+            queue.offer(newTask(TaskPriority.NORMAL, "a"));
+        }
+        for (int i = 0; i < 4; i++) {
+            queue.offer(newTask(TaskPriority.NORMAL, "b"));
+        }
+        queue.offer(newTask(TaskPriority.NORMAL, "c"));
+
+        StringBuilder order = new StringBuilder();
+        for (int i = 0; i < 10; i++) {
+            order.append(queue.poll().getTask().getTenant());
+        }
+        assertThat(order.toString()).isEqualTo("abbcabbaaa");
+        assertThat(queue.size()).isEqualTo(995);
+    }
+
+    @Test
+    public void testSpillColdTasks() {
+        File directory = Files.createTempDir();
+        TaskSpiller spiller = TaskSpiller.newBuilder(directory).watermarks(10, 20).heapWatermark(1).batchSize(4)
+                .segmentSize(1024).build();
+        PriorityTaskQueue queue = new PriorityTaskQueue();
+        List<RuntimeTask> lows = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            RuntimeTask low = newTask(TaskPriority.LOW, i);
+            lows.add(low);
+            queue.offer(low);
+            queue.offer(newTask(TaskPriority.HIGH, i));
+        }
+
+        // the latest low tasks are spilled, and their parameters are released
+        spiller.balance(queue);
+        assertThat(queue.size()).isEqualTo(10);
+        assertThat(spiller.size()).isEqualTo(30);
+        assertThat(queue.size(TaskPriority.LOW)).isZero();
+        assertThat(lows.get(19).getTask().getContent().getParameters()).isEmpty();
+        assertThat(directory.list()).isNotEmpty();
+
+        lows.get(0).finish(TaskResult.CANCELED);
+        for (int i = 0; i < 10; i++) {
+            queue.poll();
+        }
+        // high tasks come back first, then low tasks in their order, canceled ones are skipped
+        spiller.balance(queue);
+        assertThat(queue.size()).isEqualTo(10);
+        assertThat(queue.size(TaskPriority.HIGH)).isEqualTo(10);
+        while (queue.size() > 0) {
+            queue.poll();
+        }
+        spiller.balance(queue);
+        assertThat(queue.size()).isEqualTo(10);
+        assertThat(spiller.size()).isEqualTo(9);
+        RuntimeTask first = queue.poll();
+        assertThat(first).isSameAs(lows.get(1));
+        assertThat(first.getTask().getContent().getParameters()[0].getValue()).isEqualTo(1);
+        while (queue.size() > 0) {
+            queue.poll();
+        }
+        spiller.balance(queue);
+        assertThat(queue.size()).isEqualTo(9);
+        assertThat(spiller.size()).isZero();
+        // only the current segment is left
+        assertThat(directory.list()).hasSize(1);
+        spiller.close();
+        assertThat(directory.list()).isEmpty();
+    }
+
+    @Test
+    public void testRequeueSpilledTasks() {
+        File directory = Files.createTempDir();
+        TaskSpiller spiller = TaskSpiller.newBuilder(directory).watermarks(1, 2).heapWatermark(1).build();
+        PriorityTaskQueue queue = new PriorityTaskQueue();
+        List<RuntimeTask> lows = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            RuntimeTask low = newTask(TaskPriority.LOW, i);
+            lows.add(low);
+            queue.offer(low);
+            queue.offer(newTask(TaskPriority.NORMAL, i));
+        }
+        spiller.balance(queue);
+        assertThat(spiller.size()).isEqualTo(9);
+        queue.poll();
+
+        // reprioritized spilled tasks are read back by their new priority
+        Set<RuntimeTask> changed = Collections.newSetFromMap(new IdentityHashMap<RuntimeTask, Boolean>());
+        changed.add(lows.get(3));
+        lows.get(3).getTask().getPlan().setPriority(TaskPriority.HIGH);
+        assertThat(spiller.requeue(changed, null)).isEqualTo(1);
+        spiller.balance(queue);
+        assertThat(queue.size()).isEqualTo(1);
+        RuntimeTask first = queue.poll();
+        assertThat(first).isSameAs(lows.get(3));
+        assertThat(first.getTask().getContent().getParameters()[0].getValue()).isEqualTo(3);
+        spiller.close();
+    }
+
+    @Test
+    public void testSpilledTasksKeptOnReadFailure() throws IOException {
+        File directory = Files.createTempDir();
+        TaskSpiller spiller = TaskSpiller.newBuilder(directory).watermarks(10, 20).heapWatermark(1).batchSize(4)
+                .build();
+        PriorityTaskQueue queue = new PriorityTaskQueue();
+        for (int i = 0; i < 30; i++) {
+            queue.offer(newTask(TaskPriority.NORMAL, i));
+        }
+        spiller.balance(queue);
+        assertThat(spiller.size()).isEqualTo(20);
+
+        for (File segment : directory.listFiles()) {
+            try (RandomAccessFile file = new RandomAccessFile(segment, "rw")) {
+                file.setLength(0);
+            }
+        }
+        while (queue.size() > 0) {
+            queue.poll();
+        }
+        try {
+            spiller.balance(queue);
+            fail("reading a truncated segment should fail");
+        } catch (TaskStoreException e) {
+            assertThat(e.getCause()).isInstanceOf(IOException.class);
+        }
+        // nothing is dropped, the failed task is still spilled
+        assertThat(spiller.size()).isEqualTo(20);
+        spiller.close();
+    }
+
+    private static RuntimeTask newTask(int priority, int uid) {
+        TaskPlan plan = TaskPlan.newBuilder().priority(priority).build();
+        return new RuntimeTask(new Task(TaskContent.newBuilder(10001).add("uid", uid).build(), plan),
+                new TaskContext());
+    }
+
+    private static RuntimeTask newTask(int priority) {
+        return newTask(priority, null);
+    }
+
+    private static RuntimeTask newTask(int priority, String tenant) {
+        TaskPlan plan = TaskPlan.newBuilder().priority(priority).build();
+        return new RuntimeTask(new Task(new TaskContent(10001), plan, tenant), new TaskContext());
+    }
+}
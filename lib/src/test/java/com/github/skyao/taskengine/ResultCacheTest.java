@@ -0,0 +1,62 @@
+package com.github.skyao.taskengine;
+
+import com.github.skyao.taskengine.cache.ResultCache;
+import com.github.skyao.taskengine.task.TaskContent;
+import com.github.skyao.taskengine.task.TaskResult;
+import org.testng.annotations.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ResultCacheTest {
+    @Test
+    public void testKeyOf() {
+        TaskContent content1 = TaskContent.newBuilder(10001).add("uid", 1).add("name", "a").build();
+        TaskContent content2 = TaskContent.newBuilder(10001).add("name", "a").add("uid", 1).build();
+        TaskContent content3 = TaskContent.newBuilder(10001).add("name", "a").add("uid", 1L).build();
+        TaskContent content4 = TaskContent.newBuilder(10002).add("name", "a").add("uid", 1).build();
+
+        assertThat(ResultCache.keyOf(content1)).isEqualTo(ResultCache.keyOf(content2));
+        assertThat(ResultCache.keyOf(content1)).isNotEqualTo(ResultCache.keyOf(content3));
+        assertThat(ResultCache.keyOf(content1)).isNotEqualTo(ResultCache.keyOf(content4));
+    }
+
+    @Test
+    public void testGetAndPut() throws Exception {
+        ResultCache cache = ResultCache.newBuilder().cache(10001, 50, TimeUnit.MILLISECONDS).build();
+        TaskContent content = TaskContent.newBuilder(10001).add("uid", 1).build();
+        TaskContent other = TaskContent.newBuilder(10002).add("uid", 1).build();
+
+        cache.put(content, TaskResult.FAILURE);
+        cache.put(other, TaskResult.SUCCESS);
+        assertThat(cache.size()).isZero();
+
+        cache.put(content, TaskResult.SUCCESS);
+        assertThat(cache.get(content)).isEqualTo(TaskResult.SUCCESS);
+        Thread.sleep(100);
+        assertThat(cache.get(content)).isNull();
+        assertThat(cache.size()).isZero();
+    }
+
+    @Test
+    public void testClockEviction() {
+        ResultCache cache = ResultCache.newBuilder().capacity(3).cache(10001, 1, TimeUnit.HOURS).build();
+        TaskContent[] contents = new TaskContent[4];
+        for (int i = 0; i < contents.length; i++) {
+            contents[i] = TaskContent.newBuilder(10001).add("uid", i).build();
+        }
+        cache.put(contents[0], TaskResult.SUCCESS);
+        cache.put(contents[1], TaskResult.SUCCESS);
+        cache.put(contents[2], TaskResult.SUCCESS);
+        cache.get(contents[0]);
+
+        // the hand skips referenced entry 0 and evicts entry 1
+        cache.put(contents[3], TaskResult.SUCCESS);
+        assertThat(cache.size()).isEqualTo(3);
+        assertThat(cache.get(contents[0])).isEqualTo(TaskResult.SUCCESS);
+        assertThat(cache.get(contents[1])).isNull();
+        assertThat(cache.get(contents[2])).isEqualTo(TaskResult.SUCCESS);
+        assertThat(cache.get(contents[3])).isEqualTo(TaskResult.SUCCESS);
+    }
+}
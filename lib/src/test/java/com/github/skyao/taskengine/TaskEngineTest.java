@@ -0,0 +1,1031 @@
+package com.github.skyao.taskengine;
+
+import com.github.skyao.taskengine.bulkhead.Bulkhead;
+import com.github.skyao.taskengine.bulkhead.Bulkheads;
+import com.github.skyao.taskengine.cache.ResultCache;
+import com.github.skyao.taskengine.engine.SubmitRing;
+import com.github.skyao.taskengine.engine.TaskEngine;
+import com.github.skyao.taskengine.event.TaskEvent;
+import com.github.skyao.taskengine.event.TaskEventListener;
+import com.github.skyao.taskengine.event.TaskEventRecorder;
+import com.github.skyao.taskengine.event.TaskEventType;
+import com.github.skyao.taskengine.flow.CompletionPublisher;
+import com.github.skyao.taskengine.flow.Flow;
+import com.github.skyao.taskengine.flow.TaskSubscriber;
+import com.github.skyao.taskengine.hedge.HedgePolicy;
+import com.github.skyao.taskengine.limit.AdaptiveConcurrencyLimiter;
+import com.github.skyao.taskengine.listener.CompletionDispatcher;
+import com.github.skyao.taskengine.listener.CompletionListener;
+import com.github.skyao.taskengine.listener.CompletionRecord;
+import com.github.skyao.taskengine.queue.OrderedLanes;
+import com.github.skyao.taskengine.store.FileTaskStore;
+import com.github.skyao.taskengine.store.TaskStore;
+import com.github.skyao.taskengine.store.TaskStoreException;
+import com.github.skyao.taskengine.task.AbstractTaskExecutable;
+import com.github.skyao.taskengine.task.RepeatMode;
+import com.github.skyao.taskengine.task.RuntimeTask;
+import com.github.skyao.taskengine.task.Task;
+import com.github.skyao.taskengine.task.TaskContent;
+import com.github.skyao.taskengine.task.TaskContext;
+import com.github.skyao.taskengine.task.TaskPlan;
+import com.github.skyao.taskengine.task.TaskPriority;
+import com.github.skyao.taskengine.task.TaskResult;
+import com.github.skyao.taskengine.task.TaskStatus;
+import com.google.common.io.Files;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+
+public class TaskEngineTest {
+    @Test
+    public void testSubmitAll() throws Exception {
+        final CountDownLatch latch = new CountDownLatch(100);
+        TaskEngine engine = TaskEngine.newBuilder().workers(4).build();
+        engine.register(10001, new AbstractTaskExecutable() {
+            @Override
+            protected TaskResult execute(TaskContent taskContent, TaskPlan taskPlan, TaskContext taskContext) {
+                latch.countDown();
+                return TaskResult.SUCCESS;
+            }
+        });
+
+        List<TaskContent> contents = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            contents.add(TaskContent.newBuilder(10001).add("uid", i).build());
+        }
+        TaskPlan plan = TaskPlan.newBuilder().priorityHigh().build();
+        List<RuntimeTask> tasks = engine.submitAll(contents, plan);
+        assertThat(tasks).hasSize(100);
+        assertThat(tasks.get(0).getTask().getPlan()).isNotSameAs(tasks.get(1).getTask().getPlan());
+        assertThat(tasks.get(0).getTask().getPlan().getPolicy()).isSameAs(plan.getPolicy());
+
+        engine.start();
+        assertThat(latch.await(5, TimeUnit.SECONDS)).isTrue();
+        engine.shutdown();
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testSubmitAllWithUnknownType() {
+        TaskEngine engine = TaskEngine.newBuilder().build();
+        engine.register(10001, new AbstractTaskExecutable());
+        List<TaskContent> contents = new ArrayList<>();
+        contents.add(new TaskContent(10001));
+        contents.add(new TaskContent(10002));
+        engine.submitAll(contents, TaskPlan.newDefaultPlan());
+    }
+
+    @Test
+    public void testWorkerSurvivesUnexpectedException() throws Exception {
+        final CountDownLatch latch = new CountDownLatch(1);
+        final AtomicLong ids = new AtomicLong();
+        // saving a retry fails, which fails the task instead of killing the only worker
+        TaskStore store = new TaskStore() {
+            @Override
+            public long add(Task task) {
+                return ids.incrementAndGet();
+            }
+
+            @Override
+            public long[] addAll(List<Task> tasks) {
+                long[] result = new long[tasks.size()];
+                for (int i = 0; i < result.length; i++) {
+                    result[i] = ids.incrementAndGet();
+                }
+                return result;
+            }
+
+            @Override
+            public long nextId() {
+                return ids.incrementAndGet();
+            }
+
+            @Override
+            public void update(long id, Task task) {
+                throw new TaskStoreException("fail to update task: id=" + id, new IOException("disk is full"));
+            }
+
+            @Override
+            public void checkpoint(long id, String key, Object value) {
+            }
+
+            @Override
+            public void remove(long id) {
+            }
+
+            @Override
+            public void load(Loader loader) {
+            }
+        };
+        TaskEngine engine = TaskEngine.newBuilder().workers(1).store(store).build();
+        engine.register(10001, new AbstractTaskExecutable() {
+            @Override
+            protected TaskResult execute(TaskContent taskContent, TaskPlan taskPlan, TaskContext taskContext) {
+                return TaskResult.FAILURE;
+            }
+        });
+        engine.register(10002, new AbstractTaskExecutable() {
+            @Override
+            protected TaskResult execute(TaskContent taskContent, TaskPlan taskPlan, TaskContext taskContext) {
+                latch.countDown();
+                return TaskResult.SUCCESS;
+            }
+        });
+        engine.start();
+
+        TaskPlan.Builder builder = TaskPlan.newBuilder();
+        builder.enableRetry().max(3);
+        RuntimeTask failed = engine.submit(new Task(new TaskContent(10001), builder.build()));
+        engine.submit(new Task(new TaskContent(10002), TaskPlan.newDefaultPlan()));
+        assertThat(latch.await(2, TimeUnit.SECONDS)).isTrue();
+        assertThat(failed.isFinished()).isTrue();
+        assertThat(failed.getResult()).isEqualTo(TaskResult.FAILURE);
+        engine.shutdown();
+    }
+
+    @Test
+    public void testResultCacheOnlyForOneShotTasks() throws Exception {
+        final AtomicInteger executed = new AtomicInteger();
+        File directory = Files.createTempDir();
+        FileTaskStore store = FileTaskStore.newBuilder(directory).snapshotIntervalInSeconds(0).build();
+        ResultCache cache = ResultCache.newBuilder().cache(10001, 1, TimeUnit.HOURS).build();
+        TaskEngine engine = TaskEngine.newBuilder().workers(1).store(store).resultCache(cache).build();
+        engine.register(10001, new AbstractTaskExecutable() {
+            @Override
+            protected TaskResult execute(TaskContent taskContent, TaskPlan taskPlan, TaskContext taskContext) {
+                executed.incrementAndGet();
+                return TaskResult.SUCCESS;
+            }
+        });
+        engine.start();
+
+        TaskContent content = TaskContent.newBuilder(10001).add("uid", 245001).build();
+        RuntimeTask first = engine.submit(new Task(content, TaskPlan.newDefaultPlan()));
+        long deadline = System.currentTimeMillis() + 2000;
+        while (!first.isFinished() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(first.getResult()).isEqualTo(TaskResult.SUCCESS);
+
+        RuntimeTask hit = engine.submit(new Task(content, TaskPlan.newDefaultPlan()));
+        assertThat(hit.isFinished()).isTrue();
+        assertThat(hit.getId()).isNotEqualTo(first.getId());
+
+        // tasks starting later or with retry or schedule plan run their plans
+        RuntimeTask later = engine.submit(new Task(content,
+                TaskPlan.newBuilder().startAt(System.currentTimeMillis() + 50).build()));
+        TaskPlan.Builder builder = TaskPlan.newBuilder();
+        builder.enableRetry().max(3);
+        RuntimeTask retried = engine.submit(new Task(content, builder.build()));
+        assertThat(later.isFinished()).isFalse();
+        assertThat(later.getId()).isGreaterThan(hit.getId());
+        assertThat(retried.getId()).isGreaterThan(later.getId());
+        deadline = System.currentTimeMillis() + 2000;
+        while (executed.get() < 3 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(executed.get()).isEqualTo(3);
+        engine.shutdown();
+        store.close();
+    }
+
+    @Test
+    public void testCompletionListener() throws Exception {
+        final CountDownLatch latch = new CountDownLatch(100);
+        final AtomicInteger failures = new AtomicInteger();
+        final AtomicInteger batches = new AtomicInteger();
+        CompletionDispatcher dispatcher = CompletionDispatcher.newBuilder().capacity(16).batchSize(8)
+                .overflowPolicy(CompletionDispatcher.OverflowPolicy.BLOCK).build();
+        dispatcher.addListener(new CompletionListener() {
+            @Override
+            public void onCompleted(List<CompletionRecord> records) {
+                assertThat(records.size()).isLessThanOrEqualTo(8);
+                batches.incrementAndGet();
+                for (CompletionRecord record : records) {
+                    assertThat(record.getTask().isFinished()).isTrue();
+                    assertThat(record.getQueueWait()).isGreaterThanOrEqualTo(0);
+                    if (record.getResult() == TaskResult.FAILURE) {
+                        failures.incrementAndGet();
+                    }
+                    latch.countDown();
+                }
+            }
+        });
+        TaskEngine engine = TaskEngine.newBuilder().workers(4).completionDispatcher(dispatcher).build();
+        engine.register(10001, new AbstractTaskExecutable() {
+            @Override
+            protected TaskResult execute(TaskContent taskContent, TaskPlan taskPlan, TaskContext taskContext) {
+                return TaskResult.SUCCESS;
+            }
+        });
+        engine.register(10002, new AbstractTaskExecutable() {
+            @Override
+            protected TaskResult execute(TaskContent taskContent, TaskPlan taskPlan, TaskContext taskContext) {
+                return TaskResult.FAILURE;
+            }
+        });
+
+        List<TaskContent> contents = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            contents.add(TaskContent.newBuilder(i % 2 == 0 ? 10001 : 10002).add("uid", i).build());
+        }
+        engine.submitAll(contents, TaskPlan.newDefaultPlan());
+        engine.start();
+        assertThat(latch.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(failures.get()).isEqualTo(50);
+        assertThat(dispatcher.getDroppedCount()).isZero();
+        engine.shutdown();
+    }
+
+    @Test
+    public void testReactiveIngestion() throws Exception {
+        final int total = 200;
+        CompletionDispatcher dispatcher = CompletionDispatcher.newBuilder().capacity(16).batchSize(4)
+                .overflowPolicy(CompletionDispatcher.OverflowPolicy.BLOCK).build();
+        TaskEngine engine = TaskEngine.newBuilder().workers(4).completionDispatcher(dispatcher).build();
+        engine.register(10001, new AbstractTaskExecutable() {
+            @Override
+            protected TaskResult execute(TaskContent taskContent, TaskPlan taskPlan, TaskContext taskContext) {
+                return TaskResult.SUCCESS;
+            }
+        });
+
+        // downstream requests completions one by one
+        final CountDownLatch completed = new CountDownLatch(total);
+        CompletionPublisher publisher = CompletionPublisher.newBuilder(dispatcher).bufferSize(4).build();
+        publisher.subscribe(new Flow.Subscriber<CompletionRecord>() {
+            private Flow.Subscription subscription;
+
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                this.subscription = subscription;
+                subscription.request(1);
+            }
+
+            @Override
+            public void onNext(CompletionRecord item) {
+                completed.countDown();
+                subscription.request(1);
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+            }
+
+            @Override
+            public void onComplete() {
+            }
+        });
+
+        // upstream emits only what is requested, and records the max demand it ever owes
+        final TaskSubscriber subscriber = TaskSubscriber.newBuilder(engine, dispatcher).capacity(8).build();
+        final AtomicLong maxOwed = new AtomicLong();
+        engine.start();
+        final AtomicLong demand = new AtomicLong();
+        final AtomicInteger emitted = new AtomicInteger();
+        subscriber.onSubscribe(new Flow.Subscription() {
+            @Override
+            public void request(long n) {
+                long owed = demand.addAndGet(n);
+                if (owed + subscriber.getOutstanding() > maxOwed.get()) {
+                    maxOwed.set(owed + subscriber.getOutstanding());
+                }
+            }
+
+            @Override
+            public void cancel() {
+            }
+        });
+        while (emitted.get() < total) {
+            if (demand.get() > 0) {
+                demand.decrementAndGet();
+                subscriber.onNext(new Task(TaskContent.newBuilder(10001).add("uid", emitted.incrementAndGet())
+                        .build(), TaskPlan.newDefaultPlan()));
+            } else {
+                Thread.sleep(1);
+            }
+        }
+        subscriber.onComplete();
+
+        assertThat(completed.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(maxOwed.get()).isLessThanOrEqualTo(8);
+        awaitOutstanding(subscriber);
+        assertThat(subscriber.isDone()).isTrue();
+        assertThat(dispatcher.getDroppedCount()).isZero();
+        engine.shutdown();
+    }
+
+    @Test
+    public void testReactiveIngestionHoldsFullPriority() throws Exception {
+        final CountDownLatch gate = new CountDownLatch(1);
+        final AtomicInteger executed = new AtomicInteger();
+        CompletionDispatcher dispatcher = CompletionDispatcher.newBuilder()
+                .overflowPolicy(CompletionDispatcher.OverflowPolicy.BLOCK).build();
+        TaskEngine engine = TaskEngine.newBuilder().workers(4).completionDispatcher(dispatcher).build();
+        engine.register(10001, new AbstractTaskExecutable() {
+            @Override
+            protected TaskResult execute(TaskContent taskContent, TaskPlan taskPlan, TaskContext taskContext) {
+                try {
+                    gate.await();
+                } catch (InterruptedException e) {
+                    return TaskResult.FAILURE;
+                }
+                executed.incrementAndGet();
+                return TaskResult.SUCCESS;
+            }
+        });
+        engine.start();
+
+        final AtomicLong demand = new AtomicLong();
+        TaskSubscriber subscriber = TaskSubscriber.newBuilder(engine, dispatcher).capacity(8)
+                .capacity(TaskPriority.HIGH, 1).build();
+        subscriber.onSubscribe(new Flow.Subscription() {
+            @Override
+            public void request(long n) {
+                demand.addAndGet(n);
+            }
+
+            @Override
+            public void cancel() {
+            }
+        });
+        // demand is requested already, so tasks of the full priority keep arriving and are all held in order
+        assertThat(demand.get()).isEqualTo(8);
+        for (int i = 0; i < 3; i++) {
+            subscriber.onNext(new Task(TaskContent.newBuilder(10001).add("uid", i).build(),
+                    TaskPlan.newBuilder().priorityHigh().build()));
+        }
+        assertThat(subscriber.getOutstanding()).isEqualTo(1);
+        assertThat(subscriber.getHeld()).isEqualTo(2);
+
+        gate.countDown();
+        subscriber.onComplete();
+        long deadline = System.currentTimeMillis() + 2000;
+        while (executed.get() < 3 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(executed.get()).isEqualTo(3);
+        awaitOutstanding(subscriber);
+        assertThat(subscriber.getHeld()).isZero();
+        engine.shutdown();
+    }
+
+    /**
+     * the last batch may still be delivered to the subscriber after the completion publisher or the executions.
+     */
+    private static void awaitOutstanding(TaskSubscriber subscriber) throws InterruptedException {
+        for (int i = 0; i < 100 && subscriber.getOutstanding() > 0; i++) {
+            Thread.sleep(10);
+        }
+        assertThat(subscriber.getOutstanding()).isZero();
+    }
+
+    @Test
+    public void testEventRecorder() throws Exception {
+        final Queue<TaskEvent> events = new ConcurrentLinkedQueue<>();
+        TaskEventRecorder recorder = TaskEventRecorder.newBuilder(new TaskEventListener() {
+            @Override
+            public void onEvent(TaskEvent event) {
+                events.add(event);
+            }
+        }).enable(TaskEventType.SUBMIT, TaskEventType.FINISH).threshold(TaskEventType.START, 1, TimeUnit.HOURS)
+                .build();
+        TaskEngine engine = TaskEngine.newBuilder().workers(2).eventRecorder(recorder).build();
+        engine.register(10001, new AbstractTaskExecutable() {
+            @Override
+            protected TaskResult execute(TaskContent taskContent, TaskPlan taskPlan, TaskContext taskContext) {
+                return TaskResult.SUCCESS;
+            }
+        });
+        engine.start();
+
+        RuntimeTask task = engine.submit(new Task(new TaskContent(10001),
+                TaskPlan.newDefaultPlan()));
+        long timeout = System.currentTimeMillis() + 5000;
+        while (events.size() < 2 && System.currentTimeMillis() < timeout) {
+            Thread.sleep(10);
+        }
+        assertThat(events).hasSize(2);
+        TaskEvent submit = events.poll();
+        assertThat(submit.getEventType()).isEqualTo(TaskEventType.SUBMIT);
+        assertThat(submit.getTaskId()).isEqualTo(task.getId());
+        TaskEvent finish = events.poll();
+        assertThat(finish.getEventType()).isEqualTo(TaskEventType.FINISH);
+        assertThat(finish.getFromStatus()).isEqualTo(TaskStatus.RUNNING);
+        assertThat(finish.getToStatus()).isEqualTo(TaskStatus.FINISHED);
+        assertThat(finish.getResult()).isEqualTo(TaskResult.SUCCESS);
+
+        recorder.setRecording(false);
+        engine.submit(new Task(new TaskContent(10001), TaskPlan.newDefaultPlan()));
+        Thread.sleep(100);
+        assertThat(events).isEmpty();
+        engine.shutdown();
+    }
+
+    @Test
+    public void testFixedRateScheduleAnchoredAndBatched() throws Exception {
+        final Queue<long[]> runs = new ConcurrentLinkedQueue<>();
+        final CountDownLatch done = new CountDownLatch(4);
+        TaskEngine engine = TaskEngine.newBuilder().workers(1).build();
+        engine.register(10001, new AbstractTaskExecutable() {
+            @Override
+            protected TaskResult execute(TaskContent taskContent, TaskPlan taskPlan, TaskContext taskContext) {
+                runs.add(new long[]{(Integer) taskContent.getParameters()[0].getValue(), System.currentTimeMillis()});
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException e) {
+                    return TaskResult.FAILURE;
+                }
+                done.countDown();
+                return TaskResult.SUCCESS;
+            }
+        });
+        engine.start();
+
+        // both schedules are anchored to the same start, the low one runs first and delays the first run of the other
+        long start = System.currentTimeMillis();
+        engine.submit(new Task(TaskContent.newBuilder(10001).add("uid", 0).build(), fixedRate(start, false)));
+        Thread.sleep(10);
+        engine.submit(new Task(TaskContent.newBuilder(10001).add("uid", 1).build(), fixedRate(start, true)));
+        assertThat(done.await(3, TimeUnit.SECONDS)).isTrue();
+
+        List<long[]> ordered = new ArrayList<>(runs);
+        assertThat(ordered).hasSize(4);
+        assertThat(ordered.get(0)[0]).isEqualTo(0);
+        assertThat(ordered.get(1)[0]).isEqualTo(1);
+        // second runs of both are due at start + interval, so they are enqueued in one tick and run by priority,
+        // while fixed delay would run the low one first, and the high one not before its finish + interval
+        assertThat(ordered.get(2)[0]).isEqualTo(1);
+        assertThat(ordered.get(3)[0]).isEqualTo(0);
+        assertThat(ordered.get(2)[1]).isGreaterThanOrEqualTo(start + 300);
+        assertThat(ordered.get(2)[1]).isLessThan(ordered.get(1)[1] + 50 + 300);
+        engine.shutdown();
+    }
+
+    private static TaskPlan fixedRate(long start, boolean high) {
+        TaskPlan.Builder builder = TaskPlan.newBuilder().startAt(start);
+        if (high) {
+            builder.priorityHigh();
+        } else {
+            builder.priorityLow();
+        }
+        builder.enableSchedule().max(2).intervalInMilliseconds(300).mode(RepeatMode.FIXED_RATE_SKIP);
+        return builder.build();
+    }
+
+    @Test
+    public void testParkedTasksNotStranded() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        final Queue<Integer> executed = new ConcurrentLinkedQueue<>();
+        AdaptiveConcurrencyLimiter limiter = AdaptiveConcurrencyLimiter.newBuilder().initialLimit(1).bounds(1, 1)
+                .build();
+        TaskEngine engine = TaskEngine.newBuilder().workers(2).concurrencyLimiter(limiter).build();
+        engine.register(10001, new AbstractTaskExecutable() {
+            @Override
+            protected TaskResult execute(TaskContent taskContent, TaskPlan taskPlan, TaskContext taskContext) {
+                int uid = (Integer) taskContent.getParameters()[0].getValue();
+                executed.add(uid);
+                if (uid == 0) {
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        return TaskResult.FAILURE;
+                    }
+                }
+                return TaskResult.SUCCESS;
+            }
+        });
+        engine.start();
+
+        List<RuntimeTask> tasks = new ArrayList<>();
+        long expire = System.currentTimeMillis() + 1000;
+        for (int i = 0; i < 4; i++) {
+            // the first parked task expires while it is parked, so it is canceled when it is handed back
+            TaskPlan plan = i == 1 ? TaskPlan.newBuilder().deadline(expire).build()
+                    : TaskPlan.newDefaultPlan();
+            tasks.add(engine.submit(new Task(TaskContent.newBuilder(10001).add("uid", i).build(), plan)));
+        }
+        long deadline = System.currentTimeMillis() + 2000;
+        while (limiter.getParkedCount() < 3 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(limiter.getParkedCount()).isEqualTo(3);
+        assertThat(engine.getPendingCount()).isEqualTo(3);
+
+        Thread.sleep(Math.max(0, expire + 50 - System.currentTimeMillis()));
+        release.countDown();
+        deadline = System.currentTimeMillis() + 2000;
+        while (!tasks.get(3).isFinished() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(tasks.get(1).getResult()).isEqualTo(TaskResult.CANCELED);
+        assertThat(tasks.get(2).getResult()).isEqualTo(TaskResult.SUCCESS);
+        assertThat(tasks.get(3).getResult()).isEqualTo(TaskResult.SUCCESS);
+        assertThat(executed).containsExactly(0, 2, 3);
+        assertThat(limiter.getInFlight(10001)).isZero();
+        engine.shutdown();
+    }
+
+    @Test
+    public void testHedging() throws Exception {
+        final int total = 100;
+        final CountDownLatch latch = new CountDownLatch(total);
+        final AtomicInteger completions = new AtomicInteger();
+        CompletionDispatcher dispatcher = CompletionDispatcher.newBuilder()
+                .overflowPolicy(CompletionDispatcher.OverflowPolicy.BLOCK).build();
+        dispatcher.addListener(new CompletionListener() {
+            @Override
+            public void onCompleted(List<CompletionRecord> records) {
+                for (CompletionRecord record : records) {
+                    assertThat(record.getResult()).isEqualTo(TaskResult.SUCCESS);
+                    completions.incrementAndGet();
+                    latch.countDown();
+                }
+            }
+        });
+        final Queue<TaskEvent> canceled = new ConcurrentLinkedQueue<>();
+        TaskEventRecorder recorder = TaskEventRecorder.newBuilder(new TaskEventListener() {
+            @Override
+            public void onEvent(TaskEvent event) {
+                if (event.getResult() == TaskResult.CANCELED) {
+                    canceled.add(event);
+                }
+            }
+        }).enable(TaskEventType.FINISH).build();
+        HedgePolicy hedgePolicy = HedgePolicy.newBuilder().types(10001).percentile(0.9).budget(0.5)
+                .minDelay(10, TimeUnit.MILLISECONDS).build();
+        TaskEngine engine = TaskEngine.newBuilder().workers(1).completionDispatcher(dispatcher)
+                .eventRecorder(recorder).hedgePolicy(hedgePolicy).build();
+        // the first execution of every 20th task is slow, a copy of it is fast
+        final Set<Integer> executed = Collections.newSetFromMap(new ConcurrentHashMap<Integer, Boolean>());
+        engine.register(10001, new AbstractTaskExecutable() {
+            @Override
+            protected TaskResult execute(TaskContent taskContent, TaskPlan taskPlan, TaskContext taskContext) {
+                int uid = (Integer) taskContent.getParameters()[0].getValue();
+                if (uid % 20 == 19 && executed.add(uid)) {
+                    try {
+                        Thread.sleep(200);
+                    } catch (InterruptedException e) {
+                        return TaskResult.FAILURE;
+                    }
+                }
+                return TaskResult.SUCCESS;
+            }
+        });
+
+        List<TaskContent> contents = new ArrayList<>();
+        for (int i = 0; i < total; i++) {
+            contents.add(TaskContent.newBuilder(10001).add("uid", i).build());
+        }
+        engine.submitAll(contents, TaskPlan.newDefaultPlan());
+        engine.start();
+        assertThat(latch.await(5, TimeUnit.SECONDS)).isTrue();
+
+        // no hedge before enough executions are seen, slow executions after that are hedged
+        final long hedged = hedgePolicy.getHedgedCount();
+        assertThat(hedged).isGreaterThan(0).isLessThanOrEqualTo(5);
+        assertThat(hedgePolicy.getWonCount()).isGreaterThan(0).isLessThanOrEqualTo(hedged);
+        // each hedge has exactly one loser
+        long timeout = System.currentTimeMillis() + 5000;
+        while (canceled.size() < hedged && System.currentTimeMillis() < timeout) {
+            Thread.sleep(10);
+        }
+        assertThat(canceled).hasSize((int) hedged);
+        assertThat(completions.get()).isEqualTo(total);
+        engine.shutdown();
+    }
+
+    @Test
+    public void testExecutionTimeout() throws Exception {
+        final CountDownLatch latch = new CountDownLatch(1);
+        final AtomicInteger executed = new AtomicInteger();
+        final AtomicInteger interrupted = new AtomicInteger();
+        CompletionDispatcher dispatcher = CompletionDispatcher.newBuilder().build();
+        final Queue<TaskResult> results = new ConcurrentLinkedQueue<>();
+        dispatcher.addListener(new CompletionListener() {
+            @Override
+            public void onCompleted(List<CompletionRecord> records) {
+                for (CompletionRecord record : records) {
+                    results.add(record.getResult());
+                    latch.countDown();
+                }
+            }
+        });
+        TaskEngine engine = TaskEngine.newBuilder().workers(1).completionDispatcher(dispatcher).build();
+        // the first execution hangs, the retry succeeds at once
+        engine.register(10001, new AbstractTaskExecutable() {
+            @Override
+            protected TaskResult execute(TaskContent taskContent, TaskPlan taskPlan, TaskContext taskContext) {
+                if (executed.incrementAndGet() == 1) {
+                    try {
+                        Thread.sleep(5000);
+                    } catch (InterruptedException e) {
+                        interrupted.incrementAndGet();
+                    }
+                }
+                return TaskResult.SUCCESS;
+            }
+        });
+        engine.start();
+
+        TaskPlan.Builder builder = TaskPlan.newBuilder().timeoutInMilliseconds(50);
+        builder.enableRetry().max(3);
+        TaskPlan plan = builder.build();
+        assertThat(plan.getTimeout()).isEqualTo(50);
+        engine.submit(new Task(new TaskContent(10001), plan));
+        assertThat(latch.await(2, TimeUnit.SECONDS)).isTrue();
+        assertThat(results).containsExactly(TaskResult.SUCCESS);
+        assertThat(executed.get()).isEqualTo(2);
+        assertThat(interrupted.get()).isEqualTo(1);
+        assertThat(plan.getRetryExecuted()).isEqualTo(1);
+        engine.shutdown();
+    }
+
+    @Test
+    public void testSubmitRing() throws Exception {
+        for (SubmitRing.WaitStrategy waitStrategy : SubmitRing.WaitStrategy.values()) {
+            final int producers = 4;
+            final int count = 500;
+            final CountDownLatch latch = new CountDownLatch(producers * count);
+            TaskEngine engine = TaskEngine.newBuilder().workers(2).build();
+            engine.register(10001, new AbstractTaskExecutable() {
+                @Override
+                protected TaskResult execute(TaskContent taskContent, TaskPlan taskPlan, TaskContext taskContext) {
+                    latch.countDown();
+                    return TaskResult.SUCCESS;
+                }
+            });
+            engine.start();
+
+            // a small ring, so producers wrap around and wait for free slots
+            final SubmitRing ring = SubmitRing.newBuilder(engine).bufferSize(64).batchSize(16)
+                    .waitStrategy(waitStrategy).build();
+            ring.start();
+            Thread[] threads = new Thread[producers];
+            for (int i = 0; i < producers; i++) {
+                threads[i] = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        for (int j = 0; j < count; j++) {
+                            ring.publish(TaskContent.newBuilder(10001).add("uid", j).build(),
+                                    TaskPlan.newDefaultPlan());
+                        }
+                    }
+                });
+                threads[i].start();
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            // unknown type is dropped without failing the other tasks of its batch
+            ring.publish(new TaskContent(10002), TaskPlan.newDefaultPlan());
+            ring.close();
+
+            assertThat(latch.await(5, TimeUnit.SECONDS)).isTrue();
+            assertThat(ring.size()).isZero();
+            assertThat(ring.getFailedCount()).isEqualTo(1);
+            try {
+                ring.tryPublish(new TaskContent(10001), TaskPlan.newDefaultPlan());
+                fail("closed ring should not accept tasks");
+            } catch (IllegalStateException e) {
+                // expected
+            }
+            engine.shutdown();
+        }
+    }
+
+    @Test
+    public void testSubmitRingCloseWhilePublishing() throws Exception {
+        final AtomicInteger executed = new AtomicInteger();
+        TaskEngine engine = TaskEngine.newBuilder().workers(2).build();
+        engine.register(10001, new AbstractTaskExecutable() {
+            @Override
+            protected TaskResult execute(TaskContent taskContent, TaskPlan taskPlan, TaskContext taskContext) {
+                executed.incrementAndGet();
+                return TaskResult.SUCCESS;
+            }
+        });
+        engine.start();
+
+        for (int round = 0; round < 20; round++) {
+            executed.set(0);
+            final AtomicInteger accepted = new AtomicInteger();
+            final SubmitRing ring = SubmitRing.newBuilder(engine).bufferSize(1024).build();
+            ring.start();
+            Thread[] threads = new Thread[4];
+            for (int i = 0; i < threads.length; i++) {
+                threads[i] = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            while (true) {
+                                if (ring.tryPublish(new TaskContent(10001), TaskPlan.newDefaultPlan())) {
+                                    accepted.incrementAndGet();
+                                }
+                            }
+                        } catch (IllegalStateException e) {
+                            // closed
+                        }
+                    }
+                });
+                threads[i].start();
+            }
+            Thread.sleep(5);
+            ring.close();
+            for (Thread thread : threads) {
+                thread.join();
+            }
+
+            // every accepted task is submitted, even if its producer passes the check just before closing
+            long timeout = System.currentTimeMillis() + 5000;
+            while (executed.get() < accepted.get() && System.currentTimeMillis() < timeout) {
+                Thread.sleep(10);
+            }
+            assertThat(executed.get()).isEqualTo(accepted.get());
+            assertThat(ring.size()).isZero();
+        }
+        engine.shutdown();
+    }
+
+    @Test
+    public void testOrderedLanes() throws Exception {
+        final int total = 200;
+        final CountDownLatch latch = new CountDownLatch(total);
+        final AtomicInteger overlaps = new AtomicInteger();
+        final AtomicInteger[] running = new AtomicInteger[4];
+        final List<Queue<Integer>> orders = new ArrayList<>();
+        for (int i = 0; i < running.length; i++) {
+            running[i] = new AtomicInteger();
+            orders.add(new ConcurrentLinkedQueue<Integer>());
+        }
+        OrderedLanes lanes = OrderedLanes.newBuilder().parameter("uid").build();
+        // ordered tasks are never hedged, a copy would overlap the next task of its lane
+        HedgePolicy hedgePolicy = HedgePolicy.newBuilder().types(10001).percentile(0.1).budget(1)
+                .minDelay(0, TimeUnit.MILLISECONDS).build();
+        TaskEngine engine = TaskEngine.newBuilder().workers(4).orderedLanes(lanes).hedgePolicy(hedgePolicy).build();
+        engine.register(10001, new AbstractTaskExecutable() {
+            @Override
+            protected TaskResult execute(TaskContent taskContent, TaskPlan taskPlan, TaskContext taskContext) {
+                int uid = (Integer) taskContent.getParameters()[0].getValue();
+                int seq = (Integer) taskContent.getParameters()[1].getValue();
+                if (running[uid].incrementAndGet() > 1) {
+                    overlaps.incrementAndGet();
+                }
+                orders.get(uid).add(seq);
+                try {
+                    Thread.sleep(1);
+                } catch (InterruptedException e) {
+                    return TaskResult.FAILURE;
+                }
+                running[uid].decrementAndGet();
+                latch.countDown();
+                return TaskResult.SUCCESS;
+            }
+        });
+
+        List<TaskContent> contents = new ArrayList<>();
+        for (int i = 0; i < total; i++) {
+            contents.add(TaskContent.newBuilder(10001).add("uid", i % 4).add("seq", i).build());
+        }
+        engine.submitAll(contents, TaskPlan.newDefaultPlan());
+        // tasks of the same uid wait in their lanes, not in the pending queue
+        assertThat(lanes.size()).isEqualTo(total - 4);
+        engine.start();
+        assertThat(latch.await(5, TimeUnit.SECONDS)).isTrue();
+
+        assertThat(overlaps.get()).isZero();
+        assertThat(hedgePolicy.getHedgedCount()).isZero();
+        for (int uid = 0; uid < orders.size(); uid++) {
+            int last = -1;
+            for (int seq : orders.get(uid)) {
+                assertThat(seq % 4).isEqualTo(uid);
+                assertThat(seq).isGreaterThan(last);
+                last = seq;
+            }
+        }
+        long timeout = System.currentTimeMillis() + 5000;
+        while (lanes.getLaneCount() > 0 && System.currentTimeMillis() < timeout) {
+            Thread.sleep(10);
+        }
+        assertThat(lanes.getLaneCount()).isZero();
+        assertThat(lanes.size()).isZero();
+        engine.shutdown();
+    }
+
+    @Test
+    public void testCheckpointedRetry() throws Exception {
+        final CountDownLatch latch = new CountDownLatch(1);
+        final List<Integer> pages = Collections.synchronizedList(new ArrayList<Integer>());
+        final AtomicInteger dropped = new AtomicInteger();
+        final AtomicInteger executions = new AtomicInteger();
+        TaskEngine engine = TaskEngine.newBuilder().workers(1).build();
+        // each execution handles one page and fails, so retries resume from the next page instead of the first one
+        engine.register(10001, new AbstractTaskExecutable() {
+            @Override
+            protected TaskResult execute(TaskContent taskContent, TaskPlan taskPlan, TaskContext taskContext) {
+                if (taskContext.getProperty("scratch") != null) {
+                    dropped.incrementAndGet();
+                }
+                Integer page = (Integer) taskContext.getProperty("page");
+                int current = page == null ? 0 : page;
+                pages.add(current);
+                taskContext.saveProperty("scratch", current);
+                if (executions.getAndIncrement() == 0) {
+                    // fails before any checkpoint, the retry still starts from a clean context
+                    return TaskResult.FAILURE;
+                }
+                taskContext.checkpoint("page", current + 1);
+                if (current < 2) {
+                    return TaskResult.FAILURE;
+                }
+                latch.countDown();
+                return TaskResult.SUCCESS;
+            }
+        });
+        engine.start();
+
+        TaskPlan.Builder builder = TaskPlan.newBuilder();
+        builder.enableRetry().max(5);
+        Task task = new Task(new TaskContent(10001), builder.build());
+        engine.submit(task);
+        assertThat(latch.await(2, TimeUnit.SECONDS)).isTrue();
+        assertThat(pages).containsExactly(0, 0, 1, 2);
+        assertThat(dropped.get()).isZero();
+        assertThat(task.getCheckpoint()).containsEntry("page", 3);
+        engine.shutdown();
+    }
+
+    @Test
+    public void testCheckpointAfterTimeout() throws Exception {
+        final CountDownLatch latch = new CountDownLatch(1);
+        final Queue<Integer> pages = new ConcurrentLinkedQueue<>();
+        File directory = Files.createTempDir();
+        FileTaskStore store = FileTaskStore.newBuilder(directory).snapshotIntervalInSeconds(0).build();
+        TaskEngine engine = TaskEngine.newBuilder().workers(1).store(store).build();
+        // the interrupt of the timeout is still pending when the execution checkpoints, which must not break the log
+        engine.register(10001, new AbstractTaskExecutable() {
+            @Override
+            protected TaskResult execute(TaskContent taskContent, TaskPlan taskPlan, TaskContext taskContext) {
+                Integer page = (Integer) taskContext.getProperty("page");
+                pages.add(page == null ? 0 : page);
+                if (page != null) {
+                    latch.countDown();
+                    return TaskResult.SUCCESS;
+                }
+                try {
+                    Thread.sleep(5000);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                taskContext.checkpoint("page", 1);
+                return TaskResult.FAILURE;
+            }
+        });
+        engine.start();
+
+        TaskPlan.Builder builder = TaskPlan.newBuilder().timeoutInMilliseconds(50);
+        builder.enableRetry().max(3);
+        RuntimeTask task = engine.submit(new Task(new TaskContent(10001), builder.build()));
+        assertThat(latch.await(2, TimeUnit.SECONDS)).isTrue();
+        assertThat(pages).containsExactly(0, 1);
+        long deadline = System.currentTimeMillis() + 2000;
+        while (!task.isFinished() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(task.getResult()).isEqualTo(TaskResult.SUCCESS);
+        engine.shutdown();
+        store.close();
+    }
+
+    @Test
+    public void testCheckpointUnsupportedValue() {
+        Task task = new Task(new TaskContent(10001));
+        task.checkpoint("page", 1);
+        TaskContext context = new TaskContext();
+        context.checkpoint("page", 1);
+        try {
+            task.checkpoint("page", new Object());
+            fail("unsupported value should be rejected");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        try {
+            context.checkpoint("page", new Object());
+            fail("unsupported value should be rejected");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+
+        // nothing is changed by a rejected value
+        assertThat(task.getCheckpoint()).containsEntry("page", 1);
+        assertThat(context.getProperty("page")).isEqualTo(1);
+        assertThat(context.getCheckpoints()).containsEntry("page", 1);
+    }
+
+    @Test
+    public void testBulkheads() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch fast = new CountDownLatch(10);
+        Bulkhead slow = Bulkhead.newBuilder("slow").types(10001).workers(1, 2).build();
+        Bulkheads bulkheads = Bulkheads.newBuilder().add(slow).resizeIntervalInMilliseconds(10).build();
+        TaskEngine engine = TaskEngine.newBuilder().workers(1).bulkheads(bulkheads).build();
+        engine.register(10001, new AbstractTaskExecutable() {
+            @Override
+            protected TaskResult execute(TaskContent taskContent, TaskPlan taskPlan, TaskContext taskContext) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    return TaskResult.FAILURE;
+                }
+                return TaskResult.SUCCESS;
+            }
+        });
+        engine.register(10002, new AbstractTaskExecutable() {
+            @Override
+            protected TaskResult execute(TaskContent taskContent, TaskPlan taskPlan, TaskContext taskContext) {
+                fast.countDown();
+                return TaskResult.SUCCESS;
+            }
+        });
+        engine.start();
+
+        for (int i = 0; i < 5; i++) {
+            engine.submit(new Task(new TaskContent(10001), TaskPlan.newDefaultPlan()));
+        }
+        for (int i = 0; i < 10; i++) {
+            engine.submit(new Task(new TaskContent(10002), TaskPlan.newDefaultPlan()));
+        }
+        assertThat(fast.await(5, TimeUnit.SECONDS)).isTrue();
+
+        Thread.sleep(100);
+        assertThat(slow.getTargetWorkers()).isEqualTo(2);
+        assertThat(slow.getRunning()).isEqualTo(2);
+        assertThat(slow.getQueue().size()).isEqualTo(3);
+        release.countDown();
+        engine.shutdown();
+    }
+
+    @Test
+    public void testBulkheadLendingDoesNotStarveLender() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch fast = new CountDownLatch(10);
+        Bulkhead slow = Bulkhead.newBuilder("slow").types(10001).workers(1, 3).build();
+        Bulkhead lender = Bulkhead.newBuilder("lender").types(10002).workers(1, 1).build();
+        // no resize in this test, a worker on loan for more than 50ms is replaced
+        Bulkheads bulkheads = Bulkheads.newBuilder().add(slow).add(lender).resizeIntervalInMilliseconds(60000)
+                .loanTimeoutInMilliseconds(50).build();
+        TaskEngine engine = TaskEngine.newBuilder().workers(1).bulkheads(bulkheads).build();
+        engine.register(10001, new AbstractTaskExecutable() {
+            @Override
+            protected TaskResult execute(TaskContent taskContent, TaskPlan taskPlan, TaskContext taskContext) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    return TaskResult.FAILURE;
+                }
+                return TaskResult.SUCCESS;
+            }
+        });
+        engine.register(10002, new AbstractTaskExecutable() {
+            @Override
+            protected TaskResult execute(TaskContent taskContent, TaskPlan taskPlan, TaskContext taskContext) {
+                fast.countDown();
+                return TaskResult.SUCCESS;
+            }
+        });
+        engine.start();
+
+        for (int i = 0; i < 5; i++) {
+            engine.submit(new Task(new TaskContent(10001), TaskPlan.newDefaultPlan()));
+        }
+        // the slow bulkhead has one worker, the other hanging tasks run on workers lent by the lender
+        long deadline = System.currentTimeMillis() + 2000;
+        while (slow.getRunning() < 3 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(slow.getRunning()).isEqualTo(3);
+        assertThat(slow.getWorkers()).isEqualTo(1);
+
+        for (int i = 0; i < 10; i++) {
+            engine.submit(new Task(new TaskContent(10002), TaskPlan.newDefaultPlan()));
+        }
+        assertThat(fast.await(2, TimeUnit.SECONDS)).isTrue();
+        assertThat(lender.getWorkers()).isEqualTo(1);
+        release.countDown();
+        engine.shutdown();
+    }
+}
@@ -1,9 +1,12 @@
 package com.github.skyao.taskengine;
 
+import com.github.skyao.taskengine.task.RepeatMode;
+import com.github.skyao.taskengine.task.RepeatPolicy;
 import com.github.skyao.taskengine.task.TaskPlan;
 import org.testng.annotations.Test;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
 
 public class TaskPlanTest {
     @Test
@@ -24,4 +27,78 @@ public class TaskPlanTest {
         assertThat(plan.getSchedule()).isNotNull();
         System.out.println(plan);
     }
+
+    @Test
+    public void testSharedPolicy() {
+        TaskPlan.Builder builder1 = TaskPlan.newBuilder().priorityHigh();
+        builder1.enableRetry().max(3).intervalInSeconds(10);
+        TaskPlan plan1 = builder1.build();
+        TaskPlan.Builder builder2 = TaskPlan.newBuilder().priorityHigh();
+        builder2.enableRetry().max(3).intervalInSeconds(10);
+        TaskPlan plan2 = builder2.build();
+        assertThat(plan1.getPolicy()).isSameAs(plan2.getPolicy());
+
+        plan1.getRetry().setExecuted(2);
+        assertThat(plan1.getRetryExecuted()).isEqualTo(2);
+        assertThat(plan2.getRetry().getExecuted()).isEqualTo(0);
+        assertThat(plan1.getRetry().needRepeat()).isTrue();
+        assertThat(plan2.getPolicy()).isSameAs(plan1.getPolicy());
+    }
+
+    @Test
+    public void testFixedRateNextExecuteTime() {
+        long start = 1000000;
+        RepeatPolicy delay = RepeatPolicy.of(true, 10, 100);
+        RepeatPolicy skip = RepeatPolicy.of(true, 10, 100, RepeatMode.FIXED_RATE_SKIP);
+        RepeatPolicy catchUp = RepeatPolicy.of(true, 10, 100, RepeatMode.FIXED_RATE_CATCH_UP);
+
+        // first run finished in time: all fixed rate modes are anchored to start, no drift from run time
+        assertThat(delay.nextExecuteTime(start, 1, start + 30)).isEqualTo(start + 130);
+        assertThat(skip.nextExecuteTime(start, 1, start + 30)).isEqualTo(start + 100);
+        assertThat(catchUp.nextExecuteTime(start, 1, start + 30)).isEqualTo(start + 100);
+
+        // first run overran 2.5 intervals: skip jumps to the next future slot, catch up runs the missed slots
+        assertThat(skip.nextExecuteIndex(start, 1, start + 250)).isEqualTo(3);
+        assertThat(skip.nextExecuteTime(start, 1, start + 250)).isEqualTo(start + 300);
+        assertThat(catchUp.nextExecuteIndex(start, 1, start + 250)).isEqualTo(1);
+        assertThat(catchUp.nextExecuteTime(start, 1, start + 250)).isEqualTo(start + 100);
+
+        assertThat(skip.needRepeat(3, start + 250, start + 300)).isFalse();
+        assertThat(skip.needRepeat(10, 0, start + 1000)).isFalse();
+        assertThat(catchUp.needRepeat(1, 0, start + 100)).isTrue();
+    }
+
+    @Test
+    public void testRepeatPlanMode() {
+        TaskPlan.Builder builder = TaskPlan.newBuilder().priorityHigh();
+        builder.enableSchedule().max(10).intervalInSeconds(1).mode(RepeatMode.FIXED_RATE_SKIP);
+        TaskPlan plan = builder.build();
+        assertThat(plan.getSchedule().getMode()).isEqualTo(RepeatMode.FIXED_RATE_SKIP);
+        assertThat(plan.getPolicy().getSchedule().isFixedRate()).isTrue();
+    }
+
+    @Test
+    public void testFixedRateModeNeedsInterval() {
+        TaskPlan.Builder builder = TaskPlan.newBuilder();
+        try {
+            builder.enableSchedule().max(10).mode(RepeatMode.FIXED_RATE_SKIP);
+            fail("fixed rate mode without interval should be rejected");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        TaskPlan plan = builder.build();
+        assertThat(plan.getSchedule().getMode()).isEqualTo(RepeatMode.FIXED_DELAY);
+
+        plan.getSchedule().setInterval(100);
+        plan.getSchedule().setMode(RepeatMode.FIXED_RATE_CATCH_UP);
+        try {
+            plan.getSchedule().setInterval(0);
+            fail("fixed rate mode without interval should be rejected");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        assertThat(plan.getSchedule().getInterval()).isEqualTo(100);
+        assertThat(plan.getPolicy().getSchedule())
+                .isEqualTo(RepeatPolicy.of(true, 10, 100, RepeatMode.FIXED_RATE_CATCH_UP));
+    }
 }
@@ -0,0 +1,346 @@
+package com.github.skyao.taskengine.loadtest;
+
+import com.github.skyao.taskengine.engine.TaskEngine;
+import com.github.skyao.taskengine.listener.CompletionDispatcher;
+import com.github.skyao.taskengine.listener.CompletionListener;
+import com.github.skyao.taskengine.listener.CompletionRecord;
+import com.github.skyao.taskengine.task.TaskExecutable;
+import com.github.skyao.taskengine.task.TaskPriority;
+import com.github.skyao.taskengine.task.TaskResult;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * load test which drives a task engine in-process with a synthetic workload.
+ * <pre>
+ * Each step:
+ * (1) builds a new engine by the engine factory and registers the simulated executables
+ * (2) submits tasks of the workload at a fixed rate for the step duration
+ * (3) reports throughput, queue wait percentiles, GC and allocation rate measured during the step
+ * The saturation search starts from a rate and multiplies it by a factor each step, until throughput falls behind
+ * the offered rate or the 99th percentile of queue wait exceeds the limit.
+ * </pre>
+ *
+ * @author Sky Ao
+ */
+public class LoadTest {
+    private static final double THROUGHPUT_RATIO = 0.95;
+
+    private final Workload workload;
+    private final Map<Integer, TaskExecutable> executables;
+    private final EngineFactory engineFactory;
+    private final int durationSeconds;
+
+    private LoadTest(Builder builder) {
+        this.workload = builder.workload;
+        this.executables = new HashMap<>(builder.executables);
+        this.engineFactory = builder.engineFactory;
+        this.durationSeconds = builder.durationSeconds;
+        for (int type : workload.getTypes()) {
+            checkState(executables.containsKey(type), "no executable for task type=" + type);
+        }
+    }
+
+    /**
+     * factory which creates a new engine builder for each step, so every step starts from a clean engine.
+     */
+    public interface EngineFactory {
+
+        /**
+         * create engine builder.
+         *
+         * @return engine builder, completion dispatcher of it will be set by load test
+         */
+        TaskEngine.Builder newBuilder();
+    }
+
+    /**
+     * run the workload at specified rate.
+     *
+     * @param rate tasks to submit per second
+     * @return result of this step
+     * @throws IllegalArgumentException if rate is not greater than zero
+     */
+    public StepResult run(int rate) {
+        checkArgument(rate > 0, "rate should greater than zero: rate=" + rate);
+
+        Recorder recorder = new Recorder();
+        CompletionDispatcher dispatcher = CompletionDispatcher.newBuilder().capacity(1 << 16)
+                .overflowPolicy(CompletionDispatcher.OverflowPolicy.BLOCK).build();
+        dispatcher.addListener(recorder);
+        TaskEngine engine = engineFactory.newBuilder().completionDispatcher(dispatcher).build();
+        for (Map.Entry<Integer, TaskExecutable> entry : executables.entrySet()) {
+            engine.register(entry.getKey(), entry.getValue());
+        }
+        engine.start();
+
+        long gcCount = gcCount();
+        long gcMillis = gcMillis();
+        long allocated = allocatedBytes();
+        long interval = TimeUnit.SECONDS.toNanos(1) / rate;
+        long total = (long) rate * durationSeconds;
+        long begin = System.nanoTime();
+        for (long i = 0; i < total; i++) {
+            long wait = begin + i * interval - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            engine.submit(workload.next());
+        }
+        long elapsed = System.nanoTime() - begin;
+        StepResult result = recorder.result(rate, elapsed, gcCount() - gcCount, gcMillis() - gcMillis,
+                allocated < 0 ? -1 : (allocatedBytes() - allocated) / 1048576.0 / (elapsed / 1e9));
+        engine.shutdown();
+        return result;
+    }
+
+    /**
+     * search the saturation point by running steps with growing rates.
+     *
+     * @param startRate    rate of the first step
+     * @param factor       factor to multiply rate by in each step
+     * @param maxSteps     max count of steps
+     * @param maxP99Millis limit of the 99th percentile of queue wait
+     * @return results of all the steps, the last one is saturated unless max steps is reached
+     * @throws IllegalArgumentException if any argument is invalid
+     */
+    public List<StepResult> findSaturation(int startRate, double factor, int maxSteps, long maxP99Millis) {
+        checkArgument(startRate > 0 && factor > 1 && maxSteps > 0 && maxP99Millis > 0, "invalid search arguments");
+
+        List<StepResult> results = new ArrayList<>();
+        double rate = startRate;
+        for (int step = 0; step < maxSteps; step++) {
+            StepResult result = run((int) rate);
+            results.add(result);
+            if (isSaturated(result, maxP99Millis)) {
+                break;
+            }
+            rate *= factor;
+        }
+        return results;
+    }
+
+    /**
+     * check if the engine is saturated in a step.
+     *
+     * @param result       step result
+     * @param maxP99Millis limit of the 99th percentile of queue wait
+     * @return true if throughput falls behind offered rate or queue wait exceeds the limit
+     */
+    public static boolean isSaturated(StepResult result, long maxP99Millis) {
+        return result.getThroughput() < result.getOfferedRate() * THROUGHPUT_RATIO
+                || result.getP99() > TimeUnit.MILLISECONDS.toMicros(maxP99Millis);
+    }
+
+    /**
+     * run the load test from command line.
+     * <pre>
+     * Arguments: peakRate [durationSeconds] [workers]
+     * Steps at 0.5, 1 and 2 times of peak rate are run first, then saturation is searched from 2 times of peak.
+     * </pre>
+     *
+     * @param args command line arguments
+     */
+    public static void main(String[] args) {
+        int peakRate = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int duration = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        final int workers = args.length > 2 ? Integer.parseInt(args[2]) : 16;
+
+        Workload workload = Workload.newBuilder()
+                .type(10001, 8, 2, 32)
+                .type(10002, 2, 8, 1024)
+                .priority(TaskPriority.HIGH, 1)
+                .priority(TaskPriority.NORMAL, 8)
+                .priority(TaskPriority.LOW, 1)
+                .delayed(0.05, 3)
+                .retry(0.5, 2, 10)
+                .schedule(0.01, 3, 100)
+                .build();
+        LoadTest loadTest = LoadTest.newBuilder(workload)
+                .executable(10001, new SimulatedExecutable(1000, 0.01))
+                .executable(10002, new SimulatedExecutable(5000, 0.05))
+                .durationSeconds(duration)
+                .engineFactory(new EngineFactory() {
+                    @Override
+                    public TaskEngine.Builder newBuilder() {
+                        return TaskEngine.newBuilder().workers(workers);
+                    }
+                })
+                .build();
+
+        System.out.println(StepResult.header());
+        for (double multiple : new double[]{0.5, 1, 2}) {
+            System.out.println(loadTest.run((int) (peakRate * multiple)));
+        }
+        List<StepResult> results = loadTest.findSaturation(peakRate * 2, 1.5, 10, 100);
+        for (StepResult result : results) {
+            System.out.println(result);
+        }
+        StepResult last = results.get(results.size() - 1);
+        if (isSaturated(last, 100)) {
+            System.out.println("saturated at offered rate=" + last.getOfferedRate());
+        }
+    }
+
+    private static long gcCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, gc.getCollectionCount());
+        }
+        return count;
+    }
+
+    private static long gcMillis() {
+        long millis = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            millis += Math.max(0, gc.getCollectionTime());
+        }
+        return millis;
+    }
+
+    /**
+     * get bytes allocated by all live threads, -1 if not supported by the JVM.
+     */
+    private static long allocatedBytes() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (!(threads instanceof com.sun.management.ThreadMXBean)) {
+            return -1;
+        }
+        long total = 0;
+        for (long bytes : ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(
+                threads.getAllThreadIds())) {
+            total += Math.max(0, bytes);
+        }
+        return total;
+    }
+
+    /**
+     * completion listener which records results and queue waits, called on the dispatcher thread only.
+     */
+    private static final class Recorder implements CompletionListener {
+        private long[] queueWaits = new long[1024];
+        private int count;
+        private long failed;
+        private long rejected;
+
+        @Override
+        public synchronized void onCompleted(List<CompletionRecord> records) {
+            for (CompletionRecord record : records) {
+                if (record.getResult() == TaskResult.REJECTED) {
+                    rejected++;
+                    continue;
+                }
+                if (record.getResult() == TaskResult.FAILURE) {
+                    failed++;
+                }
+                if (count == queueWaits.length) {
+                    queueWaits = Arrays.copyOf(queueWaits, count * 2);
+                }
+                queueWaits[count++] = TimeUnit.NANOSECONDS.toMicros(record.getQueueWait());
+            }
+        }
+
+        private synchronized StepResult result(int rate, long elapsed, long gcCount, long gcMillis,
+                                               double allocationRate) {
+            long[] sorted = Arrays.copyOf(queueWaits, count);
+            Arrays.sort(sorted);
+            double throughput = count / (elapsed / 1e9);
+            return new StepResult(rate, throughput, count, failed, rejected, sorted, gcCount, gcMillis,
+                    allocationRate);
+        }
+    }
+
+    /**
+     * create a new Builder.
+     *
+     * @param workload workload to run
+     * @return new instance of Builder
+     * @throws NullPointerException if workload is null
+     */
+    public static Builder newBuilder(Workload workload) {
+        return new Builder(workload);
+    }
+
+    /**
+     * Builder helps to build load test easily.
+     */
+    public static class Builder {
+        private final Workload workload;
+        private final Map<Integer, TaskExecutable> executables = new HashMap<>();
+        private EngineFactory engineFactory = new EngineFactory() {
+            @Override
+            public TaskEngine.Builder newBuilder() {
+                return TaskEngine.newBuilder();
+            }
+        };
+        private int durationSeconds = 10;
+
+        private Builder(Workload workload) {
+            checkNotNull(workload, "workload should not be null");
+            this.workload = workload;
+        }
+
+        /**
+         * build load test.
+         *
+         * @return load test
+         * @throws IllegalStateException if any task type of the workload has no executable
+         */
+        public LoadTest build() {
+            return new LoadTest(this);
+        }
+
+        /**
+         * set executable of a task type.
+         *
+         * @param type       task type
+         * @param executable executable, usually a simulated one
+         * @return this builder itself to chain
+         * @throws NullPointerException if executable is null
+         */
+        public Builder executable(int type, TaskExecutable executable) {
+            checkNotNull(executable, "task executable should not be null");
+            executables.put(type, executable);
+            return this;
+        }
+
+        /**
+         * set factory of engines under test.
+         *
+         * @param engineFactory engine factory
+         * @return this builder itself to chain
+         * @throws NullPointerException if engineFactory is null
+         */
+        public Builder engineFactory(EngineFactory engineFactory) {
+            checkNotNull(engineFactory, "engine factory should not be null");
+            this.engineFactory = engineFactory;
+            return this;
+        }
+
+        /**
+         * set duration of each step.
+         *
+         * @param durationSeconds duration in seconds
+         * @return this builder itself to chain
+         * @throws IllegalArgumentException if durationSeconds is not greater than zero
+         */
+        public Builder durationSeconds(int durationSeconds) {
+            checkArgument(durationSeconds > 0, "duration should greater than zero: duration=" + durationSeconds);
+            this.durationSeconds = durationSeconds;
+            return this;
+        }
+    }
+}
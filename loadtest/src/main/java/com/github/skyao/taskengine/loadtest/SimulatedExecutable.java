@@ -0,0 +1,51 @@
+package com.github.skyao.taskengine.loadtest;
+
+import com.github.skyao.taskengine.task.RuntimeTask;
+import com.github.skyao.taskengine.task.TaskExecutable;
+import com.github.skyao.taskengine.task.TaskResult;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * executable which simulates latency and failures of a real one.
+ * <p>
+ * Latency is exponentially distributed around the mean, which is the typical shape of calls to a remote service.
+ * The worker is parked during latency, so it behaves as blocking I/O instead of burning cpu.
+ * </p>
+ *
+ * @author Sky Ao
+ */
+public class SimulatedExecutable implements TaskExecutable {
+    private final long meanLatencyNanos;
+    private final double failureRate;
+
+    /**
+     * create simulated executable.
+     *
+     * @param meanLatencyMicros mean latency in microseconds
+     * @param failureRate       fraction of executions which fail
+     * @throws IllegalArgumentException if latency is negative or failure rate is not in [0, 1]
+     */
+    public SimulatedExecutable(long meanLatencyMicros, double failureRate) {
+        checkArgument(meanLatencyMicros >= 0, "latency should greater than or equal to zero: latency="
+                + meanLatencyMicros);
+        checkArgument(failureRate >= 0 && failureRate <= 1, "failure rate should in [0,1]: failureRate="
+                + failureRate);
+        this.meanLatencyNanos = TimeUnit.MICROSECONDS.toNanos(meanLatencyMicros);
+        this.failureRate = failureRate;
+    }
+
+    @Override
+    public TaskResult apply(RuntimeTask task) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        if (meanLatencyNanos > 0) {
+            long latency = (long) (-Math.log(1 - random.nextDouble()) * meanLatencyNanos);
+            LockSupport.parkNanos(latency);
+        }
+        return random.nextDouble() < failureRate ? TaskResult.FAILURE : TaskResult.SUCCESS;
+    }
+}
@@ -0,0 +1,158 @@
+package com.github.skyao.taskengine.loadtest;
+
+/**
+ * result of running a workload at one rate.
+ *
+ * @author Sky Ao
+ */
+public class StepResult {
+    private final int offeredRate;
+    private final double throughput;
+    private final long completed;
+    private final long failed;
+    private final long rejected;
+    private final long p50;
+    private final long p99;
+    private final long p999;
+    private final long gcCount;
+    private final long gcMillis;
+    private final double allocationRate;
+
+    StepResult(int offeredRate, double throughput, long completed, long failed, long rejected, long[] queueWaits,
+               long gcCount, long gcMillis, double allocationRate) {
+        this.offeredRate = offeredRate;
+        this.throughput = throughput;
+        this.completed = completed;
+        this.failed = failed;
+        this.rejected = rejected;
+        this.p50 = percentile(queueWaits, 0.5);
+        this.p99 = percentile(queueWaits, 0.99);
+        this.p999 = percentile(queueWaits, 0.999);
+        this.gcCount = gcCount;
+        this.gcMillis = gcMillis;
+        this.allocationRate = allocationRate;
+    }
+
+    /**
+     * get rate of submitted tasks.
+     *
+     * @return offered rate in tasks per second
+     */
+    public int getOfferedRate() {
+        return offeredRate;
+    }
+
+    /**
+     * get rate of finished tasks.
+     *
+     * @return throughput in tasks per second
+     */
+    public double getThroughput() {
+        return throughput;
+    }
+
+    /**
+     * get count of finished tasks.
+     *
+     * @return count of finished tasks
+     */
+    public long getCompleted() {
+        return completed;
+    }
+
+    /**
+     * get count of failed tasks.
+     *
+     * @return count of failed tasks
+     */
+    public long getFailed() {
+        return failed;
+    }
+
+    /**
+     * get count of rejected tasks.
+     *
+     * @return count of rejected tasks
+     */
+    public long getRejected() {
+        return rejected;
+    }
+
+    /**
+     * get median of queue wait.
+     *
+     * @return queue wait in microseconds
+     */
+    public long getP50() {
+        return p50;
+    }
+
+    /**
+     * get 99th percentile of queue wait.
+     *
+     * @return queue wait in microseconds
+     */
+    public long getP99() {
+        return p99;
+    }
+
+    /**
+     * get 99.9th percentile of queue wait.
+     *
+     * @return queue wait in microseconds
+     */
+    public long getP999() {
+        return p999;
+    }
+
+    /**
+     * get count of GC during this step.
+     *
+     * @return count of GC
+     */
+    public long getGcCount() {
+        return gcCount;
+    }
+
+    /**
+     * get time of GC during this step.
+     *
+     * @return GC time in milliseconds
+     */
+    public long getGcMillis() {
+        return gcMillis;
+    }
+
+    /**
+     * get allocation rate of the engine and submitter threads.
+     *
+     * @return allocation rate in MB per second, -1 if not supported by the JVM
+     */
+    public double getAllocationRate() {
+        return allocationRate;
+    }
+
+    /**
+     * get header of the report table.
+     *
+     * @return header line
+     */
+    public static String header() {
+        return String.format("%10s %12s %10s %8s %8s %10s %10s %10s %6s %8s %10s", "offered", "throughput",
+                "completed", "failed", "rejected", "p50(us)", "p99(us)", "p999(us)", "gc", "gc(ms)", "alloc(MB/s)");
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%10d %12.1f %10d %8d %8d %10d %10d %10d %6d %8d %10.1f", offeredRate, throughput,
+                completed, failed, rejected, p50, p99, p999, gcCount, gcMillis, allocationRate);
+    }
+
+    private static long percentile(long[] sorted, double percentile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(percentile * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+    }
+}
@@ -0,0 +1,269 @@
+package com.github.skyao.taskengine.loadtest;
+
+import com.github.skyao.taskengine.task.RepeatPolicy;
+import com.github.skyao.taskengine.task.Task;
+import com.github.skyao.taskengine.task.TaskContent;
+import com.github.skyao.taskengine.task.TaskPlan;
+import com.github.skyao.taskengine.task.TaskPolicy;
+import com.github.skyao.taskengine.task.TaskPriority;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * generator of synthetic tasks.
+ * <pre>
+ * A workload is described by:
+ * (1) a weighted mix of task types, each with its count and size of parameters
+ * (2) a weighted distribution of task priorities
+ * (3) a fraction of tasks which start after a random delay of [1, max] seconds
+ * (4) fractions of tasks which have retry plan and schedule plan
+ * The same seed generates the same sequence of tasks, so results can be compared across versions.
+ * </pre>
+ *
+ * @author Sky Ao
+ */
+public class Workload {
+    private final List<TypeMix> types;
+    private final int[] typeWeights;
+    private final int[] priorities;
+    private final int[] priorityWeights;
+    private final double delayedFraction;
+    private final int maxDelaySeconds;
+    private final double retryFraction;
+    private final RepeatPolicy retry;
+    private final double scheduleFraction;
+    private final RepeatPolicy schedule;
+    private final Random random;
+
+    private Workload(Builder builder) {
+        this.types = new ArrayList<>(builder.types);
+        this.typeWeights = new int[types.size()];
+        for (int i = 0; i < types.size(); i++) {
+            typeWeights[i] = types.get(i).weight;
+        }
+        this.priorities = toArray(builder.priorities);
+        this.priorityWeights = toArray(builder.priorityWeights);
+        this.delayedFraction = builder.delayedFraction;
+        this.maxDelaySeconds = builder.maxDelaySeconds;
+        this.retryFraction = builder.retryFraction;
+        this.retry = builder.retry;
+        this.scheduleFraction = builder.scheduleFraction;
+        this.schedule = builder.schedule;
+        this.random = new Random(builder.seed);
+    }
+
+    /**
+     * get all the task types in this workload.
+     *
+     * @return task types
+     */
+    public int[] getTypes() {
+        int[] result = new int[types.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = types.get(i).type;
+        }
+        return result;
+    }
+
+    /**
+     * generate next task.
+     *
+     * @return generated task
+     */
+    public synchronized Task next() {
+        TypeMix mix = types.get(pick(typeWeights));
+        TaskContent.Builder content = TaskContent.newBuilder(mix.type);
+        for (int i = 0; i < mix.parameters; i++) {
+            content.add("p" + i, mix.value);
+        }
+
+        TaskPlan.Builder plan = TaskPlan.newBuilder();
+        if (delayedFraction > 0 && random.nextDouble() < delayedFraction) {
+            plan.startAfterSeconds(1 + random.nextInt(maxDelaySeconds));
+        }
+        TaskPlan taskPlan = plan.build();
+        int priority = priorities.length == 0 ? TaskPriority.DEFAULT : priorities[pick(priorityWeights)];
+        RepeatPolicy taskSchedule = random.nextDouble() < scheduleFraction ? schedule : null;
+        RepeatPolicy taskRetry = random.nextDouble() < retryFraction ? retry : null;
+        taskPlan.setPolicy(TaskPolicy.of(priority, taskSchedule, taskRetry));
+        return new Task(content.build(), taskPlan);
+    }
+
+    private int pick(int[] weights) {
+        int total = 0;
+        for (int weight : weights) {
+            total += weight;
+        }
+        int value = random.nextInt(total);
+        for (int i = 0; i < weights.length; i++) {
+            value -= weights[i];
+            if (value < 0) {
+                return i;
+            }
+        }
+        return weights.length - 1;
+    }
+
+    private static int[] toArray(List<Integer> values) {
+        int[] result = new int[values.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = values.get(i);
+        }
+        return result;
+    }
+
+    private static final class TypeMix {
+        private final int type;
+        private final int weight;
+        private final int parameters;
+        private final String value;
+
+        private TypeMix(int type, int weight, int parameters, int parameterSize) {
+            this.type = type;
+            this.weight = weight;
+            this.parameters = parameters;
+            char[] chars = new char[parameterSize];
+            Arrays.fill(chars, 'x');
+            this.value = new String(chars);
+        }
+    }
+
+    /**
+     * create a new Builder.
+     *
+     * @return new instance of Builder
+     */
+    public static Builder newBuilder() {
+        return new Builder();
+    }
+
+    /**
+     * Builder helps to build workload easily.
+     */
+    public static class Builder {
+        private final List<TypeMix> types = new ArrayList<>();
+        private final List<Integer> priorities = new ArrayList<>();
+        private final List<Integer> priorityWeights = new ArrayList<>();
+        private double delayedFraction;
+        private int maxDelaySeconds = 1;
+        private double retryFraction;
+        private RepeatPolicy retry;
+        private double scheduleFraction;
+        private RepeatPolicy schedule;
+        private long seed = 42;
+
+        /**
+         * build workload.
+         *
+         * @return workload
+         * @throws IllegalStateException if no task type is added
+         */
+        public Workload build() {
+            checkState(!types.isEmpty(), "workload should have task types");
+            return new Workload(this);
+        }
+
+        /**
+         * add a task type to the mix.
+         *
+         * @param type          task type
+         * @param weight        weight in the mix
+         * @param parameters    count of parameters of each task
+         * @param parameterSize size of each parameter value in chars
+         * @return this builder itself to chain
+         * @throws IllegalArgumentException if weight is not greater than zero, or parameters or size is negative
+         */
+        public Builder type(int type, int weight, int parameters, int parameterSize) {
+            checkArgument(weight > 0, "weight should greater than zero: weight=" + weight);
+            checkArgument(parameters >= 0 && parameterSize >= 0, "invalid parameters: count=" + parameters
+                    + ",size=" + parameterSize);
+            types.add(new TypeMix(type, weight, parameters, parameterSize));
+            return this;
+        }
+
+        /**
+         * add a task priority to the distribution, default is all tasks of default priority.
+         *
+         * @param priority task priority
+         * @param weight   weight in the distribution
+         * @return this builder itself to chain
+         * @throws IllegalArgumentException if priority is invalid or weight is not greater than zero
+         */
+        public Builder priority(int priority, int weight) {
+            checkArgument(TaskPriority.isValidPriority(priority), "invalid task priority=" + priority);
+            checkArgument(weight > 0, "weight should greater than zero: weight=" + weight);
+            priorities.add(priority);
+            priorityWeights.add(weight);
+            return this;
+        }
+
+        /**
+         * let a fraction of tasks start after a random delay.
+         *
+         * @param fraction        fraction of delayed tasks
+         * @param maxDelaySeconds max delay in seconds
+         * @return this builder itself to chain
+         * @throws IllegalArgumentException if fraction is not in [0, 1] or maxDelaySeconds is not greater than zero
+         */
+        public Builder delayed(double fraction, int maxDelaySeconds) {
+            checkFraction(fraction);
+            checkArgument(maxDelaySeconds > 0, "max delay should greater than zero: maxDelay=" + maxDelaySeconds);
+            this.delayedFraction = fraction;
+            this.maxDelaySeconds = maxDelaySeconds;
+            return this;
+        }
+
+        /**
+         * let a fraction of tasks have retry plan.
+         *
+         * @param fraction fraction of tasks with retry plan
+         * @param max      max retry times
+         * @param interval retry interval in milliseconds
+         * @return this builder itself to chain
+         * @throws IllegalArgumentException if fraction is not in [0, 1]
+         */
+        public Builder retry(double fraction, int max, long interval) {
+            checkFraction(fraction);
+            this.retryFraction = fraction;
+            this.retry = RepeatPolicy.of(true, max, interval);
+            return this;
+        }
+
+        /**
+         * let a fraction of tasks have schedule plan.
+         *
+         * @param fraction fraction of tasks with schedule plan
+         * @param max      max schedule times
+         * @param interval schedule interval in milliseconds
+         * @return this builder itself to chain
+         * @throws IllegalArgumentException if fraction is not in [0, 1]
+         */
+        public Builder schedule(double fraction, int max, long interval) {
+            checkFraction(fraction);
+            this.scheduleFraction = fraction;
+            this.schedule = RepeatPolicy.of(true, max, interval);
+            return this;
+        }
+
+        /**
+         * set random seed.
+         *
+         * @param seed random seed
+         * @return this builder itself to chain
+         */
+        public Builder seed(long seed) {
+            this.seed = seed;
+            return this;
+        }
+
+        private static void checkFraction(double fraction) {
+            checkArgument(fraction >= 0 && fraction <= 1, "fraction should in [0,1]: fraction=" + fraction);
+        }
+    }
+}